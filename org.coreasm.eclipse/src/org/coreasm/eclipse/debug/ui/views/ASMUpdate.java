@@ -93,7 +93,7 @@ public class ASMUpdate extends ASMUpdateViewElement {
 	 * @return the agents assigned to this update
 	 */
 	public Set<Element> getAgents() {
-		return update.agents;
+		return update.getAgents();
 	}
 	
 	/**
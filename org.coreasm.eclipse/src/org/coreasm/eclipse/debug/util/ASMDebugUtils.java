@@ -35,7 +35,7 @@ public class ASMDebugUtils {
 	public static String getFileName(Update update, ControlAPI capi) {
 		if (capi != null) {
 			Parser parser = capi.getParser();
-			CharacterPosition charPos = ((ScannerInfo)update.sources.toArray()[0]).getPos(parser.getPositionMap());
+			CharacterPosition charPos = ((ScannerInfo)update.getSources().toArray()[0]).getPos(parser.getPositionMap());
 			Specification spec = capi.getSpec();
 			if (spec != null) {
 				String fileName = spec.getAbsolutePath();
@@ -53,7 +53,7 @@ public class ASMDebugUtils {
 	public static int getLineNumber(Update update, ControlAPI capi) {
 		if (capi != null) {
 			Parser parser = capi.getParser();
-			CharacterPosition charPos = ((ScannerInfo)update.sources.toArray()[0]).getPos(parser.getPositionMap());
+			CharacterPosition charPos = ((ScannerInfo)update.getSources().toArray()[0]).getPos(parser.getPositionMap());
 			if (charPos != null) {
 				Specification spec = capi.getSpec();
 				int line = charPos.line;
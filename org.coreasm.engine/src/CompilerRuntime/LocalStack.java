@@ -1,25 +1,92 @@
 package CompilerRuntime;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
+
+/**
+ * The local environment of a rule.
+ * The variables of all layers are kept in one flat frame, the variables
+ * of the top layer last. The names of variables are string constants of
+ * the generated code, so they are compared by identity first.
+ * <p>
+ * A compiled rule or function reserves a slot for each of its local
+ * variables when it starts (see {@link #pushFrame(int)}); the generated
+ * code accesses these by index. Variables whose names are only known at
+ * run time, e.g. those of import rules, are added by name.
+ */
+public class LocalStack {
+	private String[] names;
+	private Object[] values;
+	private int size;
+	//index of the first variable of each layer above the base layer
+	private int[] layers;
+	private int depth;
 
-public class LocalStack {	
-	private List<HashMap<String, Object>> variables;
-	
 	public LocalStack(){
-		this.variables = new ArrayList<HashMap<String,Object>>();
-		variables.add(new HashMap<String, Object>()); //add a base layer to prevent errors
+		this.names = new String[8];
+		this.values = new Object[8];
+		this.size = 0;
+		this.layers = new int[8];
+		this.depth = 0;
 	}
-	
+
 	/**
 	 * adds a new layer to the stack.
 	 * new variables will be added to this layer
 	 */
 	public void pushLayer(){
-		this.variables.add(new HashMap<String, Object>());
+		if(depth == layers.length) layers = Arrays.copyOf(layers, depth * 2);
+		layers[depth] = size;
+		depth++;
+	}
+
+	/**
+	 * adds a new layer to the stack with the given number of slots
+	 * for the local variables of a compiled rule or function.
+	 * The slots are empty until a value is put into them.
+	 * @param slots The number of slots
+	 * @return The index of the first slot
+	 */
+	public int pushFrame(int slots){
+		pushLayer();
+		int start = size;
+		if(size + slots > names.length){
+			int length = Math.max(names.length * 2, size + slots);
+			names = Arrays.copyOf(names, length);
+			values = Arrays.copyOf(values, length);
+		}
+		size += slots;
+		return start;
 	}
-	
+
+	/**
+	 * Puts a value into the slot with the given index
+	 * @param index The index of the slot
+	 * @param s The name of the variable
+	 * @param o The value of the variable
+	 */
+	public void put(int index, String s, Object o){
+		names[index] = s;
+		values[index] = o;
+	}
+
+	/**
+	 * Returns the value in the slot with the given index
+	 * @param index The index of the slot
+	 * @return null or the value of the variable
+	 */
+	public Object get(int index){
+		return values[index];
+	}
+
+	/**
+	 * Empties the slot with the given index
+	 * @param index The index of the slot
+	 */
+	public void remove(int index){
+		names[index] = null;
+		values[index] = null;
+	}
+
 	/**
 	 * Adds a new variable to the current layer.
 	 * Using an already existing name will update the variable
@@ -27,32 +94,47 @@ public class LocalStack {
 	 * @param o The value of the variable
 	 */
 	public void put(String s, Object o){
-		HashMap<String, Object> top = variables.get(variables.size() - 1);
-		top.put(s, o);
+		int start = (depth == 0) ? 0 : layers[depth - 1];
+		for(int i = size - 1; i >= start; i--){
+			if(names[i] == s || s.equals(names[i])){
+				values[i] = o;
+				return;
+			}
+		}
+		if(size == names.length){
+			names = Arrays.copyOf(names, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		names[size] = s;
+		values[size] = o;
+		size++;
 	}
-	
+
 	/**
 	 * Querys the stack for the given element.
 	 * @param s The name of the variable
 	 * @return null or the value of the variable
 	 */
 	public Object get(String s){
-		for(int i = variables.size() - 1; i >= 0; i--){
-			HashMap<String, Object> current = variables.get(i);
-			Object val = current.get(s);
-			if(val != null) return val;
+		for(int i = size - 1; i >= 0; i--){
+			if(values[i] != null && (names[i] == s || s.equals(names[i]))) return values[i];
 		}
 		return null;
 	}
-	
+
 	/**
 	 * Pops the current layer with all its variables
 	 * from the stack, effectively removing them from the local
 	 * environment
 	 */
 	public void popLayer(){
-		if(this.variables.size() >= 1){
-			this.variables.remove(this.variables.size() - 1);
+		int start = 0;
+		if(depth > 0){
+			depth--;
+			start = layers[depth];
 		}
+		Arrays.fill(names, start, size, null);
+		Arrays.fill(values, start, size, null);
+		size = start;
 	}
 }
@@ -1,5 +1,20 @@
 package CompilerRuntime;
 
+import java.util.Collections;
+import java.util.Set;
+
 public class ScannerInfo {
+	private transient volatile Set<ScannerInfo> singleton = null;
 
+	/**
+	 * Returns an immutable set that contains only this object.
+	 */
+	public Set<ScannerInfo> asSet() {
+		Set<ScannerInfo> result = singleton;
+		if (result == null) {
+			result = Collections.singleton(this);
+			singleton = result;
+		}
+		return result;
+	}
 }
@@ -137,9 +137,7 @@ public class Scheduler {
 		if(inUp != null){
 			java.util.Set<Element> agents = new java.util.HashSet<Element>();
 			for(Update u : inUp){
-				if(u.agents != null){			
-					agents.addAll(u.agents);
-				}
+				agents.addAll(u.getAgents());
 			}
 			
 			if(agents.size() == 1)
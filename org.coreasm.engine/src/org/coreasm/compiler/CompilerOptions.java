@@ -41,6 +41,14 @@ public class CompilerOptions {
 	 * Signals, if already existing files will be purged before new files are written
 	 */
 	public boolean removeExistingFiles = true;
+	/**
+	 * If set to true, the generated classes are compiled in memory instead of
+	 * being written to the temporary directory. The compiled classes are available
+	 * through {@link CoreASMCompiler#getCompiledClasses()} and are only written
+	 * to the output jar archive, if outputFile is not null.
+	 * Backend plugins are ignored in this mode.
+	 */
+	public boolean inMemory = false;
 	
 	//options taken from the CoreASM Settings panel
 	//termination options
@@ -2,6 +2,8 @@ package org.coreasm.compiler;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -15,6 +17,7 @@ import java.util.Map.Entry;
 import org.coreasm.compiler.codefragment.CodeFragment;
 import org.coreasm.compiler.components.backend.CompilerFileWriter;
 import org.coreasm.compiler.components.backend.CompilerPacker;
+import org.coreasm.compiler.components.backend.InMemoryCompiler;
 import org.coreasm.compiler.components.backend.JavaCompilerWrapper;
 import org.coreasm.compiler.components.backend.KernelBackend;
 import org.coreasm.compiler.components.classlibrary.ClassLibrary;
@@ -88,6 +91,8 @@ public class CoreASMCompiler implements CompilerEngine {
 	
 	private Map<String, String> globalMakros;
 	
+	private InMemoryCompiler compiledClasses;
+	
 	/**
 	 * Constructs a new CoreASMCompiler instance with the given options
 	 * @param options The options for the compilation process
@@ -159,6 +164,8 @@ public class CoreASMCompiler implements CompilerEngine {
 	 * @throws CompilerException If an error occured during the compilation process
 	 */
 	public void compile() throws CompilerException{
+		//classes of a previous run must not survive a failed compilation
+		compiledClasses = null;
 		try{	
 			getLogger().debug(CoreASMCompiler.class, "starting compiler");
 			
@@ -199,7 +206,7 @@ public class CoreASMCompiler implements CompilerEngine {
 		}
 		finally{
 			lastTime = System.nanoTime();
-			if(!options.keepTempFiles){
+			if(!options.keepTempFiles && !options.inMemory){
 				purgeTempDir();
 			}
 			System.out.println("end of compiler run.");
@@ -233,6 +240,15 @@ public class CoreASMCompiler implements CompilerEngine {
 		return this.classLibrary;
 	}
 	
+	/**
+	 * Provides the classes compiled in memory.
+	 * @return The in memory compiler holding the compiled classes or null, if
+	 * the last compilation did not run in memory or failed
+	 */
+	public InMemoryCompiler getCompiledClasses(){
+		return this.compiledClasses;
+	}
+	
 	private void purgeTempDir(){
 		getLogger().debug(CoreASMCompiler.class, "cleaning up temp directory");
 		
@@ -369,10 +385,46 @@ public class CoreASMCompiler implements CompilerEngine {
 				//do nothing, unfortunately we have no value stored at the node
 			}
 			
+			//second, check if the type analysis allows computing the operator on primitives
+			PrimitiveExpressionCompiler primitive = new PrimitiveExpressionCompiler(this);
+			if(primitive.isPrimitiveTree(node)){
+				getLogger().debug(CoreASMCompiler.class, "compiling operator node into primitive code");
+				return primitive.compile(node);
+			}
+			
 			CodeFragment result = new CodeFragment("");
 			result.appendFragment(compile(node.getAbstractChildNodes().get(0), CodeType.R));
 			result.appendFragment(compile(node.getAbstractChildNodes().get(1), CodeType.R));
+			result.appendFragment(compileOperator(node));
+			
+			return result;
+		}	
+		else if(node.getGrammarClass().equals("UnaryOperator")){
+			PrimitiveExpressionCompiler primitive = new PrimitiveExpressionCompiler(this);
+			if(primitive.isPrimitiveTree(node)){
+				getLogger().debug(CoreASMCompiler.class, "compiling operator node into primitive code");
+				return primitive.compile(node);
+			}
 			
+			CodeFragment result = new CodeFragment("");
+			result.appendFragment(compile(node.getAbstractChildNodes().get(0), CodeType.R));
+			result.appendFragment(compileOperator(node));
+			
+			return result;
+		}
+		return null;
+	}
+	
+	/**
+	 * Generates the code applying an operator to the values of its operands,
+	 * which have to be on top of the evaluation stack.
+	 * @param node The operator node
+	 * @return The code popping the operands and pushing the result
+	 * @throws CompilerException If an operator plugin cannot compile the operator
+	 */
+	CodeFragment compileOperator(ASTNode node) throws CompilerException{
+		CodeFragment result = new CodeFragment("");
+		if(node.getGrammarClass().equals("BinaryOperator")){
 			result.appendLine("@decl(CompilerRuntime.Element, rhs)=(CompilerRuntime.Element)evalStack.pop();\n");
 			result.appendLine("@decl(CompilerRuntime.Element, lhs)=(CompilerRuntime.Element)evalStack.pop();\n");
 			
@@ -381,15 +433,8 @@ public class CoreASMCompiler implements CompilerEngine {
 				String s = ((CompilerOperatorPlugin)tmp.get(i)).compileBinaryOperator(node.getToken());
 				result.appendLine(s);
 			}
-			
-			result.appendLine("\nevalStack.push(CompilerRuntime.Element.UNDEF);\n");
-			
-			return result;
-		}	
-		else if(node.getGrammarClass().equals("UnaryOperator")){
-			CodeFragment result = new CodeFragment("");
-			result.appendFragment(compile(node.getAbstractChildNodes().get(0), CodeType.R));
-			
+		}
+		else{
 			result.appendLine("@decl(CompilerRuntime.Element, lhs)=(CompilerRuntime.Element)evalStack.pop();\n");
 			
 			List<CompilerPlugin> tmp = unaryOperators.get(node.getToken());
@@ -397,12 +442,11 @@ public class CoreASMCompiler implements CompilerEngine {
 				String s = ((CompilerOperatorPlugin)tmp.get(i)).compileUnaryOperator(node.getToken());
 				result.appendLine(s);
 			}
-			
-			result.appendLine("\nevalStack.push(CompilerRuntime.Element.UNDEF);\n");
-			
-			return result;
 		}
-		return null;
+		
+		result.appendLine("\nevalStack.push(CompilerRuntime.Element.UNDEF);\n");
+		
+		return result;
 	}
 
 	@Override
@@ -609,7 +653,10 @@ public class CoreASMCompiler implements CompilerEngine {
 		lastTime = System.nanoTime();
 		getLogger().debug(CoreASMCompiler.class, "creating temporary directory");
 		File tempDir = options.tempDirectory;
-		if(tempDir.exists()){
+		if(options.inMemory){
+			getLogger().debug(CoreASMCompiler.class, "compiling in memory, no temporary directory needed");
+		}
+		else if(tempDir.exists()){
 			if(tempDir.list() == null) System.out.println("this shouldn't happen");
 			getLogger().warn(CoreASMCompiler.class, "temp directory already exists");
 			if(tempDir.list().length > 0 && !options.removeExistingFiles){
@@ -646,6 +693,11 @@ public class CoreASMCompiler implements CompilerEngine {
 	}
 	
 	private void compileSources() throws CompilerException{
+		if(options.inMemory){
+			compileSourcesInMemory();
+			return;
+		}
+		
 		getLogger().debug(CoreASMCompiler.class, "code generation complete, dumping source files to " + options.tempDirectory);
 		
 		lastTime = System.nanoTime();
@@ -713,6 +765,53 @@ public class CoreASMCompiler implements CompilerEngine {
 		}
 	}
 	
+	private void compileSourcesInMemory() throws CompilerException{
+		getLogger().debug(CoreASMCompiler.class, "code generation complete, compiling sources in memory");
+		
+		compiledClasses = null;
+		
+		lastTime = System.nanoTime();
+		List<LibraryEntry> entries = classLibrary.buildLibrary();
+		cTime = System.nanoTime();
+		addTiming("Class library");
+		
+		if(options.noCompile){
+			getLogger().debug(CoreASMCompiler.class, "Compilation is disabled - stopping compiler");
+			return;
+		}
+		
+		getLogger().debug(CoreASMCompiler.class, "starting java compiler");
+		InMemoryCompiler result = new InMemoryCompiler();
+		result.compile(entries, this);
+		getLogger().debug(CoreASMCompiler.class, "java compilation successfull");
+		
+		if(options.outputFile != null){
+			getLogger().debug(CoreASMCompiler.class, "packing jar archive");
+			
+			lastTime = System.nanoTime();
+			try{
+				FileOutputStream out = new FileOutputStream(options.outputFile);
+				try{
+					result.packJar(out);
+				}
+				finally{
+					out.close();
+				}
+			}
+			catch(IOException e){
+				addError("could not write jar archive: " + e.getMessage());
+				throw new CompilerException(e);
+			}
+			cTime = System.nanoTime();
+			addTiming("Jar packing");
+			
+			getLogger().debug(CoreASMCompiler.class, "packing successfull");
+		}
+		
+		compiledClasses = result;
+		getLogger().debug(CoreASMCompiler.class, "compilation operation successfull");
+	}
+	
 	private void buildMain() throws CompilerException{
 		try {
 			classLibrary.addEntry(mainFile);
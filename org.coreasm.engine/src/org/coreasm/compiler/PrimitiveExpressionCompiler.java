@@ -0,0 +1,171 @@
+package org.coreasm.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.coreasm.compiler.codefragment.CodeFragment;
+import org.coreasm.compiler.components.preprocessor.Information;
+import org.coreasm.compiler.exception.CompilerException;
+import org.coreasm.engine.interpreter.ASTNode;
+
+/**
+ * Compiles trees of operators marked as primitive by the type analysis of the
+ * preprocessor (see the "primitive" information of a node) into code working on
+ * java primitives.
+ * <p>
+ * The operands of the tree which are not primitive themselves (the leaves) are
+ * evaluated first, in the usual order. If all of them are numbers, the tree is
+ * computed with java primitives and only its result is pushed onto the evaluation
+ * stack. Otherwise, the operators are applied to the values of the leaves as usual.
+ */
+class PrimitiveExpressionCompiler {
+	private CoreASMCompiler engine;
+	private List<ASTNode> leaves;
+	private List<Information> leafOperators;
+	private int next;
+	private int values;
+
+	/**
+	 * Creates a new compiler for primitive trees
+	 * @param engine The compiler engine
+	 */
+	PrimitiveExpressionCompiler(CoreASMCompiler engine){
+		this.engine = engine;
+	}
+
+	/**
+	 * Checks, whether an operator node should be compiled into primitive code,
+	 * which is the case if it is primitive and has at least one primitive operand.
+	 * @param node An operator node
+	 * @return true, if the node should be compiled by this compiler
+	 */
+	boolean isPrimitiveTree(ASTNode node){
+		if(getInformation(node) == null) return false;
+		for(ASTNode c : node.getAbstractChildNodes()){
+			if(isPrimitiveOperand(c)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Compiles a primitive tree
+	 * @param node The root of the tree
+	 * @return The code evaluating the tree and pushing the result
+	 * @throws CompilerException If an operand could not be compiled
+	 */
+	CodeFragment compile(ASTNode node) throws CompilerException{
+		leaves = new ArrayList<ASTNode>();
+		leafOperators = new ArrayList<Information>();
+		collectLeaves(node, getInformation(node));
+
+		CodeFragment result = new CodeFragment("");
+		for(int i = 0; i < leaves.size(); i++){
+			result.appendFragment(engine.compile(leaves.get(i), CodeType.R));
+			result.appendLine("@decl(CompilerRuntime.Element, leaf" + i + ")=(CompilerRuntime.Element)evalStack.pop();\n");
+		}
+
+		if(!leaves.isEmpty()){
+			String guard = "";
+			for(int i = 0; i < leaves.size(); i++){
+				if(i > 0) guard += " && ";
+				guard += value(leafOperators.get(i), "guard").replace("#0", "@leaf" + i + "@");
+			}
+			result.appendLine("if(" + guard + "){\n");
+		}
+
+		next = 0;
+		values = 0;
+		Information info = getInformation(node);
+		String value = compilePrimitive(node, result);
+		result.appendLine("evalStack.push(" + value(info, "box").replace("#0", value) + ");\n");
+
+		if(!leaves.isEmpty()){
+			result.appendLine("}\nelse{\n");
+			next = 0;
+			compileGeneric(node, result);
+			result.appendLine("}\n");
+		}
+
+		return result;
+	}
+
+	private void collectLeaves(ASTNode node, Information info){
+		for(ASTNode c : node.getAbstractChildNodes()){
+			if(isPrimitiveOperand(c)){
+				ASTNode operand = unwrap(c);
+				collectLeaves(operand, getInformation(operand));
+			}
+			else{
+				leaves.add(c);
+				leafOperators.add(info);
+			}
+		}
+	}
+
+	//declares the primitive values of the tree and returns the java expression for its root
+	private String compilePrimitive(ASTNode node, CodeFragment result){
+		Information info = getInformation(node);
+		List<String> operands = new ArrayList<String>();
+		for(ASTNode c : node.getAbstractChildNodes()){
+			if(isPrimitiveOperand(c)){
+				operands.add(compilePrimitive(unwrap(c), result));
+			}
+			else{
+				operands.add(value(info, "unbox").replace("#0", "@leaf" + next + "@"));
+				next++;
+			}
+		}
+		String operation = value(info, "operation");
+		if(operands.isEmpty()) return operation;
+
+		for(int i = operands.size() - 1; i >= 0; i--){
+			operation = operation.replace("#" + i, operands.get(i));
+		}
+		String name = "value" + values;
+		values++;
+		result.appendLine("@decl(" + value(info, "javaType") + ", " + name + ")=" + operation + ";\n");
+		return "@" + name + "@";
+	}
+
+	//applies the operators to the values of the leaves
+	private void compileGeneric(ASTNode node, CodeFragment result) throws CompilerException{
+		List<ASTNode> children = node.getAbstractChildNodes();
+		if(children.isEmpty()){
+			result.appendFragment(engine.compile(node, CodeType.R));
+			return;
+		}
+		for(ASTNode c : children){
+			if(isPrimitiveOperand(c)){
+				compileGeneric(unwrap(c), result);
+			}
+			else{
+				result.appendLine("evalStack.push(@leaf" + next + "@);\n");
+				next++;
+			}
+		}
+		result.appendFragment(engine.compileOperator(node));
+	}
+
+	private boolean isPrimitiveOperand(ASTNode node){
+		Information info = getInformation(unwrap(node));
+		return info != null && "NUMBER".equals(value(info, "type"));
+	}
+
+	//skips enclosing brackets
+	private ASTNode unwrap(ASTNode node){
+		while(node.getGrammarClass().equals(ASTNode.EXPRESSION_CLASS) && node.getGrammarRule().equals("")
+				&& node.getAbstractChildNodes().size() == 1){
+			node = node.getAbstractChildNodes().get(0);
+		}
+		return node;
+	}
+
+	private Information getInformation(ASTNode node){
+		return engine.getPreprocessor().getNodeInformation(node).get("primitive");
+	}
+
+	private String value(Information info, String path){
+		Information i = info.getInformation(path);
+		return (i == null) ? null : (String) i.getValue();
+	}
+}
@@ -0,0 +1,239 @@
+package org.coreasm.compiler.components.backend;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.coreasm.compiler.CompilerEngine;
+import org.coreasm.compiler.components.classlibrary.LibraryEntry;
+import org.coreasm.compiler.exception.CompilerException;
+
+/**
+ * Compiles the class library without touching the hard disk.
+ * The sources of the library entries are handed to the java compiler as strings and
+ * the generated class files are kept in memory. The compiled classes can then
+ * be loaded by a fresh class loader or packed into an executable jar archive.
+ * Error messages generated by the Java compiler are reported like in {@link JavaCompilerWrapper}.
+ */
+public class InMemoryCompiler {
+	private Map<String, ClassFile> classes;
+
+	/**
+	 * Creates a new in memory compiler without compiled classes
+	 */
+	public InMemoryCompiler(){
+		classes = new LinkedHashMap<String, ClassFile>();
+	}
+
+	/**
+	 * Compiles the given library entries using the system java compiler.
+	 * The time needed to generate the sources and to compile them is added to
+	 * the timings of the engine.
+	 * @param entries A list of library entries
+	 * @param engine The compiler engine supervising the compilation process
+	 * @throws CompilerException If an error occured during the compilation process
+	 */
+	public void compile(List<LibraryEntry> entries, CompilerEngine engine) throws CompilerException{
+		JavaCompiler jc = ToolProvider.getSystemJavaCompiler();
+		if(jc == null){
+			engine.addError("java compiler not found");
+
+			engine.getLogger().error(InMemoryCompiler.class, "javac.exe not found");
+			throw new CompilerException("java compiler not found - is there a jdk installed?");
+		}
+
+		long start = System.nanoTime();
+		List<JavaFileObject> units = new ArrayList<JavaFileObject>();
+		//opening an entry may add further entries to the list
+		for(int i = 0; i < entries.size(); i++){
+			LibraryEntry current = entries.get(i);
+			String entryName = engine.getPath().getEntryName(current);
+			StringBuilder content = new StringBuilder();
+			try{
+				current.open(entryName);
+				String s = "";
+				while((s = current.readLine()) != null){
+					content.append(s).append("\n");
+				}
+				current.close();
+			}
+			catch(Exception e){
+				String msg = "error reading entry '" + entryName + "': '" + e.getMessage() + "'";
+				engine.addError(msg);
+				throw new CompilerException(msg);
+			}
+			units.add(new SourceFile(entryName, content.toString()));
+		}
+		engine.addTiming("Source generation", System.nanoTime() - start);
+
+		start = System.nanoTime();
+		//create a diagnostics object to collect errors
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		//set up a file manager keeping the class files in memory
+		StandardJavaFileManager standardManager = jc.getStandardFileManager(null, null, null);
+		ClassFileManager fileManager = new ClassFileManager(standardManager);
+		CompilationTask task = jc.getTask(null, fileManager, diagnostics, new ArrayList<String>(), null, units);
+
+		task.call();
+
+		boolean hasError = false;
+
+		for(Diagnostic<?> error : diagnostics.getDiagnostics()){
+			if(error.getKind() == Diagnostic.Kind.ERROR){
+				engine.addError("javac.exe: " + error.toString());
+				hasError = true;
+			}
+			else if(error.getKind() == Diagnostic.Kind.WARNING){
+				engine.addWarning("javac.exe: " + error.getMessage(null));
+			}
+		}
+
+		try {
+			fileManager.close();
+		} catch (IOException e) {
+			throw new CompilerException("could not close file manager");
+		}
+		engine.addTiming("Javac (in memory)", System.nanoTime() - start);
+
+		if(hasError) throw new CompilerException("compilation failed");
+	}
+
+	/**
+	 * Provides the compiled classes
+	 * @return A map from binary class names to class files
+	 */
+	public Map<String, byte[]> getClasses(){
+		Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+		for(Entry<String, ClassFile> e : classes.entrySet()){
+			result.put(e.getKey(), e.getValue().getBytes());
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	/**
+	 * Creates a fresh class loader for the compiled classes.
+	 * The compiled classes are defined by the new class loader even if the parent
+	 * knows classes of the same name, as the engine itself contains the sources
+	 * of the compiler runtime. All other classes are loaded by the parent.
+	 * @param parent The parent class loader
+	 * @return A class loader defining the compiled classes
+	 */
+	public ClassLoader createClassLoader(ClassLoader parent){
+		final Map<String, byte[]> compiled = getClasses();
+		return new ClassLoader(parent){
+			@Override
+			protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+				if(!compiled.containsKey(name)) return super.loadClass(name, resolve);
+				Class<?> c = findLoadedClass(name);
+				if(c == null) c = findClass(name);
+				if(resolve) resolveClass(c);
+				return c;
+			}
+
+			@Override
+			protected Class<?> findClass(String name) throws ClassNotFoundException {
+				byte[] b = compiled.get(name);
+				if(b == null) throw new ClassNotFoundException(name);
+				return defineClass(name, b, 0, b.length);
+			}
+		};
+	}
+
+	/**
+	 * Packs the compiled classes into an executable jar archive,
+	 * assuming the class Main is the main entry point of the program
+	 * @param out The stream the archive is written to
+	 * @throws IOException If the archive could not be written
+	 */
+	public void packJar(OutputStream out) throws IOException{
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "Main");
+		JarOutputStream target = new JarOutputStream(out, manifest);
+		for(Entry<String, ClassFile> e : classes.entrySet()){
+			target.putNextEntry(new JarEntry(e.getKey().replace(".", "/") + ".class"));
+			target.write(e.getValue().getBytes());
+			target.closeEntry();
+		}
+		target.close();
+	}
+
+	/**
+	 * The source of a library entry
+	 */
+	private static class SourceFile extends SimpleJavaFileObject{
+		private String content;
+
+		public SourceFile(String className, String content){
+			super(URI.create("string:///" + className.replace(".", "/") + Kind.SOURCE.extension), Kind.SOURCE);
+			this.content = content;
+		}
+
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors){
+			return content;
+		}
+	}
+
+	/**
+	 * A class file generated by the java compiler
+	 */
+	private static class ClassFile extends SimpleJavaFileObject{
+		private ByteArrayOutputStream bytes;
+
+		public ClassFile(String className){
+			super(URI.create("bytes:///" + className.replace(".", "/") + Kind.CLASS.extension), Kind.CLASS);
+			this.bytes = new ByteArrayOutputStream();
+		}
+
+		@Override
+		public OutputStream openOutputStream(){
+			return bytes;
+		}
+
+		public byte[] getBytes(){
+			return bytes.toByteArray();
+		}
+	}
+
+	/**
+	 * Hands class files to the compiler and collects them.
+	 * Everything else is looked up by the standard file manager.
+	 */
+	private class ClassFileManager extends ForwardingJavaFileManager<StandardJavaFileManager>{
+		public ClassFileManager(StandardJavaFileManager fileManager){
+			super(fileManager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind, FileObject sibling) throws IOException{
+			if(kind != Kind.CLASS) return super.getJavaFileForOutput(location, className, kind, sibling);
+			ClassFile file = new ClassFile(className);
+			classes.put(className, file);
+			return file;
+		}
+	}
+}
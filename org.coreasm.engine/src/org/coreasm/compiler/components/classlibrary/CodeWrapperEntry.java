@@ -32,7 +32,7 @@ public class CodeWrapperEntry extends MemoryInclude {
 	 * Builds a new code wrapper.
 	 * The code wrapper is inserted into the class library and a new {@link CodeFragment} is returned.
 	 * The code wrapper will share the environment of the calling code and will therefore modify
-	 * the same evalStack
+	 * the same evalStack and local variables
 	 * @param body The body of the code wrapper
 	 * @param responsible A string denoting the class responsible for the creation of this wrapper for debugging
 	 * @param engine The compiler engine supervising the compilation process
@@ -50,7 +50,7 @@ public class CodeWrapperEntry extends MemoryInclude {
 		
 		String name = engine.getPath().pluginStaticPkg() + ".Kernel." + repl.name;
 		CodeFragment coderes = new CodeFragment("");
-		coderes.appendLine("@decl(" + name + ", tmp) = new " + name + "(evalStack, localStack, ruleparams, getUpdateResponsible());\n");
+		coderes.appendLine("@decl(" + name + ", tmp) = new " + name + "(evalStack, localStack, localFrame, ruleparams, getUpdateResponsible());\n");
 		coderes.appendLine("@tmp@.eval();\n");
 		
 		return coderes;
@@ -64,11 +64,13 @@ public class CodeWrapperEntry extends MemoryInclude {
 		result += "\t String responsible =\"" + responsible + "\";\n";
 		result += "private " + runtimePkg() + ".EvalStack evalStack;\n";
 		result += "private " + runtimePkg() + ".LocalStack localStack;\n";
+		result += "private final int localFrame;\n";
 		result += "private java.util.Map<String, " + runtimePkg() + ".RuleParam> ruleparams;\n";
 		result += "private " + runtimePkg() + ".Rule updateResp;\n";
-		result += "public " + name + "(" + runtimePkg() + ".EvalStack evalStack, " + runtimePkg() + ".LocalStack localStack, java.util.Map<String, " + runtimePkg() + ".RuleParam> ruleparams, " + runtimePkg() + ".Rule updateResp){\n";
+		result += "public " + name + "(" + runtimePkg() + ".EvalStack evalStack, " + runtimePkg() + ".LocalStack localStack, int localFrame, java.util.Map<String, " + runtimePkg() + ".RuleParam> ruleparams, " + runtimePkg() + ".Rule updateResp){\n";
 		result += "this.evalStack = evalStack;\n";
 		result += "this.localStack = localStack;\n";
+		result += "this.localFrame = localFrame;\n";
 		result += "this.ruleparams = ruleparams;\n";
 		result += "this.updateResp = updateResp;\n";
 		result += "}\n";
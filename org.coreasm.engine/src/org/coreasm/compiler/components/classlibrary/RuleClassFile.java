@@ -13,6 +13,8 @@ import org.coreasm.compiler.paths.CompilerPathConfig;
  * LibraryEntry describing a rule.
  * A rule consists of a name, a (possibly empty) list of arguments
  * and a piece of code representing its body.
+ * The body reserves slots for its local variables on the local stack
+ * when the rule is called.
  * Rules always have the {@link LibraryEntryType} Rule
  * @author Markus Brenner
  * 
@@ -21,6 +23,7 @@ public class RuleClassFile extends MemoryInclude {
 	private String ruleName;
 	private List<String> arguments;
 	private CodeFragment body;
+	private int localCount;
 	private CompilerEngine engine;
 
 	/**
@@ -28,13 +31,15 @@ public class RuleClassFile extends MemoryInclude {
 	 * @param ruleName The name of the rule
 	 * @param arguments The arguments of the rule, may not be null
 	 * @param body The code of the rule
+	 * @param localCount The number of local variable slots of the body
 	 * @param engine The compiler engine supervising the compilation process
 	 */
-	public RuleClassFile(String ruleName, List<String> arguments, CodeFragment body, CompilerEngine engine){
+	public RuleClassFile(String ruleName, List<String> arguments, CodeFragment body, int localCount, CompilerEngine engine){
 		super(engine, ruleName, "Kernel", LibraryEntryType.RULE);
 		this.ruleName = ruleName;
 		this.arguments = arguments;
 		this.body = body;
+		this.localCount = localCount;
 		this.engine = engine;
 	}
 
@@ -97,7 +102,7 @@ public class RuleClassFile extends MemoryInclude {
 
 		part2 = "(){super();}\n\t"
 				+ "\tpublic " + engine.getPath().runtimePkg() + ".RuleResult call() throws Exception{\n"
-				+ "\t\tlocalStack.pushLayer();\n";
+				+ "\t\tfinal int localFrame = localStack.pushFrame(" + localCount + ");\n";
 
 		part3 = "//end of generated content\n\t\t\n"
 				+ "\t\tlocalStack.popLayer();\n"
@@ -29,6 +29,7 @@ import org.coreasm.compiler.CompilerOptions;
  * 		<tr><td>-removeExistingFiles [true/false]</td><td>Instructs the compiler to remove existing files in the temporary directory</td></tr>
  * 		<tr><td>-keepFiles [true/false]</td><td>Instructs the compiler to keep temporary files</td></tr>
  * 		<tr><td>-noCompile [true/false]</td><td>Instructs the compiler not to use the java compiler</td></tr>
+ * 		<tr><td>-inMemory [true/false]</td><td>Instructs the compiler to compile the generated classes in memory</td></tr>
  *	</tbody>
  * </table>
  * All other parameters will produce a CommandLineException.
@@ -123,6 +124,10 @@ public class CommandLineParser {
 					options.keepTempFiles = Boolean.parseBoolean(args[i + 1]);
 					i++;
 				}
+				else if(args[i].equals("-inMemory")){
+					options.inMemory = Boolean.parseBoolean(args[i + 1]);
+					i++;
+				}
 				else if(args[i].equals("-enginePath")){
 					options.enginePath = new File(args[i + 1]);
 					i++;
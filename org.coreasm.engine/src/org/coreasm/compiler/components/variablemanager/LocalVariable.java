@@ -0,0 +1,70 @@
+package org.coreasm.compiler.components.variablemanager;
+
+/**
+ * Represents a local variable of CoreASM code, e.g. a variable bound by a let
+ * or forall rule, in generated code.
+ * A local variable has a fixed slot in the frame of its rule or function on the local stack,
+ * so the generated code accesses it by index instead of looking up its name.
+ * The index is relative to the start of the frame, which is held by the variable localFrame
+ * of the generated code.
+ * Local variables are created by the {@link VarManager}.
+ */
+public class LocalVariable {
+	private String name;
+	private int slot;
+	
+	/**
+	 * Creates a new local variable with the given name and slot
+	 * @param name The name of the variable in CoreASM code
+	 * @param slot The index of the slot of the variable in its frame
+	 */
+	public LocalVariable(String name, int slot){
+		this.name = name;
+		this.slot = slot;
+	}
+	
+	/**
+	 * Produces a string reading the value of this variable from the local stack.
+	 * @return A java expression of type Object, omitting the final ;
+	 */
+	public String get(){
+		return "localStack.get(localFrame + " + slot + ")";
+	}
+	
+	/**
+	 * Produces a string setting this variable to the given value.
+	 * @param value A string representing the value
+	 * @return A string setting the variable, including the final ;
+	 */
+	public String put(String value){
+		return "localStack.put(localFrame + " + slot + ", \"" + name + "\", " + value + ");\n";
+	}
+	
+	/**
+	 * Produces a string removing this variable from the local environment,
+	 * once its scope has been left.
+	 * @return A string removing the variable, including the final ;
+	 */
+	public String remove(){
+		return "localStack.remove(localFrame + " + slot + ");\n";
+	}
+	
+	/**
+	 * @return The name of the variable in CoreASM code
+	 */
+	public String getName(){
+		return name;
+	}
+	
+	/**
+	 * @return The index of the slot of the variable in its frame
+	 */
+	public int getSlot(){
+		return slot;
+	}
+	
+	@Override
+	public String toString(){
+		return this.name;
+	}
+}
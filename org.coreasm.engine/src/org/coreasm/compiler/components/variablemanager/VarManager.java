@@ -1,8 +1,10 @@
 package org.coreasm.compiler.components.variablemanager;
 
+import java.util.ArrayList;
 import java.util.EmptyStackException;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Stack;
 
@@ -17,6 +19,10 @@ import org.coreasm.compiler.exception.EmptyContextStackException;
  * with the same name and type in the current context.
  * Direct use is not recommended, {@link CodeFragment} encapsulates
  * variable creation and management for easier use.
+ * <p>
+ * The variable manager also assigns slots to the local variables
+ * of the CoreASM code of a rule or function body while it is compiled,
+ * see {@link #startLocals()} and {@link #addLocal(String)}.
  * @author Markus Brenner
  *
  */
@@ -26,6 +32,9 @@ public class VarManager {
 	
 	private int contextCount;
 	
+	//the local variables of the body that is being compiled, null outside of a body
+	private Locals locals;
+	
 	/**
 	 * Creates a new variable manager and initializes its data structures.
 	 */
@@ -86,4 +95,110 @@ public class VarManager {
 		variables.put(type, variables.get(type) + 1);
 		return new CompilerVariable(type, varname);
 	}
+	
+	/**
+	 * Signals the variable manager that the body of a rule or function is compiled.
+	 * Local variables added until the matching call of {@link #endLocals()}
+	 * get slots in the frame of this body.
+	 * Bodies may be nested, the local variables of the outer body are not visible
+	 * in the inner body.
+	 */
+	public void startLocals(){
+		locals = new Locals(locals);
+	}
+	
+	/**
+	 * Signals the variable manager that the compilation of the current body has ended.
+	 * @return The number of slots the frame of the body needs
+	 * @throws IllegalStateException If no body is compiled
+	 */
+	public int endLocals(){
+		if(locals == null) throw new IllegalStateException("no body is compiled");
+		int result = locals.maxSlots;
+		locals = locals.parent;
+		return result;
+	}
+	
+	/**
+	 * Opens a new scope for local variables, e.g. for the variables of a let rule.
+	 * Local variables of the new scope hide those of the enclosing scopes with the same names.
+	 */
+	public void pushLocalScope(){
+		if(locals == null) return;
+		locals.scopes.push(locals.names.size());
+	}
+	
+	/**
+	 * Closes the current scope for local variables.
+	 * The slots of its variables can be reused by following scopes.
+	 * @throws EmptyStackException If no scope is open
+	 */
+	public void popLocalScope(){
+		if(locals == null) return;
+		int start = locals.scopes.pop();
+		while(locals.names.size() > start){
+			int last = locals.names.size() - 1;
+			locals.names.remove(last);
+			if(locals.slots.remove(last) >= 0) locals.usedSlots--;
+		}
+	}
+	
+	/**
+	 * Adds a local variable with the given name to the current scope.
+	 * @param name The name of the variable in CoreASM code
+	 * @return The variable with the next free slot of the current body
+	 * @throws IllegalStateException If no body is compiled
+	 */
+	public LocalVariable addLocal(String name){
+		if(locals == null) throw new IllegalStateException("local variable '" + name + "' outside of a rule or function body");
+		int slot = locals.usedSlots;
+		locals.usedSlots++;
+		locals.maxSlots = Math.max(locals.maxSlots, locals.usedSlots);
+		locals.names.add(name);
+		locals.slots.add(slot);
+		return new LocalVariable(name, slot);
+	}
+	
+	/**
+	 * Adds a local variable to the current scope which is bound by name at run time,
+	 * e.g. the variable of an import rule. It hides the variables of enclosing scopes
+	 * with the same name, but has no slot.
+	 * @param name The name of the variable in CoreASM code
+	 */
+	public void addDynamicLocal(String name){
+		if(locals == null) return;
+		locals.names.add(name);
+		locals.slots.add(-1);
+	}
+	
+	/**
+	 * Looks up the innermost local variable with the given name.
+	 * @param name The name of the variable in CoreASM code
+	 * @return The variable, or null if the name is not bound to a slot
+	 * in the current body and has to be looked up at run time
+	 */
+	public LocalVariable getLocal(String name){
+		if(locals == null) return null;
+		int index = locals.names.lastIndexOf(name);
+		if(index < 0 || locals.slots.get(index) < 0) return null;
+		return new LocalVariable(name, locals.slots.get(index));
+	}
+	
+	/*
+	 * The local variables of a body, innermost last.
+	 */
+	private static class Locals {
+		final Locals parent;
+		final List<String> names = new ArrayList<String>();
+		//-1 for variables without a slot
+		final List<Integer> slots = new ArrayList<Integer>();
+		//number of variables at the start of each open scope
+		final Stack<Integer> scopes = new Stack<Integer>();
+		int usedSlots = 0;
+		int maxSlots = 0;
+		
+		Locals(Locals parent){
+			this.parent = parent;
+		}
+	}
 }
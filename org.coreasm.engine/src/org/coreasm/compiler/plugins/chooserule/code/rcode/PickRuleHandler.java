@@ -3,6 +3,7 @@ package org.coreasm.compiler.plugins.chooserule.code.rcode;
 import org.coreasm.compiler.CodeType;
 import org.coreasm.compiler.CompilerEngine;
 import org.coreasm.compiler.codefragment.CodeFragment;
+import org.coreasm.compiler.components.variablemanager.VarManager;
 import org.coreasm.compiler.exception.CompilerException;
 import org.coreasm.compiler.interfaces.CompilerCodeHandler;
 import org.coreasm.engine.interpreter.ASTNode;
@@ -26,7 +27,17 @@ public class PickRuleHandler implements CompilerCodeHandler {
 		result.appendFragment(source);
 		result.appendLine("@decl(java.util.ArrayList<@RuntimePkg@.Element>, src) = new java.util.ArrayList<@RuntimePkg@.Element>(((@RuntimePkg@.Enumerable)evalStack.pop()).enumerate());\n");
 		if(node.getAbstractChildNodes().size() == 3){
-			CodeFragment test = engine.compile(node.getAbstractChildNodes().get(2), CodeType.R);
+			//the picked element is bound by name, so that it can be found in the condition
+			VarManager localVars = engine.getVarManager();
+			CodeFragment test = null;
+			localVars.pushLocalScope();
+			try{
+				localVars.addDynamicLocal(node.getAbstractChildNodes().get(0).getToken());
+				test = engine.compile(node.getAbstractChildNodes().get(2), CodeType.R);
+			}
+			finally{
+				localVars.popLocalScope();
+			}
 			result.appendLine("for(@decl(int,i)=@src@.size() - 1; @i@ >= 0; @i@--){\n");
 			result.appendLine("localStack.pushLayer();\n");
 			result.appendLine("localStack.put(@loc@, @src@.get(@i@));\n");
@@ -1,11 +1,15 @@
 package org.coreasm.compiler.plugins.chooserule.code.ucode;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.coreasm.compiler.CodeType;
 import org.coreasm.compiler.CompilerEngine;
 import org.coreasm.compiler.codefragment.CodeFragment;
+import org.coreasm.compiler.components.variablemanager.LocalVariable;
+import org.coreasm.compiler.components.variablemanager.VarManager;
 import org.coreasm.compiler.exception.CompilerException;
 import org.coreasm.compiler.interfaces.CompilerCodeHandler;
 import org.coreasm.engine.interpreter.ASTNode;
@@ -43,88 +47,96 @@ public class ChooseRuleHandler implements CompilerCodeHandler {
 			}
 			
 			//note: each of these two forks ends with a state, in which:
-			//1. a layer is opened on the localStack
-			//2. a selection has been choosen and was pushed to the localStack
-			//3. @selected@ contains information, whether a selection could be made
-			if(condition == null){
-				//remember if choose selected something successfully.
-				//default is true, as selecting only fails if an enumerable is empty
-				result.appendLine("@decl(boolean, selected) = true;\n");
-				result.appendLine("@decl(java.util.ArrayList<@RuntimePkg@.Element>, clist) = null;\n");
-				result.appendLine("localStack.pushLayer();\n");
-				cnt = 0;
-				for(Entry<String, ASTNode> mapping : vars.entrySet()){
-					result.appendLine("@clist@ = @srclist@.get(" + cnt + ");\n");
-					result.appendLine("if(@clist@.size() <= 0){\n");
-					result.appendLine("@selected@ = false;\n");
-					result.appendLine("localStack.put(\"" + mapping.getKey() + "\", @RuntimePkg@.Element.UNDEF);\n");
-					result.appendLine("}\n");
-					result.appendLine("else{\n");
-					result.appendLine("localStack.put(\"" + mapping.getKey() + "\", @clist@.get(@RuntimeProvider@.randInt(@clist@.size())));\n");
-					result.appendLine("}\n");
-					cnt++;
-				}
-			}
-			else{
-				//remember if choose selected something successfully
-				result.appendLine("@decl(boolean, selected) = true;\n");
-				//create a list of possible combinations
-				result.appendLine("@decl(java.util.ArrayList<java.util.ArrayList<@RuntimePkg@.Element>>, combinations) = new java.util.ArrayList<java.util.ArrayList<@RuntimePkg@.Element>>();\n");
-				//test all possible combinations NOTE: Highly inefficient
-				result.appendLine("localStack.pushLayer();\n");
-				//open for loops
-				cnt = 0;
-				for(Entry<String, ASTNode> mapping : vars.entrySet()){
-					result.appendLine("@decl(java.util.ArrayList<@RuntimePkg@.Element>, clist_" + cnt + ") = @srclist@.get(" + cnt + ");\n");
-					result.appendLine("if(@clist_" + cnt + "@.size() <= 0){\n");
-					result.appendLine("@selected@ = false;\n");
-					result.appendLine("}\n");
-					result.appendLine("for(@decl(int, i_" + cnt + ") = 0; @i_" + cnt + "@ < @clist_" + cnt + "@.size() && @selected@; @i_" + cnt + "@++){\n");
-					result.appendLine("localStack.put(\"" + mapping.getKey() + "\", @clist_" + cnt + "@.get(@i_" + cnt + "@));\n");
-					cnt++;
+			//1. a selection has been choosen and was put into the local variables
+			//2. @selected@ contains information, whether a selection could be made
+			VarManager localVars = engine.getVarManager();
+			List<LocalVariable> locals = new ArrayList<LocalVariable>();
+			localVars.pushLocalScope();
+			CodeFragment doCode = null;
+			try{
+				for(String name : vars.keySet()){
+					locals.add(localVars.addLocal(name));
 				}
-				//innermost of the for loops: all temporary values are on the local stack. now execute the guard
-				result.appendFragment(engine.compile(condition, CodeType.R));
-				result.appendLine("if(evalStack.pop().equals(@RuntimePkg@.BooleanElement.TRUE)){\n");
-				//add combination
-				cnt = 0;
-				result.appendLine("@decl(java.util.ArrayList<@RuntimePkg@.Element>, tmpcombination) = new java.util.ArrayList<@RuntimePkg@.Element>();\n");
-				for(int i = 0; i < vars.size(); i++){
-					result.appendLine("@tmpcombination@.add(@clist_" + cnt + "@.get(@i_" + cnt + "@));\n");
-					cnt++;
+				if(condition == null){
+					//remember if choose selected something successfully.
+					//default is true, as selecting only fails if an enumerable is empty
+					result.appendLine("@decl(boolean, selected) = true;\n");
+					result.appendLine("@decl(java.util.ArrayList<@RuntimePkg@.Element>, clist) = null;\n");
+					for(cnt = 0; cnt < locals.size(); cnt++){
+						result.appendLine("@clist@ = @srclist@.get(" + cnt + ");\n");
+						result.appendLine("if(@clist@.size() <= 0){\n");
+						result.appendLine("@selected@ = false;\n");
+						result.appendLine(locals.get(cnt).put("@RuntimePkg@.Element.UNDEF"));
+						result.appendLine("}\n");
+						result.appendLine("else{\n");
+						result.appendLine(locals.get(cnt).put("@clist@.get(@RuntimeProvider@.randInt(@clist@.size()))"));
+						result.appendLine("}\n");
+					}
 				}
-				result.appendLine("@combinations@.add(@tmpcombination@);\n");
-				result.appendLine("}\n");
-				
-				//close for loops; effectively doing nothing
-				for(int i = 0; i < vars.size(); i++){
+				else{
+					//remember if choose selected something successfully
+					result.appendLine("@decl(boolean, selected) = true;\n");
+					//create a list of possible combinations
+					result.appendLine("@decl(java.util.ArrayList<java.util.ArrayList<@RuntimePkg@.Element>>, combinations) = new java.util.ArrayList<java.util.ArrayList<@RuntimePkg@.Element>>();\n");
+					//test all possible combinations NOTE: Highly inefficient
+					//open for loops
+					for(cnt = 0; cnt < locals.size(); cnt++){
+						result.appendLine("@decl(java.util.ArrayList<@RuntimePkg@.Element>, clist_" + cnt + ") = @srclist@.get(" + cnt + ");\n");
+						result.appendLine("if(@clist_" + cnt + "@.size() <= 0){\n");
+						result.appendLine("@selected@ = false;\n");
+						result.appendLine("}\n");
+						result.appendLine("for(@decl(int, i_" + cnt + ") = 0; @i_" + cnt + "@ < @clist_" + cnt + "@.size() && @selected@; @i_" + cnt + "@++){\n");
+						result.appendLine(locals.get(cnt).put("@clist_" + cnt + "@.get(@i_" + cnt + "@)"));
+					}
+					//innermost of the for loops: all temporary values are on the local stack. now execute the guard
+					result.appendFragment(engine.compile(condition, CodeType.R));
+					result.appendLine("if(evalStack.pop().equals(@RuntimePkg@.BooleanElement.TRUE)){\n");
+					//add combination
+					cnt = 0;
+					result.appendLine("@decl(java.util.ArrayList<@RuntimePkg@.Element>, tmpcombination) = new java.util.ArrayList<@RuntimePkg@.Element>();\n");
+					for(int i = 0; i < vars.size(); i++){
+						result.appendLine("@tmpcombination@.add(@clist_" + cnt + "@.get(@i_" + cnt + "@));\n");
+						cnt++;
+					}
+					result.appendLine("@combinations@.add(@tmpcombination@);\n");
 					result.appendLine("}\n");
+					
+					//close for loops; effectively doing nothing
+					for(int i = 0; i < vars.size(); i++){
+						result.appendLine("}\n");
+					}
+					
+					//determine the final state; selected is false, if it is false or the combination list is empty
+					//if it is true, then put a random combination to the local state
+					result.appendLine("@selected@ = @selected@ && @combinations@.size() >= 1;\n");
+					result.appendLine("if(@selected@){\n");
+					//combinations exist, randomly choose one and put it to the localstack
+					result.appendLine("@decl(java.util.ArrayList<@RuntimePkg@.Element>, selectedcomb) = @combinations@.get(@RuntimeProvider@.randInt(@combinations@.size()));\n");
+					for(cnt = 0; cnt < locals.size(); cnt++){
+						result.appendLine(locals.get(cnt).put("@selectedcomb@.get(" + cnt + ")"));
+					}
+					result.appendLine("}\n");
+					//as the combination list might grow large, we explicitly clear it here to safe memory
+					result.appendLine("@combinations@ = null;\n");
 				}
-				
-				//determine the final state; selected is false, if it is false or the combination list is empty
-				//if it is true, then put a random combination to the local state
-				result.appendLine("@selected@ = @selected@ && @combinations@.size() >= 1;\n");
-				result.appendLine("if(@selected@){\n");
-				//combinations exist, randomly choose one and put it to the localstack
-				result.appendLine("@decl(java.util.ArrayList<@RuntimePkg@.Element>, selectedcomb) = @combinations@.get(@RuntimeProvider@.randInt(@combinations@.size()));\n");
-				cnt = 0;
-				for(Entry<String, ASTNode> mapping : vars.entrySet()){
-					result.appendLine("localStack.put(\"" + mapping.getKey() + "\", @selectedcomb@.get(" + cnt + "));\n");
-					cnt++;
-				}
-				result.appendLine("}\n");
-				//as the combination list might grow large, we explicitly clear it here to safe memory
-				result.appendLine("@combinations@ = null;\n");
+				doCode = engine.compile(doRule, CodeType.U);
+			}
+			finally{
+				localVars.popLocalScope();
 			}
 			result.appendLine("if(@selected@){\n");
 			//a selection was made; execute the code
-			result.appendFragment(engine.compile(doRule, CodeType.U));
-			//the result is now on the stack, clear up the localstack
-			result.appendLine("localStack.popLayer();\n");
+			result.appendFragment(doCode);
+			//the result is now on the stack, clear up the local variables
+			for(LocalVariable local : locals){
+				result.appendLine(local.remove());
+			}
 			result.appendLine("}\n");
 			result.appendLine("else{\n");
-			//close the scope on the localstack
-			result.appendLine("localStack.popLayer();\n");
+			//close the scope of the local variables
+			for(LocalVariable local : locals){
+				result.appendLine(local.remove());
+			}
 			if(ifnone == null){
 				//nothing happens
 				result.appendLine("evalStack.push(new @RuntimePkg@.UpdateList());\n");
@@ -3,6 +3,7 @@ package org.coreasm.compiler.plugins.extendrule.code.ucode;
 import org.coreasm.compiler.CodeType;
 import org.coreasm.compiler.CompilerEngine;
 import org.coreasm.compiler.codefragment.CodeFragment;
+import org.coreasm.compiler.components.variablemanager.VarManager;
 import org.coreasm.compiler.exception.CompilerException;
 import org.coreasm.compiler.interfaces.CompilerCodeHandler;
 import org.coreasm.engine.interpreter.ASTNode;
@@ -19,7 +20,17 @@ public class ExtendRuleHandler implements CompilerCodeHandler {
 			throws CompilerException {
 		try {
 			CodeFragment loc = engine.compile(node.getAbstractChildNodes().get(0), CodeType.L);
-			CodeFragment upd = engine.compile(node.getAbstractChildNodes().get(2), CodeType.U);
+			//the new element is bound by name, so that it can be found in the rule
+			VarManager localVars = engine.getVarManager();
+			CodeFragment upd = null;
+			localVars.pushLocalScope();
+			try{
+				localVars.addDynamicLocal(node.getAbstractChildNodes().get(1).getToken());
+				upd = engine.compile(node.getAbstractChildNodes().get(2), CodeType.U);
+			}
+			finally{
+				localVars.popLocalScope();
+			}
 						
 			CodeFragment name = engine.compile(node.getAbstractChildNodes().get(1), CodeType.L);
 			result.appendFragment(name);
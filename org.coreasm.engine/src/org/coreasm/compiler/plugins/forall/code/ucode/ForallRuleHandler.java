@@ -6,6 +6,8 @@ import java.util.Map.Entry;
 import org.coreasm.compiler.CodeType;
 import org.coreasm.compiler.CompilerEngine;
 import org.coreasm.compiler.codefragment.CodeFragment;
+import org.coreasm.compiler.components.variablemanager.LocalVariable;
+import org.coreasm.compiler.components.variablemanager.VarManager;
 import org.coreasm.compiler.exception.CompilerException;
 import org.coreasm.compiler.interfaces.CompilerCodeHandler;
 import org.coreasm.engine.interpreter.ASTNode;
@@ -27,7 +29,6 @@ public class ForallRuleHandler implements CompilerCodeHandler {
 		Map<String, ASTNode> vars = forall.getVariableMap();
 		
 		result.appendLine("//forall starts here\n");
-		result.appendLine("localStack.pushLayer();\n");
 		int varcount = 0;
 		
 		String[] varnames = new String[vars.size()];
@@ -45,30 +46,41 @@ public class ForallRuleHandler implements CompilerCodeHandler {
 		result.appendLine("@decl(int, exec) = 0;\n");
 		result.appendLine("if(!@hasempty@){\n");
 		
-		//open for loops
-		for(int i = 0; i < varcount; i++){
-			result.appendLine("for(@decl(int, i" + i + ")=0; @i" + i + "@ < @var" + i + "@.size(); @i" + i + "@++){\n");
-			result.appendLine("localStack.put(\"" + varnames[i] + "\", @var" + i + "@.get(@i" + i + "@));\n");
-		}
-		
-		if(forall.getCondition() != null){
-			result.appendFragment(engine.compile(forall.getCondition(), CodeType.R));
-			result.appendLine("if(evalStack.pop().equals(@RuntimePkg@.BooleanElement.TRUE)){\n");
-			result.appendLine("@exec@++;\n");
-			result.appendFragment(engine.compile(forall.getDoRule(), CodeType.U));
-			result.appendLine("}\n");
+		VarManager localVars = engine.getVarManager();
+		LocalVariable[] locals = new LocalVariable[varcount];
+		localVars.pushLocalScope();
+		try{
+			//open for loops
+			for(int i = 0; i < varcount; i++){
+				locals[i] = localVars.addLocal(varnames[i]);
+				result.appendLine("for(@decl(int, i" + i + ")=0; @i" + i + "@ < @var" + i + "@.size(); @i" + i + "@++){\n");
+				result.appendLine(locals[i].put("@var" + i + "@.get(@i" + i + "@)"));
+			}
+			
+			if(forall.getCondition() != null){
+				result.appendFragment(engine.compile(forall.getCondition(), CodeType.R));
+				result.appendLine("if(evalStack.pop().equals(@RuntimePkg@.BooleanElement.TRUE)){\n");
+				result.appendLine("@exec@++;\n");
+				result.appendFragment(engine.compile(forall.getDoRule(), CodeType.U));
+				result.appendLine("}\n");
+			}
+			else{
+				result.appendLine("@exec@++;\n");
+				result.appendFragment(engine.compile(forall.getDoRule(), CodeType.U));
+			}
 		}
-		else{
-			result.appendLine("@exec@++;\n");
-			result.appendFragment(engine.compile(forall.getDoRule(), CodeType.U));
+		finally{
+			localVars.popLocalScope();
 		}
 		
 		//close for loops
 		for(int i = 0; i < varcount; i++){
 			result.appendLine("}\n");
 		}
+		for(LocalVariable local : locals){
+			result.appendLine(local.remove());
+		}
 		result.appendLine("}\n");
-		result.appendLine("localStack.popLayer();\n");
 		
 		if(forall.getIfnoneRule() == null){
 			result.appendLine("@decl(@RuntimePkg@.UpdateList, res) = new @RuntimePkg@.UpdateList();\n");
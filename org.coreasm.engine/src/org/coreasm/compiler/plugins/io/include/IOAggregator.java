@@ -43,7 +43,7 @@ public class IOAggregator implements UpdateAggregator {
 								outputResult += update.value.toString() + "\n";
 								// flag update aggregation as successful for this update
 								pluginAgg.flagUpdate(update, Flag.SUCCESSFUL, this);
-								contributingAgents.addAll(update.agents);
+								contributingAgents.addAll(update.getAgents());
 							}
 						}
 					}
@@ -75,7 +75,7 @@ public class IOAggregator implements UpdateAggregator {
 					if (!outputResult2.isEmpty())
 						outputResult2 += '\n';
 					outputResult2 += u.value.toString();
-					contributingAgents.addAll(u.agents);
+					contributingAgents.addAll(u.getAgents());
 				}
 				else
 					compAPI.addComposedUpdate(u, "IOPlugin");
@@ -89,7 +89,7 @@ public class IOAggregator implements UpdateAggregator {
 						if (!outputResult1.isEmpty())
 							outputResult1 += '\n';
 						outputResult1 += u.value.toString();
-						contributingAgents.addAll(u.agents);
+						contributingAgents.addAll(u.getAgents());
 					}
 					else
 						compAPI.addComposedUpdate(u, "IOPlugin");
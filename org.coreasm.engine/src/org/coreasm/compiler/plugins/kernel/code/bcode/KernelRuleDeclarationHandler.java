@@ -41,9 +41,17 @@ public class KernelRuleDeclarationHandler implements CompilerCodeHandler {
 			}
 	
 			// compile the body
-			CodeFragment cbody = engine.compile(body, CodeType.U);
+			CodeFragment cbody = null;
+			int localCount = 0;
+			engine.getVarManager().startLocals();
+			try{
+				cbody = engine.compile(body, CodeType.U);
+			}
+			finally{
+				localCount = engine.getVarManager().endLocals();
+			}
 			RuleClassFile r = new RuleClassFile(ruleName, ruleParameters,
-					cbody, engine);
+					cbody, localCount, engine);
 			engine.getClassLibrary().addEntry(r);
 	
 			engine.getLogger().debug(CompilerKernelPlugin.class, "end rule creation");
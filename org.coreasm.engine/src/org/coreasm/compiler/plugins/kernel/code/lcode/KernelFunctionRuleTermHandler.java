@@ -5,6 +5,7 @@ import java.util.List;
 import org.coreasm.compiler.CodeType;
 import org.coreasm.compiler.CompilerEngine;
 import org.coreasm.compiler.codefragment.CodeFragment;
+import org.coreasm.compiler.components.variablemanager.LocalVariable;
 import org.coreasm.compiler.exception.CompilerException;
 import org.coreasm.compiler.interfaces.CompilerCodeHandler;
 import org.coreasm.engine.interpreter.ASTNode;
@@ -24,6 +25,9 @@ public class KernelFunctionRuleTermHandler implements CompilerCodeHandler {
 		//TODO: location might also be the name of a ruleparam, which could break stuff
 		
 		String name = frtn.getName();
+		//a local variable of this body is read from its slot, any other name is looked up
+		LocalVariable local = engine.getVarManager().getLocal(name);
+		String localValue = (local != null) ? local.get() : "localStack.get(\"" + name + "\")";
 		if (frtn.hasArguments()) {
 			// if the function is not a constant, the arguments
 			// need to be evaluated first
@@ -45,7 +49,7 @@ public class KernelFunctionRuleTermHandler implements CompilerCodeHandler {
 					+ ";@__i@++)\n@arglist@.add((@RuntimePkg@.Element)evalStack.pop());\n");
 			
 			//build the location, find out, if there is a local value for this location
-			result.appendLine("@decl(Object,o)=localStack.get(\"" + name + "\");\n");
+			result.appendLine("@decl(Object,o)=" + localValue + ";\n");
 			result.appendLine("if(@o@ instanceof @RuntimePkg@.FunctionElement){\n");
 			result.appendLine("evalStack.push(new @RuntimePkg@.Location(@RuntimeProvider@.getStorage().getFunctionName((@RuntimePkg@.FunctionElement)@o@), @arglist@));\n");			
 			result.appendLine("}\n");
@@ -61,7 +65,7 @@ public class KernelFunctionRuleTermHandler implements CompilerCodeHandler {
 			//		+ "\", new java.util.ArrayList<CompilerRuntime.Element>()));";
 			//result.appendLine(code);
 			
-			result.appendLine("@decl(Object,o)=localStack.get(\"" + name + "\");\n");
+			result.appendLine("@decl(Object,o)=" + localValue + ";\n");
 			result.appendLine("if(@o@ instanceof @RuntimePkg@.FunctionElement){\n");
 			result.appendLine("evalStack.push(new @RuntimePkg@.Location(@RuntimeProvider@.getStorage().getFunctionName((@RuntimePkg@.FunctionElement)@o@), new java.util.ArrayList<@RuntimePkg@.Element>()));\n");			
 			result.appendLine("}\n");
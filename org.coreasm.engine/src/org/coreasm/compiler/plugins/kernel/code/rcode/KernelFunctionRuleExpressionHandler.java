@@ -5,6 +5,7 @@ import java.util.List;
 import org.coreasm.compiler.CodeType;
 import org.coreasm.compiler.CompilerEngine;
 import org.coreasm.compiler.codefragment.CodeFragment;
+import org.coreasm.compiler.components.variablemanager.LocalVariable;
 import org.coreasm.compiler.exception.CompilerException;
 import org.coreasm.compiler.interfaces.CompilerCodeHandler;
 import org.coreasm.engine.interpreter.ASTNode;
@@ -51,6 +52,10 @@ public class KernelFunctionRuleExpressionHandler implements CompilerCodeHandler
 			result.appendLine("evalStack.push(@RuntimeProvider@.getStorage().getValue(new @RuntimePkg@.Location(\""
 					+ name + "\", @arglist@)));");
 			result.appendLine("}\n");
+		} else if (engine.getVarManager().getLocal(name) != null) {
+			//the innermost binding of the name is a local variable of this body
+			LocalVariable local = engine.getVarManager().getLocal(name);
+			result.appendLine("evalStack.push(" + local.get() + ");\n");
 		} else {
 			// look in all different locations
 			// TODO: integrate undef location handlers
@@ -3,6 +3,7 @@ package org.coreasm.compiler.plugins.kernel.code.ucode;
 import org.coreasm.compiler.CodeType;
 import org.coreasm.compiler.CompilerEngine;
 import org.coreasm.compiler.codefragment.CodeFragment;
+import org.coreasm.compiler.components.variablemanager.VarManager;
 import org.coreasm.compiler.exception.CompilerException;
 import org.coreasm.compiler.interfaces.CompilerCodeHandler;
 import org.coreasm.engine.interpreter.ASTNode;
@@ -26,10 +27,20 @@ public class KernelImportRule implements CompilerCodeHandler {
 		result.appendLine("@decl(@RuntimePkg@.Location,nameloc)=(@RuntimePkg@.Location)evalStack.pop();\n");
 		result.appendLine("if(@nameloc@.args.size() != 0) throw new Exception();\n");
 
+		//the imported element is bound by name, so that it can be found in the rule
+		VarManager localVars = engine.getVarManager();
+		CodeFragment rule = null;
+		localVars.pushLocalScope();
+		try{
+			localVars.addDynamicLocal(node.getAbstractChildNodes().get(0).getToken());
+			rule = engine.compile(node.getAbstractChildNodes().get(1), CodeType.U);
+		}
+		finally{
+			localVars.popLocalScope();
+		}
 		result.appendLine("localStack.pushLayer();\n");
 		result.appendLine("localStack.put(@nameloc@.name, new @RuntimePkg@.Element());\n");
-		result.appendFragment(engine.compile(
-				node.getAbstractChildNodes().get(1), CodeType.U));
+		result.appendFragment(rule);
 		result.appendLine("localStack.popLayer();\n");
 	}
 
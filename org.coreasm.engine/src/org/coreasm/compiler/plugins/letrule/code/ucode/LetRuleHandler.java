@@ -1,11 +1,15 @@
 package org.coreasm.compiler.plugins.letrule.code.ucode;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.coreasm.compiler.CodeType;
 import org.coreasm.compiler.CompilerEngine;
 import org.coreasm.compiler.codefragment.CodeFragment;
+import org.coreasm.compiler.components.variablemanager.LocalVariable;
+import org.coreasm.compiler.components.variablemanager.VarManager;
 import org.coreasm.compiler.exception.CompilerException;
 import org.coreasm.compiler.interfaces.CompilerCodeHandler;
 import org.coreasm.engine.interpreter.ASTNode;
@@ -25,17 +29,31 @@ public class LetRuleHandler implements CompilerCodeHandler {
 		try {
 			LetRuleNode letrule = (LetRuleNode) node;
 			Map<String, ASTNode> letmap = letrule.getVariableMap();
+			VarManager vars = engine.getVarManager();
 			
 			result.appendLine("//start of let\n");
-			result.appendLine("localStack.pushLayer();\n");
+			//the values are evaluated before any of the variables is bound
+			List<LocalVariable> locals = new ArrayList<LocalVariable>();
 			for(Entry<String, ASTNode> entry : letmap.entrySet()){
 				CodeFragment val = engine.compile(entry.getValue(), CodeType.R);
 				result.appendFragment(val);
-				result.appendLine("localStack.put(\"" + entry.getKey() + "\", evalStack.pop());\n");
 			}
-			
-			result.appendFragment(engine.compile(letrule.getInRule(), CodeType.U));
-			result.appendLine("localStack.popLayer();\n");
+			vars.pushLocalScope();
+			try{
+				for(String name : letmap.keySet()){
+					locals.add(vars.addLocal(name));
+				}
+				for(int i = locals.size() - 1; i >= 0; i--){
+					result.appendLine(locals.get(i).put("evalStack.pop()"));
+				}
+				result.appendFragment(engine.compile(letrule.getInRule(), CodeType.U));
+			}
+			finally{
+				vars.popLocalScope();
+			}
+			for(LocalVariable local : locals){
+				result.appendLine(local.remove());
+			}
 			result.appendLine("//end of let\n");
 		} catch (Exception e) {
 			throw new CompilerException(e);
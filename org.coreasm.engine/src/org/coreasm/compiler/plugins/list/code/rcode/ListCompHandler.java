@@ -7,6 +7,8 @@ import java.util.Map.Entry;
 import org.coreasm.compiler.CodeType;
 import org.coreasm.compiler.CompilerEngine;
 import org.coreasm.compiler.codefragment.CodeFragment;
+import org.coreasm.compiler.components.variablemanager.LocalVariable;
+import org.coreasm.compiler.components.variablemanager.VarManager;
 import org.coreasm.compiler.components.classlibrary.LibraryEntryType;
 import org.coreasm.compiler.exception.CompilerException;
 import org.coreasm.compiler.interfaces.CompilerCodeHandler;
@@ -27,10 +29,7 @@ public class ListCompHandler implements CompilerCodeHandler {
 			throws CompilerException {
 		ListCompNode compnode = (ListCompNode) node;
 		
-		CodeFragment guard = null;
-		if(!(compnode.getGuard() instanceof TrueGuardNode)){
-			guard = engine.compile(compnode.getGuard(), CodeType.R);
-		}
+		boolean hasGuard = !(compnode.getGuard() instanceof TrueGuardNode);
 		
 		List<String> constrnames = new ArrayList<String>();
 		
@@ -53,30 +52,38 @@ public class ListCompHandler implements CompilerCodeHandler {
 				result.appendLine("for(@decl(int,c" + i + ")=0; " + cvar + " < " + var + ".size(); " + cvar + "++){\n");
 			}
 			
-			result.appendLine("localStack.pushLayer();\n");
-			
-			for(int i = 0; i < constrnames.size(); i++){
-				result.appendLine("localStack.put(\"" + constrnames.get(i) + "\", @domain" + i + "@.get(@c" + i + "@));\n");
-			}
-			
-			if(guard == null){
-				result.appendFragment(engine.compile(compnode.getListFunction(), CodeType.R));
-				result.appendLine("@list@.add((@RuntimePkg@.Element)evalStack.pop());\n");
+			VarManager localVars = engine.getVarManager();
+			LocalVariable[] locals = new LocalVariable[constrnames.size()];
+			localVars.pushLocalScope();
+			try{
+				for(int i = 0; i < constrnames.size(); i++){
+					locals[i] = localVars.addLocal(constrnames.get(i));
+					result.appendLine(locals[i].put("@domain" + i + "@.get(@c" + i + "@)"));
+				}
+				
+				if(!hasGuard){
+					result.appendFragment(engine.compile(compnode.getListFunction(), CodeType.R));
+					result.appendLine("@list@.add((@RuntimePkg@.Element)evalStack.pop());\n");
+				}
+				else{
+					result.appendFragment(engine.compile(compnode.getGuard(), CodeType.R));
+					result.appendLine("if(evalStack.pop().equals(@RuntimePkg@.BooleanElement.TRUE)){\n");
+					result.appendFragment(engine.compile(compnode.getListFunction(), CodeType.R));
+					result.appendLine("@list@.add((@RuntimePkg@.Element)evalStack.pop());\n");
+					result.appendLine("}\n");
+				}
 			}
-			else{
-				result.appendFragment(guard);
-				result.appendLine("if(evalStack.pop().equals(@RuntimePkg@.BooleanElement.TRUE)){\n");
-				result.appendFragment(engine.compile(compnode.getListFunction(), CodeType.R));
-				result.appendLine("@list@.add((@RuntimePkg@.Element)evalStack.pop());\n");
-				result.appendLine("}\n");
+			finally{
+				localVars.popLocalScope();
 			}
 			
-			result.appendLine("localStack.popLayer();\n");
-			
 			//close for loops
 			for(int i = 0; i < constrnames.size(); i++){
 				result.appendLine("}\n");
 			}
+			for(LocalVariable local : locals){
+				result.appendLine(local.remove());
+			}
 			String listelement = engine.getPath().getEntryName(LibraryEntryType.STATIC, "ListElement", "ListPlugin");
 			result.appendLine("evalStack.push(new " + listelement + "(@list@));\n");
 		}
@@ -419,6 +419,7 @@ public class CompilerNumberPlugin extends CompilerCodePlugin implements
 			List<SynthesizeRule> result = new ArrayList<SynthesizeRule>();
 			result.add(new NumberValueTransformer());
 			result.add(new NumberValueSpawner());
+			result.add(new NumberTypeInference());
 			return result;
 		}
 
@@ -0,0 +1,124 @@
+package org.coreasm.compiler.plugins.number;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.coreasm.compiler.components.preprocessor.Information;
+import org.coreasm.compiler.components.preprocessor.SynthesizeRule;
+import org.coreasm.compiler.components.preprocessor.Trigger;
+import org.coreasm.engine.interpreter.ASTNode;
+
+/**
+ * Part of a type analysis. Marks number literals and the operators of the
+ * number plugin as primitive, i.e. as expressions which can be computed
+ * with java primitives as long as their operands are numbers. Operators with
+ * operands known to be strings or booleans are not primitive.
+ * <p>
+ * The information is stored under "primitive" and consists of
+ * <ul>
+ * <li>"type": the type of the result, either NUMBER or BOOLEAN
+ * <li>"javaType": the java primitive type of the result
+ * <li>"operation": the java expression computing the result from the
+ * primitive values of the operands #0 and #1
+ * <li>"box": the java expression creating an element from the result #0
+ * <li>"guard": the java condition checking that the operand #0 is a number
+ * (operators only)
+ * <li>"unbox": the java expression obtaining the primitive value of the
+ * operand #0 (operators only)
+ * </ul>
+ */
+public class NumberTypeInference implements SynthesizeRule {
+	private Map<String, String> binaryOps;
+	private Map<String, String> unaryOps;
+
+	/**
+	 * Initializes the rule
+	 */
+	public NumberTypeInference(){
+		binaryOps = new HashMap<String, String>();
+		binaryOps.put("+", "(#0 + #1)");
+		binaryOps.put("-", "(#0 - #1)");
+		binaryOps.put("*", "(#0 * #1)");
+		binaryOps.put("/", "(#0 / #1)");
+		binaryOps.put("div", "((#0 - (#0 % #1)) / #1)");
+		binaryOps.put("%", "(#0 % #1)");
+		binaryOps.put("^", "Math.pow(#0, #1)");
+		binaryOps.put(">", "(#0 > #1)");
+		binaryOps.put(">=", "(#0 >= #1)");
+		binaryOps.put("<", "(#0 < #1)");
+		binaryOps.put("<=", "(#0 <= #1)");
+
+		unaryOps = new HashMap<String, String>();
+		unaryOps.put("-", "(0 - #0)");
+	}
+
+	@Override
+	public Map<String, Information> transform(ASTNode n, List<Map<String, Information>> children) {
+		String operation = null;
+		if(n.getGrammarClass().equals("Expression") && n.getGrammarRule().equals("NUMBER")){
+			double val = Double.parseDouble(n.getToken());
+			//infinite values have no java literal
+			if(Double.isInfinite(val) || Double.isNaN(val)) return null;
+
+			Information i = number("(" + val + ")");
+			Map<String, Information> result = new HashMap<String, Information>();
+			result.put("primitive", i);
+			return result;
+		}
+		else if(n.getGrammarClass().equals("BinaryOperator") && n.getGrammarRule().equals("")){
+			operation = binaryOps.get(n.getToken());
+		}
+		else if(n.getGrammarClass().equals("UnaryOperator") && n.getGrammarRule().equals("")){
+			operation = unaryOps.get(n.getToken());
+		}
+		if(operation == null) return null;
+
+		//operands known not to be numbers, like string concatenations, stay as they are
+		List<ASTNode> operands = n.getAbstractChildNodes();
+		for(int c = 0; c < operands.size(); c++){
+			String rule = operands.get(c).getGrammarRule();
+			if(rule.equals("StringTerm") || rule.equals("BooleanTerm")) return null;
+			Information operand = (c < children.size()) ? children.get(c).get("primitive") : null;
+			if(operand != null && "BOOLEAN".equals(operand.getInformation("type").getValue())) return null;
+		}
+
+		Information i;
+		if(n.getToken().startsWith("<") || n.getToken().startsWith(">")){
+			i = new Information();
+			i.setValue("BOOLEAN", "type");
+			i.setValue("boolean", "javaType");
+			i.setValue(operation, "operation");
+			i.setValue("CompilerRuntime.BooleanElement.valueOf(#0)", "box");
+		}
+		else{
+			i = number(operation);
+		}
+		i.setValue("(#0 instanceof @NumberElement@)", "guard");
+		i.setValue("((@NumberElement@)#0).getValue()", "unbox");
+
+		Map<String, Information> result = new HashMap<String, Information>();
+		result.put("primitive", i);
+		return result;
+	}
+
+	private Information number(String operation){
+		Information i = new Information();
+		i.setValue("NUMBER", "type");
+		i.setValue("double", "javaType");
+		i.setValue(operation, "operation");
+		i.setValue("@NumberElement@.getInstance(#0)", "box");
+		return i;
+	}
+
+	@Override
+	public List<Trigger> getTriggers() {
+		List<Trigger> triggers = new ArrayList<Trigger>();
+		triggers.add(new Trigger(null, "Expression", "NUMBER", null));
+		triggers.add(new Trigger(null, "BinaryOperator", "", null));
+		triggers.add(new Trigger(null, "UnaryOperator", "", null));
+		return triggers;
+	}
+
+}
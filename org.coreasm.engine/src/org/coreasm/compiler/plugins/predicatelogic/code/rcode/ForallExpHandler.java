@@ -6,6 +6,8 @@ import java.util.Map.Entry;
 import org.coreasm.compiler.CodeType;
 import org.coreasm.compiler.CompilerEngine;
 import org.coreasm.compiler.codefragment.CodeFragment;
+import org.coreasm.compiler.components.variablemanager.LocalVariable;
+import org.coreasm.compiler.components.variablemanager.VarManager;
 import org.coreasm.compiler.exception.CompilerException;
 import org.coreasm.compiler.interfaces.CompilerCodeHandler;
 import org.coreasm.engine.interpreter.ASTNode;
@@ -26,7 +28,6 @@ public class ForallExpHandler implements CompilerCodeHandler {
 		Map<String, ASTNode> vars = forAllExp.getVariableMap();
 		
 		result.appendLine("//forAllExp starts here\n");
-		result.appendLine("localStack.pushLayer();\n");
 		int varcount = 0;
 		
 		String[] varnames = new String[vars.size()];
@@ -44,13 +45,22 @@ public class ForallExpHandler implements CompilerCodeHandler {
 		
 		result.appendLine("if(!@hasempty@) {\n");
 		
-		//open for loops
-		for(int i = 0; i < varcount; i++){
-			result.appendLine("for(@decl(int, i" + i + ")=0; @i" + i + "@ < @var" + i + "@.size(); @i" + i + "@++){\n");
-			result.appendLine("localStack.put(\"" + varnames[i] + "\", @var" + i + "@.get(@i" + i + "@));\n");
+		VarManager localVars = engine.getVarManager();
+		LocalVariable[] locals = new LocalVariable[varcount];
+		localVars.pushLocalScope();
+		try{
+			//open for loops
+			for(int i = 0; i < varcount; i++){
+				locals[i] = localVars.addLocal(varnames[i]);
+				result.appendLine("for(@decl(int, i" + i + ")=0; @i" + i + "@ < @var" + i + "@.size(); @i" + i + "@++){\n");
+				result.appendLine(locals[i].put("@var" + i + "@.get(@i" + i + "@)"));
+			}
+	
+			result.appendFragment(engine.compile(forAllExp.getCondition(), CodeType.R));
+		}
+		finally{
+			localVars.popLocalScope();
 		}
-
-		result.appendFragment(engine.compile(forAllExp.getCondition(), CodeType.R));
 		result.appendLine("if(evalStack.pop().equals(@RuntimePkg@.BooleanElement.FALSE)){\n");
 		result.appendLine("@result@=false;\n");
 		result.appendLine("break;\n");
@@ -59,8 +69,10 @@ public class ForallExpHandler implements CompilerCodeHandler {
 		for(int i = 0; i < varcount; i++){
 			result.appendLine("}\n");
 		}
+		for(LocalVariable local : locals){
+			result.appendLine(local.remove());
+		}
 		result.appendLine("}\n");
-		result.appendLine("localStack.popLayer();\n");
 		result.appendLine("evalStack.push(@RuntimePkg@.BooleanElement.valueOf(@result@));");
 	}
 
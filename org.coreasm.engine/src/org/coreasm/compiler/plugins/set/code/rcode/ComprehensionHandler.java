@@ -7,6 +7,8 @@ import java.util.Map.Entry;
 import org.coreasm.compiler.CodeType;
 import org.coreasm.compiler.CompilerEngine;
 import org.coreasm.compiler.codefragment.CodeFragment;
+import org.coreasm.compiler.components.variablemanager.LocalVariable;
+import org.coreasm.compiler.components.variablemanager.VarManager;
 import org.coreasm.compiler.components.classlibrary.LibraryEntryType;
 import org.coreasm.compiler.exception.CompilerException;
 import org.coreasm.compiler.interfaces.CompilerCodeHandler;
@@ -37,10 +39,8 @@ public class ComprehensionHandler implements CompilerCodeHandler {
 		
 		SetCompNode cnode = (SetCompNode) node;
 		
-		//guard might be non existent, so initialize it
-		CodeFragment guard = null;
 		//optimization: the true guard is always true anyway, so if it is existent, leave it out
-		if(!(cnode.getGuard() instanceof TrueGuardNode)) guard = engine.compile(cnode.getGuard(), CodeType.R);
+		boolean hasGuard = !(cnode.getGuard() instanceof TrueGuardNode);
 
 		List<String> constrnames = new ArrayList<String>();
 		
@@ -63,30 +63,38 @@ public class ComprehensionHandler implements CompilerCodeHandler {
 				result.appendLine("for(@decl(int,c" + i + ")=0; " + cvar + " < " + var + ".size(); " + cvar + "++){\n");
 			}
 			
-			result.appendLine("localStack.pushLayer();\n");
-			
-			for(int i = 0; i < constrnames.size(); i++){
-				result.appendLine("localStack.put(\"" + constrnames.get(i) + "\", @domain" + i + "@.get(@c" + i + "@));\n");
+			VarManager localVars = engine.getVarManager();
+			LocalVariable[] locals = new LocalVariable[constrnames.size()];
+			localVars.pushLocalScope();
+			try{
+				for(int i = 0; i < constrnames.size(); i++){
+					locals[i] = localVars.addLocal(constrnames.get(i));
+					result.appendLine(locals[i].put("@domain" + i + "@.get(@c" + i + "@)"));
+				}
+				
+				if(!hasGuard){
+					result.appendFragment(engine.compile(cnode.getSetFunction(), CodeType.R));
+					result.appendLine("@list@.add((@RuntimePkg@.Element)evalStack.pop());\n");
+				}
+				else{
+					result.appendFragment(engine.compile(cnode.getGuard(), CodeType.R));
+					result.appendLine("if(evalStack.pop().equals(@RuntimePkg@.BooleanElement.TRUE)){\n");
+					result.appendFragment(engine.compile(cnode.getSetFunction(), CodeType.R));
+					result.appendLine("@list@.add((@RuntimePkg@.Element)evalStack.pop());\n");
+					result.appendLine("}\n");
+				}
 			}
-			
-			if(guard == null){
-				result.appendFragment(engine.compile(cnode.getSetFunction(), CodeType.R));
-				result.appendLine("@list@.add((@RuntimePkg@.Element)evalStack.pop());\n");
+			finally{
+				localVars.popLocalScope();
 			}
-			else{
-				result.appendFragment(guard);
-				result.appendLine("if(evalStack.pop().equals(@RuntimePkg@.BooleanElement.TRUE)){\n");
-				result.appendFragment(engine.compile(cnode.getSetFunction(), CodeType.R));
-				result.appendLine("@list@.add((@RuntimePkg@.Element)evalStack.pop());\n");
-				result.appendLine("}\n");
-			}
-			
-			result.appendLine("localStack.popLayer();\n");
 			
 			//close for loops
 			for(int i = 0; i < constrnames.size(); i++){
 				result.appendLine("}\n");
 			}
+			for(LocalVariable local : locals){
+				result.appendLine(local.remove());
+			}
 			String setelement = engine.getPath().getEntryName(LibraryEntryType.STATIC, "SetElement", "SetPlugin");
 			result.appendLine("evalStack.push(new " + setelement + "(@list@));\n");
 		}
@@ -249,8 +249,8 @@ public class SetAggregator implements UpdateAggregator{
 		// and add their agents to the contributing agent set
 		for (Update u : locUpdates) {
 			pluginAgg.flagUpdate(u,Flag.SUCCESSFUL,this);
-			contributingAgents.addAll(u.agents);
-			//contributingNodes.addAll(u.sources);
+			contributingAgents.addAll(u.getAgents());
+			//contributingNodes.addAll(u.getSources());
 		}
 	
 		// return resultant set
@@ -311,7 +311,7 @@ public class SetAggregator implements UpdateAggregator{
 		for (Update ui: uMset1)
 			if (ui.action.equals(Update.UPDATE_ACTION)) {
 				value = ui.value;
-				contributingAgents.addAll(ui.agents);
+				contributingAgents.addAll(ui.getAgents());
 				break;
 			}
 
@@ -319,17 +319,12 @@ public class SetAggregator implements UpdateAggregator{
 		if (value instanceof SetElement) {
 			Set<Element> resultSet = new HashSet<Element>(((SetElement)value).enumerate());
 			
-			for (Element e: resultSet) {
-				Update removeUpdate = new Update(l, e, SETREMOVE_ACTION, (Rule)null, null);
-				
-				if (!uMset2.contains(removeUpdate)) 
-					resultSet.add(e);
-			}
-			
 			for (Update u: uMset2) {
 				if (u.action.equals(SETADD_ACTION)) 
 					resultSet.add(u.value);
-				contributingAgents.addAll(u.agents);
+				else if (u.action.equals(SETREMOVE_ACTION))
+					resultSet.remove(u.value);
+				contributingAgents.addAll(u.getAgents());
 			}
 			
 			return new Update(l, new SetElement(resultSet), Update.UPDATE_ACTION, new HashSet<Element>(contributingAgents), null);
@@ -5,6 +5,7 @@ import org.coreasm.compiler.codefragment.CodeFragment;
 import org.coreasm.compiler.codefragment.CodeFragmentException;
 import org.coreasm.compiler.components.classlibrary.LibraryEntryType;
 import org.coreasm.compiler.components.classlibrary.MemoryInclude;
+import org.coreasm.compiler.components.variablemanager.LocalVariable;
 import org.coreasm.compiler.exception.LibraryEntryException;
 
 
@@ -17,19 +18,22 @@ public class DerivedFunctionEntry extends MemoryInclude{
 	private String name;
 	private String[] params;
 	private CodeFragment body;
+	private int localCount;
 	
 	/**
 	 * Builds a new derived function entry
 	 * @param name The name of the derived function
-	 * @param params The parameters of the function
+	 * @param params The parameters of the function, which take the first local variable slots
 	 * @param body The body of the function
+	 * @param localCount The number of local variable slots of the body
 	 * @param engine The compiler engine supervising the compilation process
 	 */
-	public DerivedFunctionEntry(String name, String[] params, CodeFragment body, CompilerEngine engine){
+	public DerivedFunctionEntry(String name, String[] params, CodeFragment body, int localCount, CompilerEngine engine){
 		super(engine, "DerFunc_" + name, "SignaturePlugin", LibraryEntryType.DYNAMIC);
 		this.name = "DerFunc_" + name;
 		this.params = params;
 		this.body = body;
+		this.localCount = localCount;
 	}
 	@Override
 	protected String buildContent(String entryName) throws LibraryEntryException {
@@ -51,9 +55,10 @@ public class DerivedFunctionEntry extends MemoryInclude{
 		result += "\t" + runtimePkg() + ".LocalStack localStack = new " + runtimePkg() + ".LocalStack();\n";
 		result += "java.util.Map<String, " + runtimePkg() + ".RuleParam> ruleparams = new java.util.HashMap<String, " + runtimePkg() + ".RuleParam>();\n";
 		result += "if(args.size() != " + params.length + ") return " + runtimePkg() + ".Element.UNDEF;\n";
+		result += "final int localFrame = localStack.pushFrame(" + localCount + ");\n";
 		
 		for(int i = 0; i < params.length; i++){
-			result += "localStack.put(\"" + params[i] + "\", args.get(" + i + "));\n";
+			result += new LocalVariable(params[i], i).put("args.get(" + i + ")");
 		}
 		
 		result += "try{\n";
@@ -19,6 +19,7 @@ public class FunctionEntry extends MemoryInclude {
 	private List<String> domain;
 	private String range;
 	private CodeFragment init;
+	private int localCount;
 
 	/**
 	 * Builds a new function entry
@@ -27,15 +28,17 @@ public class FunctionEntry extends MemoryInclude {
 	 * @param domain The domain of the function type
 	 * @param range The range of the function type
 	 * @param init A code fragment generating the initial values for the function
+	 * @param localCount The number of local variable slots of the initialization code
 	 * @param engine The compiler engine supervising the compilation process
 	 */
-	public FunctionEntry(String name, String fclass, List<String> domain, String range, CodeFragment init, CompilerEngine engine){
+	public FunctionEntry(String name, String fclass, List<String> domain, String range, CodeFragment init, int localCount, CompilerEngine engine){
 		super(engine, "Func_" + name, "SignaturePlugin", LibraryEntryType.DYNAMIC);
 		this.name = "Func_" + name;
 		this.fclass = fclass;
 		this.domain = domain;
 		this.range = range;
 		this.init = init;
+		this.localCount = localCount;
 	}
 
 	protected String buildContent(String entryName) throws CodeFragmentException {
@@ -58,6 +61,7 @@ public class FunctionEntry extends MemoryInclude {
 			if(init != null){
 				result += "" + runtimePkg() + ".EvalStack evalStack = new " + runtimePkg() + ".EvalStack();\n";
 				result += "" + runtimePkg() + ".LocalStack localStack = new " + runtimePkg() + ".LocalStack();\n";
+				result += "final int localFrame = localStack.pushFrame(" + localCount + ");\n";
 				result += "java.util.Map<String, " + runtimePkg() + ".RuleParam> ruleparams = new java.util.HashMap<String, " + runtimePkg() + ".RuleParam>();\n";
 				result += init.generateCode(engine);
 				result += "" + runtimePkg() + ".Element initValue = (" + runtimePkg() + ".Element) evalStack.pop();\n";
@@ -104,14 +104,20 @@ public class SignatureHandler implements CompilerCodeHandler {
 		// righthand side
 		String range = children.get(pos).getToken();
 		CodeFragment init = null;
+		int localCount = 0;
 		if (children.size() > pos + 1) {
-			init = engine.compile(children.get(pos + 1), CodeType.R);
+			engine.getVarManager().startLocals();
+			try {
+				init = engine.compile(children.get(pos + 1), CodeType.R);
+			} finally {
+				localCount = engine.getVarManager().endLocals();
+			}
 		}
 
 		// add the function element
 		parent.addEntry(name, parent.new IncludeEntry(
 				SignatureEntryType.FUNCTION, new FunctionEntry(name, fclass,
-						domain, range, init, engine)));
+						domain, range, init, localCount, engine)));
 		// functions.put(name, new FunctionEntry(name, fclass, domain, range,
 		// init));
 	}
@@ -119,7 +125,19 @@ public class SignatureHandler implements CompilerCodeHandler {
 	private void parseDerivedFunction(ASTNode node, CompilerEngine engine) throws CompilerException{
 		ASTNode signature = node.getAbstractChildNodes().get(0);
 		
+		String name = signature.getAbstractChildNodes().get(0).getToken();
+		String[] params = new String[signature.getAbstractChildNodes().size() - 1];
+		for(int i = 1; i < signature.getAbstractChildNodes().size(); i++){
+			params[i - 1] = signature.getAbstractChildNodes().get(i).getToken();
+		}
+		
 		CodeFragment body = null;
+		int localCount = 0;
+		//the parameters take the first slots
+		engine.getVarManager().startLocals();
+		for(String param : params){
+			engine.getVarManager().addLocal(param);
+		}
 		try{
 			body = engine.compile(node.getAbstractChildNodes().get(1), CodeType.R);
 		}
@@ -138,15 +156,11 @@ public class SignatureHandler implements CompilerCodeHandler {
 			body.appendLine("}\n");
 			body.appendLine("evalStack.push(@res@);\n");
 		}
-		
-		
-		String name = signature.getAbstractChildNodes().get(0).getToken();
-		String[] params = new String[signature.getAbstractChildNodes().size() - 1];
-		for(int i = 1; i < signature.getAbstractChildNodes().size(); i++){
-			params[i - 1] = signature.getAbstractChildNodes().get(i).getToken();
+		finally{
+			localCount = engine.getVarManager().endLocals();
 		}
 		
-		parent.addEntry(name, parent.new IncludeEntry(SignatureEntryType.DERIVED, new DerivedFunctionEntry(name, params, body, engine)));
+		parent.addEntry(name, parent.new IncludeEntry(SignatureEntryType.DERIVED, new DerivedFunctionEntry(name, params, body, localCount, engine)));
 		//derived.put(name, new DerivedFunctionEntry(name, params, body));
 	}
 }
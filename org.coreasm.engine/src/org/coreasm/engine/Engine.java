@@ -19,6 +19,7 @@ import java.util.*;
 import java.util.Map.Entry;
 
 import org.coreasm.engine.absstorage.AbstractStorage;
+import org.coreasm.engine.absstorage.ConcurrentStorage;
 import org.coreasm.engine.absstorage.Element;
 import org.coreasm.engine.absstorage.HashStorage;
 import org.coreasm.engine.absstorage.InvalidLocationException;
@@ -154,7 +155,10 @@ public class Engine implements ControlAPI {
 		if (properties != null)
 			this.properties.putAll(properties);
 
-		storage = new HashStorage(this);
+		if (EngineProperties.CONCURRENT_STORAGE.equals(this.properties.getProperty(EngineProperties.STORAGE_PROPERTY)))
+			storage = new ConcurrentStorage(this);
+		else
+			storage = new HashStorage(this);
 		scheduler = new SchedulerImp(this);
 		parser = new JParsecParser(this);
 		interpreter = new InterpreterImp(this);
@@ -384,11 +388,10 @@ public class Engine implements ControlAPI {
 	@Override
 	public void updateState(Set<Update> update)
 			throws InconsistentUpdateSetException, InvalidLocationException {
-		if (getEngineMode() == EngineMode.emIdle)
-			if (storage.isConsistent(update))
-				storage.fireUpdateSet(update);
-			else
+		if (getEngineMode() == EngineMode.emIdle) {
+			if (!storage.fireUpdateSetIfConsistent(update))
 				throw new InconsistentUpdateSetException();
+		}
 		else
 			logger.error("Cannot update engine state when engine is not in the idle mode.");
 	}
@@ -969,8 +972,7 @@ public class Engine implements ControlAPI {
 
 						case emAggregation:
 							storage.aggregateUpdates();
-							if (storage.isConsistent(scheduler.getUpdateSet())) {
-								storage.fireUpdateSet(scheduler.getUpdateSet());
+							if (storage.fireUpdateSetIfConsistent(scheduler.getUpdateSet())) {
 								next(EngineMode.emStepSucceeded);
 							} else
 								next(EngineMode.emUpdateFailed);
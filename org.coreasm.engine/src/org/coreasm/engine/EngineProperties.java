@@ -40,6 +40,45 @@ public class EngineProperties extends Properties {
 	/** in a multi-threaded simulation, this is the minimum number of agents assigned to every thread */
 	public static String AGENT_EXECUTION_THREAD_BATCH_SIZE = "scheduler.threadBatchSize";
 
+	/** 'yes': in a multi-threaded simulation, the number of agents assigned to every thread is 
+	 * derived from the time it took to evaluate the agents in the previous steps; 
+	 * the value of {@link #AGENT_EXECUTION_THREAD_BATCH_SIZE} is used as lower bound */
+	public static final String ADAPTIVE_THREAD_BATCH_SIZE = "scheduler.adaptiveThreadBatchSize";
+
+	/** implementation of the abstract storage; either {@link #HASH_STORAGE} or {@link #CONCURRENT_STORAGE}.
+	 * This property is read when the engine is created. */
+	public static final String STORAGE_PROPERTY = "engine.storage";
+
+	/** value of {@link #STORAGE_PROPERTY} selecting {@link org.coreasm.engine.absstorage.HashStorage} */
+	public static final String HASH_STORAGE = "hash";
+
+	/** value of {@link #STORAGE_PROPERTY} selecting {@link org.coreasm.engine.absstorage.ConcurrentStorage} */
+	public static final String CONCURRENT_STORAGE = "concurrent";
+
+	/** 'yes': every operator is evaluated by all plugins implementing it, to detect plugins 
+	 * producing different results; otherwise the plugin that evaluated an operator node 
+	 * for the same classes of operands is tried first */
+	public static final String OPERATOR_AMBIGUITY_CHECK = "interpreter.operatorAmbiguityCheck";
+
+	/** 'yes': the bodies of rules and derived functions are evaluated by trees of 
+	 * {@link org.coreasm.engine.interpreter.Evaluator}s built once per body, instead of 
+	 * interpreting a copy of the body one node at a time; nodes for which no evaluator 
+	 * is built are still interpreted one node at a time. This mode is not used while 
+	 * interpreter listeners (e.g., a debugger) are registered */
+	public static final String FAST_INTERPRETER_MODE = "interpreter.fastMode";
+
+	/** 'yes': updates resulting from aggregation or composition keep the updates they 
+	 * result from, instead of collecting their agents and sources right away; the agents
+	 * and sources are collected only if they are needed, e.g. to report inconsistent 
+	 * updates. This property is read when a specification is loaded. */
+	public static final String LEAN_UPDATES = "engine.leanUpdates";
+
+	/** seed of the random numbers used by the scheduler and by the agents (e.g., to 
+	 * choose elements); if there is a seed, the agents are also scheduled in the order of
+	 * their denotations, so a run can be repeated as long as agents create new elements in 
+	 * the same order; otherwise a new seed is picked for every run and logged */
+	public static final String RANDOM_SEED = "engine.randomSeed";
+
 	/** a colon-separated list of folders that include additional plugins */
 	public static String PLUGIN_FOLDERS_PROPERTY = "engine.pluginFolders";
 
@@ -75,6 +114,11 @@ public class EngineProperties extends Properties {
 		this.setProperty(MAX_PROCESSORS, "1");
 		this.setProperty(PRINT_PROCESSOR_STATS_PROPERTY, "no");
 		this.setProperty(AGENT_EXECUTION_THREAD_BATCH_SIZE, "1");
+		this.setProperty(ADAPTIVE_THREAD_BATCH_SIZE, NO);
+		this.setProperty(STORAGE_PROPERTY, HASH_STORAGE);
+		this.setProperty(OPERATOR_AMBIGUITY_CHECK, NO);
+		this.setProperty(FAST_INTERPRETER_MODE, NO);
+		this.setProperty(LEAN_UPDATES, NO);
 	}
 
 }
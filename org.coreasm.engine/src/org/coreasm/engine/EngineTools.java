@@ -12,6 +12,7 @@ package org.coreasm.engine;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import org.coreasm.engine.absstorage.Element;
 import org.coreasm.engine.absstorage.ElementList;
@@ -64,9 +65,10 @@ public class EngineTools {
 		String result = "";
 		if (update != null) {
 			result += indent + "  - " + update;
-			if (update.sources != null) {
-				result += " produced by the following " + ((update.sources.size()>1)?"lines":"line") + ":" + Tools.getEOL();
-				for (ScannerInfo info: update.sources) {
+			Set<ScannerInfo> sources = update.getSources();
+			if (!sources.isEmpty()) {
+				result += " produced by the following " + ((sources.size()>1)?"lines":"line") + ":" + Tools.getEOL();
+				for (ScannerInfo info: sources) {
 					result += indent + "      - " + info.getContext(parser, spec);
 				}
 			}
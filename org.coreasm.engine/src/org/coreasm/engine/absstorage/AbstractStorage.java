@@ -55,6 +55,21 @@ public interface AbstractStorage extends State {
 	 */
 	public void fireUpdateSet(Set<Update> updateSet) throws InvalidLocationException;
 	
+	/**
+	 * Checks the consistency of the given update set and, only if it 
+	 * is consistent, fires it. This is the same as calling 
+	 * {@link #isConsistent(Collection)} followed by {@link #fireUpdateSet(Set)},
+	 * but the locations of the updates are only checked once.
+	 * 
+	 * If the update set is not consistent, the state is not changed and
+	 * {@link #getLastInconsistentUpdate()} returns all updates that are
+	 * in conflict with another update.
+	 * 
+	 * @param updateSet updates to be applied to the current state.
+	 * @return <code>true</code> if the update set was consistent and has been fired
+	 */
+	public boolean fireUpdateSetIfConsistent(Set<Update> updateSet) throws InvalidLocationException;
+	
 	/**
 	 * Performs aggregation on a given collection of update instructions.
 	 * 
@@ -155,6 +170,56 @@ public interface AbstractStorage extends State {
 	 */
 //	public Element getNewElementFrom(AbstractUniverse bkg);
 	
+	/**
+	 * Returns <code>true</code> if the calling thread has pushed a state
+	 * in the stack that is not popped yet.
+	 * 
+	 * @see #pushState(String)
+	 */
+	public boolean isStateStacked();
+	
+	/**
+	 * Returns the location of the nullary function with the given name.
+	 * The same instance is returned for the same name and modifiability
+	 * until the state is cleared, so frequently read locations are not 
+	 * created over and over again.
+	 * 
+	 * @param name the name of the function
+	 * @param isModifiable indicates whether this location is modifiable; may be <code>null</code>
+	 */
+	public Location getNullaryLocation(String name, Boolean isModifiable);
+	
+	/**
+	 * Returns the version of the state. The version changes whenever an 
+	 * update set is fired, a value is set directly, a function, universe or 
+	 * rule is added, or the state is cleared, so values computed from
+	 * the state stay valid while the version is the same and the state is
+	 * not stacked.
+	 */
+	public long getStateVersion();
+	
+	/**
+	 * Returns <code>true</code> if aggregators should create lean updates,
+	 * i.e., updates whose agents and sources are collected only when they
+	 * are needed.
+	 * 
+	 * @see org.coreasm.engine.EngineProperties#LEAN_UPDATES
+	 * @see Update#aggregate(Location, Element, String, java.util.Collection, boolean)
+	 */
+	public boolean hasLeanUpdates();
+	
+	/**
+	 * Returns the number of reads of monitored locations since the state was 
+	 * last cleared that were answered with the value already read in the same step.
+	 */
+	public long getMonitoredCacheHits();
+	
+	/**
+	 * Returns the number of reads of monitored locations since the state was 
+	 * last cleared that had to read the value from the monitored function.
+	 */
+	public long getMonitoredCacheMisses();
+	
 	/**
 	 * Pushes the current state in the stack.
 	 * @param pluginName The name of the plugin that wants to push the state to the stack
@@ -201,9 +266,10 @@ public interface AbstractStorage extends State {
 	public boolean isRuleName(String token);
 
 	/**
-	 * @return the last inconsistent updates. Returns <code>null</code>
-	 * if the last call to {@link #isConsistent(Collection)} returned 
-	 * <code>true</code>.
+	 * @return the last inconsistent updates, i.e., all updates of the last 
+	 * checked update set whose location is updated by another update. 
+	 * Returns <code>null</code> if the last call to {@link #isConsistent(Collection)} 
+	 * or {@link #fireUpdateSetIfConsistent(Set)} found the update set consistent.
 	 */
 	public Set<Update> getLastInconsistentUpdate();
 }
@@ -12,11 +12,13 @@
  
 package org.coreasm.engine.absstorage;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.Vector;
 
 import org.coreasm.engine.plugin.Plugin;
 
@@ -35,20 +37,26 @@ public class AggregationAPIImp implements EngineAggregationAPI, PluginAggregatio
 	/** UpdateMultiset of unprocessed update instructions **/
 	private UpdateMultiset unprocessedUpdates;
 	
-	/** Hashtable from resultant updates to plug-ins **/
-	private Hashtable<Update,Set<Plugin>> htResultantUpdatesToPlugins = new Hashtable<Update,Set<Plugin>>();
+	/*
+	 * An instance of this class is only used by one thread at a time, 
+	 * so the maps below are not synchronized. Large update multisets are 
+	 * partitioned by the storage and every partition gets its own instance.
+	 */
+	
+	/** Map from resultant updates to plug-ins **/
+	private Map<Update,Set<Plugin>> htResultantUpdatesToPlugins = new HashMap<Update,Set<Plugin>>();
 	
-	/** Hashtable from actions to a set of locations **/
-	private Hashtable<String,Set<Location>> htActionToLocs = new Hashtable<String,Set<Location>>();
+	/** Map from actions to a set of locations **/
+	private Map<String,Set<Location>> htActionToLocs = new HashMap<String,Set<Location>>();
 	
-	/** Hashtable from location to set of update instructions */
-	private Hashtable<Location,UpdateMultiset> htLocToUpdates = new Hashtable<Location,UpdateMultiset>();
+	/** Map from location to set of update instructions */
+	private Map<Location,UpdateMultiset> htLocToUpdates = new HashMap<Location,UpdateMultiset>();
 	
-	/** Hashtable from failed update instructions to vector of plug-ins **/
-	private Hashtable<Update, Vector<Plugin>> htFailedUpdatesToPlugin = new Hashtable<Update, Vector<Plugin>>();
+	/** Map from failed update instructions to list of plug-ins **/
+	private Map<Update, List<Plugin>> htFailedUpdatesToPlugin = new HashMap<Update, List<Plugin>>();
 	
-	/** Hashtable from sucessful update instructions to vector of plug-ins **/
-	private Hashtable<Update, Vector<Plugin>> htSuccessfulUpdatesToPlugin = new Hashtable<Update, Vector<Plugin>>();
+	/** Map from sucessful update instructions to list of plug-ins **/
+	private Map<Update, List<Plugin>> htSuccessfulUpdatesToPlugin = new HashMap<Update, List<Plugin>>();
 	
 	
 	
@@ -225,7 +233,7 @@ public class AggregationAPIImp implements EngineAggregationAPI, PluginAggregatio
 		{
 			// create an entry in hashtable for update if it doesn't exist
 			if(!htSuccessfulUpdatesToPlugin.containsKey(update))
-				htSuccessfulUpdatesToPlugin.put(update,new Vector<Plugin>());
+				htSuccessfulUpdatesToPlugin.put(update,new ArrayList<Plugin>());
 			
 			// add plugin to update
 			htSuccessfulUpdatesToPlugin.get(update).add(plugin);
@@ -235,7 +243,7 @@ public class AggregationAPIImp implements EngineAggregationAPI, PluginAggregatio
 		{
 			// create an entry in hashtable for update if it doesn't exist
 			if(!htFailedUpdatesToPlugin.containsKey(update))
-				htFailedUpdatesToPlugin.put(update,new Vector<Plugin>());
+				htFailedUpdatesToPlugin.put(update,new ArrayList<Plugin>());
 			
 			// add plugin to update
 			htFailedUpdatesToPlugin.get(update).add(plugin);
@@ -283,20 +291,26 @@ public class AggregationAPIImp implements EngineAggregationAPI, PluginAggregatio
 			//--- add action to loc mapping
 			
 			// create entry in hashtable for given action if doesn't exist
-			if (!htActionToLocs.containsKey(u.action))
-				htActionToLocs.put(u.action,new HashSet<Location>());
+			Set<Location> actionLocs = htActionToLocs.get(u.action);
+			if (actionLocs == null) {
+				actionLocs = new HashSet<Location>();
+				htActionToLocs.put(u.action, actionLocs);
+			}
 			
 			// add location to action
-			htActionToLocs.get(u.action).add(u.loc);
+			actionLocs.add(u.loc);
 			
 			//--- add location to update instruction mapping
 			
 			// create an entry in hashtable for given location if doesn't exist
-			if(!htLocToUpdates.containsKey(u.loc))
-				htLocToUpdates.put(u.loc,new UpdateMultiset());
+			UpdateMultiset locUpdates = htLocToUpdates.get(u.loc);
+			if (locUpdates == null) {
+				locUpdates = new UpdateMultiset();
+				htLocToUpdates.put(u.loc, locUpdates);
+			}
 			
 			// add update to location
-			htLocToUpdates.get(u.loc).add(u);
+			locUpdates.add(u);
 			
 		}
 		
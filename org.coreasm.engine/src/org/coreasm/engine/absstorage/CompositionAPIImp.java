@@ -47,6 +47,18 @@ public class CompositionAPIImp implements EngineCompositionAPI,
 	}
 
 	public Set<Location> getAffectedLocations() {
+		indexUpdates();
+		Set<Location> affectedLocations = new HashSet<Location>(locUpdates1.keySet());
+		affectedLocations.addAll(locUpdates2.keySet());
+
+		return affectedLocations;
+	}
+
+	/*
+	 * Indexes the updates of both sets by location and by action, so that 
+	 * looking up the updates of a location takes constant time. 
+	 */
+	private void indexUpdates() {
 		if (!affectedLocationsComputed) {
 			locUpdates1 = new HashMap<Location, UpdateMultiset>();
 			for (Update u: updates[1]) {
@@ -84,31 +96,25 @@ public class CompositionAPIImp implements EngineCompositionAPI,
 			}
 			affectedLocationsComputed = true;
 		}
-		Set<Location> affectedLocations = new HashSet<Location>(locUpdates1.keySet());
-		affectedLocations.addAll(locUpdates2.keySet());
-
-		return affectedLocations;
 	}
 
 	public UpdateMultiset getLocUpdates(int setIndex, Location l) {
 		UpdateMultiset locUpdates;
 		Map<Location, UpdateMultiset> locUpdateMap;
 		
+		if (setIndex != 1 && setIndex != 2)
+			return null;
+		
+		indexUpdates();
 		if (setIndex == 1)
 			locUpdateMap = locUpdates1;
-		else if (setIndex == 2)
-			locUpdateMap = locUpdates2;
 		else
-			return null;
+			locUpdateMap = locUpdates2;
 		
+		// all updates are indexed, so the location is not updated
 		locUpdates = locUpdateMap.get(l);
-		if (locUpdates == null) {
+		if (locUpdates == null)
 			locUpdates = new UpdateMultiset();
-			locUpdateMap.put(l, locUpdates);
-			for (Update u: updates[setIndex]) 
-				if (u.loc.equals(l))
-					locUpdates.add(u);
-		}
 		
 		return locUpdates;
 	}
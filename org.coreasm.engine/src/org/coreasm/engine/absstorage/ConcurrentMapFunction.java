@@ -0,0 +1,42 @@
+/*	
+ * ConcurrentMapFunction.java
+ * 
+ * Licensed under the Academic Free License version 3.0 
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+ 
+package org.coreasm.engine.absstorage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** 
+ * A {@link MapFunction} whose location-value table is a 
+ * <code>ConcurrentHashMap</code>. Reading the function never blocks, 
+ * not even while other threads are updating it.
+ *   
+ * @see ConcurrentStorage
+ */
+public class ConcurrentMapFunction extends MapFunction {
+
+	/**
+	 * Creates a new concurrent map function. 
+	 */
+	public ConcurrentMapFunction() {
+		super();
+	}
+	
+    /**
+	 * Creates a new concurrent map function with the default value. 
+	 */
+	public ConcurrentMapFunction(Element defaultValue) {
+		super(defaultValue);
+	}
+
+	@Override
+	protected Map<ElementList, Element> createTable() {
+		return new ConcurrentHashMap<ElementList, Element>();
+	}
+}
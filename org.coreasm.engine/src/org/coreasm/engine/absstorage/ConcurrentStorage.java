@@ -0,0 +1,188 @@
+/*
+ * ConcurrentStorage.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.absstorage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
+
+import org.coreasm.engine.ControlAPI;
+import org.coreasm.engine.EngineError;
+
+/**
+ * An implementation of the <code>AbstractStorage</code> interface for
+ * simulations running on many threads.
+ * <p>
+ * Universes, functions and rules of the state are kept in concurrent maps,
+ * and the functions that are created by the storage are instances of
+ * {@link ConcurrentMapFunction}, so reading the state never blocks.
+ * Map functions and universes provided by plugins (instances of 
+ * {@link MapFunction} and {@link UniverseElement}) switch to concurrent
+ * tables when they are added to the state. Other functions and universes 
+ * provided by plugins are used as they are; they have to be thread-safe 
+ * themselves if they are read or written by agents running in parallel.
+ * Large update sets are grouped by function name and the groups are
+ * applied in parallel on the executor of the scheduler.
+ * <p>
+ * This storage is used if the {@link org.coreasm.engine.EngineProperties#STORAGE_PROPERTY}
+ * engine property is set to {@link org.coreasm.engine.EngineProperties#CONCURRENT_STORAGE}.
+ *
+ * @see HashStorage
+ */
+public class ConcurrentStorage extends HashStorage {
+
+	/** Minimum number of updates in an update set to apply it in parallel */
+	public static final int PARALLEL_UPDATE_THRESHOLD = 1024;
+
+	/** Creates a new <code>ConcurrentStorage</code>. */
+	public ConcurrentStorage(ControlAPI capi) {
+		super(capi);
+	}
+
+	@Override
+	protected State createState() {
+		return new ConcurrentState();
+	}
+
+	/**
+	 * Applies the given updates. If there are enough updates and more than
+	 * one processor may be used, updates of functions that are plain maps
+	 * are applied in parallel, one group per function. All other updates
+	 * are applied sequentially by the calling thread.
+	 */
+	@Override
+	protected void applyUpdates(Collection<Update> updates) throws InvalidLocationException {
+		if (updates.size() < PARALLEL_UPDATE_THRESHOLD
+				|| capi.getScheduler().getExecutor().getParallelism() < 2) {
+			super.applyUpdates(updates);
+			return;
+		}
+
+		Map<String, List<Update>> groups = new HashMap<String, List<Update>>();
+		for (Update u: updates) {
+			List<Update> group = groups.get(u.loc.name);
+			if (group == null) {
+				group = new ArrayList<Update>();
+				groups.put(u.loc.name, group);
+			}
+			group.add(u);
+		}
+
+		final List<FunctionUpdater> updaters = new ArrayList<FunctionUpdater>();
+		for (Entry<String, List<Update>> group: groups.entrySet()) {
+			FunctionElement f = getFunction(group.getKey());
+			if (isPlainMapFunction(f) && f.isModifiable())
+				updaters.add(new FunctionUpdater((MapFunction)f, group.getValue()));
+			else
+				// unknown functions are created by the state, and other
+				// functions may have side effects when they are updated
+				super.applyUpdates(group.getValue());
+		}
+
+		if (updaters.size() == 1)
+			updaters.get(0).compute();
+		else if (updaters.size() > 1)
+			capi.getScheduler().getExecutor().invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					invokeAll(updaters);
+				}
+			});
+	}
+
+	/**
+	 * Applies the updates to the top of the state stack. Unlike in
+	 * {@link HashStorage}, this is not synchronized, as the stack is
+	 * local to the calling thread.
+	 */
+	@Override
+	public void apply(Set<Update> updates) {
+		if (isStateStacked()) {
+			StateOverlay updateStack = getUpdateStack();
+			for (Update u: updates)
+				updateStack.put(u.loc, u.value);
+		} else
+			capi.error("Cannot apply updates when state stack is empty.");
+	}
+
+	/*
+	 * Returns true if updating the given function only changes its table.
+	 */
+	private boolean isPlainMapFunction(FunctionElement f) {
+		return f != null
+				&& (f.getClass() == MapFunction.class || f.getClass() == ConcurrentMapFunction.class);
+	}
+
+	/*
+	 * Sets the values of the locations of one function.
+	 */
+	private static class FunctionUpdater extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final MapFunction function;
+		private final List<Update> updates;
+
+		public FunctionUpdater(MapFunction function, List<Update> updates) {
+			this.function = function;
+			this.updates = updates;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				for (Update u: updates)
+					function.setValue(u.loc.args, u.value);
+			} catch (UnmodifiableFunctionException e) {
+				throw new EngineError(e);
+			}
+		}
+	}
+
+	/**
+	 * A {@link HashState} keeping its universes, functions and rules in
+	 * concurrent maps, and creating {@link ConcurrentMapFunction}s for
+	 * unknown functions.
+	 */
+	protected class ConcurrentState extends HashState {
+
+		@Override
+		protected <E extends Element> NameTableFunction<E> createNameTable() {
+			return new NameTableFunction<E>(new ConcurrentHashMap<String, E>());
+		}
+
+		@Override
+		protected FunctionElement createFunction() {
+			return new ConcurrentMapFunction(Element.UNDEF);
+		}
+
+		@Override
+		public synchronized void addUniverse(String name, AbstractUniverse universe) throws NameConflictException {
+			super.addUniverse(name, universe);
+			if (universe instanceof UniverseElement)
+				((UniverseElement)universe).useConcurrentSet();
+		}
+
+		@Override
+		public synchronized void addFunction(String name, FunctionElement function) throws NameConflictException {
+			super.addFunction(name, function);
+			if (function instanceof MapFunction)
+				((MapFunction)function).useConcurrentTable();
+		}
+	}
+}
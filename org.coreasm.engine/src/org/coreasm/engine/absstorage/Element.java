@@ -15,6 +15,8 @@
  
 package org.coreasm.engine.absstorage;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.coreasm.engine.ControlAPI;
 
 /** 
@@ -28,9 +30,11 @@ import org.coreasm.engine.ControlAPI;
 
  	/**
  	 * This value is used to automatically generate
- 	 * general Element names. 
+ 	 * general Element names. Elements may be created by
+ 	 * several threads at the same time, so every element
+ 	 * gets a different number.
  	 */
- 	private static long lastElementNo = 1; 
+ 	private static final AtomicLong lastElementNo = new AtomicLong(1); 
 	 
  	/**
  	 * Represents the 'undef' value in ASM.
@@ -55,8 +59,7 @@ import org.coreasm.engine.ControlAPI;
 	 *
 	 */
  	public Element() {
-		lastElementNo++;
-		this.id = lastElementNo;
+		this.id = lastElementNo.incrementAndGet();
 	}
 	
  	/**
@@ -120,6 +123,21 @@ import org.coreasm.engine.ControlAPI;
  			throw new IllegalArgumentException("Cannot compare to non-Elements.");
  	}
  	
+ 	/**
+ 	 * Hash code of elements, derived from their id. Unlike the identity hash
+ 	 * code, it does not change from one run to another as long as elements
+ 	 * are created in the same order, so hash based collections of elements
+ 	 * are then iterated in the same order. Elements that are created by
+ 	 * agents running in parallel get their ids in the order of creation,
+ 	 * which depends on thread timing.
+ 	 * 
+ 	 * @see Object#hashCode()
+ 	 */
+ 	@Override
+ 	public int hashCode() {
+ 		return (int)(id ^ (id >>> 32));
+ 	}
+ 	
 
  	/** 
  	 * Returns the denotational form of this element. 
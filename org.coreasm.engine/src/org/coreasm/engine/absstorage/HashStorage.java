@@ -15,21 +15,27 @@ package org.coreasm.engine.absstorage;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.coreasm.engine.ControlAPI;
 import org.coreasm.engine.CoreASMError;
 import org.coreasm.engine.EngineError;
+import org.coreasm.engine.EngineProperties;
 import org.coreasm.engine.EngineTools;
 import org.coreasm.engine.kernel.Kernel;
 import org.coreasm.engine.plugin.Aggregator;
@@ -63,45 +69,61 @@ public class HashStorage implements AbstractStorage {
 	// e.g., using this.setContent(...) instead of state.setContent(...).
 
 	/** Link to the ControlAPI module. */
-	private final ControlAPI capi;
+	protected final ControlAPI capi;
 
 	/** Stack of update sets 
 	 * 
-	 * We keep updates as map of locations to values (per interpreter thread) 
-	 * to increase performance.
+	 * We keep the stacked updates (per interpreter thread) in one overlay
+	 * map of locations to values, so reading a location does not depend on
+	 * the depth of the stack. The overlay also keeps the names of the plugins
+	 * that pushed states, as only the plugin that has pushed a state can pop it.
 	 */
-	private final ThreadLocal<Stack<Map<Location,Element>>> updateStack;
-	/**
-	 * Stack of the names of the plugins that pushed states
-	 * 
-	 * We want to make sure that only the plugin that has pushed the state can pop it.
+	private final ThreadLocal<StateOverlay> updateStack;
+	
+	/** 
+	 * Cache for monitored function values; a value is read only once per step,
+	 * by the first agent reading it, while other agents wait for that value
+	 */
+	private final ConcurrentMap<Location,MonitoredRead> monitoredCache;
+	private final AtomicLong monitoredCacheHits = new AtomicLong();
+	private final AtomicLong monitoredCacheMisses = new AtomicLong();
+	
+	/** 
+	 * Shared locations of nullary functions, indexed by function name. 
+	 * The array holds the locations with unknown, true and false modifiability. 
+	 * The names are identifiers of the specification, and the map is 
+	 * emptied whenever the state is cleared.
 	 */
-	private final ThreadLocal<Stack<String>> updateStackPluginNames;
+	private final ConcurrentMap<String, Location[]> nullaryLocations = new ConcurrentHashMap<String, Location[]>();
+	
+	/** Version of the state, changed whenever the state is modified */
+	private volatile long stateVersion = 0;
 	
-	/** Cache for monitored function values */
-	private final ConcurrentMap<Location,Element> monitoredCache;
+	/** whether aggregators create lean updates; see {@link EngineProperties#LEAN_UPDATES} */
+	private volatile boolean leanUpdates = false;
 	
 	/** keeps the last inconsistent updates */
 	private Set<Update> lastInconsistentUpdates; 
 	
+	/** Minimum number of update instructions to aggregate them in parallel */
+	public static final int PARALLEL_AGGREGATION_THRESHOLD = 1024;
+	
+	/** Minimum number of updates in an update set to check its consistency in parallel */
+	public static final int PARALLEL_CONSISTENCY_THRESHOLD = 4096;
+	
 	/** a cache of aggregator plugins */
 	private Set<Aggregator> aggregatorPlugins = new HashSet<Aggregator>(); 
 	
 	/** Creates a new <code>HashStorage</code>. */
 	public HashStorage(ControlAPI capi) {
 		this.capi = capi;
-		updateStack = new ThreadLocal<Stack<Map<Location,Element>>>() {
-	         protected Stack<Map<Location,Element>> initialValue() {
-	             return new Stack<Map<Location,Element>>();
-	         }
-		};
-		updateStackPluginNames = new ThreadLocal<Stack<String>>() {
+		updateStack = new ThreadLocal<StateOverlay>() {
 			@Override
-			protected Stack<String> initialValue() {
-				return new Stack<String>();
+			protected StateOverlay initialValue() {
+				return new StateOverlay();
 			}
 		};
-		monitoredCache = new ConcurrentHashMap<Location, Element>();
+		monitoredCache = new ConcurrentHashMap<Location, MonitoredRead>();
 		lastInconsistentUpdates = null;
 		
 		// the following line is commented out by Roozbeh Farahbod on 03-Oct-2006
@@ -110,7 +132,16 @@ public class HashStorage implements AbstractStorage {
 		// clearState();
 		
 		// instead of that, we have
-		state = new HashState();
+		state = createState();
+	}
+	
+	/**
+	 * Creates a new, empty state. This is used by the constructor and 
+	 * by {@link #clearState()}; subclasses may override it to provide 
+	 * a different implementation of the state.
+	 */
+	protected State createState() {
+		return new HashState();
 	}
 	
 	/**
@@ -118,32 +149,59 @@ public class HashStorage implements AbstractStorage {
 	 * @return the currently stacked updates
 	 */
 	public Map<Location, Element> getStackedUpdates() {
-		Stack<Map<Location, Element>> updateStack = getUpdateStack();
-		if (updateStack.isEmpty())
-			return Collections.emptyMap();
-		
-		Map<Location, Element> stackedUpdates = new HashMap<Location,Element>();
-		for (Map<Location, Element> stackedUpdate : updateStack)
-			stackedUpdates.putAll(stackedUpdate);
-		
-		return stackedUpdates;
+		return getUpdateStack().toMap();
 	}
 	
-	private Stack<Map<Location, Element>> getUpdateStack() {
+	protected StateOverlay getUpdateStack() {
 		return updateStack.get();
 	}
 	
-	private Stack<String> getUpdateStackPluginNames() {
-		return updateStackPluginNames.get();
+	public boolean isStateStacked() {
+		return !getUpdateStack().isEmpty();
 	}
 	
-	private boolean isStateStacked() {
-		return !getUpdateStack().isEmpty();
+	public Location getNullaryLocation(String name, Boolean isModifiable) {
+		Location[] locations = nullaryLocations.get(name);
+		if (locations == null) {
+			locations = new Location[3];
+			Location[] existing = nullaryLocations.putIfAbsent(name, locations);
+			if (existing != null)
+				locations = existing;
+		}
+		final int index = (isModifiable == null ? 0 : (isModifiable ? 1 : 2));
+		Location location = locations[index];
+		if (location == null) {
+			if (isModifiable == null)
+				location = new Location(name, ElementList.NO_ARGUMENT);
+			else
+				location = new Location(name, ElementList.NO_ARGUMENT, isModifiable);
+			// a race here only creates an equal location
+			locations[index] = location;
+		}
+		return location;
+	}
+	
+	public long getStateVersion() {
+		return stateVersion;
+	}
+	
+	public boolean hasLeanUpdates() {
+		return leanUpdates;
+	}
+	
+	public long getMonitoredCacheHits() {
+		return monitoredCacheHits.get();
+	}
+	
+	public long getMonitoredCacheMisses() {
+		return monitoredCacheMisses.get();
 	}
 	
 	public void initAbstractStorage() {
 		clearState();
 		
+		leanUpdates = EngineProperties.YES.equalsIgnoreCase(capi.getProperty(EngineProperties.LEAN_UPDATES, EngineProperties.NO));
+		
 		initAggregatorPluginCache();
 		
         capi.getScheduler().setStepCount(0);
@@ -225,10 +283,21 @@ public class HashStorage implements AbstractStorage {
 			throw new EngineError("Cannot fire updates when the state stack is not empty.");
 
 		//TODO this should be done in a transactional fashion
-		for (Update u: updateSet) {
+		applyUpdates(updateSet);
+		monitoredCache.clear();
+		stateVersion++;
+	}
+
+	/**
+	 * Sets the values of the locations of the given updates in the state.
+	 * 
+	 * @param updates updates to be applied
+	 * @throws InvalidLocationException if a location of the updates cannot be modified
+	 */
+	protected void applyUpdates(Collection<Update> updates) throws InvalidLocationException {
+		for (Update u: updates) {
 			state.setValue(u.loc, u.value);
 		}
-		monitoredCache.clear();
 	}
 
 	public Element getChosenProgram(Element agent) {
@@ -268,16 +337,22 @@ public class HashStorage implements AbstractStorage {
 //	}
 //
 	public Element getValue(Location l) throws InvalidLocationException {
-		Element e = null;
+		// values of monitored locations read in this step are known to be monitored
+		MonitoredRead cached = monitoredCache.get(l);
+		if (cached != null && !isStateStacked()) {
+			monitoredCacheHits.incrementAndGet();
+			return getMonitoredValue(l, cached);
+		}
+		
 		FunctionElement f = this.getFunction(l.name);
+		Element e = null;
 		
-		if (f != null) {
-			// Check if a monitored function is being probed
-			if (f.getFClass() == FunctionElement.FunctionClass.fcMonitored) {
-				// To make keep monitored functions consistent in one state, use caching
-				if (monitoredCache.containsKey(l)) 
-					return monitoredCache.get(l);
-			}
+		// Check if a monitored function is being probed
+		if (f != null && f.getFClass() == FunctionElement.FunctionClass.fcMonitored) {
+			e = getStackedValue(l);
+			if (e == null)
+				e = readMonitoredValue(l);
+			return (e == null ? Element.UNDEF : e);
 		}
 
 		e = this.getValueOverStack(l);
@@ -291,17 +366,93 @@ public class HashStorage implements AbstractStorage {
 		} else {
 			if (e == null) 
 				e = Element.UNDEF;
-
-			if (f.getFClass() == FunctionElement.FunctionClass.fcMonitored)
-				monitoredCache.put(l, e);
 		}
 			
 		return e;
 	}
+	
+	/*
+	 * Reads the value of the given monitored location from the state, 
+	 * or waits for the value if another agent is already reading it. 
+	 * To keep monitored functions consistent in one state, the value is
+	 * kept until the next update set is fired.
+	 */
+	private Element readMonitoredValue(final Location l) throws InvalidLocationException {
+		MonitoredRead cached = monitoredCache.get(l);
+		if (cached == null) {
+			final MonitoredRead read = new MonitoredRead(new Callable<Element>() {
+				public Element call() throws InvalidLocationException {
+					return state.getValue(l);
+				}
+			});
+			cached = monitoredCache.putIfAbsent(l, read);
+			if (cached == null) {
+				monitoredCacheMisses.incrementAndGet();
+				read.run();
+				cached = read;
+			}
+			else
+				monitoredCacheHits.incrementAndGet();
+		}
+		else
+			monitoredCacheHits.incrementAndGet();
+		return getMonitoredValue(l, cached);
+	}
+	
+	/*
+	 * Returns the value read by the given task. If the value could not be read,
+	 * the task is removed so the next read tries again, and the error is rethrown.
+	 * If the value of the location is needed to compute the value itself, it is
+	 * read again from the state instead of waiting for the task.
+	 */
+	private Element getMonitoredValue(Location l, MonitoredRead read) throws InvalidLocationException {
+		if (read.owner == Thread.currentThread())
+			return state.getValue(l);
+		try {
+			return read.get();
+		} catch (ExecutionException e) {
+			monitoredCache.remove(l, read);
+			final Throwable cause = e.getCause();
+			if (cause instanceof InvalidLocationException)
+				throw (InvalidLocationException)cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if (cause instanceof Error)
+				throw (Error)cause;
+			throw new EngineError(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EngineError("Interrupted while reading the monitored location " + l + ".");
+		}
+	}
+
+	/*
+	 * A read of a monitored location that remembers the thread reading it
+	 * until the value is known.
+	 */
+	private static final class MonitoredRead extends FutureTask<Element> {
+		volatile Thread owner = null;
+
+		MonitoredRead(Callable<Element> read) {
+			super(read);
+		}
+
+		@Override
+		public void run() {
+			owner = Thread.currentThread();
+			try {
+				super.run();
+			} finally {
+				owner = null;
+			}
+		}
+	}
 
 	public synchronized void setValue(Location l, Element v) throws InvalidLocationException {
-		if (!isStateStacked()) 
+		if (!isStateStacked()) {
 			state.setValue(l, v);
+			stateVersion++;
+		}
 		else
 			throw new EngineError("Cannot set state content when the state stack is not empty.");
 	}
@@ -322,21 +473,10 @@ public class HashStorage implements AbstractStorage {
 	 * @return the value from the stack of states or <code>null</code> if the location is not part of the stack
 	 */
 	private Element getStackedValue(Location loc) {
-		if (!isStateStacked())
+		final StateOverlay updateStack = getUpdateStack();
+		if (updateStack.isEmpty())
 			return null;
-		Stack<Map<Location, Element>> updateStack = getUpdateStack();
-
-		// Looking through the stack from the top...
-		// This relies on the Vector implementation of the stack
-		Map<Location,Element> um = null;
-		for (int i=updateStack.size()-1; i >= 0; i--) {
-			um = updateStack.get(i);
-			// Look in all the update multisets
-			Element value = um.get(loc);
-			if (value != null)
-				return value;
-		}
-		return null;
+		return updateStack.get(loc);
 	}
 
 	public void aggregateUpdates() {
@@ -377,58 +517,214 @@ public class HashStorage implements AbstractStorage {
 	}
 
 	/**
+	 * Aggregates the given update instructions. If there are at least 
+	 * {@link #PARALLEL_AGGREGATION_THRESHOLD} instructions and more than one 
+	 * processor may be used, the instructions are partitioned by location and 
+	 * the partitions are aggregated in parallel on the executor of the scheduler.
+	 * 
 	 * @see AbstractStorage#performAggregation(UpdateMultiset)
 	 */
 	public Set<Update> performAggregation(UpdateMultiset updateInsts) {
-		// instantiate engine aggregation API, and set update multiset
-		AggregationAPIImp aggAPI = new AggregationAPIImp();
-		aggAPI.setUpdateInstructions(updateInsts);
+		int partitions = 1;
+		if (updateInsts.size() >= PARALLEL_AGGREGATION_THRESHOLD)
+			partitions = capi.getScheduler().getExecutor().getParallelism();
 		
-		// for each plugin
-		for (Aggregator p: aggregatorPlugins) 
-			((Aggregator)p).aggregateUpdates(aggAPI);
-		
-		if (aggAPI.isConsistent() == false) {
-			String msg = "Inconsistent aggregated results.";
+		if (partitions < 2) {
+			// instantiate engine aggregation API, and set update multiset
+			AggregationAPIImp aggAPI = new AggregationAPIImp();
+			aggAPI.setUpdateInstructions(updateInsts);
+			
+			// for each plugin
+			for (Aggregator p: aggregatorPlugins) 
+				((Aggregator)p).aggregateUpdates(aggAPI);
 			
-			if (aggAPI.getFailedInstructions().size() > 0) {
-				msg = msg + "\nFailed instructions: " + Tools.getEOL()
-						+ EngineTools.getContextInfo("", aggAPI.getFailedInstructions(), capi.getParser(), capi.getSpec());
+			if (aggAPI.isConsistent() == false)
+				throwAggregationError(aggAPI.getFailedInstructions(), aggAPI.getUnprocessedInstructions());
+			
+			// get resultant updates from agg API
+			return aggAPI.getResultantUpdates();
+		}
+		
+		final List<PartitionAggregator> aggregators = new ArrayList<PartitionAggregator>(partitions);
+		for (UpdateMultiset partition: partitionUpdateInstructions(updateInsts, partitions))
+			aggregators.add(new PartitionAggregator(partition));
+		capi.getScheduler().getExecutor().invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(aggregators);
 			}
-			if (aggAPI.getUnprocessedInstructions().size() > 0) {
-				msg = msg + "\nUnprocessed instructions: " + Tools.getEOL()
-						+ EngineTools.getContextInfo("", aggAPI.getUnprocessedInstructions(), capi.getParser(), capi.getSpec());
+		});
+		
+		int size = 0;
+		boolean consistent = true;
+		for (PartitionAggregator a: aggregators) {
+			size += a.aggAPI.getResultantUpdates().size();
+			consistent = consistent && a.aggAPI.isConsistent();
+		}
+		
+		if (consistent == false) {
+			Collection<Update> failed = new ArrayList<Update>();
+			Collection<Update> unprocessed = new ArrayList<Update>();
+			for (PartitionAggregator a: aggregators) {
+				failed.addAll(a.aggAPI.getFailedInstructions());
+				unprocessed.addAll(a.aggAPI.getUnprocessedInstructions());
 			}
-			throw new EngineError(msg);
+			throwAggregationError(failed, unprocessed);
 		}
 		
-		// get resultant updates from agg API
-		return aggAPI.getResultantUpdates();
+		Set<Update> result = new HashSet<Update>(Math.max(16, (int)(size / .75f) + 1));
+		for (PartitionAggregator a: aggregators)
+			result.addAll(a.aggAPI.getResultantUpdates());
+		return result;
 	}
 	
-	public synchronized boolean isConsistent(Collection<Update> updateSet) {
-		Collection<Update> uSet = updateSet;
-		lastInconsistentUpdates = null;
-
-		// updateMap is a hashmap from locations to updates. 
-		// every update in the updateSet is added to the updateMap, 
-		// except, the key (aka the location) already exists. 
-		// In this case, the pair of the two conflicting updates is added
-		// to lastInconsistentUpdates and this method is immediately exited
-		// with result false. 
-		HashMap<Location, Update> updateMap = new HashMap<Location, Update>();
-		for (Update u: uSet) {
-			if (updateMap.containsKey(u.loc)) {
-				lastInconsistentUpdates = new HashSet<Update>();
-				lastInconsistentUpdates.add(u);
-				lastInconsistentUpdates.add(updateMap.get(u.loc));
-				return false;
+	/*
+	 * Splits the given update instructions into the given number of partitions.
+	 * All instructions on a location end up in the same partition. Instructions 
+	 * on the locations of a universe are kept together, as universes are 
+	 * aggregated as a whole.
+	 */
+	private List<UpdateMultiset> partitionUpdateInstructions(UpdateMultiset updateInsts, int partitions) {
+		List<UpdateMultiset> result = new ArrayList<UpdateMultiset>(partitions);
+		for (int i = 0; i < partitions; i++)
+			result.add(new UpdateMultiset(updateInsts.size() / partitions + 1));
+		
+		Map<String, Boolean> universeNames = new HashMap<String, Boolean>();
+		for (Update u: updateInsts) {
+			Boolean isUniverse = universeNames.get(u.loc.name);
+			if (isUniverse == null) {
+				isUniverse = isUniverseName(u.loc.name);
+				universeNames.put(u.loc.name, isUniverse);
 			}
-			else
-				updateMap.put(u.loc, u);
+			int hash = (isUniverse ? u.loc.name.hashCode() : u.loc.hashCode());
+			result.get((hash & Integer.MAX_VALUE) % partitions).add(u);
+		}
+		return result;
+	}
+	
+	private void throwAggregationError(Collection<Update> failed, Collection<Update> unprocessed) {
+		String msg = "Inconsistent aggregated results.";
+		
+		if (failed.size() > 0) {
+			msg = msg + "\nFailed instructions: " + Tools.getEOL()
+					+ EngineTools.getContextInfo("", failed, capi.getParser(), capi.getSpec());
 		}
+		if (unprocessed.size() > 0) {
+			msg = msg + "\nUnprocessed instructions: " + Tools.getEOL()
+					+ EngineTools.getContextInfo("", unprocessed, capi.getParser(), capi.getSpec());
+		}
+		throw new EngineError(msg);
+	}
+	
+	/*
+	 * Aggregates one partition of the update instructions 
+	 * with its own aggregation API.
+	 */
+	private class PartitionAggregator extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final UpdateMultiset updateInsts;
+		private final AggregationAPIImp aggAPI = new AggregationAPIImp();
+		
+		public PartitionAggregator(UpdateMultiset updateInsts) {
+			this.updateInsts = updateInsts;
+		}
+		
+		@Override
+		protected void compute() {
+			aggAPI.setUpdateInstructions(updateInsts);
+			for (Aggregator p: aggregatorPlugins)
+				p.aggregateUpdates(aggAPI);
+		}
+	}
+	
+	public synchronized boolean isConsistent(Collection<Update> updateSet) {
+		lastInconsistentUpdates = findInconsistentUpdates(updateSet, false);
+		return lastInconsistentUpdates == null;
+	}
+	
+	/**
+	 * Checks the given update set for consistency and fires it if it is
+	 * consistent, holding the lock of this storage for both steps. 
+	 * Large update sets are checked in parallel on the executor of the scheduler.
+	 * 
+	 * @see AbstractStorage#fireUpdateSetIfConsistent(Set)
+	 */
+	public synchronized boolean fireUpdateSetIfConsistent(Set<Update> updateSet) throws InvalidLocationException {
+		if (isStateStacked()) 
+			throw new EngineError("Cannot fire updates when the state stack is not empty.");
+		
+		lastInconsistentUpdates = findInconsistentUpdates(updateSet, 
+				updateSet.size() >= PARALLEL_CONSISTENCY_THRESHOLD 
+				&& capi.getScheduler().getExecutor().getParallelism() > 1);
+		if (lastInconsistentUpdates != null)
+			return false;
+		
+		fireUpdateSet(updateSet);
 		return true;
 	}
+	
+	/*
+	 * Returns all updates of the given update set whose location is also
+	 * updated by another update, or null if there are no such updates. 
+	 */
+	private Set<Update> findInconsistentUpdates(Collection<Update> updateSet, boolean parallel) {
+		// updateMap is a map from locations to updates. 
+		// every update in the updateSet is added to the updateMap.
+		// if the location already has an update, both updates
+		// are added to the inconsistent updates. 
+		final Collection<Update> inconsistentUpdates;
+		if (parallel) {
+			final Update[] updates = updateSet.toArray(new Update[updateSet.size()]);
+			final Map<Location, Update> updateMap = new ConcurrentHashMap<Location, Update>(updates.length);
+			final Collection<Update> conflicts = new ConcurrentLinkedQueue<Update>();
+			final int chunks = capi.getScheduler().getExecutor().getParallelism();
+			capi.getScheduler().getExecutor().invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					List<RecursiveAction> tasks = new ArrayList<RecursiveAction>(chunks);
+					for (int i = 0; i < chunks; i++) {
+						final int start = (int)((long)updates.length * i / chunks);
+						final int end = (int)((long)updates.length * (i + 1) / chunks);
+						tasks.add(new RecursiveAction() {
+							private static final long serialVersionUID = 1L;
+
+							@Override
+							protected void compute() {
+								for (int j = start; j < end; j++)
+									addUpdate(updateMap, updates[j], conflicts);
+							}
+						});
+					}
+					invokeAll(tasks);
+				}
+			});
+			inconsistentUpdates = conflicts;
+		}
+		else {
+			Map<Location, Update> updateMap = new HashMap<Location, Update>(Math.max(16, (int)(updateSet.size() / .75f) + 1));
+			inconsistentUpdates = new ArrayList<Update>();
+			for (Update u: updateSet)
+				addUpdate(updateMap, u, inconsistentUpdates);
+		}
+		
+		if (inconsistentUpdates.isEmpty())
+			return null;
+		return new HashSet<Update>(inconsistentUpdates);
+	}
+	
+	private static void addUpdate(Map<Location, Update> updateMap, Update u, Collection<Update> inconsistentUpdates) {
+		Update other = updateMap.put(u.loc, u);
+		if (other != null) {
+			inconsistentUpdates.add(u);
+			inconsistentUpdates.add(other);
+		}
+	}
 
 	public Element getNewElement() {
 		return new Element();
@@ -454,14 +750,12 @@ public class HashStorage implements AbstractStorage {
 
 	@Override
 	public void pushState(String pluginName) {
-		Map<Location,Element> updates = new HashMap<Location,Element>();
-		getUpdateStack().push(updates);
-		getUpdateStackPluginNames().push(pluginName);
+		getUpdateStack().push(pluginName);
 	}
 
 	@Override
 	public void popState(String pluginName) {
-		Stack<Map<Location, Element>> updateStack = getUpdateStack();
+		StateOverlay updateStack = getUpdateStack();
 
 		if (updateStack.isEmpty())
 			throw new CoreASMError("Cannot pop state when the state stack is empty.");
@@ -469,11 +763,10 @@ public class HashStorage implements AbstractStorage {
 		if (pluginName == null)
 			throw new NullPointerException("pluginName");
 		
-		if (!pluginName.equals(getUpdateStackPluginNames().peek()))
-			throw new CoreASMError(pluginName + " tried to pop the state which was pushed by " + getUpdateStackPluginNames().peek());
+		if (!pluginName.equals(updateStack.peekOwner()))
+			throw new CoreASMError(pluginName + " tried to pop the state which was pushed by " + updateStack.peekOwner());
 		
 		updateStack.pop();
-		getUpdateStackPluginNames().pop();
 	}
 
 	/**
@@ -485,13 +778,12 @@ public class HashStorage implements AbstractStorage {
 	 */
 	public synchronized void apply(Set<Update> updates) {
 		if (isStateStacked()) {
-			Stack<Map<Location, Element>> updateStack = getUpdateStack();
+			StateOverlay updateStack = getUpdateStack();
 
 			// adding updates to the current update set in the stack
 			// this will overwrite updates to the same location
-			Map<Location,Element> lastUpdates = updateStack.peek();
 			for (Update u: updates)
-				lastUpdates.put(u.loc, u.value);
+				updateStack.put(u.loc, u.value);
 			
 		} else
 			capi.error("Cannot apply updates when state stack is empty.");
@@ -507,6 +799,7 @@ public class HashStorage implements AbstractStorage {
 	
 	public synchronized void addUniverse(String name, AbstractUniverse universe) throws NameConflictException {
 		state.addUniverse(name, universe);
+		stateVersion++;
 	}
 
 	public Map<String,FunctionElement> getFunctions() {
@@ -519,6 +812,7 @@ public class HashStorage implements AbstractStorage {
 
 	public synchronized void addFunction(String name, FunctionElement function) throws NameConflictException {
 		state.addFunction(name, function);
+		stateVersion++;
 	}
 
 	public Map<String,RuleElement> getRules() {
@@ -531,6 +825,7 @@ public class HashStorage implements AbstractStorage {
 
 	public synchronized void addRule(String name, RuleElement rule) throws NameConflictException {
 		state.addRule(name, rule);
+		stateVersion++;
 	}
 
 	public Set<Location> getLocations() {
@@ -562,7 +857,12 @@ public class HashStorage implements AbstractStorage {
 	}
 
 	public synchronized void clearState() {
-		state = new HashState();
+		state = createState();
+		stateVersion++;
+		nullaryLocations.clear();
+		monitoredCache.clear();
+		monitoredCacheHits.set(0);
+		monitoredCacheMisses.set(0);
 		/*
 		 * The following universe and functions are moved to Kernel
 		try {
@@ -612,7 +912,14 @@ public class HashStorage implements AbstractStorage {
 		private Map<String,E>table;
 		
 		public NameTableFunction() {
-			table = new HashMap<String,E>();
+			this(new HashMap<String,E>());
+		}
+		
+		/**
+		 * Creates a new name table backed by the given map.
+		 */
+		public NameTableFunction(Map<String,E> table) {
+			this.table = table;
 		}
 		
 		public void setValue(String name, E value) {
@@ -715,14 +1022,30 @@ public class HashStorage implements AbstractStorage {
 			super();
 			lastStateId++;
 			id = lastStateId;
-			universeElements = new NameTableFunction<AbstractUniverse>();
-			functionElements = new NameTableFunction<FunctionElement>();
-			ruleElements = new NameTableFunction<RuleElement>();
+			universeElements = this.<AbstractUniverse>createNameTable();
+			functionElements = this.<FunctionElement>createNameTable();
+			ruleElements = this.<RuleElement>createNameTable();
 			functionElements.setValue(UNIVERSE_ELEMENT_FUNCTION_NAME, universeElements);
 			functionElements.setValue(RULE_ELEMENT_FUNCTION_NAME, ruleElements);
 			functionElements.setValue(FUNCTION_ELEMENT_FUNCTION_NAME, functionElements);
 		}
 
+		/**
+		 * Creates a new name table to hold the universes, functions or 
+		 * rules of this state.
+		 */
+		protected <E extends Element> NameTableFunction<E> createNameTable() {
+			return new NameTableFunction<E>();
+		}
+		
+		/**
+		 * Creates the function that is added to this state when a 
+		 * location of an unknown function is set.
+		 */
+		protected FunctionElement createFunction() {
+			return new MapFunction(Element.UNDEF);
+		}
+
 		public Map<String,AbstractUniverse> getUniverses() {
 			return universeElements.getTableClone();
 		}
@@ -810,7 +1133,7 @@ public class HashStorage implements AbstractStorage {
 		 */
 		public synchronized void setValue(Location l, Element v) throws InvalidLocationException {
 			if (!nameExists(l.name)) {
-		        FunctionElement f = new MapFunction(Element.UNDEF);
+		        FunctionElement f = createFunction();
 	            try {
 					addFunction(l.name, f);
 				} catch (NameConflictException e) {
@@ -876,7 +1199,7 @@ public class HashStorage implements AbstractStorage {
 			id = (Element)universeElements.getValue(name);
 			// Fix for consistency issues with UniverseElements in sequential rules
 			if (id != null) {
-				Element e = getStackedValue(new Location(name, ElementList.NO_ARGUMENT));
+				Element e = getStackedValue(getNullaryLocation(name, null));
 				if (e instanceof UniverseElement)
 					id = (UniverseElement)e;
 			}
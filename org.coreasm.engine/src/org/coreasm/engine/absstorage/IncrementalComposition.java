@@ -0,0 +1,72 @@
+/*
+ * IncrementalComposition.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.absstorage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes the sequential composition of a sequence of update multisets,
+ * e.g., of the iterations of a loop, one update multiset at a time.
+ * <p>
+ * The composed updates are kept by location. Since composition works
+ * location by location, composing the next update multiset only has to
+ * compose it with the composed updates of the locations it updates; the
+ * updates of all other locations stay as they are. Thus, every step takes
+ * time proportional to the size of the next update multiset rather than
+ * to the size of all updates composed so far.
+ *
+ * @see AbstractStorage#compose(UpdateMultiset, UpdateMultiset)
+ */
+public class IncrementalComposition {
+
+	private final AbstractStorage storage;
+	private final Map<Location, UpdateMultiset> updates = new HashMap<Location, UpdateMultiset>();
+
+	/**
+	 * Creates a new composition of no update multisets, which uses the
+	 * given storage to compose updates.
+	 */
+	public IncrementalComposition(AbstractStorage storage) {
+		this.storage = storage;
+	}
+
+	/**
+	 * Composes the updates composed so far with the given updates.
+	 */
+	public void compose(UpdateMultiset next) {
+		if (next.isEmpty())
+			return;
+		final UpdateMultiset previous = new UpdateMultiset();
+		for (Update u: next) {
+			final UpdateMultiset locUpdates = updates.remove(u.loc);
+			if (locUpdates != null)
+				previous.addAll(locUpdates);
+		}
+		for (Update u: storage.compose(previous, next)) {
+			UpdateMultiset locUpdates = updates.get(u.loc);
+			if (locUpdates == null) {
+				locUpdates = new UpdateMultiset();
+				updates.put(u.loc, locUpdates);
+			}
+			locUpdates.add(u);
+		}
+	}
+
+	/**
+	 * Returns the updates composed so far.
+	 */
+	public UpdateMultiset getUpdates() {
+		final UpdateMultiset result = new UpdateMultiset();
+		for (UpdateMultiset locUpdates: updates.values())
+			result.addAll(locUpdates);
+		return result;
+	}
+}
@@ -18,6 +18,9 @@ import java.util.List;
 
 /** 
  *	Implements LOCATION elements
+ *  <p>
+ *  Locations are immutable and cache their hash code. Locations of nullary
+ *  functions can be shared using {@link AbstractStorage#getNullaryLocation(String, Boolean)}.
  *   
  *  @author  Roozbeh Farahbod
  *  
@@ -37,6 +40,9 @@ public class Location {
 	/** if not null, indicates whether this location is modifiable or not. */
 	public final Boolean isModifiable;
 	
+	/** the cached hash code of this location */
+	private final int hash;
+	
 	/**
 	 * Creates a new location with the given
 	 * function and agruments.
@@ -49,9 +55,10 @@ public class Location {
 			throw new NullPointerException("Name of a location cannot be null.");
 		if (args == null)
 			throw new NullPointerException("Arguments of a location cannot be null.");
-		this.args = ElementList.create(args);
+		this.args = (args instanceof ElementList ? (ElementList)args : ElementList.create(args));
 		this.name = name;
 		this.isModifiable = null;
+		this.hash = computeHashCode();
 	}
 
 	/**
@@ -67,9 +74,10 @@ public class Location {
 			throw new NullPointerException("Name of a location cannot be null.");
 		if (args == null)
 			throw new NullPointerException("Arguments of a location cannot be null.");
-		this.args = ElementList.create(args);
+		this.args = (args instanceof ElementList ? (ElementList)args : ElementList.create(args));
 		this.name = name;
 		this.isModifiable = isModifiable;
+		this.hash = computeHashCode();
 	}
 
 	/**
@@ -88,6 +96,10 @@ public class Location {
 
 	@Override
 	public int hashCode() {
+		return hash;
+	}
+
+	private int computeHashCode() {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((name == null) ? 0 : name.hashCode());
@@ -104,6 +116,8 @@ public class Location {
 		if (getClass() != obj.getClass())
 			return false;
 		Location other = (Location) obj;
+		if (hash != other.hash)
+			return false;
 		if (name == null) {
 			if (other.name != null)
 				return false;
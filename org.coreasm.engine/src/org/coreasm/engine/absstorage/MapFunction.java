@@ -19,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** 
  * This class implements of {@link FunctionElement} with <code>HashMap<code> and
@@ -33,8 +34,9 @@ public class MapFunction extends FunctionElement {
     /**
      * Location-value table of this function.
      * 
+     * @see #createTable()
      */
-    protected HashMap<ElementList,Element> table = new HashMap<ElementList,Element>();
+    protected Map<ElementList,Element> table = createTable();
         
     @Override
 	public String toString() {
@@ -55,6 +57,25 @@ public class MapFunction extends FunctionElement {
 		super(defaultValue);
 	}
 	
+	/**
+	 * Creates the location-value table of this function. This method
+	 * is called once, when the function is created.
+	 */
+	protected Map<ElementList,Element> createTable() {
+		return new HashMap<ElementList,Element>();
+	}
+	
+	/**
+	 * Replaces the location-value table of this function by a 
+	 * <code>ConcurrentHashMap</code> holding the same values, unless
+	 * it already is one. This is used by {@link ConcurrentStorage} for
+	 * the functions that are provided by plugins.
+	 */
+	void useConcurrentTable() {
+		if (!(table instanceof ConcurrentHashMap))
+			table = new ConcurrentHashMap<ElementList,Element>(table);
+	}
+	
 	/**
 	 * Returns the value of this function for the given
 	 * list of arguments. 
@@ -101,11 +122,10 @@ public class MapFunction extends FunctionElement {
 	 */
 	public Set<Location> getLocations(String name) {
 		Set<Location> locSet = new HashSet<Location>();
-		Set<ElementList> argSet = table.keySet();
 		Location loc = null;
-		for (ElementList l : argSet) {
-			if (!table.get(l).equals(defaultValue)) {
-				loc = new Location(name, l);
+		for (Map.Entry<ElementList,Element> e : table.entrySet()) {
+			if (!e.getValue().equals(defaultValue)) {
+				loc = new Location(name, e.getKey());
 				locSet.add(loc);
 			}
 		}
@@ -128,9 +148,8 @@ public class MapFunction extends FunctionElement {
 		table.clear();
 	}
 	
-	@SuppressWarnings("unchecked")
 	public Map<ElementList, Element> getTable() {
-		return (Map<ElementList, Element>)table.clone();
+		return new HashMap<ElementList, Element>(table);
 	}
 }
 
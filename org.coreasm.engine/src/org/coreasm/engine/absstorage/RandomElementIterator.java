@@ -5,17 +5,33 @@ import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 import org.coreasm.util.Tools;
 
+/**
+ * Iterates over the elements of an enumerable in a random order.
+ */
 public class RandomElementIterator implements Iterator<Element> {
+	private final Random random;
 	private final int size;
 	private final List<Element> elements;
 	private BitSet considered;
 	private int numConsidered;
 	private List<Element> remaining;
 	
+	/**
+	 * Creates an iterator using the shared generator of {@link Tools}.
+	 */
 	public RandomElementIterator(Enumerable enumerable) {
+		this(enumerable, null);
+	}
+	
+	/**
+	 * Creates an iterator using the given generator of random numbers.
+	 */
+	public RandomElementIterator(Enumerable enumerable, Random random) {
+		this.random = random;
 		if (enumerable.supportsIndexedView()) {
 			elements = enumerable.getIndexedView();
 			if (enumerable.size() > 0)
@@ -47,15 +63,21 @@ public class RandomElementIterator implements Iterator<Element> {
 				considered = null;
 			}
 			else {
-				int i = Tools.randInt(size);
+				int i = randInt(size);
 				while (considered.get(i))
-					i = Tools.randInt(size);
+					i = randInt(size);
 				considered.set(i);
 				numConsidered++;
 				return elements.get(i);
 			}
 		}
 		assert remaining != null;
-		return remaining.remove(Tools.randInt(remaining.size()));
+		return remaining.remove(randInt(remaining.size()));
+	}
+
+	private int randInt(int max) {
+		if (random == null)
+			return Tools.randInt(max);
+		return random.nextInt(max);
 	}
 }
@@ -19,6 +19,7 @@ import java.util.List;
 import java.util.ArrayList;
 
 import org.coreasm.engine.interpreter.ASTNode;
+import org.coreasm.engine.interpreter.Evaluator;
 
 /** 
  *	This class implements a named ASM rule.
@@ -46,6 +47,9 @@ public class RuleElement extends Element {
 	/** Name of the rule at the time of declaration. */
 	public final String name;
 	
+	/** Evaluator of the body in the fast interpreter mode; built on first use */
+	private volatile Evaluator evaluator = null;
+	
 	/**
 	 * Creates a new rule with a 
 	 * list of parameter tokens (<code>String</code>)
@@ -94,6 +98,7 @@ public class RuleElement extends Element {
 			throw new IllegalArgumentException("Body of a rule cannot be null.");
 		else
 			this.body = body;
+		this.evaluator = null;
 	}
 
 	/** Returns the original name of this rule */
@@ -123,6 +128,23 @@ public class RuleElement extends Element {
 			this.param = Collections.emptyList();
 		else
 			this.param = Collections.unmodifiableList(new ArrayList<String>(param));
+		this.evaluator = null;
+	}
+	
+	/**
+	 * Returns the evaluator of the body of this rule, or <code>null</code> 
+	 * if it has not been built yet.
+	 */
+	public Evaluator getEvaluator() {
+		return evaluator;
+	}
+	
+	/**
+	 * Sets the evaluator of the body of this rule; it is dropped when the 
+	 * body or the parameters change.
+	 */
+	public void setEvaluator(Evaluator evaluator) {
+		this.evaluator = evaluator;
 	}
 
 	public String toString() {
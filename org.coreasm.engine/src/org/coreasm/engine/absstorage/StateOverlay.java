@@ -0,0 +1,150 @@
+/*
+ * StateOverlay.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.absstorage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * The stack of states pushed by one thread (e.g., by <code>seq</code>
+ * blocks), kept as a single map from locations to their values.
+ * <p>
+ * Every pushed state is a layer of the overlay. A location written in
+ * several layers keeps one value per layer, the topmost first, so looking
+ * up the current value of a location takes one hash lookup whatever the
+ * number of layers. Popping a layer takes time proportional to the number
+ * of locations written in it, and a layer without writes does not
+ * allocate anything.
+ * <p>
+ * This class is not thread-safe; every thread has its own overlay.
+ *
+ * @see HashStorage#pushState(String)
+ */
+public class StateOverlay {
+
+	private final Map<Location, Value> values = new HashMap<Location, Value>();
+
+	/* names of the plugins that pushed the layers, from the bottom to the top */
+	private final List<String> owners = new ArrayList<String>();
+
+	/* locations written in each layer; the lists are created on the first write and reused */
+	private final List<List<Location>> written = new ArrayList<List<Location>>();
+
+	/**
+	 * Returns <code>true</code> if there are no layers.
+	 */
+	public boolean isEmpty() {
+		return owners.isEmpty();
+	}
+
+	/**
+	 * Returns the number of layers.
+	 */
+	public int size() {
+		return owners.size();
+	}
+
+	/**
+	 * Pushes a new, empty layer on behalf of the given plugin.
+	 */
+	public void push(String owner) {
+		owners.add(owner);
+	}
+
+	/**
+	 * Returns the name of the plugin that pushed the top layer.
+	 */
+	public String peekOwner() {
+		return owners.get(owners.size() - 1);
+	}
+
+	/**
+	 * Removes the top layer and the values written in it.
+	 */
+	public void pop() {
+		final int depth = owners.size();
+		owners.remove(depth - 1);
+		if (written.size() < depth)
+			return;
+		final List<Location> locations = written.get(depth - 1);
+		if (locations == null)
+			return;
+		for (Location l: locations) {
+			final Value value = values.get(l);
+			if (value.below == null)
+				values.remove(l);
+			else
+				values.put(l, value.below);
+		}
+		locations.clear();
+	}
+
+	/**
+	 * Returns the value of the given location in the topmost layer that
+	 * wrote it, or <code>null</code> if no layer wrote it.
+	 */
+	public Element get(Location l) {
+		final Value value = values.get(l);
+		return (value == null ? null : value.element);
+	}
+
+	/**
+	 * Sets the value of the given location in the top layer.
+	 */
+	public void put(Location l, Element element) {
+		final int depth = owners.size();
+		final Value value = values.get(l);
+		if (value != null && value.depth == depth) {
+			value.element = element;
+			return;
+		}
+		values.put(l, new Value(depth, element, value));
+		while (written.size() < depth)
+			written.add(null);
+		List<Location> locations = written.get(depth - 1);
+		if (locations == null) {
+			locations = new ArrayList<Location>();
+			written.set(depth - 1, locations);
+		}
+		locations.add(l);
+	}
+
+	/**
+	 * Returns the current values of all locations written in any layer.
+	 */
+	public Map<Location, Element> toMap() {
+		if (values.isEmpty())
+			return Collections.emptyMap();
+		final Map<Location, Element> result = new HashMap<Location, Element>();
+		for (Entry<Location, Value> e: values.entrySet())
+			result.put(e.getKey(), e.getValue().element);
+		return result;
+	}
+
+	/*
+	 * The value of a location in one layer, linked to its value in the
+	 * next lower layer that wrote it.
+	 */
+	private static final class Value {
+		final int depth;
+		Element element;
+		final Value below;
+
+		Value(int depth, Element element, Value below) {
+			this.depth = depth;
+			this.element = element;
+			this.below = below;
+		}
+	}
+}
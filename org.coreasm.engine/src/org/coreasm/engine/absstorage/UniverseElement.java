@@ -16,9 +16,11 @@ package org.coreasm.engine.absstorage;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** 
  *	The element representing a Universe in the state.
@@ -31,9 +33,9 @@ public class UniverseElement extends AbstractUniverse implements Enumerable {
 	protected MapFunction universeFunction;
 	*/
 	
-	protected final Set<Element> elements;
+	protected Set<Element> elements;
 	
-	protected List<Element> enumerationCache = null; 
+	protected volatile List<Element> enumerationCache = null; 
 	
 	/**
 	 * Creates a new Universe. 
@@ -48,6 +50,17 @@ public class UniverseElement extends AbstractUniverse implements Enumerable {
 		this.elements = new HashSet<Element>(universe.elements);
 	}
 
+	/**
+	 * Replaces the set of elements of this universe by a concurrent
+	 * set holding the same elements. This is used by {@link ConcurrentStorage}
+	 * for the universes that are provided by plugins.
+	 */
+	void useConcurrentSet() {
+		Set<Element> set = Collections.newSetFromMap(new ConcurrentHashMap<Element, Boolean>());
+		set.addAll(elements);
+		elements = set;
+	}
+
 	/** 
 	 * Provides a set of all the Elements in this universe.
 	 * 
@@ -117,10 +130,12 @@ public class UniverseElement extends AbstractUniverse implements Enumerable {
 
 	public List<Element> getIndexedView()
 			throws UnsupportedOperationException {
-		if (enumerationCache == null) {
-			enumerationCache = new ArrayList<Element>(elements);
+		List<Element> cache = enumerationCache;
+		if (cache == null) {
+			cache = new ArrayList<Element>(elements);
+			enumerationCache = cache;
 		} 
-		return enumerationCache;
+		return cache;
 	}
 
 	public boolean supportsIndexedView() {
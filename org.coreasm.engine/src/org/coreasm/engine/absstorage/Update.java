@@ -14,8 +14,13 @@
  
 package org.coreasm.engine.absstorage;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Set;
 
 import org.coreasm.engine.interpreter.ScannerInfo;
@@ -23,6 +28,13 @@ import org.coreasm.engine.interpreter.ScannerInfo;
 /** 
  *	Defines an update instruction. It consists of a <i>location</i>, a <i>value</i>,
  *  and an <i>update action</i>.
+ *  <p>
+ *  An update also knows the agents that produced it and the nodes of the 
+ *  specification it originates from. An update of a single agent keeps 
+ *  references to the agent and the node only. With lean updates (see 
+ *  {@link org.coreasm.engine.EngineProperties#LEAN_UPDATES}), the result of an
+ *  aggregation keeps the updates it was aggregated from, and their agents and
+ *  nodes are only collected when they are asked for, e.g. to report an error.
  *   
  *  @author  Roozbeh Farahbod
  */
@@ -36,11 +48,19 @@ public class Update {
 	public final Element value;
 	public final String action;
 	
-	/** contributing agents */
-	public final Set<Element> agents;
-
-	/** originating nodes */
-	public final Set<ScannerInfo> sources;
+	/** the contributing agent and the originating node, if there is at most one of each */
+	private final Element agent;
+	private final ScannerInfo source;
+	
+	/** contributing agents and originating nodes, if there are more than one; otherwise null */
+	private final Set<Element> agents;
+	private final Set<ScannerInfo> sources;
+	
+	/** the updates this update was aggregated from, if their provenance is collected lazily; otherwise null */
+	private final Update[] contributors;
+	
+	/** Class of the unmodifiable sets that can be shared between updates */
+	private static final Class<?> UNMODIFIABLE_SET_CLASS = Collections.unmodifiableSet(Collections.emptySet()).getClass();
 	
 	/** 
 	 * Creates a new update instructions.
@@ -58,14 +78,11 @@ public class Update {
 		this.loc = loc;
 		this.value = value;
 		this.action = action;
-		if (agents == null)
-			this.agents = newAgentSet();
-		else
-			this.agents = Collections.unmodifiableSet(agents);
-		if (sources == null)
-			this.sources = newSourceSet();
-		else
-			this.sources = Collections.unmodifiableSet(sources);
+		this.agent = singleElement(agents);
+		this.source = singleElement(sources);
+		this.agents = (agents == null || agents.size() <= 1) ? null : immutableSet(agents);
+		this.sources = (sources == null || sources.size() <= 1) ? null : immutableSet(sources);
+		this.contributors = null;
 	}
 	
 	/** 
@@ -83,15 +100,119 @@ public class Update {
 		this.loc = loc;
 		this.value = value;
 		this.action = action;
+		this.agent = agent;
+		this.source = source;
+		this.agents = null;
+		this.sources = null;
+		this.contributors = null;
+	}
+	
+	/*
+	 * Creates a new update instruction whose agents and sources are those of 
+	 * the given updates, collected when they are asked for.
+	 */
+	private Update(Location loc, Element value, String action, Update[] contributors) {
+		if (loc == null || value == null || action == null)
+			throw new NullPointerException("Cannot create an update instruction with a null location, value, or action.");
+		this.loc = loc;
+		this.value = value;
+		this.action = action;
+		this.agent = null;
+		this.source = null;
+		this.agents = null;
+		this.sources = null;
+		this.contributors = contributors;
+	}
+	
+	/**
+	 * Creates the update instruction resulting from the aggregation or
+	 * composition of the given updates, produced by their agents at their
+	 * sources. If <code>lean</code> is <code>true</code>, the new update keeps
+	 * the given updates and collects their agents and sources only when they
+	 * are asked for; otherwise, they are collected right away.
+	 * 
+	 * @param loc location of the update
+	 * @param value new value
+	 * @param action action to be performed
+	 * @param updates the updates that together produced this update
+	 * @param lean whether the agents and sources are collected lazily
+	 * 
+	 * @see AbstractStorage#hasLeanUpdates()
+	 */
+	public static Update aggregate(Location loc, Element value, String action, Collection<Update> updates, boolean lean) {
+		if (lean)
+			return new Update(loc, value, action, updates.toArray(new Update[updates.size()]));
+		Set<Element> agents = new HashSet<Element>();
+		Set<ScannerInfo> sources = new HashSet<ScannerInfo>();
+		collect(updates, agents, sources);
+		return new Update(loc, value, action, agents, sources);
+	}
+	
+	/**
+	 * Returns the agents that contributed to this update. 
+	 * The returned set cannot be modified.
+	 */
+	public Set<Element> getAgents() {
+		if (agents != null)
+			return agents;
+		if (contributors != null) {
+			Set<Element> result = new HashSet<Element>();
+			collect(Arrays.asList(contributors), result, null);
+			return Collections.unmodifiableSet(result);
+		}
 		if (agent == null)
-			//throw new NullPointerException("Cannot create an update instruction with a null agent.");
-			this.agents = newAgentSet();
-		else
-			this.agents = newAgentSet(agent);
+			return Collections.emptySet();
+		return Collections.singleton(agent);
+	}
+	
+	/**
+	 * Returns the nodes of the specification that together generated 
+	 * this update. The returned set cannot be modified.
+	 */
+	public Set<ScannerInfo> getSources() {
+		if (sources != null)
+			return sources;
+		if (contributors != null) {
+			Set<ScannerInfo> result = new HashSet<ScannerInfo>();
+			collect(Arrays.asList(contributors), null, result);
+			return Collections.unmodifiableSet(result);
+		}
 		if (source == null)
-			this.sources = newSourceSet();
-		else
-			this.sources = newSourceSet(source);
+			return Collections.emptySet();
+		return source.asSet();
+	}
+	
+	/*
+	 * Adds the agents and the originating nodes of the given updates to the
+	 * given sets; either set can be null. Lean updates can be nested as deep
+	 * as the steps of a sequence or a loop, so they are walked iteratively,
+	 * and each of them only once.
+	 */
+	private static void collect(Collection<Update> updates, Set<Element> agents, Set<ScannerInfo> sources) {
+		Deque<Update> pending = new ArrayDeque<Update>(updates);
+		Set<Update> visited = null;
+		while (!pending.isEmpty()) {
+			Update u = pending.pop();
+			if (u.contributors != null) {
+				if (visited == null)
+					visited = Collections.newSetFromMap(new IdentityHashMap<Update, Boolean>());
+				if (visited.add(u))
+					Collections.addAll(pending, u.contributors);
+				continue;
+			}
+			if (agents != null) {
+				if (u.agents != null)
+					agents.addAll(u.agents);
+				else if (u.agent != null)
+					agents.add(u.agent);
+			}
+			if (sources != null) {
+				if (u.sources != null)
+					sources.addAll(u.sources);
+				else if (u.source != null)
+					sources.add(u.source);
+			}
+		}
 	}
 	
 	/**
@@ -134,19 +255,23 @@ public class Update {
 	}
 	
 	/*
-	 * Creates a new set of agents (elements in general) with the given elements.
+	 * Returns the only element of the given set, or null if the set
+	 * does not have exactly one element.
 	 */
-	private HashSet<Element> newAgentSet(Element ... agents) {
-		HashSet<Element> result = new HashSet<Element>();
-		for (Element a: agents)
-			result.add(a);
-		return result;
+	private static <T> T singleElement(Set<T> set) {
+		if (set == null || set.size() != 1)
+			return null;
+		return set.iterator().next();
 	}
 	
-	private HashSet<ScannerInfo> newSourceSet(ScannerInfo ... sources) {
-		HashSet<ScannerInfo> result = new HashSet<ScannerInfo>();
-		for (ScannerInfo a: sources)
-			result.add(a);
-		return result;
+	/*
+	 * Returns an unmodifiable view of the given set. Sets that are already
+	 * unmodifiable, such as the provenance of another update, are shared 
+	 * as they are.
+	 */
+	private static <T> Set<T> immutableSet(Set<T> set) {
+		if (set.getClass() == UNMODIFIABLE_SET_CLASS)
+			return set;
+		return Collections.unmodifiableSet(set);
 	}
 }
@@ -34,6 +34,16 @@ public class UpdateMultiset extends HashMultiset<Update> {
 		super();
 	}
 
+	/**
+	 * Creates a new empty update multiset with room for 
+	 * <code>initialCapacity</code> distinct updates.
+	 * 
+	 * @see HashMultiset#HashMultiset(int)
+	 */
+	public UpdateMultiset(int initialCapacity) {
+		super(initialCapacity);
+	}
+
 	/**
 	 * Creates a new update multiset with the given updates.
 	 * 
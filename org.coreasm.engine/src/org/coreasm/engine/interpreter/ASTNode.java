@@ -27,6 +27,8 @@ import java.util.Set;
 import org.coreasm.engine.absstorage.Element;
 import org.coreasm.engine.absstorage.Location;
 import org.coreasm.engine.absstorage.UpdateMultiset;
+import org.coreasm.engine.kernel.Kernel;
+import org.coreasm.engine.plugin.Plugin;
 
 /** 
  * Represents nodes of the abstract syntax tree.
@@ -53,11 +55,34 @@ public class ASTNode extends Node implements Serializable {
     public static final String TERNARY_OPERATOR_CLASS = "TernaryOperator";
     public static final String INDEX_OPERATOR_CLASS = "IndexOperator";
     
+    /**
+     * Kinds of grammar classes. The interpreter switches over the kind 
+     * of a node instead of comparing its grammar class with every constant.
+     */
+    public enum ClassKind { ID, RULE, EXPRESSION, FUNCTION_RULE, DECLARATION, OPERATOR, OTHER }
+    
+    /**
+     * Kinds of grammar rules handled by the kernel interpreter.
+     */
+    public enum RuleKind { FUNCTION_RULE_TERM, RULE_ELEMENT_TERM, IMPORT_RULE, OTHER }
+    
 	/** grammar class of this node */
 	protected String grammarClass;
 	
 	/** name of the grammar rule associated with this node */
 	protected String grammarRule;
+	
+	/** kind of the grammar class; computed on first use */
+	private transient ClassKind classKind = null;
+	
+	/** kind of the grammar rule; computed on first use */
+	private transient RuleKind ruleKind = null;
+	
+	/** the plugin interpreting this node; resolved by the interpreter on first use */
+	private transient Plugin plugin = null;
+	
+	/** operator dispatch cache shared with the duplicates of this node */
+	private transient OperatorDispatchCache operatorCache = null;
 
 	/** updates associated with this node */
 	protected UpdateMultiset updates;
@@ -119,6 +144,11 @@ public class ASTNode extends Node implements Serializable {
 		this(node.pluginName, node.grammarClass, 
 				node.grammarRule, 
 				node.token, node.scannerInfo, node.concreteType);
+		this.classKind = node.classKind;
+		this.ruleKind = node.ruleKind;
+		this.plugin = node.plugin;
+		if (node.getClassKind() == ClassKind.OPERATOR)
+			this.operatorCache = node.getOperatorCache();
 	}
 	
 	/**
@@ -140,6 +170,7 @@ public class ASTNode extends Node implements Serializable {
 	 */
 	public void setGrammarClass(String grammarClass) {
 		this.grammarClass = grammarClass;
+		this.classKind = null;
 	}
 
 	/**
@@ -147,6 +178,90 @@ public class ASTNode extends Node implements Serializable {
 	 */
 	public void setGrammarRule(String grammarRule) {
 		this.grammarRule = grammarRule;
+		this.ruleKind = null;
+	}
+	
+	@Override
+	public void setPluginName(String pluginName) {
+		super.setPluginName(pluginName);
+		this.plugin = null;
+	}
+	
+	/**
+	 * Returns the kind of the grammar class of this node.
+	 */
+	public ClassKind getClassKind() {
+		ClassKind kind = classKind;
+		if (kind == null) {
+			if (FUNCTION_RULE_CLASS.equals(grammarClass))
+				kind = ClassKind.FUNCTION_RULE;
+			else if (EXPRESSION_CLASS.equals(grammarClass))
+				kind = ClassKind.EXPRESSION;
+			else if (UNARY_OPERATOR_CLASS.equals(grammarClass) 
+					|| BINARY_OPERATOR_CLASS.equals(grammarClass)
+					|| TERNARY_OPERATOR_CLASS.equals(grammarClass)
+					|| INDEX_OPERATOR_CLASS.equals(grammarClass))
+				kind = ClassKind.OPERATOR;
+			else if (RULE_CLASS.equals(grammarClass))
+				kind = ClassKind.RULE;
+			else if (ID_CLASS.equals(grammarClass))
+				kind = ClassKind.ID;
+			else if (DECLARATION_CLASS.equals(grammarClass))
+				kind = ClassKind.DECLARATION;
+			else
+				kind = ClassKind.OTHER;
+			classKind = kind;
+		}
+		return kind;
+	}
+	
+	/**
+	 * Returns the kind of the grammar rule of this node.
+	 */
+	public RuleKind getRuleKind() {
+		RuleKind kind = ruleKind;
+		if (kind == null) {
+			if (Kernel.GR_FUNCTION_RULE_TERM.equals(grammarRule))
+				kind = RuleKind.FUNCTION_RULE_TERM;
+			else if (Kernel.GR_RULEELEMENT_TERM.equals(grammarRule))
+				kind = RuleKind.RULE_ELEMENT_TERM;
+			else if (Kernel.GR_IMPORT_RULE.equals(grammarRule))
+				kind = RuleKind.IMPORT_RULE;
+			else
+				kind = RuleKind.OTHER;
+			ruleKind = kind;
+		}
+		return kind;
+	}
+	
+	/**
+	 * Returns the plugin interpreting this node, or <code>null</code>
+	 * if it is not resolved yet.
+	 */
+	public Plugin getPlugin() {
+		return plugin;
+	}
+	
+	/**
+	 * Returns the operator dispatch cache of this node. 
+	 */
+	OperatorDispatchCache getOperatorCache() {
+		OperatorDispatchCache cache = operatorCache;
+		if (cache == null) {
+			cache = new OperatorDispatchCache();
+			operatorCache = cache;
+		}
+		return cache;
+	}
+	
+	/**
+	 * Sets the plugin interpreting this node, so it does not have to be
+	 * looked up by name every time this node is interpreted.
+	 * 
+	 * @param plugin the plugin named by {@link #getPluginName()}
+	 */
+	public void setPlugin(Plugin plugin) {
+		this.plugin = plugin;
 	}
 
 	/**
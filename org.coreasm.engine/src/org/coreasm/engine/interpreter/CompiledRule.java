@@ -0,0 +1,80 @@
+/*
+ * CompiledRule.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.interpreter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.coreasm.engine.ControlAPI;
+import org.coreasm.engine.EngineError;
+import org.coreasm.engine.absstorage.RuleElement;
+import org.coreasm.engine.kernel.MacroCallRuleNode;
+
+/**
+ * The evaluator of the body of a rule, built once per rule. The parameters
+ * of the rule are evaluated by the evaluators of the arguments of a call.
+ * A rule in which a parameter depends on the syntax of its argument, i.e.
+ * is called as a rule or applied to arguments, has no evaluator and is
+ * called step by step.
+ */
+final class CompiledRule implements Evaluator {
+
+	/** evaluator of the body, or null if the rule is called step by step */
+	final Evaluator body;
+
+	/** function and rule terms of the body other than the parameters, by name */
+	final Map<String, ASTNode> names;
+
+	private CompiledRule(Evaluator body, Map<String, ASTNode> names) {
+		this.body = body;
+		this.names = names;
+	}
+
+	/*
+	 * Builds the evaluator of the body of the given rule.
+	 */
+	static CompiledRule build(ControlAPI capi, RuleElement rule) {
+		final List<String> params = rule.getParam();
+		final Map<String, ASTNode> names = new HashMap<String, ASTNode>();
+		if (!collectNames(rule.getBody(), params, names))
+			return new CompiledRule(null, names);
+		return new CompiledRule(new EvaluatorBuilder(capi, params).build(rule.getBody()), names);
+	}
+
+	/*
+	 * Collects the names of the function and rule terms of the given tree
+	 * that are not parameters; returns false if an occurrence of a
+	 * parameter depends on the syntax of its argument.
+	 */
+	private static boolean collectNames(ASTNode node, List<String> params, Map<String, ASTNode> names) {
+		for (ASTNode child = node.getFirst(); child != null; child = child.getNext())
+			if (!collectNames(child, params, names))
+				return false;
+		final String name = InterpreterImp.getTermName(node);
+		if (name != null) {
+			if (params.contains(name)) {
+				if (!(node instanceof FunctionRuleTermNode)
+						|| ((FunctionRuleTermNode)node).hasArguments()
+						|| node.getParent() instanceof MacroCallRuleNode)
+					return false;
+			}
+			else if (!names.containsKey(name))
+				names.put(name, node);
+		}
+		return true;
+	}
+
+	public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+		if (body == null)
+			throw new EngineError("The rule is not compiled.");
+		return body.evaluate(interpreter);
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Evaluation.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.interpreter;
+
+import org.coreasm.engine.absstorage.Element;
+import org.coreasm.engine.absstorage.Location;
+import org.coreasm.engine.absstorage.UpdateMultiset;
+
+/**
+ * The location, updates and value an {@link Evaluator} computed for a node;
+ * i.e., what the step by step interpretation associates with the node.
+ * Terms usually have no updates and rules have no value.
+ */
+public final class Evaluation {
+
+	private final Location location;
+	private final UpdateMultiset updates;
+	private final Element value;
+
+	/**
+	 * Creates an evaluation with the given location, updates and value,
+	 * any of which may be <code>null</code>.
+	 */
+	public Evaluation(Location location, UpdateMultiset updates, Element value) {
+		this.location = location;
+		this.updates = updates;
+		this.value = value;
+	}
+
+	/**
+	 * Returns the evaluation of a term that has the given value but no location.
+	 */
+	public static Evaluation ofValue(Element value) {
+		return new Evaluation(null, null, value);
+	}
+
+	/**
+	 * Returns the evaluation of a rule that produced the given updates.
+	 */
+	public static Evaluation ofUpdates(UpdateMultiset updates) {
+		return new Evaluation(null, updates, null);
+	}
+
+	/**
+	 * Returns the location, or <code>null</code> if there is none.
+	 */
+	public Location getLocation() {
+		return location;
+	}
+
+	/**
+	 * Returns the updates, or <code>null</code> if there are none; e.g., for a term.
+	 */
+	public UpdateMultiset getUpdates() {
+		return updates;
+	}
+
+	/**
+	 * Returns the value, or <code>null</code> if there is none; e.g., for a rule.
+	 */
+	public Element getValue() {
+		return value;
+	}
+}
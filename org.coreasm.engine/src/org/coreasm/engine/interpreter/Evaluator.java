@@ -0,0 +1,37 @@
+/*
+ * Evaluator.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.interpreter;
+
+/**
+ * Evaluates a node of the abstract syntax tree in the fast interpreter mode
+ * (see {@link org.coreasm.engine.EngineProperties#FAST_INTERPRETER_MODE}).
+ * <p>
+ * The evaluators of the body of a rule or of a derived function form a tree
+ * that is built once by an {@link EvaluatorBuilder} and then used by all the
+ * agents and threads. An evaluator therefore keeps no state of its own, and
+ * it does not store its result in the node it was built for; the result is
+ * returned instead. Errors are thrown as
+ * {@link org.coreasm.engine.CoreASMError}s, which abort the evaluation of
+ * the whole body.
+ *
+ * @see EvaluatorBuilder
+ * @see org.coreasm.engine.plugin.EvaluatorProvider
+ */
+public interface Evaluator {
+
+	/**
+	 * Evaluates the node with the environment variables, the parameters and
+	 * the agent of the given interpreter and returns its location, updates
+	 * and value.
+	 *
+	 * @param interpreter the interpreter instance of the running thread
+	 */
+	public Evaluation evaluate(Interpreter interpreter) throws InterpreterException;
+}
@@ -0,0 +1,92 @@
+/*
+ * EvaluatorBuilder.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.interpreter;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.coreasm.engine.ControlAPI;
+import org.coreasm.engine.kernel.Kernel;
+import org.coreasm.engine.plugin.EvaluatorProvider;
+import org.coreasm.engine.plugin.Plugin;
+
+/**
+ * Builds the tree of {@link Evaluator}s of the body of a rule or of the
+ * expression of a derived function for the fast interpreter mode.
+ * <p>
+ * The evaluator of a node is built by its plugin, if the plugin is an
+ * {@link EvaluatorProvider}, or by the kernel for the kernel nodes. A node
+ * without such an evaluator is interpreted step by step in a copy of its
+ * subtree, in which the descendants that do have evaluators are evaluated
+ * by them.
+ */
+public final class EvaluatorBuilder {
+
+	private final ControlAPI capi;
+
+	/** parameters of the rule whose body is built */
+	private final List<String> params;
+
+	EvaluatorBuilder(ControlAPI capi, List<String> params) {
+		this.capi = capi;
+		this.params = params;
+	}
+
+	/**
+	 * Builds the evaluator of the given tree, which is not the body of a
+	 * rule; e.g., the expression of a derived function.
+	 *
+	 * @param capi the engine
+	 * @param root root of the tree
+	 */
+	public static Evaluator build(ControlAPI capi, ASTNode root) {
+		return new EvaluatorBuilder(capi, Collections.<String>emptyList()).build(root);
+	}
+
+	/**
+	 * Returns the engine the evaluators are built for.
+	 */
+	public ControlAPI getControlAPI() {
+		return capi;
+	}
+
+	/**
+	 * Returns the evaluator of the given node, which interprets the node
+	 * step by step if neither its plugin nor the kernel build one.
+	 *
+	 * @param node a node of the tree being built
+	 */
+	public Evaluator build(ASTNode node) {
+		final Evaluator evaluator = buildOwn(node);
+		return (evaluator == null ? new StepwiseEvaluator(node, this) : evaluator);
+	}
+
+	/*
+	 * Returns the evaluator the plugin of the given node or the kernel
+	 * builds for it, or null if the node is interpreted step by step.
+	 */
+	Evaluator buildOwn(ASTNode node) {
+		final String pName = node.getPluginName();
+		final Plugin p = capi.getPlugin(pName == null ? Kernel.PLUGIN_NAME : pName);
+		if (p instanceof EvaluatorProvider)
+			return ((EvaluatorProvider)p).buildEvaluator(node, this);
+		if (p instanceof Kernel)
+			return KernelEvaluators.build(node, this);
+		return null;
+	}
+
+	/*
+	 * Returns the index of the parameter with the given name of the rule
+	 * whose body is built, or -1 if there is none.
+	 */
+	int getParameterIndex(String name) {
+		return params.indexOf(name);
+	}
+}
@@ -20,6 +20,7 @@ import java.util.Stack;
 
 import org.coreasm.engine.absstorage.Element;
 import org.coreasm.engine.absstorage.RuleElement;
+import org.coreasm.engine.absstorage.UpdateMultiset;
 
 /** 
  *	Defines the interface of the interpreter.
@@ -194,6 +195,37 @@ public interface Interpreter {
      */
     public void interpret(ASTNode node, Element agent) throws InterpreterException;
 
+    /**
+     * Evaluates the given node, which is a child of the node being
+     * interpreted, right away by interpreting its subtree step by step. 
+     * When this method returns, the node is evaluated unless an error 
+     * has occurred.
+     * 
+     * @param node the node to be evaluated
+     * 
+     * @throws InterpreterException 
+     */
+    public void evaluateNode(ASTNode node) throws InterpreterException;
+
+    /**
+     * Returns <code>true</code> if rules and derived functions are evaluated 
+     * by their {@link Evaluator}s instead of being interpreted step by step.
+     * 
+     * @see org.coreasm.engine.EngineProperties#FAST_INTERPRETER_MODE
+     */
+    public boolean isFastMode();
+
+    /**
+     * Evaluates the body of the given rule, which has no parameters, by its
+     * {@link Evaluator} and returns the updates. Errors are reported to the 
+     * engine, in which case the returned multiset is empty.
+     * 
+     * @param rule a rule without parameters
+     * 
+     * @throws InterpreterException 
+     */
+    public UpdateMultiset evaluateRule(RuleElement rule) throws InterpreterException;
+
     /**
      * Cleans up any cached data in the interpreter.
      * 
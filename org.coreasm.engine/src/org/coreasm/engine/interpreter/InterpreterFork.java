@@ -0,0 +1,157 @@
+/*
+ * InterpreterFork.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.interpreter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.coreasm.engine.ControlAPI;
+import org.coreasm.engine.absstorage.Element;
+import org.coreasm.util.SplitMixRandom;
+
+/**
+ * Provides interpreters that evaluate parts of a tree on behalf of another
+ * interpreter in other threads, e.g., the iterations of a parallel
+ * <code>forall</code> rule.
+ * <p>
+ * A fork is created in the thread of the forking interpreter and remembers
+ * its agent, environment variables and the arguments bound to the parameters
+ * of the rule being interpreted. Any thread can then acquire an interpreter
+ * from the fork, which starts with its own copy of these bindings
+ * and is the interpreter instance of the thread (see
+ * {@link Interpreter#getInterpreterInstance()}) until it is released.
+ * Acquiring and releasing must be nested in every thread. Released
+ * interpreters are kept per thread and reused.
+ * <p>
+ * Random choices of a forked interpreter do not use the generator of the
+ * agent, which is not thread-safe. Instead, the interpreter gets a new
+ * generator for every element of the domain it evaluates, seeded from a
+ * number drawn from the generator of the agent when the fork is created
+ * and from the index of the element. The numbers therefore do not depend
+ * on the thread or the chunk that evaluates an element.
+ *
+ * @see ParallelChunk
+ * @see InterpreterImp
+ */
+public final class InterpreterFork {
+
+	/* interpreters that are not in use, per thread */
+	private static final ThreadLocal<ArrayDeque<InterpreterImp>> idleInterpreters = new ThreadLocal<ArrayDeque<InterpreterImp>>() {
+		@Override
+		protected ArrayDeque<InterpreterImp> initialValue() {
+			return new ArrayDeque<InterpreterImp>();
+		}
+	};
+
+	/* interpreter instances of the thread that are replaced by acquired interpreters */
+	private static final ThreadLocal<List<Interpreter>> replacedInstances = new ThreadLocal<List<Interpreter>>() {
+		@Override
+		protected List<Interpreter> initialValue() {
+			return new ArrayList<Interpreter>();
+		}
+	};
+
+	private final ControlAPI capi;
+	private final Element self;
+	private final Map<String, Element> envVars;
+	private final InterpreterImp.Frame frame;
+	private final boolean fastMode;
+	private final long randomSeed;
+
+	/**
+	 * Creates a fork of the given interpreter. This must be called in
+	 * the thread of the given interpreter.
+	 */
+	public InterpreterFork(ControlAPI capi, Interpreter parent) {
+		this.capi = capi;
+		this.self = parent.getSelf();
+		this.envVars = Collections.unmodifiableMap(parent.getEnvVars());
+		this.frame = (parent instanceof InterpreterImp ? ((InterpreterImp)parent).copyFrame() : null);
+		this.fastMode = parent.isFastMode();
+		this.randomSeed = capi.getScheduler().getRandom(self).nextLong();
+	}
+
+	/**
+	 * Returns the agent of the forked interpreter.
+	 */
+	public Element getSelf() {
+		return self;
+	}
+
+	/**
+	 * Returns an interpreter for the running thread that starts with the
+	 * environment variables of the forked interpreter.
+	 * It is the interpreter instance of the thread until it is released.
+	 *
+	 * @see #release(Interpreter)
+	 */
+	public Interpreter acquire() {
+		InterpreterImp interpreter = idleInterpreters.get().poll();
+		if (interpreter == null)
+			interpreter = new InterpreterImp(capi);
+		interpreter.setSelf(self);
+		interpreter.setFastMode(fastMode);
+		for (Entry<String, Element> var: envVars.entrySet())
+			interpreter.addEnv(var.getKey(), var.getValue());
+		// every interpreter evaluates its own copies of the arguments
+		interpreter.setFrame(frame == null ? null : frame.copy());
+		replacedInstances.get().add(InterpreterImp.interpreters.get());
+		InterpreterImp.interpreters.set(interpreter);
+		return interpreter;
+	}
+
+	/**
+	 * Releases an interpreter acquired by the running thread and makes the
+	 * previous interpreter instance of the thread current again.
+	 */
+	public void release(Interpreter interpreter) {
+		final List<Interpreter> replaced = replacedInstances.get();
+		final Interpreter previous = replaced.remove(replaced.size() - 1);
+		if (previous == null)
+			InterpreterImp.interpreters.remove();
+		else
+			InterpreterImp.interpreters.set(previous);
+		final InterpreterImp imp = (InterpreterImp)interpreter;
+		imp.clearEnvVars();
+		imp.setForkRandom(null);
+		idleInterpreters.get().push(imp);
+	}
+
+	/**
+	 * Gives an interpreter acquired from this fork the random number
+	 * generator of the element with the given index in the domain.
+	 * This must be called before the element is evaluated.
+	 */
+	public void seedRandom(Interpreter interpreter, int index) {
+		((InterpreterImp)interpreter).setForkRandom(new SplitMixRandom(SplitMixRandom.mix64(randomSeed, index)));
+	}
+
+	/**
+	 * Returns the random number generator of the interpreter instance of
+	 * the running thread if it was acquired from a fork for the given
+	 * agent; otherwise, returns <code>null</code>.
+	 *
+	 * @see #seedRandom(Interpreter, int)
+	 */
+	public static Random getRandom(Element agent) {
+		final Interpreter current = InterpreterImp.interpreters.get();
+		if (current instanceof InterpreterImp) {
+			final Random random = ((InterpreterImp)current).getForkRandom();
+			if (random != null && agent.equals(current.getSelf()))
+				return random;
+		}
+		return null;
+	}
+}
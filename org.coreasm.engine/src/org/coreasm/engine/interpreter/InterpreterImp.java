@@ -15,22 +15,25 @@
  
 package org.coreasm.engine.interpreter;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
 import java.util.Stack;
 
 import org.coreasm.engine.ControlAPI;
 import org.coreasm.engine.CoreASMError;
 import org.coreasm.engine.EngineError;
+import org.coreasm.engine.EngineProperties;
 import org.coreasm.engine.EngineTools;
 import org.coreasm.engine.absstorage.AbstractStorage;
 import org.coreasm.engine.absstorage.BooleanElement;
@@ -77,20 +80,59 @@ public class InterpreterImp implements Interpreter {
 	/** Current value of 'self' */
 	protected Element self = Element.UNDEF;
 	
+	/** The set that contains only {@link #self}; shared by the updates of self */
+	private Set<Element> selfSet = Collections.emptySet();
+	private Element selfSetAgent = null;
+	
 	/** Link to the ControlAPI module */
 	private final ControlAPI capi;
 
 	private Map<String,Stack<Element>> envMap;
 	private Stack<Map<String,Stack<Element>>> hiddenEnvMaps;
 	
-	/** Work copy of a tree */
-	private final Map<ASTNode,Map<String, ASTNode>> workCopies;
+	/** Bindings of the parameters of the rule being interpreted */
+	private Frame frame = null;
+	private final Stack<Frame> hiddenFrames;
+	
+	/** Arguments being evaluated for occurrences of parameters */
+	private final Stack<ArgumentEvaluation> argumentEvaluations;
+	
+	/** 
+	 * Number of idle copies of a rule body kept for the next step; 
+	 * deeper recursions allocate their copies again 
+	 */
+	private static final int MAX_IDLE_BODIES = 4;
+	
+	/** Copies of rule bodies that are not in use, by rule */
+	private final Map<RuleElement, ArrayDeque<RuleBody>> idleBodies;
+	
+	/** Copies of rule bodies in use, by call site */
+	private final Map<ASTNode, RuleBody> activeBodies;
+	
+	/** Call sites for which a name collision with an argument has been reported */
+	private final Set<ASTNode> reportedCollisions;
 	
 	/** Link to the abstract storage module */
 	private final AbstractStorage storage;
 	
 	private OperatorRegistry oprReg = null;
 	
+	/** if true, rules and derived functions are evaluated by their {@link Evaluator}s */
+	private boolean fastMode = false;
+	
+	/** 
+	 * Depth of the nested calls of compiled rules, which are evaluated on 
+	 * the Java stack; deeper calls are interpreted step by step
+	 */
+	private int compiledCallDepth = 0;
+	private static final int MAX_COMPILED_CALL_DEPTH = 128;
+	
+	/** Random number generator of an interpreter acquired from a fork */
+	private Random forkRandom = null;
+	
+	/** if true, operators are always evaluated by all the plugins implementing them */
+	private boolean checkOperatorAmbiguity = false;
+	
 	private final Map<String, Collection<String>> oprImpPluginsCache = new HashMap<String, Collection<String>>();
 	
 	private final Stack<CallStackElement> ruleCallStack = new Stack<CallStackElement>();
@@ -105,7 +147,11 @@ public class InterpreterImp implements Interpreter {
 		this.hiddenEnvMaps = new Stack<Map<String, Stack<Element>>>();
 		this.envMap = new HashMap<String, Stack<Element>>();
 		this.storage = capi.getStorage();
-		this.workCopies = new IdentityHashMap<ASTNode,Map<String, ASTNode>>();
+		this.hiddenFrames = new Stack<Frame>();
+		this.argumentEvaluations = new Stack<ArgumentEvaluation>();
+		this.idleBodies = new IdentityHashMap<RuleElement, ArrayDeque<RuleBody>>();
+		this.activeBodies = new IdentityHashMap<ASTNode, RuleBody>();
+		this.reportedCollisions = Collections.newSetFromMap(new IdentityHashMap<ASTNode, Boolean>());
 	}
 	
 	public Interpreter getInterpreterInstance() {
@@ -128,42 +174,11 @@ public class InterpreterImp implements Interpreter {
 				// notification for observers (i.e. debugger)
 				notifyListenersBeforeNodeEvaluation(pos);
 				
-				final String pName = pos.getPluginName();
-				
 				if (logger.isDebugEnabled()) {
 					logger.debug("Interpreting node {} @ {}.", pos.toString(), pos.getContext(capi.getParser(), capi.getSpec()));
 				}
 				
-				ASTNode prevPos = pos;
-				if (pName != null && !pName.equals(Kernel.PLUGIN_NAME)) {
-					logger.debug("Using plugin {}.", pName);
-					Plugin p = capi.getPlugin(pName);
-					if (p instanceof InterpreterPlugin){
-						pos = ((InterpreterPlugin)p).interpret(this, pos);
-					} else {
-						throw new InterpreterException("Pluging '" + p.getName() + "' is not an interpreter plugin.");
-					}
-				} else {
-					pos = kernelInterpreter(pos);
-					// Prevent infinite loop
-					if (pos == prevPos && !pos.isEvaluated())
-						capi.error("Failed to interpret node.", pos, this);
-				}
-				
-				if (pos == null) {
-					pos = prevPos;
-					capi.error("Plugin '" + pName + "' returned null while interpreting node of type '" + prevPos.getClass().getSimpleName() + "'", pos, this);
-				}
-	
-				// TODO Deviating from the spec (needs to be handled properly)
-				//      the following statement deviates from the spec in response to 
-				//      a problem with undefined identifiers being used where a rule 
-				//      is expected
-				// UPDATE: this should not be a problem anymore as unknown identifiers
-				//         used as macro-call rules are prevented and reported by the 
-				//         engine. But in general, this is not a bad guard.
-				if (pos.isEvaluated() && pos.getUpdates() == null)
-					pos.setNode(pos.getLocation(), new UpdateMultiset(), pos.getValue());
+				pos = interpretNode(pos);
 				
 				if (pos.isEvaluated())
 					notifyListenersAfterNodeEvaluation(pos);
@@ -180,6 +195,124 @@ public class InterpreterImp implements Interpreter {
 		}
 	}
 
+	/*
+	 * Interprets the given node once, using its plugin or the kernel,
+	 * and returns the node to be interpreted next.
+	 */
+	private ASTNode interpretNode(ASTNode node) throws InterpreterException {
+		final String pName = node.getPluginName();
+		final Plugin p = getPlugin(node);
+		ASTNode next;
+		if (p instanceof InterpreterPlugin) {
+			logger.debug("Using plugin {}.", pName);
+			next = ((InterpreterPlugin)p).interpret(this, node);
+		} else if (!(p instanceof Kernel) && pName != null && !pName.equals(Kernel.PLUGIN_NAME)) {
+			throw new InterpreterException("Pluging '" + pName + "' is not an interpreter plugin.");
+		} else {
+			next = kernelInterpreter(node);
+			// Prevent infinite loop
+			if (next == node && !node.isEvaluated())
+				capi.error("Failed to interpret node.", node, this);
+		}
+		
+		if (next == null) {
+			next = node;
+			capi.error("Plugin '" + pName + "' returned null while interpreting node of type '" + node.getClass().getSimpleName() + "'", node, this);
+		}
+
+		// TODO Deviating from the spec (needs to be handled properly)
+		//      the following statement deviates from the spec in response to 
+		//      a problem with undefined identifiers being used where a rule 
+		//      is expected
+		// UPDATE: this should not be a problem anymore as unknown identifiers
+		//         used as macro-call rules are prevented and reported by the 
+		//         engine. But in general, this is not a bad guard.
+		if (next.isEvaluated() && next.getUpdates() == null)
+			next.setNode(next.getLocation(), new UpdateMultiset(), next.getValue());
+		
+		return next;
+	}
+	
+	/*
+	 * Returns the plugin interpreting the given node. The plugin of a node is 
+	 * looked up only once.
+	 */
+	private Plugin getPlugin(ASTNode node) {
+		Plugin p = node.getPlugin();
+		if (p == null) {
+			final String pName = node.getPluginName();
+			p = capi.getPlugin(pName == null ? Kernel.PLUGIN_NAME : pName);
+			node.setPlugin(p);
+		}
+		return p;
+	}
+	
+	/**
+	 * Interprets the given node step by step until it is evaluated, 
+	 * without returning to the caller in between.
+	 */
+	public void evaluateNode(ASTNode node) throws InterpreterException {
+		try {
+			evaluateStepwise(node, null);
+		} catch (CoreASMError e) {
+			if (e.node != null)
+				capi.error(e);
+			else
+				capi.error(e.message, node, this);
+		}
+	}
+	
+	/*
+	 * Interprets the tree of the given root step by step until the root is
+	 * evaluated. The nodes that have an evaluator in the given map, which
+	 * may be null, are evaluated by their evaluators instead.
+	 */
+	void evaluateStepwise(ASTNode root, Map<ASTNode, Evaluator> evaluators) throws InterpreterException {
+		final ASTNode oldPos = pos;
+		pos = root;
+		try {
+			while (!root.isEvaluated() && !capi.hasErrorOccurred()) {
+				if (pos.isEvaluated()) {
+					if (pos.getParent() == null)
+						break;
+					pos = pos.getParent();
+					continue;
+				}
+				final Evaluator evaluator = (evaluators == null ? null : evaluators.get(pos));
+				if (evaluator != null)
+					setEvaluation(pos, evaluator.evaluate(this));
+				else
+					pos = interpretNode(pos);
+			}
+		} finally {
+			pos = oldPos;
+		}
+	}
+	
+	/*
+	 * Gives the given node the location, updates and value of the given evaluation.
+	 */
+	static void setEvaluation(ASTNode node, Evaluation evaluation) {
+		final UpdateMultiset updates = evaluation.getUpdates();
+		node.setNode(evaluation.getLocation(), (updates == null ? new UpdateMultiset() : updates), evaluation.getValue());
+	}
+	
+	/**
+	 * @see Interpreter#evaluateRule(RuleElement)
+	 */
+	public UpdateMultiset evaluateRule(RuleElement rule) throws InterpreterException {
+		try {
+			final UpdateMultiset updates = getCompiledRule(rule).evaluate(this).getUpdates();
+			return (updates == null ? new UpdateMultiset() : updates);
+		} catch (CoreASMError e) {
+			if (e.node != null)
+				capi.error(e);
+			else
+				capi.error(e.message, rule.getBody(), this);
+			return new UpdateMultiset();
+		}
+	}
+
 	/**
 	 * Notifies the listeners before a node is being evaluated.
 	 * 
@@ -271,6 +404,18 @@ public class InterpreterImp implements Interpreter {
 		return this.self;
 	}
 	
+	/*
+	 * Returns an immutable set that contains only 'self'. The set is 
+	 * created once for every agent, so updates do not need their own.
+	 */
+	Set<Element> getSelfSet() {
+		if (selfSetAgent != self) {
+			selfSet = (self == null ? Collections.<Element>emptySet() : Collections.singleton(self));
+			selfSetAgent = self;
+		}
+		return selfSet;
+	}
+	
 	@Override
 	public Map<String, Element> getEnvVars() {
 		Map<String, Element> envVars = new HashMap<String, Element>();
@@ -304,6 +449,8 @@ public class InterpreterImp implements Interpreter {
 	public void hideEnvVars() {
 		hiddenEnvMaps.push(envMap);
 		envMap = new HashMap<String, Stack<Element>>();
+		hiddenFrames.push(frame);
+		frame = null;
 	}
 	
 	@Override
@@ -311,6 +458,7 @@ public class InterpreterImp implements Interpreter {
 		if (hiddenEnvMaps.isEmpty())
 			throw new IllegalStateException("There are no hidden environment variables.");
 		envMap = hiddenEnvMaps.pop();
+		frame = hiddenFrames.pop();
 	}
 
 	public void addEnv(String name, Element value) {
@@ -361,31 +509,43 @@ public class InterpreterImp implements Interpreter {
 	 */
 	private ASTNode interpretExpressions(ASTNode pos) throws InterpreterException {
 		final AbstractStorage storage = capi.getStorage();
-		final String gClass = pos.getGrammarClass();
+		final ASTNode.ClassKind gClass = pos.getClassKind();
 		String x = pos.getToken();
 		
 		// If the current node is a function/rule term
-		if (gClass.equals(ASTNode.FUNCTION_RULE_CLASS)) {
+		if (gClass == ASTNode.ClassKind.FUNCTION_RULE) {
 			if (pos instanceof FunctionRuleTermNode) {
 				FunctionRuleTermNode frNode = (FunctionRuleTermNode)pos;
 				
+				// If the argument of this parameter has been evaluated...
+				if (!argumentEvaluations.isEmpty() && argumentEvaluations.peek().node == pos)
+					completeArgumentEvaluation(pos);
+				
 				// If the current node is of the form 'x' or 'x(...)'
-				if (frNode.hasName()) {
+				else if (frNode.hasName()) {
 	
 					x = frNode.getName();
 					
 					// If the current node is of the form 'x' with no arguments
 					if (!frNode.hasArguments()) {
 						
+						final int param = (frame == null ? -1 : frame.params.indexOf(x));
+						// If this 'x' is a parameter of the rule being interpreted...
+						if (param >= 0) {
+							if (frame.argEvaluators != null)
+								setEvaluation(pos, evaluateParameter(param));
+							else
+								pos = evaluateArgument(pos, param);
+						}
 						// If we have a local value for that...
-						if (getEnv(x) != null)
+						else if (getEnv(x) != null)
 							pos.setNode(null, null, getEnv(x));
 						else {
 							// If this 'x' refers to a function in the state...
 							final FunctionElement f = storage.getFunction(x);
 //							if (storage.isFunctionName(x)) {
 							if (f != null) {
-								final Location l = new Location(x, ElementList.NO_ARGUMENT, f.isModifiable());
+								final Location l = storage.getNullaryLocation(x, f.isModifiable());
 								try {
 									pos.setNode(l, null, storage.getValue(l));
 								} catch (InvalidLocationException e) {
@@ -406,7 +566,7 @@ public class InterpreterImp implements Interpreter {
 							f = (FunctionElement)getEnv(x);
 						if (f == null) {
 							try {
-								Element value = storage.getValue(new Location(x, ElementList.NO_ARGUMENT));
+								Element value = storage.getValue(storage.getNullaryLocation(x, null));
 								if (value instanceof FunctionElement)
 									f = (FunctionElement)value;
 							} catch (InvalidLocationException e) {
@@ -454,18 +614,15 @@ public class InterpreterImp implements Interpreter {
 		} //endif of the current node being a function/rule term
 		
 		// if class is an operator then
-		else if (gClass.equals(ASTNode.UNARY_OPERATOR_CLASS) || 
-                 gClass.equals(ASTNode.BINARY_OPERATOR_CLASS) ||
-                 gClass.equals(ASTNode.TERNARY_OPERATOR_CLASS) ||
-                 gClass.equals(ASTNode.INDEX_OPERATOR_CLASS))
+		else if (gClass == ASTNode.ClassKind.OPERATOR)
 		{
 			pos = interpretOperators(pos);
 		}
 		// else another general type of expression
-		else if (gClass.equals(ASTNode.EXPRESSION_CLASS))
+		else if (gClass == ASTNode.ClassKind.EXPRESSION)
 		{
 			// for 'ruleelement' expression
-			if (pos.getGrammarRule().equals(Kernel.GR_RULEELEMENT_TERM))
+			if (pos.getRuleKind() == ASTNode.RuleKind.RULE_ELEMENT_TERM)
 			{
 				final ASTNode idNode = pos.getFirst();
 					
@@ -492,7 +649,7 @@ public class InterpreterImp implements Interpreter {
 					e = getEnv(name);
 				if (e == null) {
 					try {
-						Element value = storage.getValue(new Location(name, ElementList.NO_ARGUMENT));
+						Element value = storage.getValue(storage.getNullaryLocation(name, null));
 						if (value instanceof FunctionElement || value instanceof RuleElement)
 							e = value;
 					} catch (InvalidLocationException ex) {
@@ -539,11 +696,11 @@ public class InterpreterImp implements Interpreter {
 	 * @throws InterpreterException 
 	 */
 	private ASTNode interpretRules(ASTNode pos) throws InterpreterException {
-		final String gRule = pos.getGrammarRule();
+		final ASTNode.RuleKind gRule = pos.getRuleKind();
 		String x = pos.getToken();
 		
 		// If the current node is a macro call term...
-		if (gRule.equals(Kernel.GR_FUNCTION_RULE_TERM) || pos instanceof MacroCallRuleNode) {
+		if (gRule == ASTNode.RuleKind.FUNCTION_RULE_TERM || pos instanceof MacroCallRuleNode) {
 			FunctionRuleTermNode frNode = null;
 			RuleElement theRule = null;
 			if (pos instanceof MacroCallRuleNode) {
@@ -574,7 +731,7 @@ public class InterpreterImp implements Interpreter {
 					try {
 						Element e = getEnv(x);
 						if (e == null)
-							e = storage.getValue(new Location(x, ElementList.NO_ARGUMENT));
+							e = storage.getValue(storage.getNullaryLocation(x, null));
 						if (e instanceof RuleElement)
 							theRule = (RuleElement)e;
 						else if (pos instanceof MacroCallRuleNode) {
@@ -634,7 +791,8 @@ public class InterpreterImp implements Interpreter {
 							capi.error("Left hand side of the assignment, " +
 									l + ", is not modifiable.", pos, this);
 						else {
-							Update u = new Update(l, rhs.getValue(), Update.UPDATE_ACTION, self, pos.scannerInfo);
+							Update u = new Update(l, rhs.getValue(), Update.UPDATE_ACTION, getSelfSet(), 
+									pos.scannerInfo == null ? null : pos.scannerInfo.asSet());
 							pos.setNode(null, new UpdateMultiset(u), null);
 						}
 					}
@@ -644,7 +802,7 @@ public class InterpreterImp implements Interpreter {
 		}
 		
 		//If the current node is an 'import'
-		else if (gRule.equals("ImportRule")) {
+		else if (gRule == ASTNode.RuleKind.IMPORT_RULE) {
 
 			final List<ASTNode> children = pos.getAbstractChildNodes();
 			final ASTNode ruleNode = children.get(children.size()-1);
@@ -682,7 +840,7 @@ public class InterpreterImp implements Interpreter {
 	 * 
 	 * @throws InterpreterException 
 	 */
-	private ASTNode interpretOperators(ASTNode pos) throws InterpreterException {
+	ASTNode interpretOperators(ASTNode pos) throws InterpreterException {
 		String gClass = pos.getGrammarClass();
 		String x = pos.getToken();
 		
@@ -700,8 +858,41 @@ public class InterpreterImp implements Interpreter {
 		// else no unevaluated children, so we can commence operator interpretation
 		else
 		{
-			if (oprReg == null) 
+			if (oprReg == null) {
 				oprReg = OperatorRegistry.getInstance(capi);
+				checkOperatorAmbiguity = capi.getProperty(EngineProperties.OPERATOR_AMBIGUITY_CHECK, EngineProperties.NO)
+						.equalsIgnoreCase(EngineProperties.YES);
+			}
+			
+			// hash table which holds all the results and errors
+			final Map<String,Element> impResults = new HashMap<String,Element>();
+			final Map<String,InterpreterException> impErrors = new HashMap<String,InterpreterException>();
+			final Set<String> nullReturns = new HashSet<String>();
+			
+			// try the plugin that evaluated this node for the same classes of operands;
+			// if it fails or has no semantics, its outcome is kept and the other 
+			// implementations are tried as well
+			final OperatorDispatchCache oprCache = pos.getOperatorCache();
+			String cachedPlugin = null;
+			if (!checkOperatorAmbiguity) {
+				final OperatorProvider cachedImp = oprCache.getProvider(pos);
+				if (cachedImp != null) {
+					cachedPlugin = ((Plugin)cachedImp).getName();
+					try {
+						Element result = cachedImp.interpretOperatorNode(this, pos);
+						if (result == null)
+							nullReturns.add(cachedPlugin);
+						else if (!result.equals(Element.UNDEF)) {
+							pos.setNode(null, null, result);
+							return pos;
+						}
+						else
+							impResults.put(cachedPlugin, result);
+					} catch (InterpreterException error) {
+						impErrors.put(cachedPlugin, error);
+					}
+				}
+			}
 			
 			// collection of all plugins which have an implementation for this operator
 			Collection<String> impPlugins = oprImpPluginsCache.get(x + "__:X:__" + gClass);
@@ -710,10 +901,6 @@ public class InterpreterImp implements Interpreter {
 				impPlugins = oprReg.getOperatorContributors(x,gClass);
 				oprImpPluginsCache.put(x + "__:X:__" + gClass, impPlugins);
 			}
-			// hash table which holds all the results and errors
-			final Hashtable<String,Element> impResults = new Hashtable<String,Element>();
-			final Hashtable<String,InterpreterException> impErrors = new Hashtable<String,InterpreterException>();
-			final HashSet<String> nullReturns = new HashSet<String>();
 			
 			// TODO What is the diff between returning 'null' and throwing an exception?
 			
@@ -723,6 +910,9 @@ public class InterpreterImp implements Interpreter {
 			{
 				// load plugin
 				String pluginName = itImpPlugins.next();
+				// the cached plugin has already been tried
+				if (pluginName.equals(cachedPlugin))
+					continue;
 				OperatorProvider opImp = (OperatorProvider)capi.getPlugin(pluginName);
 				
 				// result can be a value or an interpreter exception thrown.
@@ -758,8 +948,17 @@ public class InterpreterImp implements Interpreter {
 				setResultElements.remove(Element.UNDEF);
 			
 			// one result so return it
-			if (setResultElements.size() == 1)
-				pos.setNode(null,null,(Element)setResultElements.toArray()[0]);
+			if (setResultElements.size() == 1) {
+				final Element result = setResultElements.iterator().next();
+				if (!checkOperatorAmbiguity && !result.equals(Element.UNDEF)) {
+					for (Entry<String, Element> impResult: impResults.entrySet())
+						if (impResult.getValue().equals(result)) {
+							oprCache.setProvider(pos, (OperatorProvider)capi.getPlugin(impResult.getKey()));
+							break;
+						}
+				}
+				pos.setNode(null,null,result);
+			}
 			// multiple results so error
 			else if (setResultElements.size() > 1)
 			{
@@ -912,7 +1111,17 @@ public class InterpreterImp implements Interpreter {
 	}
 	
 	/**
-	 * Handles a call to a rule.
+	 * Handles a call to a rule. 
+	 * <p>
+	 * The body of the rule is interpreted in a copy that is taken from the 
+	 * copies of the rule that are not in use, whatever the call site, and 
+	 * the parameters are bound to the arguments in a new {@link Frame}. 
+	 * Occurrences of the parameters evaluate their arguments when they 
+	 * are interpreted (see {@link #evaluateArgument(ASTNode, int)}), so 
+	 * neither the body nor the arguments have to be copied for a call.
+	 * Only occurrences that depend on the syntax of their argument are 
+	 * replaced by a copy of the argument until the call returns
+	 * (see {@link #needsSubstitution(ASTNode, ASTNode)}). 
 	 * 
 	 * @param rule rule element
 	 * @param params parameters
@@ -927,39 +1136,40 @@ public class InterpreterImp implements Interpreter {
 		if (args != null)
 			args = Collections.unmodifiableList(args);
 		
-		Map<String, ASTNode> workCopies = this.workCopies.get(pos);
-		if (workCopies == null) {
-			workCopies = new HashMap<String, ASTNode>();
-			this.workCopies.put(pos, workCopies);
-		}
-		ASTNode wCopy = workCopies.get(rule.getName());
-		// If there is no work copy created for this rule call
-		if (wCopy == null || !wCopy.isEvaluated()) {
+		final RuleBody body = activeBodies.get(pos);
+		// If the rule is not being interpreted for this call
+		if (body == null) {
 			// checking the parameters and the arguments
 			// as their number should match
 			ruleCallStack.push(new CallStackElement(rule));
-			if (params != null && args != null && args.size() != params.size()) {  
+			final List<String> parameters = (params == null ? Collections.<String>emptyList() : params);
+			final List<ASTNode> arguments = (args == null ? Collections.<ASTNode>emptyList() : args);
+			if (parameters.size() != arguments.size()) {  
 				capi.error("Number of arguments does not match the number of parameters.", pos, this);
 				return pos;
 			}
-			if (wCopy == null)
-				wCopy = copyTreeSub(rule.getBody(), params, args);
-			else
-				updateConstants(wCopy, extractConstants(args));
 			
-			workCopies.put(rule.getName(), wCopy);
-			wCopy.setParent(pos);
-			notifyOnRuleCall(rule, injectEnvVars(args), pos, self);
+			final RuleBody newBody = acquireBody(rule, parameters);
+			reportNameCollisions(newBody.names, parameters, arguments, pos);
+			substituteParameters(newBody, arguments);
+			final Frame newFrame = new Frame(parameters, arguments, envMap, frame);
+			
+			newBody.root.setParent(pos);
+			activeBodies.put(pos, newBody);
+			if (!capi.getInterpreterListeners().isEmpty())
+				notifyOnRuleCall(rule, copyArguments(args), pos, self);
 			
 			hideEnvVars();
-			return wCopy; // as new value of 'pos'
-		} else { // if there already is a work copy
-			Element value = wCopy.getValue();
+			frame = newFrame;
+			return newBody.root; // as new value of 'pos'
+		} else { // if the body has been interpreted
+			Element value = body.root.getValue();
 			if (value == null)	// make sure that the value of the node will not be set to null
 				value = Element.UNDEF;
-			pos.setNode(null, wCopy.getUpdates(), value);
+			pos.setNode(null, body.root.getUpdates(), value);
 		
-			clearTree(wCopy);
+			activeBodies.remove(pos);
+			releaseBody(body);
 			
 			ruleCallStack.pop();
 			notifyOnRuleExit(rule, args, pos, self);
@@ -969,47 +1179,326 @@ public class InterpreterImp implements Interpreter {
 		}
 	}
 	
+	/*
+	 * Returns the evaluator of the body of the given rule, which is built 
+	 * on first use and kept by the rule.
+	 */
+	CompiledRule getCompiledRule(RuleElement rule) {
+		CompiledRule compiled = (CompiledRule)rule.getEvaluator();
+		if (compiled == null) {
+			compiled = CompiledRule.build(capi, rule);
+			rule.setEvaluator(compiled);
+		}
+		return compiled;
+	}
+	
+	/*
+	 * Returns true if a call of the given rule can be evaluated by its 
+	 * evaluator instead of being interpreted step by step.
+	 */
+	boolean canCallCompiled(CompiledRule compiled) {
+		return compiled.body != null && compiledCallDepth < MAX_COMPILED_CALL_DEPTH;
+	}
+	
+	/*
+	 * Evaluates a call of the given rule by the evaluator of its body. The
+	 * parameters are bound to the evaluators of the arguments, which are 
+	 * evaluated for every occurrence of a parameter, as in ruleCall.
+	 */
+	Evaluation callRule(RuleElement rule, CompiledRule compiled, ASTNode pos, 
+			List<ASTNode> args, Evaluator[] argEvaluators) throws InterpreterException {
+		ruleCallStack.push(new CallStackElement(rule));
+		reportNameCollisions(compiled.names, rule.getParam(), args, pos);
+		final Frame newFrame = new Frame(rule.getParam(), args, argEvaluators, envMap, frame);
+		hideEnvVars();
+		frame = newFrame;
+		compiledCallDepth++;
+		final Evaluation result;
+		try {
+			result = compiled.evaluate(this);
+		} finally {
+			compiledCallDepth--;
+			unhideEnvVars();
+			ruleCallStack.pop();
+		}
+		final Element value = result.getValue();
+		final UpdateMultiset updates = result.getUpdates();
+		return new Evaluation(null, (updates == null ? new UpdateMultiset() : updates), 
+				(value == null ? Element.UNDEF : value));
+	}
+	
+	/*
+	 * Evaluates the argument of the parameter with the given index of a 
+	 * rule called by callRule, with the environment variables and 
+	 * parameters of the caller.
+	 */
+	Evaluation evaluateParameter(int index) throws InterpreterException {
+		final Frame calleeFrame = frame;
+		final Map<String, Stack<Element>> calleeEnv = envMap;
+		envMap = calleeFrame.callerEnv;
+		frame = calleeFrame.callerFrame;
+		try {
+			return calleeFrame.argEvaluators[index].evaluate(this);
+		} finally {
+			envMap = calleeEnv;
+			frame = calleeFrame;
+		}
+	}
+	
+	/*
+	 * Returns a copy of the body of the given rule that is not in use,
+	 * prepared for a call with the given parameters.
+	 */
+	private RuleBody acquireBody(RuleElement rule, List<String> params) {
+		final ArrayDeque<RuleBody> idle = idleBodies.get(rule);
+		RuleBody body = (idle == null ? null : idle.poll());
+		if (body == null)
+			body = new RuleBody(rule, (ASTNode)copyTree(rule.getBody()));
+		body.collectOccurrences(params);
+		return body;
+	}
+	
+	/*
+	 * Restores and clears the given copy of a rule body, so that it can be 
+	 * used by the next call of the rule.
+	 */
+	private void releaseBody(RuleBody body) {
+		restoreParameters(body);
+		clearTree(body.root);
+		body.root.setParent(null);
+		ArrayDeque<RuleBody> idle = idleBodies.get(body.rule);
+		if (idle == null) {
+			idle = new ArrayDeque<RuleBody>();
+			idleBodies.put(body.rule, idle);
+		}
+		idle.push(body);
+	}
+	
+	/*
+	 * Replaces the occurrences of parameters in the given body that need 
+	 * the syntax of their arguments by copies of the arguments. This is
+	 * called with the environment of the caller.
+	 */
+	private void substituteParameters(RuleBody body, List<ASTNode> args) {
+		for (ASTNode occurrence: body.occurrences) {
+			final ASTNode arg = args.get(body.params.indexOf(getTermName(occurrence)));
+			if (occurrence.getParent() == null || !needsSubstitution(occurrence, arg))
+				continue;
+			final ASTNode replacement = copyArgument(arg, frame, envMap);
+			updateScannerInfos(replacement, occurrence);
+			// the arguments of the occurrence are moved to the replacement
+			for (NameNodeTuple child: occurrence.getChildNodesWithNames()) {
+				if (!"alpha".equals(child.name))
+					replacement.addChild(child.name, child.node);
+			}
+			occurrence.replaceWith(replacement);
+			body.replaced.add(occurrence);
+			body.replacements.add(replacement);
+		}
+	}
+	
+	/*
+	 * Puts the occurrences of parameters replaced by 
+	 * substituteParameters back into the given body.
+	 */
+	private void restoreParameters(RuleBody body) {
+		for (int i = body.replaced.size() - 1; i >= 0; i--) {
+			final ASTNode occurrence = body.replaced.get(i);
+			body.replacements.get(i).replaceWith(occurrence);
+			for (Node child: occurrence.getChildNodes())
+				child.setParent(occurrence);
+		}
+		body.replaced.clear();
+		body.replacements.clear();
+	}
+	
 	/**
-	 * Update constant value in the given work copy
-	 * @param wCopy work copy to update constant values in
-	 * @constantValues the mapping between constant nodes with constant values to use
+	 * Returns <code>true</code> if the given occurrence of a parameter 
+	 * depends on the syntax of the given argument rather than on its 
+	 * value; i.e., if the parameter is called as a rule or applied to 
+	 * arguments, or if the argument names a rule or a function.
+	 * 
+	 * @param occurrence occurrence of a parameter
+	 * @param arg argument passed for the parameter
 	 */
-	private void updateConstants(ASTNode wCopy, Map<ASTNode, Element> constantValues) {
-		Stack<ASTNode> fringe = new Stack<ASTNode>();
-		fringe.push(wCopy);
-		while (!fringe.isEmpty()) {
-			ASTNode node = fringe.pop();
-			if (node instanceof ConstantValueNode) {
-				ConstantValueNode constantValueNode = (ConstantValueNode)node;
-				if (constantValues.containsKey(constantValueNode))
-					constantValueNode.setValue(constantValues.get(constantValueNode));
-				else if (getEnv(constantValueNode.getToken()) != null)
-					constantValueNode.setValue(getEnv(constantValueNode.getToken()));
+	private boolean needsSubstitution(ASTNode occurrence, ASTNode arg) {
+		if (!(occurrence instanceof FunctionRuleTermNode) 
+				|| ((FunctionRuleTermNode)occurrence).hasArguments()
+				|| occurrence.getParent() instanceof MacroCallRuleNode)
+			return true;
+		return needsSubstitution(arg);
+	}
+	
+	/*
+	 * Returns true if the given argument of a call from the rule being 
+	 * interpreted names a rule or a function, so that the occurrences of 
+	 * its parameter are substituted by the argument.
+	 */
+	boolean needsSubstitution(ASTNode arg) {
+		// an argument that is a parameter of the caller stands for the argument of the caller
+		Frame argFrame = frame;
+		while (argFrame != null && arg instanceof FunctionRuleTermNode && !((FunctionRuleTermNode)arg).hasArguments()) {
+			final int i = argFrame.params.indexOf(getTermName(arg));
+			if (i < 0)
+				break;
+			arg = argFrame.args.get(i);
+			argFrame = argFrame.callerFrame;
+		}
+		if (arg instanceof RuleOrFuncElementNode)
+			return true;
+		final String name = getTermName(arg);
+		return name != null && storage.isRuleName(name);
+	}
+	
+	/**
+	 * Evaluates the argument of the parameter with the given index at the
+	 * given occurrence of the parameter. As arguments are passed by name,
+	 * the argument is evaluated for every occurrence, with the environment
+	 * variables and parameters of the caller. The argument temporarily 
+	 * becomes a child of the occurrence, so that the interpretation
+	 * returns to the occurrence afterwards 
+	 * (see {@link #completeArgumentEvaluation(ASTNode)}).
+	 * 
+	 * @param occurrence the occurrence of the parameter
+	 * @param index index of the parameter
+	 * @return the argument, as the next node to be interpreted
+	 */
+	private ASTNode evaluateArgument(ASTNode occurrence, int index) {
+		final ASTNode arg = frame.args.get(index);
+		argumentEvaluations.push(new ArgumentEvaluation(occurrence, arg, envMap, frame));
+		clearTree(arg);
+		arg.setParent(occurrence);
+		envMap = frame.callerEnv;
+		frame = frame.callerFrame;
+		return arg;
+	}
+	
+	/**
+	 * Gives the given occurrence of a parameter the location, updates and 
+	 * value of its evaluated argument and returns to the environment of 
+	 * the called rule.
+	 * 
+	 * @param occurrence the occurrence of the parameter
+	 */
+	private void completeArgumentEvaluation(ASTNode occurrence) {
+		final ArgumentEvaluation evaluation = argumentEvaluations.pop();
+		final ASTNode arg = evaluation.arg;
+		arg.setParent(evaluation.argParent);
+		envMap = evaluation.env;
+		frame = evaluation.frame;
+		occurrence.setNode(arg.getLocation(), arg.getUpdates(), arg.getValue());
+	}
+	
+	/**
+	 * Reports arguments that are function or rule terms with the name of 
+	 * another function or rule used in the called rule.
+	 * A collision is reported only once for each call site.
+	 * 
+	 * @param names the function and rule terms of the called rule by name
+	 * @param params formal parameters
+	 * @param args given arguments
+	 * @param pos the call site
+	 */
+	private void reportNameCollisions(Map<String, ASTNode> names, List<String> params, List<ASTNode> args, ASTNode pos) {
+		for (int i = 0; i < args.size(); i++) {
+			final ASTNode arg = args.get(i);
+			final String name = getTermName(arg);
+			if (name == null || arg.getChildNode("lambda") != null || name.equals(params.get(i)))
+				continue;
+			final ASTNode node = names.get(name);
+			if (node != null && !reportedCollisions.contains(pos)) {
+				if (storage.getFunction(name) == null || storage.getFunction(name).isModifiable()) {
+					capi.warning(Kernel.PLUGIN_NAME, "\""+ name + "\" collides with the argument passed as parameter \"" + params.get(i) + "\".", node, this);
+					reportedCollisions.add(pos);
+				}
 			}
-			fringe.addAll(node.getAbstractChildNodes());
 		}
 	}
 	
+	/*
+	 * Returns the name of the given node if it is a function or rule term
+	 * of the form 'x' or 'x(...)'; otherwise, returns null.
+	 */
+	static String getTermName(ASTNode node) {
+		if (ASTNode.FUNCTION_RULE_CLASS.equals(node.getGrammarClass())) {
+			final ASTNode first = node.getFirst();
+			if (first != null && ASTNode.ID_CLASS.equals(first.getGrammarClass()))
+				return first.getToken();
+		}
+		return null;
+	}
+	
+	/*
+	 * Returns the top-most value of the given variable in the given environment.
+	 */
+	private static Element getEnv(Map<String, Stack<Element>> env, String name) {
+		final Stack<Element> stack = env.get(name);
+		if (stack == null || stack.isEmpty())
+			return null;
+		return stack.peek();
+	}
+	
+	/*
+	 * Returns copies of the given arguments (see copyArgument) or null if 
+	 * there are no arguments.
+	 */
+	private List<ASTNode> copyArguments(List<ASTNode> args) {
+		if (args == null)
+			return null;
+		List<ASTNode> result = new ArrayList<ASTNode>();
+		for (ASTNode arg : args)
+			result.add(copyArgument(arg, frame, envMap));
+		return result;
+	}
+	
 	/**
-	 * Extract constant values from a list of arguments
-	 * @param args list of arguments to extract constant values from
-	 * @return a mapping between constant nodes with constant values
+	 * Returns a copy of the given argument of a rule call in which the 
+	 * parameters of the given frame are replaced by copies of their
+	 * arguments, and the function and rule terms referring to variables
+	 * of the given environment are replaced by their values. 
+	 * 
+	 * @param arg an argument
+	 * @param frame the parameters of the rule passing the argument
+	 * @param env the environment variables of the rule passing the argument
 	 */
-	private Map<ASTNode, Element> extractConstants(List<ASTNode> args) {
-		Map<ASTNode, Element> constants = new HashMap<ASTNode, Element>();
-		if (args != null) {
-			Stack<ASTNode> fringe = new Stack<ASTNode>();
-			for (ASTNode arg : args) {
-				fringe.push(arg);
-				while (!fringe.isEmpty()) {
-					ASTNode node = fringe.pop();
-					if (node instanceof ConstantValueNode)
-						constants.put(node, node.getValue());
-					fringe.addAll(node.getAbstractChildNodes());
+	private ASTNode copyArgument(ASTNode arg, Frame frame, Map<String, Stack<Element>> env) {
+		if (arg instanceof RuleOrFuncElementNode) {
+			FunctionRuleTermNode frNode = new FunctionRuleTermNode(arg.getScannerInfo());
+			frNode.addChild("alpha", arg.getFirst().cloneTree());
+			return (ASTNode)copyArgument(frNode, null, env, null);
+		}
+		return (ASTNode)copyArgument(arg, frame, env, null);
+	}
+	
+	private Node copyArgument(Node a, Frame frame, Map<String, Stack<Element>> env, Node parent) {
+		Node result = null;
+		if (a instanceof ASTNode) {
+			final ASTNode ast = (ASTNode)a;
+			final int i = (frame == null ? -1 : frame.params.indexOf(getTermName(ast)));
+			if (i >= 0) {
+				result = copyArgument(frame.args.get(i), frame.callerFrame, frame.callerEnv);
+				updateScannerInfos(result, ast);
+				for (NameNodeTuple child : ast.getChildNodesWithNames()) {
+					if (!"alpha".equals(child.name))	// don't copy the id of this node
+						result.addChild(child.name, copyArgument(child.node, frame, env, result));
+				}
+			} else if (ast instanceof FunctionRuleTermNode && ((FunctionRuleTermNode)ast).hasName()) {
+				final String name = ((FunctionRuleTermNode)ast).getName();
+				final Element value = getEnv(env, name);
+				if (value != null) {
+					ConstantValueNode constantValueNode = new ConstantValueNode(ast.getScannerInfo(), value);
+					constantValueNode.setToken(name);
+					result = constantValueNode;
 				}
 			}
 		}
-		return constants;
+		if (result == null) {
+			result = a.duplicate();
+			for (NameNodeTuple child: a.getChildNodesWithNames())
+				result.addChild(child.name, copyArgument(child.node, frame, env, result));
+		}
+		result.setParent(parent);
+		return result;
 	}
 	
 	/**
@@ -1121,15 +1610,6 @@ public class InterpreterImp implements Interpreter {
 		}
 	}
 	
-	private List<ASTNode> injectEnvVars(List<ASTNode> args) {
-		if (args == null)
-			return null;
-		List<ASTNode> result = new ArrayList<ASTNode>();
-		for (ASTNode arg : args)
-			result.add(injectEnvVars((ASTNode)copyTree(arg)));
-		return result;
-	}
-	
 	/**
 	 * Replaces all FunctionRuleTermNodes that refer to an environment variable by a ConstantValueNode with the corresponding value
 	 * @param arg argument to do the replacement in
@@ -1158,6 +1638,119 @@ public class InterpreterImp implements Interpreter {
 		return arg;
 	}
 
+	/**
+	 * The binding of the parameters of a called rule to the arguments of 
+	 * the call, together with the environment variables and the frame of 
+	 * the caller, in which the arguments are evaluated.
+	 */
+	static final class Frame {
+		final List<String> params;
+		final List<ASTNode> args;
+		/** evaluators of the arguments of a call by callRule, which leaves the arguments untouched; null otherwise */
+		final Evaluator[] argEvaluators;
+		final Map<String, Stack<Element>> callerEnv;
+		final Frame callerFrame;
+		
+		Frame(List<String> params, List<ASTNode> args, Map<String, Stack<Element>> callerEnv, Frame callerFrame) {
+			this(params, args, null, callerEnv, callerFrame);
+		}
+		
+		Frame(List<String> params, List<ASTNode> args, Evaluator[] argEvaluators, 
+				Map<String, Stack<Element>> callerEnv, Frame callerFrame) {
+			this.params = params;
+			this.args = args;
+			this.argEvaluators = argEvaluators;
+			this.callerEnv = callerEnv;
+			this.callerFrame = callerFrame;
+		}
+		
+		/*
+		 * Returns a copy of this frame with its own copies of the arguments 
+		 * and environments, which can be used by another interpreter.
+		 */
+		Frame copy() {
+			List<ASTNode> args = this.args;
+			if (argEvaluators == null) {
+				args = new ArrayList<ASTNode>(this.args.size());
+				for (ASTNode arg: this.args)
+					args.add((ASTNode)arg.cloneTree());
+			}
+			Map<String, Stack<Element>> env = new HashMap<String, Stack<Element>>();
+			for (Entry<String, Stack<Element>> var: callerEnv.entrySet()) {
+				Stack<Element> stack = new Stack<Element>();
+				stack.addAll(var.getValue());
+				env.put(var.getKey(), stack);
+			}
+			return new Frame(params, args, argEvaluators, env, (callerFrame == null ? null : callerFrame.copy()));
+		}
+	}
+	
+	/**
+	 * A copy of the body of a rule that is interpreted for one call of the
+	 * rule at a time, and then reused by the next call from any call site.
+	 */
+	private static final class RuleBody {
+		final RuleElement rule;
+		final ASTNode root;
+		
+		/** parameters for which the occurrences have been collected */
+		List<String> params = null;
+		/** occurrences of the parameters, inner ones first */
+		final List<ASTNode> occurrences = new ArrayList<ASTNode>();
+		/** other function and rule terms by name */
+		final Map<String, ASTNode> names = new HashMap<String, ASTNode>();
+		
+		/** occurrences replaced for the current call, and their replacements */
+		final List<ASTNode> replaced = new ArrayList<ASTNode>();
+		final List<ASTNode> replacements = new ArrayList<ASTNode>();
+		
+		RuleBody(RuleElement rule, ASTNode root) {
+			this.rule = rule;
+			this.root = root;
+		}
+		
+		void collectOccurrences(List<String> params) {
+			if (params.equals(this.params))
+				return;
+			this.params = params;
+			occurrences.clear();
+			names.clear();
+			collectOccurrences(root);
+		}
+		
+		private void collectOccurrences(ASTNode node) {
+			for (ASTNode child = node.getFirst(); child != null; child = child.getNext())
+				collectOccurrences(child);
+			final String name = getTermName(node);
+			if (name != null) {
+				if (params.contains(name))
+					occurrences.add(node);
+				else if (!names.containsKey(name))
+					names.put(name, node);
+			}
+		}
+	}
+	
+	/**
+	 * An argument being evaluated for an occurrence of a parameter, 
+	 * with the environment to return to.
+	 */
+	private static final class ArgumentEvaluation {
+		final ASTNode node;
+		final ASTNode arg;
+		final ASTNode argParent;
+		final Map<String, Stack<Element>> env;
+		final Frame frame;
+		
+		ArgumentEvaluation(ASTNode node, ASTNode arg, Map<String, Stack<Element>> env, Frame frame) {
+			this.node = node;
+			this.arg = arg;
+			this.argParent = (ASTNode)arg.getParent();
+			this.env = env;
+			this.frame = frame;
+		}
+	}
+
 	public Node copyTree(Node a) {
 		return a.cloneTree();
 	}
@@ -1244,6 +1837,9 @@ public class InterpreterImp implements Interpreter {
 		// clearTree(pos);
 		// removing environment (temporary) values
 		envMap.clear();
+		fastMode = capi.getProperty(EngineProperties.FAST_INTERPRETER_MODE, EngineProperties.NO)
+				.equalsIgnoreCase(EngineProperties.YES)
+				&& capi.getInterpreterListeners().isEmpty();
 		notifyInitProgramExecution(self, (RuleElement)storage.getChosenProgram(self));
  	}
 
@@ -1288,16 +1884,92 @@ public class InterpreterImp implements Interpreter {
 	}
 
 	public void cleanUp() {
+		clearEnvVars();
+		trimIdleBodies();
+		interpreters.set(this);
+	}
+
+	/*
+	 * Drops the idle copies of rule bodies beyond MAX_IDLE_BODIES per rule,
+	 * e.g. those left by a deep recursion.
+	 */
+	private void trimIdleBodies() {
+		for (ArrayDeque<RuleBody> idle: idleBodies.values())
+			while (idle.size() > MAX_IDLE_BODIES)
+				idle.pollLast();
+	}
+
+	/*
+	 * Removes all environment variables and forgets the rule calls, 
+	 * including those left unfinished by an error.
+	 */
+	void clearEnvVars() {
+		while (!argumentEvaluations.isEmpty()) {
+			final ArgumentEvaluation evaluation = argumentEvaluations.pop();
+			evaluation.arg.setParent(evaluation.argParent);
+		}
+		for (RuleBody body: activeBodies.values())
+			releaseBody(body);
+		activeBodies.clear();
+		if (!hiddenEnvMaps.isEmpty())
+			envMap = hiddenEnvMaps.firstElement();
 		envMap.clear();
 		hiddenEnvMaps.clear();
+		frame = null;
+		hiddenFrames.clear();
 		ruleCallStack.clear();
-		interpreters.set(this);
+	}
+
+	/*
+	 * Returns a copy of the parameters bound in this interpreter, for an
+	 * interpreter evaluating a part of the current tree; or null if no 
+	 * parameters are bound.
+	 */
+	Frame copyFrame() {
+		return (frame == null ? null : frame.copy());
+	}
+	
+	/*
+	 * Binds the parameters of the given frame in this interpreter.
+	 */
+	void setFrame(Frame frame) {
+		this.frame = frame;
+	}
+
+	/**
+	 * @see Interpreter#isFastMode()
+	 */
+	public boolean isFastMode() {
+		return fastMode;
+	}
+
+	/*
+	 * Returns the random number generator of this interpreter if it was
+	 * acquired from a fork, or null if it uses the generator of its agent.
+	 */
+	Random getForkRandom() {
+		return forkRandom;
+	}
+
+	/*
+	 * Sets the random number generator of an interpreter acquired from a fork.
+	 */
+	void setForkRandom(Random random) {
+		this.forkRandom = random;
+	}
+
+	/*
+	 * Sets the mode of this interpreter; used for interpreters that 
+	 * evaluate subtrees for another interpreter.
+	 */
+	void setFastMode(boolean fastMode) {
+		this.fastMode = fastMode;
 	}
 
 	@Override
 	public void dispose() {
 		cleanUp();
 		interpreters.remove();
-		workCopies.clear();
+		idleBodies.clear();
 	}
 }
@@ -0,0 +1,530 @@
+/*
+ * KernelEvaluators.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.interpreter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.coreasm.engine.ControlAPI;
+import org.coreasm.engine.CoreASMError;
+import org.coreasm.engine.EngineError;
+import org.coreasm.engine.absstorage.AbstractStorage;
+import org.coreasm.engine.absstorage.BooleanElement;
+import org.coreasm.engine.absstorage.Element;
+import org.coreasm.engine.absstorage.ElementList;
+import org.coreasm.engine.absstorage.FunctionElement;
+import org.coreasm.engine.absstorage.InvalidLocationException;
+import org.coreasm.engine.absstorage.Location;
+import org.coreasm.engine.absstorage.NameElement;
+import org.coreasm.engine.absstorage.RuleElement;
+import org.coreasm.engine.absstorage.Update;
+import org.coreasm.engine.absstorage.UpdateMultiset;
+import org.coreasm.engine.interpreter.Node.NameNodeTuple;
+import org.coreasm.engine.kernel.EnclosedTermNode;
+import org.coreasm.engine.kernel.Kernel;
+import org.coreasm.engine.kernel.MacroCallRuleNode;
+import org.coreasm.engine.kernel.RuleOrFuncElementNode;
+import org.coreasm.engine.kernel.UpdateRuleNode;
+
+/**
+ * The {@link Evaluator}s of the nodes interpreted by the kernel. They
+ * evaluate the nodes as {@link InterpreterImp} interprets them; a node
+ * whose evaluation is only known at run time, e.g. a name that is not
+ * defined yet, is interpreted step by step instead.
+ */
+final class KernelEvaluators {
+
+	private KernelEvaluators() {
+	}
+
+	/*
+	 * Returns the evaluator of the given kernel node, or null if the node
+	 * is interpreted step by step.
+	 */
+	static Evaluator build(ASTNode node, EvaluatorBuilder builder) {
+		final String token = node.getToken();
+		if (token != null) {
+			if (token.equals(Kernel.KW_TRUE))
+				return new ConstantEvaluator(BooleanElement.TRUE);
+			if (token.equals(Kernel.KW_FALSE))
+				return new ConstantEvaluator(BooleanElement.FALSE);
+			if (token.equals(Kernel.KW_UNDEF))
+				return new ConstantEvaluator(Element.UNDEF);
+			if (token.equals(Kernel.KW_SELF))
+				return SELF;
+		}
+
+		switch (node.getClassKind()) {
+		case FUNCTION_RULE:
+			if (node instanceof FunctionRuleTermNode && !(node.getParent() instanceof MacroCallRuleNode)) {
+				final FunctionRuleTermNode frNode = (FunctionRuleTermNode)node;
+				if (!frNode.hasName())
+					return null;
+				final int param = builder.getParameterIndex(frNode.getName());
+				if (!frNode.hasArguments())
+					return (param >= 0 ? new ParameterEvaluator(param) : new NameEvaluator(frNode, builder));
+				// a parameter applied to arguments depends on the syntax of its argument
+				return (param >= 0 ? null : new ApplicationEvaluator(frNode, builder));
+			}
+			return null;
+
+		case OPERATOR:
+			return new OperatorEvaluator(node, builder);
+
+		case EXPRESSION:
+			if (node.getRuleKind() == ASTNode.RuleKind.RULE_ELEMENT_TERM)
+				return new RuleElementEvaluator(node.getFirst().getToken(), builder);
+			if (node instanceof RuleOrFuncElementNode)
+				return new ElementNameEvaluator(((RuleOrFuncElementNode)node).getElementName(), builder);
+			if (node instanceof EnclosedTermNode)
+				return new EnclosedTermEvaluator(builder.build(node.getFirst()));
+			return null;
+
+		default:
+			break;
+		}
+
+		if (node instanceof MacroCallRuleNode) {
+			if (!(node.getFirst() instanceof FunctionRuleTermNode))
+				return null;
+			final FunctionRuleTermNode frNode = (FunctionRuleTermNode)node.getFirst();
+			if (!frNode.hasName() || builder.getParameterIndex(frNode.getName()) >= 0)
+				return null;
+			return new MacroCallEvaluator(node, frNode, builder);
+		}
+		if (node instanceof UpdateRuleNode)
+			return new UpdateEvaluator(node, builder);
+		if (node.getRuleKind() == ASTNode.RuleKind.IMPORT_RULE)
+			return new ImportEvaluator(node, builder);
+		if (Kernel.KW_SKIP.equals(token))
+			return SKIP;
+		return null;
+	}
+
+	/*
+	 * Returns the evaluators of the given nodes.
+	 */
+	static Evaluator[] build(List<ASTNode> nodes, EvaluatorBuilder builder) {
+		final Evaluator[] evaluators = new Evaluator[nodes.size()];
+		for (int i = 0; i < evaluators.length; i++)
+			evaluators[i] = builder.build(nodes.get(i));
+		return evaluators;
+	}
+
+	/*
+	 * Returns the values of the given evaluators.
+	 */
+	static ElementList evaluateArguments(Interpreter interpreter, Evaluator[] args) throws InterpreterException {
+		if (args.length == 0)
+			return ElementList.NO_ARGUMENT;
+		final List<Element> values = new ArrayList<Element>(args.length);
+		for (Evaluator arg: args) {
+			final Element value = arg.evaluate(interpreter).getValue();
+			if (value == null)
+				throw new InterpreterException("Expecting expression as argument.");
+			values.add(value);
+		}
+		return ElementList.create(values);
+	}
+
+	/*
+	 * An evaluator that interprets its node step by step in the cases that
+	 * are only known at run time. The stepwise evaluator is built on first use.
+	 */
+	private static abstract class FallbackEvaluator implements Evaluator {
+		protected final ASTNode node;
+		private final EvaluatorBuilder builder;
+		private volatile Evaluator fallback = null;
+
+		FallbackEvaluator(ASTNode node, EvaluatorBuilder builder) {
+			this.node = node;
+			this.builder = builder;
+		}
+
+		protected Evaluation interpretStepwise(Interpreter interpreter) throws InterpreterException {
+			Evaluator evaluator = fallback;
+			if (evaluator == null) {
+				evaluator = new StepwiseEvaluator(node, builder);
+				fallback = evaluator;
+			}
+			return evaluator.evaluate(interpreter);
+		}
+	}
+
+	private static final Evaluator SELF = new Evaluator() {
+		public Evaluation evaluate(Interpreter interpreter) {
+			return Evaluation.ofValue(interpreter.getSelf());
+		}
+	};
+
+	private static final Evaluator SKIP = new Evaluator() {
+		public Evaluation evaluate(Interpreter interpreter) {
+			return Evaluation.ofUpdates(new UpdateMultiset());
+		}
+	};
+
+	private static final class ConstantEvaluator implements Evaluator {
+		private final Evaluation evaluation;
+
+		ConstantEvaluator(Element value) {
+			this.evaluation = Evaluation.ofValue(value);
+		}
+
+		public Evaluation evaluate(Interpreter interpreter) {
+			return evaluation;
+		}
+	}
+
+	/*
+	 * An occurrence of a parameter of the rule, which evaluates its argument.
+	 */
+	private static final class ParameterEvaluator implements Evaluator {
+		private final int index;
+
+		ParameterEvaluator(int index) {
+			this.index = index;
+		}
+
+		public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+			return ((InterpreterImp)interpreter).evaluateParameter(index);
+		}
+	}
+
+	/*
+	 * A name 'x' of an environment variable, a function or a rule.
+	 */
+	private static final class NameEvaluator extends FallbackEvaluator {
+		private final String name;
+		private final AbstractStorage storage;
+
+		NameEvaluator(FunctionRuleTermNode node, EvaluatorBuilder builder) {
+			super(node, builder);
+			this.name = node.getName();
+			this.storage = builder.getControlAPI().getStorage();
+		}
+
+		public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+			final Element env = interpreter.getEnv(name);
+			if (env != null)
+				return Evaluation.ofValue(env);
+			final FunctionElement f = storage.getFunction(name);
+			if (f != null) {
+				final Location l = storage.getNullaryLocation(name, f.isModifiable());
+				try {
+					return new Evaluation(l, null, storage.getValue(l));
+				} catch (InvalidLocationException e) {
+					throw new EngineError("Location is invalid in 'interpretExpressions()'." +
+							"This cannot happen!");
+				}
+			}
+			final RuleElement rule = storage.getRule(name);
+			if (rule != null)
+				return new Evaluation(new Location(AbstractStorage.RULE_ELEMENT_FUNCTION_NAME,
+						ElementList.create(new NameElement(name))), null, rule);
+			// e.g., an undefined identifier
+			return interpretStepwise(interpreter);
+		}
+	}
+
+	/*
+	 * An application 'x(...)' of a function.
+	 */
+	private static final class ApplicationEvaluator extends FallbackEvaluator {
+		private final String name;
+		private final Evaluator[] args;
+		private final AbstractStorage storage;
+
+		ApplicationEvaluator(FunctionRuleTermNode node, EvaluatorBuilder builder) {
+			super(node, builder);
+			this.name = node.getName();
+			this.args = build(node.getArguments(), builder);
+			this.storage = builder.getControlAPI().getStorage();
+		}
+
+		public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+			FunctionElement f = storage.getFunction(name);
+			final Element env = interpreter.getEnv(name);
+			if (env instanceof FunctionElement)
+				f = (FunctionElement)env;
+			if (f == null) {
+				try {
+					final Element value = storage.getValue(storage.getNullaryLocation(name, null));
+					if (value instanceof FunctionElement)
+						f = (FunctionElement)value;
+				} catch (InvalidLocationException e) {
+				}
+			}
+			if (f == null)
+				// e.g., a rule or an undefined identifier
+				return interpretStepwise(interpreter);
+
+			final ElementList vList = evaluateArguments(interpreter, args);
+			final String fName = storage.getFunctionName(f);
+			if (fName != null) {
+				final Location l = new Location(fName, vList, f.isModifiable());
+				try {
+					return new Evaluation(l, null, storage.getValue(l));
+				} catch (InvalidLocationException e) {
+					throw new EngineError("Location is invalid in 'interpretExpressions()'." +
+							"This cannot happen!");
+				}
+			}
+			return new Evaluation(new Location(name, vList, f.isModifiable()), null, f.getValue(vList));
+		}
+	}
+
+	/*
+	 * An operator, of which the operands are evaluated into a scratch copy
+	 * of the node that is then interpreted by the operator providers.
+	 */
+	private static final class OperatorEvaluator implements Evaluator {
+		/** the number of unused scratch nodes a thread keeps */
+		private static final int MAX_IDLE_SCRATCHES = 4;
+
+		private final ASTNode node;
+		private final Evaluator[] operands;
+
+		/** unused scratch nodes of every thread */
+		private final ThreadLocal<ArrayDeque<ASTNode>> idleScratches = new ThreadLocal<ArrayDeque<ASTNode>>() {
+			@Override
+			protected ArrayDeque<ASTNode> initialValue() {
+				return new ArrayDeque<ASTNode>();
+			}
+		};
+
+		OperatorEvaluator(ASTNode node, EvaluatorBuilder builder) {
+			this.node = node;
+			this.operands = build(node.getAbstractChildNodes(), builder);
+		}
+
+		/*
+		 * Returns a copy of the node with copies of its children but no grandchildren.
+		 */
+		private ASTNode newScratch() {
+			final ASTNode scratch = (ASTNode)node.duplicate();
+			for (NameNodeTuple child: node.getChildNodesWithNames())
+				scratch.addChild(child.name, child.node.duplicate());
+			return scratch;
+		}
+
+		public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+			final ArrayDeque<ASTNode> idle = idleScratches.get();
+			ASTNode scratch = idle.poll();
+			if (scratch == null)
+				scratch = newScratch();
+			ASTNode operand = scratch.getFirst();
+			for (Evaluator evaluator: operands) {
+				InterpreterImp.setEvaluation(operand, evaluator.evaluate(interpreter));
+				operand = operand.getNext();
+			}
+			((InterpreterImp)interpreter).interpretOperators(scratch);
+			final Element value = scratch.getValue();
+			if (value == null)
+				// the failure has been reported
+				throw new CoreASMError("Failed to interpret node.", interpreter.getCurrentCallStack(), node);
+			scratch.setNode(null, null, null);
+			for (operand = scratch.getFirst(); operand != null; operand = operand.getNext())
+				operand.setNode(null, null, null);
+			if (idle.size() < MAX_IDLE_SCRATCHES)
+				idle.push(scratch);
+			return Evaluation.ofValue(value);
+		}
+	}
+
+	/*
+	 * A 'ruleelement x' term.
+	 */
+	private static final class RuleElementEvaluator implements Evaluator {
+		private final String name;
+		private final AbstractStorage storage;
+
+		RuleElementEvaluator(String name, EvaluatorBuilder builder) {
+			this.name = name;
+			this.storage = builder.getControlAPI().getStorage();
+		}
+
+		public Evaluation evaluate(Interpreter interpreter) {
+			final RuleElement rule = storage.getRule(name);
+			return Evaluation.ofValue(rule == null ? Element.UNDEF : rule);
+		}
+	}
+
+	/*
+	 * A '@x' term.
+	 */
+	private static final class ElementNameEvaluator implements Evaluator {
+		private final String name;
+		private final AbstractStorage storage;
+
+		ElementNameEvaluator(String name, EvaluatorBuilder builder) {
+			this.name = name;
+			this.storage = builder.getControlAPI().getStorage();
+		}
+
+		public Evaluation evaluate(Interpreter interpreter) {
+			Element e = storage.getRule(name);
+			if (e == null)
+				e = storage.getFunction(name);
+			final Element env = interpreter.getEnv(name);
+			if (env instanceof FunctionElement || env instanceof RuleElement)
+				e = env;
+			if (e == null) {
+				try {
+					final Element value = storage.getValue(storage.getNullaryLocation(name, null));
+					if (value instanceof FunctionElement || value instanceof RuleElement)
+						e = value;
+				} catch (InvalidLocationException ex) {
+				}
+			}
+
+			if (e instanceof FunctionElement) {
+				if (((FunctionElement)e).isModifiable())
+					return new Evaluation(new Location(AbstractStorage.FUNCTION_ELEMENT_FUNCTION_NAME,
+							ElementList.create(new NameElement(name))), null, e);
+				return Evaluation.ofValue(e);
+			}
+			if (e instanceof RuleElement)
+				return new Evaluation(new Location(AbstractStorage.RULE_ELEMENT_FUNCTION_NAME,
+						ElementList.create(new NameElement(name))), null, e);
+			return Evaluation.ofValue(e == null ? Element.UNDEF : e);
+		}
+	}
+
+	/*
+	 * A '(' ... ')' term.
+	 */
+	private static final class EnclosedTermEvaluator implements Evaluator {
+		private final Evaluator term;
+
+		EnclosedTermEvaluator(Evaluator term) {
+			this.term = term;
+		}
+
+		public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+			return Evaluation.ofValue(term.evaluate(interpreter).getValue());
+		}
+	}
+
+	/*
+	 * A call 'x(...)' of a rule.
+	 */
+	private static final class MacroCallEvaluator extends FallbackEvaluator {
+		private final String name;
+		private final List<ASTNode> argNodes;
+		private final Evaluator[] args;
+		/** true for the arguments that may stand for the syntax of a rule or function */
+		private final boolean[] syntactic;
+		private final AbstractStorage storage;
+
+		MacroCallEvaluator(ASTNode node, FunctionRuleTermNode frNode, EvaluatorBuilder builder) {
+			super(node, builder);
+			this.name = frNode.getName();
+			this.argNodes = frNode.getArguments();
+			this.args = build(argNodes, builder);
+			this.syntactic = new boolean[args.length];
+			for (int i = 0; i < args.length; i++)
+				syntactic[i] = (argNodes.get(i) instanceof RuleOrFuncElementNode
+						|| InterpreterImp.getTermName(argNodes.get(i)) != null);
+			this.storage = builder.getControlAPI().getStorage();
+		}
+
+		public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+			final InterpreterImp imp = (InterpreterImp)interpreter;
+			RuleElement rule = null;
+			if (storage.isRuleName(name))
+				rule = storage.getRule(name);
+			else {
+				Element e = interpreter.getEnv(name);
+				if (e == null) {
+					try {
+						e = storage.getValue(storage.getNullaryLocation(name, null));
+					} catch (InvalidLocationException ex) {
+						throw new EngineError("Location is invalid in 'interpretRules()'." +
+								"This cannot happen!");
+					}
+				}
+				if (e instanceof RuleElement)
+					rule = (RuleElement)e;
+			}
+			if (rule == null)
+				return interpretStepwise(interpreter);
+			if (rule.getParam().size() != args.length)
+				throw new CoreASMError("The number of arguments passed to '" + rule.getName() +
+						"' does not match its signature.", interpreter.getCurrentCallStack(), node);
+
+			final CompiledRule compiled = imp.getCompiledRule(rule);
+			if (!imp.canCallCompiled(compiled))
+				return interpretStepwise(interpreter);
+			// arguments standing for rules or functions are substituted into a copy of the body
+			for (int i = 0; i < args.length; i++)
+				if (syntactic[i] && imp.needsSubstitution(argNodes.get(i)))
+					return interpretStepwise(interpreter);
+			return imp.callRule(rule, compiled, node, argNodes, args);
+		}
+	}
+
+	/*
+	 * An assignment 'l := r'.
+	 */
+	private static final class UpdateEvaluator implements Evaluator {
+		private final ASTNode node;
+		private final Evaluator lhs;
+		private final Evaluator rhs;
+
+		UpdateEvaluator(ASTNode node, EvaluatorBuilder builder) {
+			this.node = node;
+			this.lhs = builder.build(node.getFirst());
+			this.rhs = builder.build(node.getFirst().getNext());
+		}
+
+		public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+			final Location l = lhs.evaluate(interpreter).getLocation();
+			final Element value = rhs.evaluate(interpreter).getValue();
+			if (l == null)
+				throw new CoreASMError("Cannot update a non-location!", interpreter.getCurrentCallStack(), node);
+			if (l.isModifiable != null && l.isModifiable.equals(false))
+				throw new CoreASMError("Left hand side of the assignment, " + l + ", is not modifiable.",
+						interpreter.getCurrentCallStack(), node);
+			final Update u = new Update(l, value, Update.UPDATE_ACTION, ((InterpreterImp)interpreter).getSelfSet(),
+					node.scannerInfo == null ? null : node.scannerInfo.asSet());
+			return Evaluation.ofUpdates(new UpdateMultiset(u));
+		}
+	}
+
+	/*
+	 * An 'import x do R' rule.
+	 */
+	private static final class ImportEvaluator implements Evaluator {
+		private final String[] ids;
+		private final Evaluator rule;
+		private final ControlAPI capi;
+
+		ImportEvaluator(ASTNode node, EvaluatorBuilder builder) {
+			final List<ASTNode> children = node.getAbstractChildNodes();
+			this.ids = new String[children.size() - 1];
+			for (int i = 0; i < ids.length; i++)
+				ids[i] = children.get(i).getToken();
+			this.rule = builder.build(children.get(children.size() - 1));
+			this.capi = builder.getControlAPI();
+		}
+
+		public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+			for (String id: ids)
+				interpreter.addEnv(id, capi.getStorage().getNewElement());
+			try {
+				return Evaluation.ofUpdates(rule.evaluate(interpreter).getUpdates());
+			} finally {
+				for (String id: ids)
+					interpreter.removeEnv(id);
+			}
+		}
+	}
+}
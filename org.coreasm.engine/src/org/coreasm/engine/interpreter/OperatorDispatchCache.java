@@ -0,0 +1,79 @@
+/*
+ * OperatorDispatchCache.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.interpreter;
+
+import org.coreasm.engine.absstorage.Element;
+import org.coreasm.engine.plugin.OperatorProvider;
+
+/**
+ * Remembers the operator provider that evaluated an operator node for the
+ * classes of its operand values. An instance is shared by an operator node
+ * and all of its duplicates, so copies of rule bodies benefit from what
+ * earlier copies found out.
+ * <p>
+ * Only the last combination of operand classes is kept. Entries are
+ * immutable, so the cache can be used by many threads at the same time.
+ *
+ * @see InterpreterImp
+ */
+final class OperatorDispatchCache {
+
+	private volatile Entry entry = null;
+
+	/**
+	 * Returns the provider that evaluated the given operator node for the
+	 * current classes of its operand values, or <code>null</code> if there
+	 * is none.
+	 */
+	OperatorProvider getProvider(ASTNode opNode) {
+		final Entry e = entry;
+		if (e == null)
+			return null;
+		int i = 0;
+		for (ASTNode operand = opNode.getFirst(); operand != null; operand = operand.getNext()) {
+			if (i >= e.operandClasses.length || e.operandClasses[i] != getOperandClass(operand))
+				return null;
+			i++;
+		}
+		if (i != e.operandClasses.length)
+			return null;
+		return e.provider;
+	}
+
+	/**
+	 * Remembers the given provider for the current classes of the operand
+	 * values of the given operator node.
+	 */
+	void setProvider(ASTNode opNode, OperatorProvider provider) {
+		int count = 0;
+		for (ASTNode operand = opNode.getFirst(); operand != null; operand = operand.getNext())
+			count++;
+		final Class<?>[] operandClasses = new Class<?>[count];
+		int i = 0;
+		for (ASTNode operand = opNode.getFirst(); operand != null; operand = operand.getNext())
+			operandClasses[i++] = getOperandClass(operand);
+		entry = new Entry(operandClasses, provider);
+	}
+
+	private static Class<?> getOperandClass(ASTNode operand) {
+		final Element value = operand.getValue();
+		return (value == null ? null : value.getClass());
+	}
+
+	private static final class Entry {
+		final Class<?>[] operandClasses;
+		final OperatorProvider provider;
+
+		Entry(Class<?>[] operandClasses, OperatorProvider provider) {
+			this.operandClasses = operandClasses;
+			this.provider = provider;
+		}
+	}
+}
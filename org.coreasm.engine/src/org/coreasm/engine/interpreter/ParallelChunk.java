@@ -0,0 +1,139 @@
+/*
+ * ParallelChunk.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.interpreter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.coreasm.engine.ControlAPI;
+import org.coreasm.engine.absstorage.Element;
+import org.coreasm.engine.absstorage.Enumerable;
+
+/**
+ * A part of the domain of a rule or expression that is evaluated in
+ * parallel, e.g., of a parallel <code>forall</code> rule. A chunk is a
+ * fork/join task that evaluates the elements [start, ..., end-1] of the
+ * domain with an interpreter acquired from an {@link InterpreterFork}.
+ * <p>
+ * The static methods decide whether a domain is evaluated in parallel,
+ * split it into chunks and run the chunks in the thread pool of the
+ * scheduler.
+ *
+ * @see InterpreterFork
+ */
+public abstract class ParallelChunk extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Number of chunks a domain is split into for every thread of the pool */
+	public static final int CHUNKS_PER_THREAD = 4;
+
+	protected final InterpreterFork fork;
+	protected final int start;
+	protected final int end;
+
+	private InterpreterException error = null;
+
+	/**
+	 * Creates a chunk for the elements [start, ..., end-1] of a domain.
+	 *
+	 * @see #getStart(int, int, int)
+	 */
+	protected ParallelChunk(InterpreterFork fork, int start, int end) {
+		this.fork = fork;
+		this.start = start;
+		this.end = end;
+	}
+
+	@Override
+	protected final void compute() {
+		final Interpreter interpreter = fork.acquire();
+		try {
+			evaluate(interpreter);
+		} catch (InterpreterException e) {
+			error = e;
+		} finally {
+			fork.release(interpreter);
+		}
+	}
+
+	/**
+	 * Evaluates the elements of this chunk with the given interpreter.
+	 * {@link InterpreterFork#seedRandom(Interpreter, int)} must be called
+	 * before each element is evaluated.
+	 */
+	protected abstract void evaluate(Interpreter interpreter) throws InterpreterException;
+
+	/**
+	 * Returns true if a rule or expression over the given domain should be
+	 * evaluated in parallel, given the value of its threshold option.
+	 * This does not depend on the number of threads: with a single thread,
+	 * the chunks are evaluated one after the other, so that every element
+	 * gets the same random number generator in any case.
+	 */
+	public static boolean shouldEvaluateInParallel(ControlAPI capi, String thresholdStr, Element domain) {
+		if (!(domain instanceof Enumerable) || !((Enumerable)domain).supportsIndexedView())
+			return false;
+		if (thresholdStr == null)
+			return false;
+		int threshold = 0;
+		try {
+			threshold = Integer.parseInt(thresholdStr.trim());
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		return threshold > 0 && ((Enumerable)domain).size() >= threshold
+				// stacked states are only visible to the thread of the agent
+				&& !capi.getStorage().isStateStacked()
+				&& capi.getInterpreterListeners().isEmpty();
+	}
+
+	/**
+	 * Returns the number of chunks a domain of the given size is split into.
+	 */
+	public static int getChunkCount(ControlAPI capi, int size) {
+		return Math.min(size, capi.getScheduler().getExecutor().getParallelism() * CHUNKS_PER_THREAD);
+	}
+
+	/**
+	 * Returns the index of the first element of the given chunk. The last
+	 * element of a chunk precedes the first element of the next one.
+	 */
+	public static int getStart(int size, int chunk, int chunkCount) {
+		return (int)((long)size * chunk / chunkCount);
+	}
+
+	/**
+	 * Evaluates the given chunks in the thread pool of the scheduler and
+	 * returns when all of them are done. The first exception thrown by
+	 * a chunk is thrown again.
+	 */
+	public static void invokeAll(ControlAPI capi, final ParallelChunk[] chunks) throws InterpreterException {
+		final ForkJoinPool pool = capi.getScheduler().getExecutor();
+		final RecursiveAction all = new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(chunks);
+			}
+		};
+		if (ForkJoinTask.getPool() == pool)
+			all.invoke();
+		else
+			pool.invoke(all);
+
+		for (ParallelChunk chunk: chunks) {
+			if (chunk.error != null)
+				throw chunk.error;
+		}
+	}
+}
@@ -14,6 +14,8 @@
 package org.coreasm.engine.interpreter;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
 
 import org.codehaus.jparsec.Token;
 import org.coreasm.engine.Specification;
@@ -42,6 +44,9 @@ public class ScannerInfo implements Serializable {
 	/** character position */
 	public final int charPosition;
 	
+	/** the set that contains only this object; created when first needed */
+	private transient volatile Set<ScannerInfo> singleton = null;
+	
 	/**
 	 * Creates a scanner information object with
 	 * an invalid position. Can be used
@@ -84,6 +89,20 @@ public class ScannerInfo implements Serializable {
 		return charPosition != INVALID_POSITION;
 	}
 	
+	/**
+	 * Returns an immutable set that contains only this object. The set is
+	 * shared by all updates that are produced at this position.
+	 */
+	public Set<ScannerInfo> asSet() {
+		Set<ScannerInfo> result = singleton;
+		if (result == null) {
+			// a race here only creates an equal set
+			result = Collections.singleton(this);
+			singleton = result;
+		}
+		return result;
+	}
+	
 	/**
 	 * Returns the position information as an string. If 
 	 * this object has no valid position information,
@@ -0,0 +1,110 @@
+/*
+ * StepwiseEvaluator.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.interpreter;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.coreasm.engine.CoreASMError;
+
+/**
+ * Evaluates a node that has no evaluator of its own by interpreting a copy
+ * of its subtree step by step. The outermost descendants that have their
+ * own evaluators are not interpreted but evaluated by these evaluators, so
+ * only the nodes without evaluators are interpreted step by step.
+ * <p>
+ * Every thread keeps a few copies of the subtree that are not in use, and
+ * a copy is only cleared down to the evaluated descendants.
+ */
+final class StepwiseEvaluator implements Evaluator {
+
+	/** the number of unused copies of the subtree a thread keeps */
+	private static final int MAX_IDLE_COPIES = 4;
+
+	private final ASTNode node;
+
+	/** evaluators of the outermost descendants of the node that have one */
+	private final Map<ASTNode, Evaluator> evaluators;
+
+	/** unused copies of the subtree of every thread */
+	private final ThreadLocal<ArrayDeque<Copy>> idleCopies = new ThreadLocal<ArrayDeque<Copy>>() {
+		@Override
+		protected ArrayDeque<Copy> initialValue() {
+			return new ArrayDeque<Copy>();
+		}
+	};
+
+	StepwiseEvaluator(ASTNode node, EvaluatorBuilder builder) {
+		this.node = node;
+		this.evaluators = new IdentityHashMap<ASTNode, Evaluator>();
+		collectEvaluators(node, builder);
+	}
+
+	private void collectEvaluators(ASTNode parent, EvaluatorBuilder builder) {
+		for (ASTNode child = parent.getFirst(); child != null; child = child.getNext()) {
+			final Evaluator evaluator = builder.buildOwn(child);
+			if (evaluator == null)
+				collectEvaluators(child, builder);
+			else
+				evaluators.put(child, evaluator);
+		}
+	}
+
+	public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+		final ArrayDeque<Copy> idle = idleCopies.get();
+		// a recursive evaluation takes another copy, as the copy of the caller is in use
+		Copy copy = idle.poll();
+		if (copy == null)
+			copy = new Copy();
+		((InterpreterImp)interpreter).evaluateStepwise(copy.root, copy.evaluators);
+		final ASTNode root = copy.root;
+		if (!root.isEvaluated())
+			// an error has been reported; the copy is dropped as it may be in any state
+			throw new CoreASMError("Failed to interpret node.", interpreter.getCurrentCallStack(), node);
+		final Evaluation result = new Evaluation(root.getLocation(), root.getUpdates(), root.getValue());
+		copy.clear(root);
+		if (idle.size() < MAX_IDLE_COPIES)
+			idle.push(copy);
+		return result;
+	}
+
+	/*
+	 * A copy of the subtree with the evaluators of its nodes.
+	 */
+	private final class Copy {
+		final ASTNode root = (ASTNode)node.cloneTree();
+		final Map<ASTNode, Evaluator> evaluators = new IdentityHashMap<ASTNode, Evaluator>();
+
+		Copy() {
+			mapEvaluators(node, root);
+		}
+
+		private void mapEvaluators(ASTNode original, ASTNode copy) {
+			for (ASTNode o = original.getFirst(), c = copy.getFirst(); o != null && c != null; o = o.getNext(), c = c.getNext()) {
+				final Evaluator evaluator = StepwiseEvaluator.this.evaluators.get(o);
+				if (evaluator == null)
+					mapEvaluators(o, c);
+				else
+					evaluators.put(c, evaluator);
+			}
+		}
+
+		/*
+		 * Clears the given node of the copy and its descendants that are interpreted step by step.
+		 */
+		void clear(ASTNode node) {
+			node.setNode(null, null, null);
+			if (!evaluators.containsKey(node))
+				for (ASTNode child = node.getFirst(); child != null; child = child.getNext())
+					clear(child);
+		}
+	}
+}
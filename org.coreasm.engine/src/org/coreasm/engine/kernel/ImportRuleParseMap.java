@@ -35,7 +35,7 @@ public class ImportRuleParseMap extends ParseMap<Object[], Node> {
 		Node node = new ASTNode(
 				null,
 				ASTNode.RULE_CLASS,
-				"ImportRule",
+				Kernel.GR_IMPORT_RULE,
 				null,
 				((Node)v[0]).getScannerInfo()
 				);
@@ -56,7 +56,6 @@ import org.coreasm.engine.interpreter.ASTNode;
 import org.coreasm.engine.interpreter.Interpreter;
 import org.coreasm.engine.interpreter.InterpreterException;
 import org.coreasm.engine.interpreter.Node;
-import org.coreasm.engine.interpreter.ScannerInfo;
 import org.coreasm.engine.parser.GrammarRule;
 import org.coreasm.engine.parser.OperatorRule;
 import org.coreasm.engine.parser.OperatorRule.OpType;
@@ -96,6 +95,7 @@ public class Kernel extends Plugin
 	public static final String GR_RULEDECLARATION_LIST = "RuleDeclarationList";
 	public static final String GR_BOOLEAN_TERM = "BooleanTerm";
 	public static final String GR_SKIP = "SkipRule";
+	public static final String GR_IMPORT_RULE = "ImportRule";
 	public static final String GR_FUNCTION_RULE_TERM = "FunctionRuleTerm";
 	public static final String GR_TUPLE_TERM = "TupleTerm";
 	public static final String GR_RULEELEMENT_TERM = "RuleElementTerm";
@@ -489,8 +489,8 @@ public class Kernel extends Plugin
 				parserTools.getKeywParser("do", PLUGIN_NAME),
 				refRuleParser.lazy()
 				).map(new ImportRuleParseMap());
-		parsers.put("ImportRule",
-				new GrammarRule("ImportRule",
+		parsers.put(GR_IMPORT_RULE,
+				new GrammarRule(GR_IMPORT_RULE,
 						"'import' ID (',', ID)* 'do' Rule", importRuleParser, PLUGIN_NAME));
        	rules.add(importRuleParser);
        	
@@ -894,20 +894,18 @@ public class Kernel extends Plugin
 		
 		for (Entry<String, UpdateMultiset> updates : universeUpdates.entrySet()) {
 			UniverseElement universe = (UniverseElement)capi.getStorage().getUniverse(updates.getKey());
-			Set<Element> contributingAgents = new HashSet<Element>();
-			Set<ScannerInfo> contributingNodes = new HashSet<ScannerInfo>();
+			List<Update> contributors = new ArrayList<Update>();
 			UniverseElement resultantUniverse = new UniverseElement(universe);
 			// all updates added successfully, so flag them
 			// and add their agents to the contributing agent set
 			for (Update u : updates.getValue()) {
 				pluginAgg.flagUpdate(u,Flag.SUCCESSFUL,this);
-				contributingAgents.addAll(u.agents);
-				contributingNodes.addAll(u.sources);
+				contributors.add(u);
 				resultantUniverse.setValue(u.loc.args, u.value);
 			}
 			
 			// add resultant update to resultant update set
-			pluginAgg.addResultantUpdate(new Update(new Location(updates.getKey(), ElementList.NO_ARGUMENT), resultantUniverse, Update.UPDATE_ACTION, contributingAgents, contributingNodes), this);
+			pluginAgg.addResultantUpdate(Update.aggregate(new Location(updates.getKey(), ElementList.NO_ARGUMENT), resultantUniverse, Update.UPDATE_ACTION, contributors, capi.getStorage().hasLeanUpdates()), this);
 		}
 		
 		// Remove all locations that have been aggregated by this function
@@ -0,0 +1,38 @@
+/*
+ * EvaluatorProvider.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.plugin;
+
+import org.coreasm.engine.interpreter.ASTNode;
+import org.coreasm.engine.interpreter.Evaluator;
+import org.coreasm.engine.interpreter.EvaluatorBuilder;
+
+/**
+ * Interpreter plugins can implement this interface to build the
+ * {@link Evaluator}s of their nodes, which are used in the fast
+ * interpreter mode. Nodes without an evaluator are interpreted step by
+ * step by {@link InterpreterPlugin#interpret}.
+ *
+ * @see Evaluator
+ * @see org.coreasm.engine.EngineProperties#FAST_INTERPRETER_MODE
+ */
+public interface EvaluatorProvider {
+
+	/**
+	 * Returns an evaluator for the given node, or <code>null</code> if the
+	 * node is to be interpreted step by step. The evaluators of the children
+	 * are built with {@link EvaluatorBuilder#build(ASTNode)}. The evaluator
+	 * is built once and used for every evaluation of the node, so it may only
+	 * depend on the shape of the subtree, not on the state.
+	 *
+	 * @param node a node created by this plugin
+	 * @param builder the builder of the tree the node belongs to
+	 */
+	public Evaluator buildEvaluator(ASTNode node, EvaluatorBuilder builder);
+}
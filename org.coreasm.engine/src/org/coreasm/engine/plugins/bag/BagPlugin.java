@@ -48,7 +48,6 @@ import org.coreasm.engine.interpreter.ASTNode;
 import org.coreasm.engine.interpreter.Interpreter;
 import org.coreasm.engine.interpreter.InterpreterException;
 import org.coreasm.engine.interpreter.Node;
-import org.coreasm.engine.interpreter.ScannerInfo;
 import org.coreasm.engine.kernel.KernelServices;
 import org.coreasm.engine.parser.GrammarRule;
 import org.coreasm.engine.parser.OperatorRule;
@@ -796,33 +795,28 @@ public class BagPlugin extends Plugin
 	 */
 	public UpdateMultiset filterUpdates(UpdateMultiset updates) {
 		Map<Location, List<BagAbstractUpdateElement>> map = new HashMap<Location, List<BagAbstractUpdateElement>>();
-		Map<Location, Set<Element>> contributingAgents = new HashMap<Location, Set<Element>>();
-		Map<Location, Set<ScannerInfo>> contributingNodes = new HashMap<Location, Set<ScannerInfo>>();
+		Map<Location, List<Update>> contributors = new HashMap<Location, List<Update>>();
 		UpdateMultiset result = new UpdateMultiset();
 		
 		for (Update u: updates) {
 			if (u.action.equals(BAG_UPDATE_ACTION)) {
 				List<BagAbstractUpdateElement> list = map.get(u.loc);
-				Set<Element> agents = contributingAgents.get(u.loc);
-				Set<ScannerInfo> nodes = contributingNodes.get(u.loc);
+				List<Update> locContributors = contributors.get(u.loc);
 				if (list == null) {
 					list = new ArrayList<BagAbstractUpdateElement>();
-					agents = new HashSet<Element>();
-					nodes = new HashSet<ScannerInfo>();
+					locContributors = new ArrayList<Update>();
 					map.put(u.loc, list);
-					contributingAgents.put(u.loc, agents);
-					contributingNodes.put(u.loc, nodes);
+					contributors.put(u.loc, locContributors);
 				}
 				list.add((BagAbstractUpdateElement)u.value);
-				agents.addAll(u.agents);
-				nodes.addAll(u.sources);
+				locContributors.add(u);
 			} else
 				result.add(u);
 		}
 		
 		for (Location l: map.keySet()) 
-			result.add(new Update(l, new BagUpdateContainer(map.get(l)), BAG_UPDATE_ACTION, 
-					contributingAgents.get(l), contributingNodes.get(l)));
+			result.add(Update.aggregate(l, new BagUpdateContainer(map.get(l)), BAG_UPDATE_ACTION, 
+					contributors.get(l), capi.getStorage().hasLeanUpdates()));
 		
 		return result;
 	}
@@ -838,8 +832,7 @@ public class BagPlugin extends Plugin
 		UpdateMultiset uMset1 = compAPI.getLocUpdates(1, l);
 		UpdateMultiset uMset2 = compAPI.getLocUpdates(2, l);
 		Update result = null;
-		Set<Element> contributingAgents = new HashSet<Element>();
-		Set<ScannerInfo> contributingNodes = new HashSet<ScannerInfo>();
+		List<Update> contributors = new ArrayList<Update>();
 		
 		// get the value of a basic update on location 'l'
 		// at this point, there should only be one value or 
@@ -847,8 +840,7 @@ public class BagPlugin extends Plugin
 		for (Update ui: uMset1)
 			if (ui.action.equals(Update.UPDATE_ACTION)) {
 				value = ui.value;
-				contributingAgents.addAll(ui.agents);
-				contributingNodes.addAll(ui.sources);
+				contributors.add(ui);
 				break;
 			}
 		
@@ -859,8 +851,7 @@ public class BagPlugin extends Plugin
 			for (Update u: uMset2) 
 				if (u.action.equals(BAG_UPDATE_ACTION)) {
 					temp.add((BagAbstractUpdateElement)u.value);
-					contributingAgents.addAll(u.agents);
-					contributingNodes.addAll(u.sources);
+					contributors.add(u);
 				}
 			
 			BagUpdateContainer bagUpdates = new BagUpdateContainer(temp);
@@ -868,7 +859,7 @@ public class BagPlugin extends Plugin
 			BagElement newBag = bagUpdates.aggregateUpdates((BagElement)value);
 
 			//TODO This needs to be tested
-			result = new Update(l, newBag, Update.UPDATE_ACTION, contributingAgents, contributingNodes);
+			result = Update.aggregate(l, newBag, Update.UPDATE_ACTION, contributors, capi.getStorage().hasLeanUpdates());
 			
 		} else
 			logger.error("Value is not a bag in BagPlugin composition.");
@@ -882,8 +873,7 @@ public class BagPlugin extends Plugin
 	private Update composeBagIncrementalUpdates(Location l, PluginCompositionAPI compAPI) {
 		UpdateMultiset uMset1 = filterUpdates(compAPI.getLocUpdates(1, l));
 		UpdateMultiset uMset2 = filterUpdates(compAPI.getLocUpdates(2, l));
-		Set<Element> contributingAgents = new HashSet<Element>();
-		Set<ScannerInfo> contributingNodes = new HashSet<ScannerInfo>();
+		List<Update> contributors = new ArrayList<Update>();
 		
 		BagAbstractUpdateElement update1 = null;
 		BagAbstractUpdateElement update2 = null;
@@ -891,17 +881,15 @@ public class BagPlugin extends Plugin
 		for (Update u1: uMset1) 
 			if (u1.action.equals(BAG_UPDATE_ACTION)) {
 				update1 = (BagAbstractUpdateElement)u1.value;
-				contributingAgents.addAll(u1.agents);
-				contributingNodes.addAll(u1.sources);
+				contributors.add(u1);
 			}
 		for (Update u2: uMset2) 
 			if (u2.action.equals(BAG_UPDATE_ACTION)) {
 				update2 = (BagAbstractUpdateElement)u2.value;
-				contributingAgents.addAll(u2.agents);
-				contributingNodes.addAll(u2.sources);
+				contributors.add(u2);
 			}
 		
-		return new Update(l, BagUpdateContainer.compose(update1, update2), BAG_UPDATE_ACTION, contributingAgents, contributingNodes);
+		return Update.aggregate(l, BagUpdateContainer.compose(update1, update2), BAG_UPDATE_ACTION, contributors, capi.getStorage().hasLeanUpdates());
 	}
 	
 	// ---- Checks and Resultant Update creation when INCREMENTAL UPDATES AND REGULAR UPDATES
@@ -1031,8 +1019,7 @@ public class BagPlugin extends Plugin
 	 */
 	private Update buildResultantUpdate(Location loc, PluginAggregationAPI pluginAgg)
 	{
-		Set<Element> contributingAgents = null;
-		Set<ScannerInfo> contributingNodes = null;
+		Update contributor = null;
 
 		// updates for this location
 		UpdateMultiset locUpdates = filterUpdates(pluginAgg.getLocUpdates(loc));
@@ -1051,8 +1038,7 @@ public class BagPlugin extends Plugin
 		for (Update u: locUpdates) 
 			if (u.action.equals(BAG_UPDATE_ACTION)) {
 				bagUpdates = (BagUpdateContainer)u.value; // as we filtered them, it will be container
-				contributingAgents = u.agents;
-				contributingNodes = u.sources;
+				contributor = u;
 			}
 		
 		BagElement newBag = bagUpdates.aggregateUpdates(existingBag);
@@ -1062,7 +1048,7 @@ public class BagPlugin extends Plugin
 			pluginAgg.flagUpdate(u,Flag.SUCCESSFUL,this);
 		
 		// return resultant set
-		return new Update(loc, newBag, Update.UPDATE_ACTION, contributingAgents, contributingNodes);
+		return Update.aggregate(loc, newBag, Update.UPDATE_ACTION, Collections.singletonList(contributor), capi.getStorage().hasLeanUpdates());
 
 	}
 
@@ -16,6 +16,7 @@ package org.coreasm.engine.plugins.blockrule;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -27,12 +28,17 @@ import org.coreasm.engine.EngineTools;
 import org.coreasm.engine.VersionInfo;
 import org.coreasm.engine.absstorage.UpdateMultiset;
 import org.coreasm.engine.interpreter.ASTNode;
+import org.coreasm.engine.interpreter.Evaluation;
+import org.coreasm.engine.interpreter.Evaluator;
+import org.coreasm.engine.interpreter.EvaluatorBuilder;
 import org.coreasm.engine.interpreter.Interpreter;
+import org.coreasm.engine.interpreter.InterpreterException;
 import org.coreasm.engine.interpreter.Node;
 import org.coreasm.engine.kernel.KernelServices;
 import org.coreasm.engine.parser.GrammarRule;
 import org.coreasm.engine.parser.ParserTools;
 import org.coreasm.engine.plugin.InterpreterPlugin;
+import org.coreasm.engine.plugin.EvaluatorProvider;
 import org.coreasm.engine.plugin.ParserPlugin;
 import org.coreasm.engine.plugin.Plugin;
 import org.slf4j.Logger;
@@ -52,7 +58,7 @@ import org.slf4j.LoggerFactory;
  */
 
 public class BlockRulePlugin extends Plugin 
-		implements InterpreterPlugin, ParserPlugin {
+		implements InterpreterPlugin, ParserPlugin, EvaluatorProvider {
  
 	private static final Logger logger = LoggerFactory.getLogger(BlockRulePlugin.class);
 	
@@ -67,6 +73,29 @@ public class BlockRulePlugin extends Plugin
 	
 	private final CompilerPlugin compilerPlugin = new CompilerBlockRulePlugin(this);
 	
+    /**
+     * Evaluates the rules of a block one after the other and collects their updates.
+     */
+    public Evaluator buildEvaluator(ASTNode node, EvaluatorBuilder builder) {
+    	if (!"BlockRule".equals(node.getGrammarRule()))
+    		return null;
+    	final List<ASTNode> children = node.getAbstractChildNodes();
+    	final Evaluator[] rules = new Evaluator[children.size()];
+    	for (int i = 0; i < rules.length; i++)
+    		rules[i] = builder.build(children.get(i));
+    	return new Evaluator() {
+    		public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+    			final UpdateMultiset updates = new UpdateMultiset();
+    			for (Evaluator rule: rules) {
+    				final UpdateMultiset u = rule.evaluate(interpreter).getUpdates();
+    				if (u != null)
+    					updates.addAll(u);
+    			}
+    			return Evaluation.ofUpdates(updates);
+    		}
+    	};
+    }
+    
     public ASTNode interpret(Interpreter interpreter, ASTNode pos) {
         String gRule = pos.getGrammarRule();
         
@@ -22,6 +22,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 
 import org.codehaus.jparsec.Parser;
@@ -219,6 +220,13 @@ public class ChooseRulePlugin extends Plugin implements ParserPlugin,
         return pos;
     }
 
+    /*
+     * Returns the random number generator of the agent evaluated by the given interpreter.
+     */
+    private Random getRandom(Interpreter interpreter) {
+    	return capi.getScheduler().getRandom(interpreter.getSelf());
+    }
+
     private ASTNode interpretPickExpression_NoCondition(Interpreter interpreter, PickExpNode node) {
 		// if domain 'E' is not evaluated
     	if (!node.getDomain().isEvaluated()) {
@@ -237,7 +245,7 @@ public class ChooseRulePlugin extends Plugin implements ParserPlugin,
 				elements = new ArrayList<Element>(domain.enumerate());
             if (!elements.isEmpty()) {
                 // choose t in s
-            	int i = Tools.randInt(elements.size());
+            	int i = getRandom(interpreter).nextInt(elements.size());
                 Element picked = elements.get(i);
                 node.setNode(null, null, picked);
             }
@@ -275,7 +283,7 @@ public class ChooseRulePlugin extends Plugin implements ParserPlugin,
             	Enumerable domain = (Enumerable)node.getDomain().getValue();
             	Iterator<Element> it = iterators.get(node.getDomain());
             	if (it == null) {
-            		it = new RandomElementIterator(domain);
+            		it = new RandomElementIterator(domain, getRandom(interpreter));
             		iterators.put(node.getDomain(), it);
             	}
                 if (it.hasNext()) {
@@ -370,7 +378,7 @@ public class ChooseRulePlugin extends Plugin implements ParserPlugin,
 	    				s = new ArrayList<Element>(domain.enumerate());
 	                if (!s.isEmpty()) {
 	                    // choose t in s
-	                	int i = Tools.randInt(s.size());
+	                	int i = getRandom(interpreter).nextInt(s.size());
 	                    Element chosen = s.get(i);
 	                    // AddEnv(x,t)s
 	                    interpreter.addEnv(variable.getKey(), chosen);
@@ -444,7 +452,7 @@ public class ChooseRulePlugin extends Plugin implements ParserPlugin,
 	    				s = new ArrayList<Element>(domain.enumerate());
 	                if (!s.isEmpty()) {
 	                    // choose t in s
-	                	int i = Tools.randInt(s.size());
+	                	int i = getRandom(interpreter).nextInt(s.size());
 	                    Element chosen = s.get(i);
 	                    // AddEnv(x,t)s
 	                    interpreter.addEnv(variable.getKey(), chosen);
@@ -651,7 +659,7 @@ public class ChooseRulePlugin extends Plugin implements ParserPlugin,
     			Iterator<Element> it = iterators.get(variable.getValue());
                 if (it == null) {
         			Enumerable domain = (Enumerable) variable.getValue().getValue();
-        			it = new RandomElementIterator(domain);
+        			it = new RandomElementIterator(domain, getRandom(interpreter));
                 	if (!it.hasNext()) {
                 		if (chooseNode.getIfnoneRule() == null) {
                 			for (Entry<String, ASTNode> var : variableMap.entrySet()) {
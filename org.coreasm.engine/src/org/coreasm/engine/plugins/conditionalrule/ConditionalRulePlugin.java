@@ -24,14 +24,20 @@ import org.coreasm.compiler.plugins.conditionalrule.CompilerConditionalRulePlugi
 import org.coreasm.engine.CoreASMError;
 import org.coreasm.engine.VersionInfo;
 import org.coreasm.engine.absstorage.BooleanElement;
+import org.coreasm.engine.absstorage.Element;
 import org.coreasm.engine.absstorage.UpdateMultiset;
 import org.coreasm.engine.interpreter.ASTNode;
+import org.coreasm.engine.interpreter.Evaluation;
+import org.coreasm.engine.interpreter.Evaluator;
+import org.coreasm.engine.interpreter.EvaluatorBuilder;
 import org.coreasm.engine.interpreter.Interpreter;
+import org.coreasm.engine.interpreter.InterpreterException;
 import org.coreasm.engine.interpreter.Node;
 import org.coreasm.engine.kernel.KernelServices;
 import org.coreasm.engine.parser.GrammarRule;
 import org.coreasm.engine.parser.ParserTools;
 import org.coreasm.engine.parser.ParserTools.ArrayParseMap;
+import org.coreasm.engine.plugin.EvaluatorProvider;
 import org.coreasm.engine.plugin.InterpreterPlugin;
 import org.coreasm.engine.plugin.ParserPlugin;
 import org.coreasm.engine.plugin.Plugin;
@@ -43,7 +49,7 @@ import org.coreasm.engine.plugin.Plugin;
  * 
  */
 public class ConditionalRulePlugin extends Plugin
-		implements ParserPlugin, InterpreterPlugin {
+		implements ParserPlugin, InterpreterPlugin, EvaluatorProvider {
 
 	public static final VersionInfo VERSION_INFO = new VersionInfo(0, 9, 1, "");
 
@@ -141,6 +147,51 @@ public class ConditionalRulePlugin extends Plugin
 		return pos;
 	}
 
+	/**
+	 * Evaluates the guard and then only the chosen branch of a conditional 
+	 * rule or term.
+	 */
+	public Evaluator buildEvaluator(ASTNode node, EvaluatorBuilder builder) {
+		if (node instanceof ConditionalRuleNode) {
+			final ConditionalRuleNode conditionalNode = (ConditionalRuleNode)node;
+			final ASTNode guardNode = conditionalNode.getGuard();
+			final Evaluator guard = builder.build(guardNode);
+			final Evaluator ifRule = builder.build(conditionalNode.getIfRule());
+			final Evaluator elseRule = (conditionalNode.getElseRule() == null ? null : builder.build(conditionalNode.getElseRule()));
+			return new Evaluator() {
+				public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+					final Element value = guard.evaluate(interpreter).getValue();
+					if (!(value instanceof BooleanElement))
+						throw new CoreASMError("Element used as guard within \"if\" is not a boolean.", 
+								interpreter.getCurrentCallStack(), guardNode);
+					if (value.equals(BooleanElement.TRUE))
+						return Evaluation.ofUpdates(ifRule.evaluate(interpreter).getUpdates());
+					if (elseRule == null)
+						return Evaluation.ofUpdates(new UpdateMultiset());
+					return Evaluation.ofUpdates(elseRule.evaluate(interpreter).getUpdates());
+				}
+			};
+		}
+		if (node instanceof ConditionalTermNode) {
+			final ConditionalTermNode conditionalTerm = (ConditionalTermNode)node;
+			final ASTNode conditionNode = conditionalTerm.getCondition();
+			final Evaluator condition = builder.build(conditionNode);
+			final Evaluator ifTerm = builder.build(conditionalTerm.getIfTerm());
+			final Evaluator elseTerm = builder.build(conditionalTerm.getElseTerm());
+			return new Evaluator() {
+				public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+					final Element value = condition.evaluate(interpreter).getValue();
+					if (!(value instanceof BooleanElement))
+						throw new CoreASMError("The value of the condition of a conditional term must be a BooleanElement but was " + value + ".", conditionNode);
+					if (((BooleanElement)value).getValue())
+						return Evaluation.ofValue(ifTerm.evaluate(interpreter).getValue());
+					return Evaluation.ofValue(elseTerm.evaluate(interpreter).getValue());
+				}
+			};
+		}
+		return null;
+	}
+
 	@Override
 	public Set<Parser<? extends Object>> getLexers() {
 		return Collections.emptySet();
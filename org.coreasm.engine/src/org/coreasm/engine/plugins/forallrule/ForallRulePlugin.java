@@ -14,10 +14,13 @@
  
 package org.coreasm.engine.plugins.forallrule;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -27,18 +30,26 @@ import org.codehaus.jparsec.Parsers;
 import org.coreasm.compiler.interfaces.CompilerPlugin;
 import org.coreasm.compiler.plugins.forall.CompilerForallRulePlugin;
 import org.coreasm.engine.CoreASMError;
+import org.coreasm.engine.CoreASMIssue;
+import org.coreasm.engine.CoreASMWarning;
 import org.coreasm.engine.VersionInfo;
 import org.coreasm.engine.absstorage.BooleanElement;
 import org.coreasm.engine.absstorage.Element;
 import org.coreasm.engine.absstorage.Enumerable;
 import org.coreasm.engine.absstorage.UpdateMultiset;
 import org.coreasm.engine.interpreter.ASTNode;
+import org.coreasm.engine.interpreter.Evaluation;
+import org.coreasm.engine.interpreter.Evaluator;
+import org.coreasm.engine.interpreter.EvaluatorBuilder;
 import org.coreasm.engine.interpreter.Interpreter;
 import org.coreasm.engine.interpreter.InterpreterException;
+import org.coreasm.engine.interpreter.InterpreterFork;
 import org.coreasm.engine.interpreter.Node;
+import org.coreasm.engine.interpreter.ParallelChunk;
 import org.coreasm.engine.kernel.KernelServices;
 import org.coreasm.engine.parser.GrammarRule;
 import org.coreasm.engine.parser.ParserTools;
+import org.coreasm.engine.plugin.EvaluatorProvider;
 import org.coreasm.engine.plugin.InterpreterPlugin;
 import org.coreasm.engine.plugin.ParserPlugin;
 import org.coreasm.engine.plugin.Plugin;
@@ -51,12 +62,26 @@ import org.coreasm.util.Tools;
  *  
  */
 public class ForallRulePlugin extends Plugin implements ParserPlugin,
-        InterpreterPlugin {
+        InterpreterPlugin, EvaluatorProvider {
 
 	public static final VersionInfo VERSION_INFO = new VersionInfo(0, 9, 3, "");
 	
 	public static final String PLUGIN_NAME = ForallRulePlugin.class.getSimpleName();
 	
+	/**
+	 * The name of the ForallRule.ParallelThreshold property. If the engine has a 
+	 * positive value for this property, forall rules with a single variable and 
+	 * no 'ifnone' rule whose domain has at least that many elements are evaluated 
+	 * in parallel by the threads of the scheduler, unless the state is stacked 
+	 * (e.g., in a 'seq' block). Choices made in the guard and the do-rule then use 
+	 * a random number generator for every element of the domain (see 
+	 * {@link InterpreterFork}), so they differ from the choices of a sequential
+	 * evaluation but are repeatable with the same random seed.
+	 */
+	public static final String PARALLEL_THRESHOLD_PROPERTY = "ParallelThreshold";
+	
+	private static final Set<String> options = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(new String[] { PARALLEL_THRESHOLD_PROPERTY })));
+	
 	private final String[] keywords = {"forall", "in", "with", "do", "ifnone", "endforall"};
 	private final String[] operators = {};
 	
@@ -104,6 +129,22 @@ public class ForallRulePlugin extends Plugin implements ParserPlugin,
 	public String[] getOperators() {
 		return operators;
 	}
+	
+	@Override
+	public Set<String> getOptions() {
+		return options;
+	}
+	
+	@Override
+	public void checkOptionValue(String option, String value) throws CoreASMIssue {
+		if (PARALLEL_THRESHOLD_PROPERTY.equals(option)) {
+			try {
+				Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				throw new CoreASMWarning(getName(), "'" + value + "' is not a number; forall rules will not be evaluated in parallel");
+			}
+		}
+	}
  
     
     public Map<String, GrammarRule> getParsers() {
@@ -172,6 +213,15 @@ public class ForallRulePlugin extends Plugin implements ParserPlugin,
             		(forallNode.getIfnoneRule() == null || !forallNode.getIfnoneRule().isEvaluated()) &&
                     // depending on short circuit evaluation
                      ((forallNode.getCondition() == null) || !forallNode.getCondition().isEvaluated())) {
+            	if (variableMap.size() == 1 && forallNode.getIfnoneRule() == null) {
+            		Entry<String, ASTNode> variable = variableMap.entrySet().iterator().next();
+            		if (iterators.get(variable.getValue()) == null && shouldEvaluateInParallel(variable.getValue().getValue())) {
+            			List<? extends Element> domain = ((Enumerable)variable.getValue().getValue()).getIndexedView();
+            			forallNode.setNode(null, evaluateInParallel(interpreter, forallNode, variable.getKey(), domain, null, null), null);
+            			return forallNode;
+            		}
+            	}
+            	
             	// pos := gamma
             	if (forallNode.getCondition() != null)
             		pos = forallNode.getCondition();
@@ -310,6 +360,191 @@ public class ForallRulePlugin extends Plugin implements ParserPlugin,
         return pos;
     }
 
+	/**
+	 * Evaluates a forall rule with a single variable and no 'ifnone' rule
+	 * for all the elements of its domain, in parallel if the domain is 
+	 * large enough.
+	 */
+	public Evaluator buildEvaluator(ASTNode node, EvaluatorBuilder builder) {
+		if (!(node instanceof ForallRuleNode))
+			return null;
+		final ForallRuleNode forallNode = (ForallRuleNode)node;
+		final Map<String, ASTNode> variableMap;
+		try {
+			variableMap = forallNode.getVariableMap();
+		}
+		catch (CoreASMError e) {
+			// reported when the rule is interpreted
+			return null;
+		}
+		if (variableMap.size() != 1 || forallNode.getIfnoneRule() != null)
+			return null;
+		final Entry<String, ASTNode> variable = variableMap.entrySet().iterator().next();
+		final String name = variable.getKey();
+		final ASTNode domainNode = variable.getValue();
+		final ASTNode conditionNode = forallNode.getCondition();
+		final Evaluator domain = builder.build(domainNode);
+		final Evaluator condition = (conditionNode == null ? null : builder.build(conditionNode));
+		final Evaluator rule = builder.build(forallNode.getDoRule());
+		return new Evaluator() {
+			public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+				final Element value = domain.evaluate(interpreter).getValue();
+				if (!(value instanceof Enumerable))
+					throw new CoreASMError("Cannot perform a 'forall' over " + Tools.sizeLimit(value.denotation())
+							+ ". Forall domain must be an enumerable element.", interpreter.getCurrentCallStack(), domainNode);
+				final Enumerable enumerable = (Enumerable)value;
+				if (shouldEvaluateInParallel(value))
+					return Evaluation.ofUpdates(evaluateInParallel(interpreter, forallNode, name, 
+							enumerable.getIndexedView(), condition, rule));
+				
+				final UpdateMultiset updateSet = new UpdateMultiset();
+				for (Element element: (enumerable.supportsIndexedView() ? enumerable.getIndexedView() : enumerable.enumerate())) {
+					interpreter.addEnv(name, element);
+					try {
+						if (condition != null) {
+							final Element guard = condition.evaluate(interpreter).getValue();
+							if (!(guard instanceof BooleanElement))
+								throw new CoreASMError("Value of forall condition is not Boolean.", 
+										interpreter.getCurrentCallStack(), conditionNode);
+							if (!((BooleanElement)guard).getValue())
+								continue;
+						}
+						final UpdateMultiset u = rule.evaluate(interpreter).getUpdates();
+						if (u != null)
+							updateSet.addAll(u);
+					} finally {
+						interpreter.removeEnv(name);
+					}
+				}
+				return Evaluation.ofUpdates(updateSet);
+			}
+		};
+	}
+
+	/*
+	 * Returns true if a forall rule over the given domain should be
+	 * evaluated in parallel.
+	 */
+	private boolean shouldEvaluateInParallel(Element domain) {
+		return ParallelChunk.shouldEvaluateInParallel(capi, getOptionValue(PARALLEL_THRESHOLD_PROPERTY), domain);
+	}
+	
+	/*
+	 * Evaluates the guard and the do-rule of the given forall rule for all 
+	 * the elements of the domain. The domain is split into chunks that are 
+	 * evaluated by separate interpreters in the thread pool of the scheduler,
+	 * and their updates are merged in the order of the chunks. The guard and
+	 * the do-rule are evaluated by the given evaluators, if the rule is 
+	 * evaluated by its evaluator, or else interpreted in copies.
+	 */
+	private UpdateMultiset evaluateInParallel(Interpreter interpreter, ForallRuleNode node, String variable, 
+			List<? extends Element> domain, Evaluator condition, Evaluator rule) throws InterpreterException {
+		final int size = domain.size();
+		final int chunkCount = ParallelChunk.getChunkCount(capi, size);
+		final InterpreterFork fork = new InterpreterFork(capi, interpreter);
+		final ForallChunk[] chunks = new ForallChunk[chunkCount];
+		for (int i = 0; i < chunkCount; i++)
+			chunks[i] = new ForallChunk(fork, node, variable, domain, condition, rule,
+					ParallelChunk.getStart(size, i, chunkCount), ParallelChunk.getStart(size, i + 1, chunkCount));
+		ParallelChunk.invokeAll(capi, chunks);
+		
+		int updateCount = 0;
+		for (ForallChunk chunk: chunks)
+			updateCount += chunk.updates.size();
+		UpdateMultiset result = new UpdateMultiset(updateCount);
+		for (ForallChunk chunk: chunks)
+			result.addAll(chunk.updates);
+		return result;
+	}
+	
+	/*
+	 * Evaluates a forall rule for the elements [start, ..., end-1] of its domain
+	 * with an interpreter forked from the interpreter of the agent. 
+	 */
+	private final class ForallChunk extends ParallelChunk {
+		private static final long serialVersionUID = 1L;
+		
+		private final ForallRuleNode node;
+		private final String variable;
+		private final List<? extends Element> domain;
+		private final Evaluator conditionEvaluator;
+		private final Evaluator ruleEvaluator;
+		
+		final UpdateMultiset updates = new UpdateMultiset();
+		
+		ForallChunk(InterpreterFork fork, ForallRuleNode node, String variable, List<? extends Element> domain, 
+				Evaluator conditionEvaluator, Evaluator ruleEvaluator, int start, int end) {
+			super(fork, start, end);
+			this.node = node;
+			this.variable = variable;
+			this.domain = domain;
+			this.conditionEvaluator = conditionEvaluator;
+			this.ruleEvaluator = ruleEvaluator;
+		}
+
+		@Override
+		protected void evaluate(Interpreter interpreter) throws InterpreterException {
+			if (ruleEvaluator != null) {
+				try {
+					evaluateCompiled(interpreter);
+				} catch (CoreASMError e) {
+					capi.error(e);
+				}
+				return;
+			}
+			final ASTNode condition = (node.getCondition() == null ? null : (ASTNode)interpreter.copyTree(node.getCondition()));
+			final ASTNode rule = (ASTNode)interpreter.copyTree(node.getDoRule());
+			for (int i = start; i < end && !capi.hasErrorOccurred(); i++) {
+				fork.seedRandom(interpreter, i);
+				interpreter.addEnv(variable, domain.get(i));
+				try {
+					if (condition != null) {
+						interpreter.interpret(condition, fork.getSelf());
+						final Element value = condition.getValue();
+						interpreter.clearTree(condition);
+						if (capi.hasErrorOccurred())
+							return;
+						if (!(value instanceof BooleanElement)) {
+							capi.error("Value of forall condition is not Boolean.", node.getCondition(), interpreter);
+							return;
+						}
+						if (!((BooleanElement)value).getValue())
+							continue;
+					}
+					interpreter.interpret(rule, fork.getSelf());
+					if (rule.getUpdates() != null)
+						updates.addAll(rule.getUpdates());
+					interpreter.clearTree(rule);
+				} finally {
+					interpreter.removeEnv(variable);
+				}
+			}
+		}
+		
+		private void evaluateCompiled(Interpreter interpreter) throws InterpreterException {
+			for (int i = start; i < end && !capi.hasErrorOccurred(); i++) {
+				fork.seedRandom(interpreter, i);
+				interpreter.addEnv(variable, domain.get(i));
+				try {
+					if (conditionEvaluator != null) {
+						final Element value = conditionEvaluator.evaluate(interpreter).getValue();
+						if (!(value instanceof BooleanElement)) {
+							capi.error("Value of forall condition is not Boolean.", node.getCondition(), interpreter);
+							return;
+						}
+						if (!((BooleanElement)value).getValue())
+							continue;
+					}
+					final UpdateMultiset u = ruleEvaluator.evaluate(interpreter).getUpdates();
+					if (u != null)
+						updates.addAll(u);
+				} finally {
+					interpreter.removeEnv(variable);
+				}
+			}
+		}
+	}
+
 	public VersionInfo getVersionInfo() {
 		return VERSION_INFO;
 	}
@@ -0,0 +1,194 @@
+/*
+ * FileLineCache.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.plugins.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.ref.SoftReference;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.coreasm.engine.absstorage.Element;
+import org.coreasm.engine.plugins.list.ListElement;
+import org.coreasm.engine.plugins.string.StringElement;
+
+/**
+ * Reads files as lists of lines for the <i>read</i> function of the IO
+ * plugin. The lines of a file are kept as long as its size, its time of
+ * last modification and its file key (e.g., the inode) do not change, so
+ * reading an unchanged file only takes one look at its attributes. Large
+ * files are mapped into memory and decoded in one go instead of being
+ * read through a stream.
+ * <p>
+ * A file that is rewritten with the same size within the resolution of
+ * the modification times of its file system would look unchanged. Hence
+ * the lines of a file are only kept if the file had not been modified for
+ * {@link #RACY_INTERVAL} milliseconds when it was read; a file that is
+ * still being written to is read again every time.
+ * <p>
+ * The lines of at most {@link #MAX_FILES} files are kept, the least
+ * recently read files are forgotten first. The lines are only softly
+ * referenced, so they are also dropped when memory runs low.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @see FileReadFunctionElement
+ */
+public class FileLineCache {
+
+	/** files of at least this many bytes are mapped into memory */
+	public static final long MAPPING_THRESHOLD = 1024 * 1024;
+
+	/** maximum number of files whose lines are kept */
+	public static final int MAX_FILES = 32;
+
+	/** 
+	 * the lines of a file are only kept if it has not been modified for 
+	 * this many milliseconds; covers the coarsest common resolution of
+	 * modification times (2 seconds on FAT)
+	 */
+	public static final long RACY_INTERVAL = 2000;
+
+	/* least recently read files first; guarded by itself */
+	private final Map<Path, SoftReference<CachedLines>> cache = 
+			new LinkedHashMap<Path, SoftReference<CachedLines>>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Path, SoftReference<CachedLines>> eldest) {
+					return size() > MAX_FILES;
+				}
+			};
+
+	/**
+	 * Returns the lines of the file with the given path.
+	 *
+	 * @throws IOException if the file cannot be read
+	 */
+	public ListElement read(String fileName) throws IOException {
+		final Path path = Paths.get(fileName).toAbsolutePath();
+		final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		final long size = attributes.size();
+		final long modified = attributes.lastModifiedTime().toMillis();
+		final Object fileKey = attributes.fileKey();
+
+		SoftReference<CachedLines> reference;
+		synchronized (cache) {
+			reference = cache.get(path);
+		}
+		CachedLines cached = (reference == null ? null : reference.get());
+		if (cached != null && cached.size == size && cached.modified == modified 
+				&& (fileKey == null ? cached.fileKey == null : fileKey.equals(cached.fileKey)))
+			return cached.lines;
+
+		final long readTime = System.currentTimeMillis();
+		final List<Element> lines;
+		if (size >= MAPPING_THRESHOLD && size <= Integer.MAX_VALUE)
+			lines = readMapped(path, size);
+		else
+			lines = readStream(path);
+		cached = new CachedLines(size, modified, fileKey, new ListElement(lines));
+		synchronized (cache) {
+			if (readTime - modified >= RACY_INTERVAL)
+				cache.put(path, new SoftReference<CachedLines>(cached));
+			else
+				cache.remove(path);
+		}
+		return cached.lines;
+	}
+
+	/**
+	 * Forgets the lines of all files.
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	private static List<Element> readStream(Path path) throws IOException {
+		final List<Element> lines = new ArrayList<Element>();
+		final BufferedReader reader = new BufferedReader(
+				new InputStreamReader(Files.newInputStream(path), Charset.defaultCharset()));
+		try {
+			String line = null;
+			while ((line = reader.readLine()) != null)
+				lines.add(new StringElement(line));
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	/*
+	 * Maps the file into memory and splits its text into lines the way
+	 * BufferedReader.readLine() does.
+	 */
+	private static List<Element> readMapped(Path path, long size) throws IOException {
+		final CharBuffer text;
+		final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			final MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			text = Charset.defaultCharset().newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE)
+					.decode(bytes);
+		} finally {
+			channel.close();
+		}
+
+		final List<Element> lines = new ArrayList<Element>();
+		final int length = text.length();
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			final char c = text.get(i);
+			if (c == '\n' || c == '\r') {
+				lines.add(new StringElement(text.subSequence(start, i).toString()));
+				if (c == '\r' && i + 1 < length && text.get(i + 1) == '\n')
+					i++;
+				start = i + 1;
+			}
+		}
+		if (start < length)
+			lines.add(new StringElement(text.subSequence(start, length).toString()));
+		return lines;
+	}
+
+	/*
+	 * The lines of a file with the given size, time of last modification
+	 * and file key.
+	 */
+	private static final class CachedLines {
+		final long size;
+		final long modified;
+		final Object fileKey;
+		final ListElement lines;
+
+		CachedLines(long size, long modified, Object fileKey, ListElement lines) {
+			this.size = size;
+			this.modified = modified;
+			this.fileKey = fileKey;
+			this.lines = lines;
+		}
+	}
+}
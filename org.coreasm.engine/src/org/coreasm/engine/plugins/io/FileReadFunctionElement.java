@@ -4,14 +4,14 @@ package org.coreasm.engine.plugins.io;
 import java.io.IOException;
 import java.util.List;
 
+import org.coreasm.engine.CoreASMError;
 import org.coreasm.engine.absstorage.Element;
 import org.coreasm.engine.absstorage.FunctionElement;
 import org.coreasm.engine.plugins.list.ListElement;
 
-import CompilerRuntime.CoreASMError;
-
 /** 
- * Implements the <i>input</i> monitored function provided by IO Plugin.
+ * Implements the <i>read</i> monitored function provided by IO Plugin.
+ * The lines of a file are only read again if the file has changed.
  *   
  * @author  Roozbeh Farahbod
  * 
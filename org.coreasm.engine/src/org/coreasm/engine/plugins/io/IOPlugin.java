@@ -11,12 +11,8 @@
  
 package org.coreasm.engine.plugins.io;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -34,6 +30,8 @@ import org.coreasm.compiler.interfaces.CompilerPlugin;
 import org.coreasm.compiler.plugins.io.CompilerIOPlugin;
 import org.coreasm.engine.CoreASMEngine.EngineMode;
 import org.coreasm.engine.CoreASMError;
+import org.coreasm.engine.CoreASMIssue;
+import org.coreasm.engine.CoreASMWarning;
 import org.coreasm.engine.VersionInfo;
 import org.coreasm.engine.absstorage.BackgroundElement;
 import org.coreasm.engine.absstorage.Element;
@@ -52,7 +50,6 @@ import org.coreasm.engine.interpreter.ASTNode;
 import org.coreasm.engine.interpreter.Interpreter;
 import org.coreasm.engine.interpreter.InterpreterException;
 import org.coreasm.engine.interpreter.Node;
-import org.coreasm.engine.interpreter.ScannerInfo;
 import org.coreasm.engine.kernel.KernelServices;
 import org.coreasm.engine.parser.GrammarRule;
 import org.coreasm.engine.parser.ParserTools;
@@ -104,6 +101,20 @@ public class IOPlugin extends Plugin implements
 	/** The read function */
 	public static final String READ_FUNC_NAME = "read";
 	
+	/**
+	 * The name of the IO.FlushPolicy property. It tells when the lines written 
+	 * to files are flushed: after every step ({@link #FLUSH_EVERY_STEP}, the default), 
+	 * after every <i>n</i> steps (a positive number), or only when the engine 
+	 * terminates or stops with an error ({@link #FLUSH_ON_TERMINATION}). Files are 
+	 * kept open between steps, so files that are not flushed yet may not show the 
+	 * latest lines to other readers (including the 'read' function).
+	 */
+	public static final String FLUSH_POLICY_PROPERTY = "FlushPolicy";
+	public static final String FLUSH_EVERY_STEP = "step";
+	public static final String FLUSH_ON_TERMINATION = "termination";
+	
+	private static final Set<String> options = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(new String[] { FLUSH_POLICY_PROPERTY })));
+	
 	private final Set<String> dependencyList;
 	
 	/** 
@@ -121,6 +132,13 @@ public class IOPlugin extends Plugin implements
 	protected IOPluginPSI pluginPSI;
 	protected InputProvider inputProvider;
 	protected PrintStream outputStream;
+	
+	/* files written by 'print ... to/into' rules, kept open between steps */
+	private final OutputFilePool outputFiles = new OutputFilePool();
+	
+	/* lines of the files read by the 'read' function */
+	private final FileLineCache inputFiles = new FileLineCache();
+	private int stepsSinceFlush = 0;
 
 	private final String[] keywords = { PRINT_KEYWORD, KEYWORD_TO, KEYWORD_INTO };
 	private final String[] operators = { OPERATOR_LINUX_TO, OPERATOR_LINUX_INTO };
@@ -142,23 +160,8 @@ public class IOPlugin extends Plugin implements
 		String path2spec = "";
 		if (!new File(path).isAbsolute())
 			path2spec = capi.getSpec().getFileDir();
-		FileInputStream fis = new FileInputStream(Tools.concatFileName(path2spec, path));
-		LinkedList<StringElement> lines = new LinkedList<StringElement>();
-
-		//Construct BufferedReader from InputStreamReader
-		BufferedReader br = new BufferedReader(new InputStreamReader(fis));
-		String line = null;
-		while ((line = br.readLine()) != null) {
-			lines.add(new StringElement(line));
-		}
-		br.close();
-
-		LinkedList<StringElement> linesInTextOrder = new LinkedList<StringElement>();
-		while (!lines.isEmpty()) {
-			linesInTextOrder.add(lines.pop());
-		}
-
-		return new ListElement(linesInTextOrder);
+		//the lines are read again only if the file has changed
+		return inputFiles.read(Tools.concatFileName(path2spec, path));
 	}
 	/**
 	 * 
@@ -184,6 +187,40 @@ public class IOPlugin extends Plugin implements
 	public String[] getOperators() {
 		return operators;
 	}
+	
+	@Override
+	public Set<String> getOptions() {
+		return options;
+	}
+	
+	@Override
+	public void checkOptionValue(String option, String value) throws CoreASMIssue {
+		if (FLUSH_POLICY_PROPERTY.equals(option) && getFlushInterval(value) < 0)
+			throw new CoreASMWarning(getName(), "'" + value + "' is not a valid flush policy; "
+					+ "it must be '" + FLUSH_EVERY_STEP + "', '" + FLUSH_ON_TERMINATION + "', or a positive number of steps. "
+					+ "Files will be flushed after every step.");
+	}
+	
+	/*
+	 * Returns the number of steps after which files are flushed according 
+	 * to the given policy, 0 if they are flushed only on termination, and 
+	 * -1 if the policy is not valid.
+	 */
+	private static int getFlushInterval(String policy) {
+		if (policy == null)
+			return 1;
+		policy = policy.trim();
+		if (FLUSH_EVERY_STEP.equalsIgnoreCase(policy))
+			return 1;
+		if (FLUSH_ON_TERMINATION.equalsIgnoreCase(policy))
+			return 0;
+		try {
+			final int steps = Integer.parseInt(policy);
+			return (steps > 0 ? steps : -1);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
 
 	/* (non-Javadoc)
 	 * @see org.coreasm.engine.plugin.Plugin#initialize()
@@ -193,11 +230,14 @@ public class IOPlugin extends Plugin implements
 		outputMessages = new ArrayList<String>();
 		outputStream = System.out;
 		pluginPSI = new IOPluginPSI();
+		// the plugin is notified of a transition if it is registered for its
+		// source or its target mode, so only target modes are registered
 		sourceModes = new HashMap<EngineMode, Integer>();
-		sourceModes.put(EngineMode.emAggregation, ExtensionPointPlugin.DEFAULT_PRIORITY);
 		targetModes = new HashMap<EngineMode, Integer>();
 		targetModes.put(EngineMode.emStepSucceeded, ExtensionPointPlugin.DEFAULT_PRIORITY);
 		targetModes.put(EngineMode.emInitializingState, ExtensionPointPlugin.DEFAULT_PRIORITY);
+		targetModes.put(EngineMode.emTerminated, ExtensionPointPlugin.DEFAULT_PRIORITY);
+		targetModes.put(EngineMode.emError, ExtensionPointPlugin.DEFAULT_PRIORITY);
 	}
 
 	public Set<Parser<? extends Object>> getLexers() {
@@ -405,18 +445,25 @@ public class IOPlugin extends Plugin implements
 	 * @throws UnmodifiableFunctionException
 	 */
 	public void fireOnModeTransition(EngineMode source, EngineMode target) throws UnmodifiableFunctionException {
-		//on initialization clear output messages
-		if (EngineMode.emInitializingState.equals(target))
+		//on initialization clear output messages and close the files of the previous run
+		if (EngineMode.emInitializingState.equals(target)) {
 			outputMessages.clear();
+			closeOutputFiles();
+			inputFiles.clear();
+		}
 		//aggregate and compose updates for print to console and print (in)to file
 		if (source.equals(EngineMode.emAggregation) && target.equals(EngineMode.emStepSucceeded)) {
 			outputPrintUpdates();
 			writePrintInToFileUpdates();
 		}
+		//flush and close all files when the engine stops
+		if (EngineMode.emTerminated.equals(target) || EngineMode.emError.equals(target))
+			closeOutputFiles();
 	}
 
 	/**
 	 * Writes all updates into files taking into account weather they should be appended to the file or not. Existing files are overwritten without any further warnings.
+	 * The files are kept open and flushed according to the flush policy (see {@link #FLUSH_POLICY_PROPERTY}).
 	 * 
 	 * @throws UnmodifiableFunctionException
 	 */
@@ -424,38 +471,59 @@ public class IOPlugin extends Plugin implements
 		FunctionElement fileOutputFunction = capi.getStorage().getFunction(IOPlugin.FILE_OUTPUT_FUNC_NAME);
 		for (Update u : capi.getScheduler().getUpdateSet()) {
 			if (APPEND_ACTION.equals(u.action) || WRITE_ACTION.equals(u.action)) {
-				ListElement outputList = (ListElement) u.value;
-				if (outputList != Element.UNDEF) {
+				if (u.value != Element.UNDEF) {
 					//set location to undef to prevent unnecessary output to file
 					fileOutputFunction.setValue(u.loc.args, Element.UNDEF);
-					List<? extends Element> lines = outputList.getList();
+					//a single line that is neither aggregated nor composed is not a list
+					List<? extends Element> lines;
+					if (u.value instanceof ListElement)
+						lines = ((ListElement) u.value).getList();
+					else
+						lines = Collections.singletonList(u.value);
 					//if the path is relative to the MAIN specification file, make it absolute.
 					String path2spec = "";
 					String fileName = u.loc.args.get(0).toString();
 					if (!new File(fileName).isAbsolute())
 						path2spec = capi.getSpec().getFileDir();
 					String outputFile = Tools.concatFileName(path2spec, fileName);
-					FileWriter fw = null;
 					try {
-						fw = new FileWriter(outputFile, APPEND_ACTION.equals(u.action));
-						for (Element line : lines)
-							fw.append(line + System.lineSeparator());
+						outputFiles.write(outputFile, lines, APPEND_ACTION.equals(u.action));
 					}
 					catch (IOException e) {
 						throw new CoreASMError("File " + outputFile + " could not be created.");
 					}
-					finally {
-						if (fw != null)
-							try {
-								fw.close();
-							}
-						catch (IOException e) {
-								e.printStackTrace();
-						}
-					}
 				}
 			}
 		}
+		
+		if (outputFiles.isEmpty())
+			return;
+		int interval = getFlushInterval(getOptionValue(FLUSH_POLICY_PROPERTY));
+		if (interval < 0)
+			interval = 1;
+		stepsSinceFlush++;
+		if (interval > 0 && stepsSinceFlush >= interval) {
+			stepsSinceFlush = 0;
+			try {
+				outputFiles.flush();
+			}
+			catch (IOException e) {
+				throw new CoreASMError(e.getMessage());
+			}
+		}
+	}
+	
+	/*
+	 * Flushes and closes all files written by the specification.
+	 */
+	private void closeOutputFiles() {
+		stepsSinceFlush = 0;
+		try {
+			outputFiles.close();
+		}
+		catch (IOException e) {
+			capi.warning(PLUGIN_NAME, e.getMessage());
+		}
 	}
 
 	/**
@@ -545,8 +613,8 @@ public class IOPlugin extends Plugin implements
 											writeLoc,
 											new ListElement(Arrays.asList(new Element[] { update.value })),
 											update.action,
-											update.agents,
-											update.sources),
+											update.getAgents(),
+											update.getSources()),
 									this);
 						}
 						else {
@@ -600,8 +668,7 @@ public class IOPlugin extends Plugin implements
 	public void aggregatePrint(PluginAggregationAPI pluginAgg) {
 		// all locations on which contain print actions
 		Set<Location> locsToAggregate = pluginAgg.getLocsWithAnyAction(PRINT_ACTION);
-		Set<Element> contributingAgents = new HashSet<Element>();
-		Set<ScannerInfo> contributingNodes = new HashSet<ScannerInfo>();
+		List<Update> contributors = new ArrayList<Update>();
 
 		// for all locations to aggregate
 		for (Location l : locsToAggregate) {
@@ -618,18 +685,15 @@ public class IOPlugin extends Plugin implements
 							outputResult += update.value.toString() + "\n";
 							// flag update aggregation as successful for this update
 							pluginAgg.flagUpdate(update, Flag.SUCCESSFUL, this);
-							contributingAgents.addAll(update.agents);
-							contributingNodes.addAll(update.sources);
+							contributors.add(update);
 						}
 					}
 				}
 				pluginAgg.addResultantUpdate(
-						new Update(
+						Update.aggregate(
 								PRINT_OUTPUT_FUNC_LOC,
 								new StringElement(outputResult),
-								Update.UPDATE_ACTION,
-								contributingAgents,
-								contributingNodes),
+								Update.UPDATE_ACTION, contributors, capi.getStorage().hasLeanUpdates()),
 						this);
 			}
 		}
@@ -657,8 +721,7 @@ public class IOPlugin extends Plugin implements
 				continue;
 			LinkedList<Element> elems1 = new LinkedList<>();
 			LinkedList<Element> elems2 = new LinkedList<>();
-			Set<Element> contributingAgents = new HashSet<Element>();
-			Set<ScannerInfo> contributingNodes = new HashSet<ScannerInfo>();
+			List<Update> contributors = new ArrayList<Update>();
 			String action = APPEND_ACTION;
 
 			// if the second set does not have a basic update, 
@@ -671,8 +734,7 @@ public class IOPlugin extends Plugin implements
 							value = new ListElement(Arrays.asList(new Element[] { value }));
 						ListElement list = (ListElement) value;
 						elems1.addAll(list.getList());
-						contributingAgents.addAll(update.agents);
-						contributingNodes.addAll(update.sources);
+						contributors.add(update);
 					}
 					if (WRITE_ACTION.equals(update.action))
 						action = WRITE_ACTION;
@@ -685,8 +747,7 @@ public class IOPlugin extends Plugin implements
 						value = new ListElement(Arrays.asList(new Element[] { value }));
 					ListElement list = (ListElement) value;
 					elems2.addAll(list.getList());
-					contributingAgents.addAll(update.agents);
-					contributingNodes.addAll(update.sources);
+					contributors.add(update);
 				}
 				if (WRITE_ACTION.equals(update.action)) {
 					action = WRITE_ACTION;
@@ -702,9 +763,9 @@ public class IOPlugin extends Plugin implements
 					outputResult.addAll(elems1);
 					outputResult.addAll(elems2);
 				}
-				compAPI.addComposedUpdate(new Update(l,
+				compAPI.addComposedUpdate(Update.aggregate(l,
 						new ListElement(new ArrayList<Element>(outputResult)),
-						action, contributingAgents, contributingNodes), this);
+						action, contributors, capi.getStorage().hasLeanUpdates()), this);
 			}
 		}
 	}
@@ -712,8 +773,7 @@ public class IOPlugin extends Plugin implements
 	private void composePrint(PluginCompositionAPI compAPI) {
 			String outputResult1 = "";
 			String outputResult2 = "";
-			Set<Element> contributingAgents = new HashSet<Element>();
-			Set<ScannerInfo> contributingNodes = new HashSet<ScannerInfo>();
+			List<Update> contributors = new ArrayList<Update>();
 			
 			// First, add all the updates in the second set
 			for (Update u: compAPI.getLocUpdates(2, PRINT_OUTPUT_FUNC_LOC)) {
@@ -721,8 +781,7 @@ public class IOPlugin extends Plugin implements
 					if (!outputResult2.isEmpty())
 						outputResult2 += '\n';
 					outputResult2 += u.value.toString();
-					contributingAgents.addAll(u.agents);
-					contributingNodes.addAll(u.sources);
+					contributors.add(u);
 				}
 			else
 					compAPI.addComposedUpdate(u, this);
@@ -736,8 +795,7 @@ public class IOPlugin extends Plugin implements
 						if (!outputResult1.isEmpty())
 							outputResult1 += '\n';
 						outputResult1 += u.value.toString();
-						contributingAgents.addAll(u.agents);
-						contributingNodes.addAll(u.sources);
+						contributors.add(u);
 					}
 				else
 						compAPI.addComposedUpdate(u, this);
@@ -749,9 +807,9 @@ public class IOPlugin extends Plugin implements
 					outputResult = outputResult2;
 				else if (!outputResult2.isEmpty())
 					outputResult = outputResult1 + '\n' + outputResult2;
-				compAPI.addComposedUpdate(new Update(PRINT_OUTPUT_FUNC_LOC, 
+				compAPI.addComposedUpdate(Update.aggregate(PRINT_OUTPUT_FUNC_LOC, 
 						new StringElement(outputResult), 
-						PRINT_ACTION, contributingAgents, contributingNodes), this);
+						PRINT_ACTION, contributors, capi.getStorage().hasLeanUpdates()), this);
 			}
 	}
 
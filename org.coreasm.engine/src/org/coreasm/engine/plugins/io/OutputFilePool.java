@@ -0,0 +1,177 @@
+/*
+ * OutputFilePool.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.engine.plugins.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.coreasm.engine.absstorage.Element;
+
+/**
+ * Keeps the files written by the 'print ... to/into' rules open across steps.
+ * The lines written to a file are collected until the file is flushed, and
+ * are then encoded into a buffer that is reused for all files.
+ * <p>
+ * The files are accessed as {@link RandomAccessFile}s rather than through
+ * NIO channels, since channels are closed when the thread using them is
+ * interrupted, as the engine thread is when the engine terminates.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @see IOPlugin
+ */
+public class OutputFilePool {
+
+	/** size of the buffer used to write to the files */
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Map<String, OutputFile> files = new HashMap<String, OutputFile>();
+	private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private ByteBuffer buffer = null;
+
+	/**
+	 * Writes the given lines to the file with the given path, which is
+	 * opened if needed. If <code>append</code> is false, the lines replace
+	 * the previous content of the file, including lines that are not flushed
+	 * yet.
+	 *
+	 * @throws IOException if the file cannot be opened
+	 */
+	public void write(String path, List<? extends Element> lines, boolean append) throws IOException {
+		OutputFile file = files.get(path);
+		if (file == null) {
+			file = new OutputFile(new RandomAccessFile(path, "rw"));
+			files.put(path, file);
+		}
+		if (!append) {
+			file.text.setLength(0);
+			file.truncate = true;
+		}
+		final String lineSeparator = System.lineSeparator();
+		for (Element line : lines)
+			file.text.append(line.toString()).append(lineSeparator);
+	}
+
+	/**
+	 * Writes the pending lines of all open files. A file that cannot be
+	 * written is closed.
+	 *
+	 * @throws IOException if a file cannot be written; the message names the file
+	 */
+	public void flush() throws IOException {
+		for (Iterator<Map.Entry<String, OutputFile>> it = files.entrySet().iterator(); it.hasNext(); ) {
+			final Map.Entry<String, OutputFile> entry = it.next();
+			try {
+				flush(entry.getValue());
+			} catch (IOException e) {
+				it.remove();
+				closeQuietly(entry.getValue());
+				throw new IOException("File " + entry.getKey() + " could not be written.", e);
+			}
+		}
+	}
+
+	/**
+	 * Flushes and closes all open files. All files are closed even if some
+	 * of them cannot be written.
+	 *
+	 * @throws IOException if a file cannot be written or closed
+	 */
+	public void close() throws IOException {
+		IOException error = null;
+		for (Map.Entry<String, OutputFile> entry : files.entrySet()) {
+			try {
+				flush(entry.getValue());
+				entry.getValue().file.close();
+			} catch (IOException e) {
+				closeQuietly(entry.getValue());
+				if (error == null)
+					error = new IOException("File " + entry.getKey() + " could not be written.", e);
+			}
+		}
+		files.clear();
+		buffer = null;
+		if (error != null)
+			throw error;
+	}
+
+	/**
+	 * Returns <code>true</code> if no file is open.
+	 */
+	public boolean isEmpty() {
+		return files.isEmpty();
+	}
+
+	private void flush(OutputFile file) throws IOException {
+		final RandomAccessFile out = file.file;
+		if (file.truncate) {
+			out.setLength(0);
+			out.seek(0);
+			file.truncate = false;
+		} else if (file.text.length() == 0)
+			return;
+		else
+			// the file may have been changed by someone else
+			out.seek(out.length());
+
+		if (buffer == null)
+			buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		final CharBuffer chars = CharBuffer.wrap(file.text);
+		encoder.reset();
+		CoderResult result;
+		do {
+			result = encoder.encode(chars, buffer, true);
+			writeBuffer(out);
+		} while (result.isOverflow());
+		while (encoder.flush(buffer).isOverflow())
+			writeBuffer(out);
+		writeBuffer(out);
+		file.text.setLength(0);
+	}
+
+	private void writeBuffer(RandomAccessFile out) throws IOException {
+		out.write(buffer.array(), 0, buffer.position());
+		buffer.clear();
+	}
+
+	private static void closeQuietly(OutputFile file) {
+		try {
+			file.file.close();
+		} catch (IOException e) {
+			// the file is already reported as not written
+		}
+	}
+
+	/*
+	 * An open file and the lines that are not yet written to it.
+	 */
+	private static final class OutputFile {
+		final RandomAccessFile file;
+		final StringBuilder text = new StringBuilder();
+		// true if the file must be emptied before the text is written
+		boolean truncate = false;
+
+		OutputFile(RandomAccessFile file) {
+			this.file = file;
+		}
+	}
+}
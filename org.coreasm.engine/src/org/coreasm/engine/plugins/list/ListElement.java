@@ -16,8 +16,8 @@ package org.coreasm.engine.plugins.list;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,43 +31,34 @@ import org.coreasm.engine.interpreter.Node;
 import org.coreasm.engine.plugins.collection.AbstractListElement;
 import org.coreasm.engine.plugins.collection.ModifiableIndexedCollection;
 import org.coreasm.engine.plugins.number.NumberElement;
+import org.coreasm.util.PersistentVector;
 
 /** 
  * This class implements list elements in CoreASM.
+ * <p>
+ * The elements are kept in a {@link PersistentVector}, so adding, removing
+ * and replacing elements, and taking the tail of a list, share most of the
+ * structure with the original list instead of copying it.
  *   
  * @author  Roozbeh Farahbod, Michael Stegmaier
  * 
  */
 public class ListElement extends AbstractListElement implements ModifiableIndexedCollection {
 
-	private List<Element> listElements;
+	private final PersistentVector<Element> listElements;
+	
+	private int hashCode = 0;
 	
 	public ListElement() {
-		listElements = Collections.emptyList();
+		listElements = PersistentVector.empty();
 	}
 	
 	public ListElement(Collection<? extends Element> collection) {
-		if (collection.isEmpty())
-			listElements = Collections.emptyList();
-		else
-			listElements = unmodifiableList(collection);
-	}
-	
-	private static List<Element> unmodifiableList(Collection<? extends Element> collection) {
-		if (collection instanceof List<?>)
-			return unmodifiableList((List<? extends Element>)collection);
-		return Collections.unmodifiableList(new ArrayList<Element>(collection));
-	}
-	
-	private static List<Element> unmodifiableList(List<? extends Element> list) {
-		if (list instanceof ArrayList<?>)
-			return unmodifiableList((ArrayList<? extends Element>)list);
-		return Collections.unmodifiableList(list);
+		listElements = PersistentVector.from(collection);
 	}
 	
-	private static List<Element> unmodifiableList(ArrayList<? extends Element> list) {
-		list.trimToSize();
-		return Collections.unmodifiableList(list);
+	private ListElement(PersistentVector<Element> listElements) {
+		this.listElements = listElements;
 	}
 	
 	public ListElement(ListElement list) {
@@ -75,20 +66,14 @@ public class ListElement extends AbstractListElement implements ModifiableIndexe
 	}
 	
 	public ListElement(Element ... elements) {
-		if (elements.length == 0)
-			listElements = Collections.emptyList();
-		else
-			listElements = Collections.unmodifiableList(Arrays.asList(elements));
+		this(Arrays.asList(elements));
 	}
 	
 	/**
 	 * Creates a new list which is <i>cons(e, list)</i>.
 	 */
 	public ListElement(Element e, ListElement list) {
-		ArrayList<Element> listElements = new ArrayList<Element>();
-		listElements.add(e);
-		listElements.addAll(list.listElements);
-		this.listElements = unmodifiableList(listElements);
+		this(list.listElements.plus(0, e));
 	}
 	
 	@Override
@@ -97,10 +82,11 @@ public class ListElement extends AbstractListElement implements ModifiableIndexe
 			if (super.equals(anElement))
 				return true;
 			else {
-				List<Element> otherList = (List<Element>)((ListElement)anElement).enumerate();
+				List<Element> otherList = ((ListElement)anElement).listElements;
 				if (otherList.size() == listElements.size()) {
-					for (int i=0; i < listElements.size(); i++)
-						if (!otherList.get(i).equals(listElements.get(i))) {
+					Iterator<Element> it = otherList.iterator();
+					for (Element e: listElements)
+						if (!it.next().equals(e)) {
 							return false;
 						}
 					return true;
@@ -163,9 +149,13 @@ public class ListElement extends AbstractListElement implements ModifiableIndexe
 
 	@Override
 	public int hashCode() {
-		int result = 0;
-		for (Element e: listElements) 
-		    result = 31*result + (e==null ? 0 : e.hashCode());
+		// lists are immutable, so the hash code is computed once
+		int result = hashCode;
+		if (result == 0) {
+			for (Element e: listElements) 
+			    result = 31*result + (e==null ? 0 : e.hashCode());
+			hashCode = result;
+		}
 		return result;
 	}
 
@@ -198,9 +188,7 @@ public class ListElement extends AbstractListElement implements ModifiableIndexe
 	@Override
 	public UpdateMultiset computeAddUpdate(Location loc, NumberElement index, Element e, Element agent, Node node) {
 		if (isValidIndex(index) && index.getValue() <= this.intSize()+1) {
-			List<Element> newListData = new ArrayList<Element>(this.listElements);
-			newListData.add(index.intValue() - 1, e);
-			ListElement newList = new ListElement(newListData);
+			ListElement newList = new ListElement(listElements.plus(index.intValue() - 1, e));
 			Update u = new Update(loc, newList, Update.UPDATE_ACTION, agent, node.getScannerInfo());
 			return new UpdateMultiset(u);
 		} else
@@ -210,9 +198,7 @@ public class ListElement extends AbstractListElement implements ModifiableIndexe
 	@Override
 	public UpdateMultiset computeRemoveUpdate(Location loc, NumberElement index, Element agent, Node node) {
 		if (isValidIndex(index) && index.getValue() <= this.intSize()) {
-			List<Element> newListData = new ArrayList<Element>(this.listElements);
-			newListData.remove(index.intValue() - 1);
-			ListElement newList = new ListElement(newListData);
+			ListElement newList = new ListElement(listElements.minus(index.intValue() - 1));
 			Update u = new Update(loc, newList, Update.UPDATE_ACTION, agent, node.getScannerInfo());
 			return new UpdateMultiset(u);
 		} else
@@ -275,8 +261,8 @@ public class ListElement extends AbstractListElement implements ModifiableIndexe
 
 	@Override
 	public UpdateMultiset computeRemoveUpdate(Location loc, Element e, Element agent, Node node) {
-		List<Element> newListData = new ArrayList<Element>(listElements);
-		if (newListData.remove(e)) {
+		PersistentVector<Element> newListData = listElements.minus(e);
+		if (newListData != listElements) {
 			ListElement newList = new ListElement(newListData);
 			Update u = new Update(loc, newList, Update.UPDATE_ACTION, agent, node.getScannerInfo());
 			return new UpdateMultiset(u);
@@ -375,9 +361,7 @@ public class ListElement extends AbstractListElement implements ModifiableIndexe
 		if (e.size() == 0)
 			return this;
 		else {
-			List<Element> list = new ArrayList<Element>(listElements);
-			list.addAll(e.enumerate());
-			return new ListElement(list);
+			return new ListElement(listElements.plusAll(e.enumerate()));
 		}
 	}
 
@@ -44,7 +44,7 @@ public abstract class MathFunction extends FunctionElement {
 	 * Create new instances of various math functions and returns 
 	 * a map of function name to its instance. 
 	 */
-	protected static Map<String, FunctionElement> createFunctions(ControlAPI capi) {
+	protected static Map<String, FunctionElement> createFunctions(final ControlAPI capi) {
 		Map<String, FunctionElement> result = new HashMap<String, FunctionElement>();
 		
 		// One can get the number background in order to create
@@ -437,7 +437,8 @@ public abstract class MathFunction extends FunctionElement {
 				// one optional argument is accepted as an "id" for
 				// the random value
 				if (args.size() == 0 || args.size() == 1)
-					return NumberElement.getInstance(Math.random());
+					return NumberElement.getInstance(capi.getScheduler().getRandom(
+							capi.getInterpreter().getInterpreterInstance().getSelf()).nextDouble());
 				else
 					return Element.UNDEF;
 			}
@@ -225,7 +225,7 @@ public class MathPlugin extends Plugin implements VocabularyExtender, ParserPlug
 		if (token == null) 
 			return pos;
 		else if (token.equals(KW_RANDOM_VALUE)) {
-			pos.setNode(null, null, NumberElement.getInstance(Math.random()));
+			pos.setNode(null, null, NumberElement.getInstance(capi.getScheduler().getRandom(interpreter.getSelf()).nextDouble()));
 		}
 		return pos;
 	}
@@ -27,7 +27,20 @@ public class NumberElement extends Element implements Comparable<NumberElement>
 	public static final NumberElement MAX_VALUE = new NumberElement(Double.MAX_VALUE);
 	public static final NumberElement MIN_VALUE = new NumberElement(Double.MIN_VALUE);
 	
-	protected final Double value;
+	/** Smallest integer value that is cached by {@link #getInstance(double)} */
+	public static final int CACHE_LOW = -128;
+	
+	/** Largest integer value that is cached by {@link #getInstance(double)} */
+	public static final int CACHE_HIGH = 1024;
+	
+	private static final NumberElement[] cache = new NumberElement[CACHE_HIGH - CACHE_LOW + 1];
+	
+	static {
+		for (int i = 0; i < cache.length; i++)
+			cache[i] = new NumberElement(CACHE_LOW + i);
+	}
+	
+	protected final double value;
 	protected final boolean isInteger;
 	
 	/*
@@ -37,19 +50,37 @@ public class NumberElement extends Element implements Comparable<NumberElement>
 	 */
 	protected NumberElement(double number)
 	{
-		this.value = new Double(number);
-		this.isInteger = (this.value - this.value.longValue() == 0);
+		this.value = number;
+		this.isInteger = (number - (long)number == 0);
 	}
 	
 	/**
-	 * Creates a new NumberElement instance with the given double value.
+	 * Returns a NumberElement instance with the given double value.
+	 * Integer values from {@link #CACHE_LOW} to {@link #CACHE_HIGH} 
+	 * are always represented by the same instance.
 	 * 
 	 * @param d double value
 	 */
-	public synchronized static NumberElement getInstance(double d) {
+	public static NumberElement getInstance(double d) {
+		final int i = (int)d;
+		// -0.0 is not equal to 0.0, so it is not cached
+		if (i == d && i >= CACHE_LOW && i <= CACHE_HIGH && (i != 0 || Double.doubleToRawLongBits(d) == 0L))
+			return cache[i - CACHE_LOW];
 		return new NumberElement(d);
 	}
 
+	/**
+	 * Returns a NumberElement instance with the given integer value.
+	 * 
+	 * @param i integer value
+	 * @see #getInstance(double)
+	 */
+	public static NumberElement getInstance(int i) {
+		if (i >= CACHE_LOW && i <= CACHE_HIGH)
+			return cache[i - CACHE_LOW];
+		return new NumberElement(i);
+	}
+
 	public String getBackground() { 
 		return NumberBackgroundElement.NUMBER_BACKGROUND_NAME;
 	}
@@ -60,7 +91,7 @@ public class NumberElement extends Element implements Comparable<NumberElement>
 	 */
 	@Override
 	public String denotation() {
-		return value.toString();
+		return Double.toString(value);
 	}
 	
 	/**
@@ -72,7 +103,7 @@ public class NumberElement extends Element implements Comparable<NumberElement>
 		if (isInteger)
 			return String.valueOf(longValue());
 		else
-			return value.toString();
+			return Double.toString(value);
 	}
 	
 	/**
@@ -115,7 +146,7 @@ public class NumberElement extends Element implements Comparable<NumberElement>
 	 * @see Double#longValue()
 	 */
 	public long longValue() {
-		return value.longValue();
+		return (long)value;
 	}
 	
 	/**
@@ -125,7 +156,7 @@ public class NumberElement extends Element implements Comparable<NumberElement>
 	 * @see Double#intValue()
 	 */
 	public int intValue() {
-		return value.intValue();
+		return (int)value;
 	}
 	
 	//----------------------
@@ -142,7 +173,7 @@ public class NumberElement extends Element implements Comparable<NumberElement>
  	 * @throws IllegalArgumentException if <code>anElement</code> is not an instance
  	 * of <code>Element</code>
  	 */
- 	public synchronized boolean equals(Object anElement) {
+ 	public boolean equals(Object anElement) {
  		// if both java objects are idential, no further checks are required
  		if (this == anElement)
  			return true;
@@ -154,8 +185,8 @@ public class NumberElement extends Element implements Comparable<NumberElement>
 	 		if (anElement instanceof NumberElement)
 	 		{
 	 			// if the current number and the other number equal each other
-	 			// then objects are equal
-	 			return value.equals(((NumberElement)anElement).value);
+	 			// then objects are equal (in the sense of Double.equals)
+	 			return Double.doubleToLongBits(value) == Double.doubleToLongBits(((NumberElement)anElement).value);
 	 		} else
 	 			return false;
  		}
@@ -168,7 +199,8 @@ public class NumberElement extends Element implements Comparable<NumberElement>
 	 */
 	@Override
 	public int hashCode() {
-		return value.hashCode(); 
+		final long bits = Double.doubleToLongBits(value);
+		return (int)(bits ^ (bits >>> 32));
 	}
 
 	/**
@@ -177,7 +209,7 @@ public class NumberElement extends Element implements Comparable<NumberElement>
 	 * @see Comparable#compareTo(Object)
 	 */
 	public int compareTo(NumberElement n) {
-		return value.compareTo(n.value);
+		return Double.compare(value, n.value);
 	}
 
     /**
@@ -185,7 +217,7 @@ public class NumberElement extends Element implements Comparable<NumberElement>
      * 
      */
     public double getNumber() {
-        return value.doubleValue();
+        return value;
     }
 
     /**
@@ -43,6 +43,9 @@ import org.coreasm.engine.absstorage.FunctionElement;
 import org.coreasm.engine.absstorage.RuleElement;
 import org.coreasm.engine.absstorage.UniverseElement;
 import org.coreasm.engine.interpreter.ASTNode;
+import org.coreasm.engine.interpreter.Evaluation;
+import org.coreasm.engine.interpreter.Evaluator;
+import org.coreasm.engine.interpreter.EvaluatorBuilder;
 import org.coreasm.engine.interpreter.Interpreter;
 import org.coreasm.engine.interpreter.InterpreterException;
 import org.coreasm.engine.interpreter.Node;
@@ -52,6 +55,7 @@ import org.coreasm.engine.parser.GrammarRule;
 import org.coreasm.engine.parser.OperatorRule;
 import org.coreasm.engine.parser.OperatorRule.OpType;
 import org.coreasm.engine.parser.ParserTools;
+import org.coreasm.engine.plugin.EvaluatorProvider;
 import org.coreasm.engine.plugin.InterpreterPlugin;
 import org.coreasm.engine.plugin.OperatorProvider;
 import org.coreasm.engine.plugin.ParserPlugin;
@@ -65,7 +69,7 @@ import org.coreasm.engine.plugin.VocabularyExtender;
  * 
  */
 public class NumberPlugin extends Plugin implements ParserPlugin,
-		InterpreterPlugin, VocabularyExtender, OperatorProvider{
+		InterpreterPlugin, VocabularyExtender, OperatorProvider, EvaluatorProvider {
 
 	public static final VersionInfo VERSION_INFO = new VersionInfo(0, 5, 4, "");
 
@@ -250,6 +254,24 @@ public class NumberPlugin extends Plugin implements ParserPlugin,
 		return nextPos;
 	}
 
+	/**
+	 * Number constants are evaluated without interpreting their nodes; 
+	 * every evaluation produces a new number element, as the interpreter does.
+	 */
+	public Evaluator buildEvaluator(ASTNode node, EvaluatorBuilder builder) {
+		if (node instanceof NumberRangeNode || node instanceof SizeOfEnumNode
+				|| !ASTNode.EXPRESSION_CLASS.equals(node.getGrammarClass()) || node.getToken() == null)
+			return null;
+		final double number = Double.parseDouble(node.getToken());
+		return new Evaluator() {
+			public Evaluation evaluate(Interpreter interpreter) {
+				if (numberBackgroundElement == null)
+					getBackgrounds();
+				return Evaluation.ofValue(numberBackgroundElement.getNewValue(number));
+			}
+		};
+	}
+
 	public Set<Parser<? extends Object>> getLexers() {
 		if (lexers == null) {
 			lexers = new HashSet<Parser<? extends Object>>();
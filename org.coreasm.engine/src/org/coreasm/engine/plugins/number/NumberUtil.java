@@ -42,7 +42,7 @@ public class NumberUtil {
         if (isReal(e)) {
             NumberElement n = (NumberElement) e;
             
-            if (n.value - n.value.longValue() == 0) {
+            if (n.isInteger) {
                 ret = true;
             }
         }
@@ -90,7 +90,7 @@ public class NumberUtil {
         boolean ret = false;
         
         if (isInteger(e)) {
-            if ((((NumberElement) e).value.longValue() % 2) == 0) {
+            if (((long)((NumberElement) e).value % 2) == 0) {
                 ret = true;
             }
         }
@@ -103,7 +103,7 @@ public class NumberUtil {
         boolean ret = false;
         
         if (isInteger(e)) {
-            if ((((NumberElement) e).value.longValue() % 2) == 1) {
+            if (((long)((NumberElement) e).value % 2) == 1) {
                 ret = true;
             }
         }
@@ -14,35 +14,48 @@
 package org.coreasm.engine.plugins.predicatelogic;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.codehaus.jparsec.Parser;
 import org.codehaus.jparsec.Parsers;
 import org.coreasm.compiler.interfaces.CompilerPlugin;
 import org.coreasm.compiler.plugins.predicatelogic.CompilerPredicateLogicPlugin;
 import org.coreasm.engine.CoreASMError;
+import org.coreasm.engine.CoreASMIssue;
+import org.coreasm.engine.CoreASMWarning;
 import org.coreasm.engine.VersionInfo;
 import org.coreasm.engine.absstorage.AbstractUniverse;
 import org.coreasm.engine.absstorage.BooleanElement;
 import org.coreasm.engine.absstorage.Element;
 import org.coreasm.engine.absstorage.Enumerable;
 import org.coreasm.engine.interpreter.ASTNode;
+import org.coreasm.engine.interpreter.Evaluation;
+import org.coreasm.engine.interpreter.Evaluator;
+import org.coreasm.engine.interpreter.EvaluatorBuilder;
 import org.coreasm.engine.interpreter.Interpreter;
 import org.coreasm.engine.interpreter.InterpreterException;
+import org.coreasm.engine.interpreter.InterpreterFork;
 import org.coreasm.engine.interpreter.Node;
+import org.coreasm.engine.interpreter.ParallelChunk;
+import org.coreasm.engine.kernel.EnclosedTermNode;
 import org.coreasm.engine.kernel.Kernel;
 import org.coreasm.engine.kernel.KernelServices;
 import org.coreasm.engine.parser.GrammarRule;
 import org.coreasm.engine.parser.OperatorRule;
 import org.coreasm.engine.parser.OperatorRule.OpType;
 import org.coreasm.engine.parser.ParserTools;
+import org.coreasm.engine.plugin.EvaluatorProvider;
 import org.coreasm.engine.plugin.InterpreterPlugin;
 import org.coreasm.engine.plugin.OperatorProvider;
 import org.coreasm.engine.plugin.ParserPlugin;
@@ -55,7 +68,7 @@ import org.coreasm.util.Tools;
  *  @author  George Ma, Roozbeh Farahbod
  *  
  */
-public class PredicateLogicPlugin extends Plugin implements OperatorProvider, ParserPlugin, InterpreterPlugin {
+public class PredicateLogicPlugin extends Plugin implements OperatorProvider, ParserPlugin, InterpreterPlugin, EvaluatorProvider {
     
 	public static final VersionInfo VERSION_INFO = new VersionInfo(0, 4, 9, "");
 	
@@ -72,6 +85,22 @@ public class PredicateLogicPlugin extends Plugin implements OperatorProvider, Pa
     public static final String IN_OP = "memberof";
     public static final String NOTIN_OP = "notmemberof";
     
+	/**
+	 * The name of the PredicateLogic.ParallelThreshold property. If the engine has a 
+	 * positive value for this property, exists and forall expressions with a single 
+	 * variable whose domain has at least that many elements are evaluated in parallel 
+	 * by the threads of the scheduler, unless the state is stacked (e.g., in a 'seq' block). 
+	 * The threads stop as soon as one of them finds a witness of an exists expression 
+	 * or a counterexample of a forall expression.
+	 */
+	public static final String PARALLEL_THRESHOLD_PROPERTY = "ParallelThreshold";
+	
+	/** Operators of the conditions that are evaluated without going through the interpreter loop */
+	private static final Set<String> COMPARISON_OPS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(new String[] {
+			"=", NOT_EQ_OP, "<", "<=", ">", ">=", IN_OP, NOTIN_OP })));
+	
+	private static final Set<String> options = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(new String[] { PARALLEL_THRESHOLD_PROPERTY })));
+	
     // for keeping track of considered elements in Exists and Forall expressions
     private ThreadLocal<Map<ASTNode, Iterator<? extends Element>>> iterators;
  
@@ -113,6 +142,22 @@ public class PredicateLogicPlugin extends Plugin implements OperatorProvider, Pa
 	public String[] getOperators() {
 		return operators;
 	}
+	
+	@Override
+	public Set<String> getOptions() {
+		return options;
+	}
+	
+	@Override
+	public void checkOptionValue(String option, String value) throws CoreASMIssue {
+		if (PARALLEL_THRESHOLD_PROPERTY.equals(option)) {
+			try {
+				Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				throw new CoreASMWarning(getName(), "'" + value + "' is not a number; exists and forall expressions will not be evaluated in parallel");
+			}
+		}
+	}
 
 	/* (non-Javadoc)
 	 * @see org.coreasm.engine.Plugin#initialize()
@@ -364,10 +409,73 @@ public class PredicateLogicPlugin extends Plugin implements OperatorProvider, Pa
     // InterpreterPlugin Interface
     //--------------------------------
     
+    /**
+     * Exists and forall expressions with a single variable are evaluated 
+     * element by element until their value is decided, in parallel if the 
+     * domain is large enough.
+     */
+    public Evaluator buildEvaluator(final ASTNode node, EvaluatorBuilder builder) {
+    	if (!(node instanceof ExistsExpNode || node instanceof ForallExpNode))
+    		return null;
+    	final boolean exists = (node instanceof ExistsExpNode);
+    	final Map<String, ASTNode> variableMap;
+    	final ASTNode conditionNode;
+    	try {
+    		if (exists) {
+    			variableMap = ((ExistsExpNode)node).getVariableMap();
+    			conditionNode = ((ExistsExpNode)node).getCondition();
+    		} else {
+    			variableMap = ((ForallExpNode)node).getVariableMap();
+    			conditionNode = ((ForallExpNode)node).getCondition();
+    		}
+    	} catch (CoreASMError e) {
+    		// reported when the expression is interpreted
+    		return null;
+    	}
+    	if (variableMap.size() != 1)
+    		return null;
+    	final Entry<String, ASTNode> variable = variableMap.entrySet().iterator().next();
+    	final String name = variable.getKey();
+    	final ASTNode domainNode = variable.getValue();
+    	final Evaluator domain = builder.build(domainNode);
+    	final Evaluator condition = builder.build(conditionNode);
+    	return new Evaluator() {
+    		public Evaluation evaluate(Interpreter interpreter) throws InterpreterException {
+    			final Element value = domain.evaluate(interpreter).getValue();
+    			if (!(value instanceof Enumerable))
+    				throw new CoreASMError("The '" + (exists ? EXISTS_EXP_TOKEN : FORALL_EXP_TOKEN) + "' predicate does not apply to " + 
+	                		Tools.sizeLimit(value.denotation()) + ". The domain must be an enumerable element.", 
+	                		interpreter.getCurrentCallStack(), domainNode);
+    			final Enumerable enumerable = (Enumerable)value;
+    			if (shouldEvaluateInParallel(value)) {
+    				final Element result = evaluateInParallel(interpreter, node, name, enumerable.getIndexedView(), exists, condition);
+    				if (result == null)
+    					throw new CoreASMError("Failed to interpret node.", interpreter.getCurrentCallStack(), node);
+    				return Evaluation.ofValue(result);
+    			}
+    			for (Element element: (enumerable.supportsIndexedView() ? enumerable.getIndexedView() : enumerable.enumerate())) {
+    				interpreter.addEnv(name, element);
+    				try {
+    					final Element guard = condition.evaluate(interpreter).getValue();
+    					if (!(guard instanceof BooleanElement))
+    						throw new CoreASMError("value of " + (exists ? EXISTS_EXP_TOKEN : FORALL_EXP_TOKEN) + " condition is not Boolean.", 
+    								interpreter.getCurrentCallStack(), conditionNode);
+    					// a witness of exists or a counterexample of forall
+    					if (((BooleanElement)guard).getValue() == exists)
+    						return Evaluation.ofValue(BooleanElement.valueOf(exists));
+    				} finally {
+    					interpreter.removeEnv(name);
+    				}
+    			}
+    			return Evaluation.ofValue(BooleanElement.valueOf(!exists));
+    		}
+    	};
+    }
+    
     /* (non-Javadoc)
      * @see org.coreasm.engine.plugin.InterpreterPlugin#interpret(org.coreasm.engine.interpreter.Node)
      */
-    public ASTNode interpret(Interpreter interpreter, ASTNode pos) {
+    public ASTNode interpret(Interpreter interpreter, ASTNode pos) throws InterpreterException {
         if (pos instanceof ExistsExpNode) { 
             return interpretExists(interpreter, pos);
         }
@@ -382,7 +490,7 @@ public class PredicateLogicPlugin extends Plugin implements OperatorProvider, Pa
      * @param pos
      * @return
      */
-    private ASTNode interpretExists(Interpreter interpreter, ASTNode pos) {
+    private ASTNode interpretExists(Interpreter interpreter, ASTNode pos) throws InterpreterException {
         ExistsExpNode existsExpNode = (ExistsExpNode) pos;
         
         Map<ASTNode, Iterator<? extends Element>> iterators = getIteratorMap();
@@ -407,6 +515,13 @@ public class PredicateLogicPlugin extends Plugin implements OperatorProvider, Pa
         	}
         }
         
+        if (!existsExpNode.getCondition().isEvaluated() && variableMap.size() == 1) {
+        	Entry<String, ASTNode> variable = variableMap.entrySet().iterator().next();
+        	if (iterators.get(variable.getValue()) == null 
+        			&& evaluateAtOnce(interpreter, existsExpNode, existsExpNode.getCondition(), variable, true))
+        		return existsExpNode;
+        }
+        
         if (!existsExpNode.getCondition().isEvaluated()) {
         	pos = existsExpNode.getCondition();
         	boolean shouldChoose = true;
@@ -503,7 +618,7 @@ public class PredicateLogicPlugin extends Plugin implements OperatorProvider, Pa
      * @param pos
      * @return
      */
-    private ASTNode interpretForall(Interpreter interpreter, ASTNode pos) {
+    private ASTNode interpretForall(Interpreter interpreter, ASTNode pos) throws InterpreterException {
         ForallExpNode forallExpNode = (ForallExpNode) pos;
         
         Map<ASTNode, Iterator<? extends Element>> iterators = getIteratorMap();
@@ -528,6 +643,13 @@ public class PredicateLogicPlugin extends Plugin implements OperatorProvider, Pa
         	}
         }
         
+        if (!forallExpNode.getCondition().isEvaluated() && variableMap.size() == 1) {
+        	Entry<String, ASTNode> variable = variableMap.entrySet().iterator().next();
+        	if (iterators.get(variable.getValue()) == null 
+        			&& evaluateAtOnce(interpreter, forallExpNode, forallExpNode.getCondition(), variable, false))
+        		return forallExpNode;
+        }
+        
         if (!forallExpNode.getCondition().isEvaluated()) {
         	pos = forallExpNode.getCondition();
         	boolean shouldChoose = true;
@@ -619,6 +741,194 @@ public class PredicateLogicPlugin extends Plugin implements OperatorProvider, Pa
         return pos;
     }
 
+	/*
+	 * Returns true if a quantifier over the given domain should be
+	 * evaluated in parallel.
+	 */
+	private boolean shouldEvaluateInParallel(Element domain) {
+		return ParallelChunk.shouldEvaluateInParallel(capi, getOptionValue(PARALLEL_THRESHOLD_PROPERTY), domain);
+	}
+	
+	/*
+	 * Evaluates an exists (if 'exists' is true) or forall expression with 
+	 * the given variable in one call, if its domain is large enough to be 
+	 * evaluated in parallel or if its condition is a simple comparison. 
+	 * Returns false if the expression is to be interpreted element by element.
+	 */
+	private boolean evaluateAtOnce(Interpreter interpreter, ASTNode node, ASTNode condition, 
+			Entry<String, ASTNode> variable, boolean exists) throws InterpreterException {
+		final Element domain = variable.getValue().getValue();
+		final Element value;
+		if (shouldEvaluateInParallel(domain))
+			value = evaluateInParallel(interpreter, node, variable.getKey(), 
+					((Enumerable)domain).getIndexedView(), exists, null);
+		else if (domain instanceof Enumerable && isSimpleComparison(condition) 
+				// listeners expect to see every element
+				&& capi.getInterpreterListeners().isEmpty())
+			value = evaluateSequentially(interpreter, condition, variable.getKey(), (Enumerable)domain, exists);
+		else
+			return false;
+		if (value != null)
+			node.setNode(null, null, value);
+		return true;
+	}
+	
+	/*
+	 * Returns true if the given node compares two terms that only consist
+	 * of operators, function applications, variables and constants.
+	 */
+	private static boolean isSimpleComparison(ASTNode node) {
+		if (node.getClassKind() != ASTNode.ClassKind.OPERATOR || !COMPARISON_OPS.contains(node.getToken()))
+			return false;
+		for (ASTNode child: node.getAbstractChildNodes())
+			if (!isSimpleTerm(child))
+				return false;
+		return true;
+	}
+	
+	private static boolean isSimpleTerm(ASTNode node) {
+		switch (node.getClassKind()) {
+		case OPERATOR:
+		case FUNCTION_RULE:
+		case ID:
+			break;
+		case EXPRESSION:
+			if (node instanceof EnclosedTermNode || node.getFirst() == null)
+				break;
+			return false;
+		default:
+			return false;
+		}
+		for (ASTNode child: node.getAbstractChildNodes())
+			if (!isSimpleTerm(child))
+				return false;
+		return true;
+	}
+	
+	/*
+	 * Evaluates an exists (if 'exists' is true) or forall expression
+	 * sequentially and returns its value, or null if an error occurred.
+	 * The condition is evaluated right away for every element, and the
+	 * evaluation stops at the first witness or counterexample.
+	 */
+	private Element evaluateSequentially(Interpreter interpreter, ASTNode condition, String variable, 
+			Enumerable domain, boolean exists) throws InterpreterException {
+		final Iterator<? extends Element> it;
+		if (domain.supportsIndexedView())
+			it = domain.getIndexedView().iterator();
+		else
+			it = domain.enumerate().iterator();
+		while (it.hasNext()) {
+			interpreter.addEnv(variable, it.next());
+			try {
+				interpreter.evaluateNode(condition);
+				final Element value = condition.getValue();
+				interpreter.clearTree(condition);
+				if (capi.hasErrorOccurred())
+					return null;
+				if (!(value instanceof BooleanElement)) {
+					capi.error("value of " + (exists ? EXISTS_EXP_TOKEN : FORALL_EXP_TOKEN) + " condition is not Boolean.", condition, interpreter);
+					return null;
+				}
+				// a witness of exists or a counterexample of forall
+				if (((BooleanElement)value).getValue() == exists)
+					return BooleanElement.valueOf(exists);
+			} finally {
+				interpreter.removeEnv(variable);
+			}
+		}
+		return BooleanElement.valueOf(!exists);
+	}
+	
+	/*
+	 * Evaluates an exists (if 'exists' is true) or forall expression and 
+	 * returns its value, or null if an error occurred. The domain is split 
+	 * into chunks that are evaluated by separate interpreters in the thread 
+	 * pool of the scheduler. All chunks stop once one of them has decided 
+	 * the value of the expression. The condition is evaluated by the given 
+	 * evaluator, if the expression is evaluated by its evaluator, or else
+	 * interpreted in copies.
+	 */
+	private Element evaluateInParallel(Interpreter interpreter, ASTNode node, String variable, 
+			List<? extends Element> domain, boolean exists, Evaluator condition) throws InterpreterException {
+		final int size = domain.size();
+		final int chunkCount = ParallelChunk.getChunkCount(capi, size);
+		final InterpreterFork fork = new InterpreterFork(capi, interpreter);
+		final AtomicBoolean decided = new AtomicBoolean(false);
+		final QuantifierChunk[] chunks = new QuantifierChunk[chunkCount];
+		for (int i = 0; i < chunkCount; i++)
+			chunks[i] = new QuantifierChunk(fork, node, variable, domain, exists, decided, condition,
+					ParallelChunk.getStart(size, i, chunkCount), ParallelChunk.getStart(size, i + 1, chunkCount));
+		ParallelChunk.invokeAll(capi, chunks);
+		
+		if (capi.hasErrorOccurred())
+			return null;
+		return BooleanElement.valueOf(decided.get() == exists);
+	}
+	
+	/*
+	 * Evaluates the condition of a quantifier for the elements [start, ..., end-1] 
+	 * of its domain with an interpreter forked from the interpreter of the agent,
+	 * until this or another chunk finds a witness (exists) or a counterexample (forall). 
+	 */
+	private final class QuantifierChunk extends ParallelChunk {
+		private static final long serialVersionUID = 1L;
+		
+		private final ASTNode node;
+		private final String variable;
+		private final List<? extends Element> domain;
+		private final boolean exists;
+		private final AtomicBoolean decided;
+		private final Evaluator conditionEvaluator;
+		
+		QuantifierChunk(InterpreterFork fork, ASTNode node, String variable, List<? extends Element> domain, 
+				boolean exists, AtomicBoolean decided, Evaluator conditionEvaluator, int start, int end) {
+			super(fork, start, end);
+			this.node = node;
+			this.variable = variable;
+			this.domain = domain;
+			this.exists = exists;
+			this.decided = decided;
+			this.conditionEvaluator = conditionEvaluator;
+		}
+
+		@Override
+		protected void evaluate(Interpreter interpreter) throws InterpreterException {
+			final ASTNode original = (exists ? ((ExistsExpNode)node).getCondition() : ((ForallExpNode)node).getCondition());
+			final ASTNode condition = (conditionEvaluator == null ? (ASTNode)interpreter.copyTree(original) : null);
+			for (int i = start; i < end && !decided.get() && !capi.hasErrorOccurred(); i++) {
+				fork.seedRandom(interpreter, i);
+				interpreter.addEnv(variable, domain.get(i));
+				try {
+					final Element value;
+					if (conditionEvaluator != null) {
+						try {
+							value = conditionEvaluator.evaluate(interpreter).getValue();
+						} catch (CoreASMError e) {
+							capi.error(e);
+							return;
+						}
+					}
+					else {
+						interpreter.interpret(condition, fork.getSelf());
+						value = condition.getValue();
+						interpreter.clearTree(condition);
+					}
+					if (capi.hasErrorOccurred())
+						return;
+					if (!(value instanceof BooleanElement)) {
+						capi.error("value of " + (exists ? EXISTS_EXP_TOKEN : FORALL_EXP_TOKEN) + " condition is not Boolean.", original, interpreter);
+						return;
+					}
+					if (((BooleanElement)value).getValue() == exists)
+						decided.set(true);
+				} finally {
+					interpreter.removeEnv(variable);
+				}
+			}
+		}
+	}
+	
     public VersionInfo getVersionInfo() {
 		return VERSION_INFO;
 	}
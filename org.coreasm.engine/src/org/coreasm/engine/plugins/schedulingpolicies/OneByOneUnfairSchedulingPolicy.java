@@ -17,7 +17,6 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.Random;
 import java.util.Set;
 
 import org.coreasm.engine.absstorage.Element;
@@ -25,14 +24,11 @@ import org.coreasm.engine.scheduler.SchedulingPolicy;
 
 public class OneByOneUnfairSchedulingPolicy extends BasicSchedulingPolicy implements SchedulingPolicy {
 
-	private Random rand;
-	
 	/**
 	 * @see BasicSchedulingPolicy#BasicSchedulingPolicy(Set)
 	 */
 	public OneByOneUnfairSchedulingPolicy(Set<Element> suspendedAgents) {
 		super(suspendedAgents);
-		rand = new Random();
 	}
 
 	public Iterator<Set<Element>> getNewSchedule(Set<? extends Element> set) {
@@ -66,7 +62,7 @@ public class OneByOneUnfairSchedulingPolicy extends BasicSchedulingPolicy implem
 
 			// since hasNext() is true, workingSet has at least one element in it
 			// TODO performance can be improved
-			final Element element = (Element) originalSet.toArray()[rand.nextInt(originalSet.size())];
+			final Element element = (Element) originalSet.toArray()[randInt(originalSet.size())];
 			Set<Element> result = new HashSet<Element>();
 			result.add(element);
 			return result;
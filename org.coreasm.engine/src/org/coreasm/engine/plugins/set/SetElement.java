@@ -32,9 +32,13 @@ import org.coreasm.engine.interpreter.Node;
 import org.coreasm.engine.plugins.collection.AbstractMapElement;
 import org.coreasm.engine.plugins.collection.AbstractSetElement;
 import org.coreasm.engine.plugins.collection.ModifiableCollection;
+import org.coreasm.util.PersistentHashSet;
 
 /** 
  *	This implements the Set Element.
+ *	<p>
+ *	The members are kept in a {@link PersistentHashSet}, so sets that
+ *	differ in a few members share most of their structure.
  *   
  *  @author  Mashaal Memon, Roozbeh Farahbod
  *  
@@ -43,9 +47,10 @@ public class SetElement extends AbstractSetElement implements ModifiableCollecti
 
 	protected static final Set<Element> falseValues;
 	protected static final Set<Element> booleanValues;
-	protected final Set<Element> members;
+	protected final PersistentHashSet<Element> members;
+	
+	private int hashCode = 0;
 	
-	protected Set<Element> enumCache = null;
 	protected List<Element> enumListCache = null;
 	protected Map<Element, Element> map = null;
 	
@@ -60,17 +65,31 @@ public class SetElement extends AbstractSetElement implements ModifiableCollecti
 	}
 	
 	public SetElement() {
-		members = Collections.emptySet();
+		members = PersistentHashSet.empty();
 	}
 	
 	public SetElement(Collection<? extends Element> members) {
-		this.members = Collections.unmodifiableSet(new HashSet<Element>(members));
+		this.members = PersistentHashSet.from(members);
 	}
 	
 	public SetElement(SetElement anotherSet) {
 		this(anotherSet.members);
 	}
 	
+	/**
+	 * Returns a new set with the members of this set and the given element.
+	 */
+	public SetElement plus(Element e) {
+		return new SetElement(members.plus(e));
+	}
+	
+	/**
+	 * Returns a new set with the members of this set except the given element.
+	 */
+	public SetElement minus(Element e) {
+		return new SetElement(members.minus(e));
+	}
+	
 	public String getBackground() {
 		return SetBackgroundElement.SET_BACKGROUND_NAME;
 	}
@@ -206,11 +225,15 @@ public class SetElement extends AbstractSetElement implements ModifiableCollecti
 		// two set elements with the same members will have members with the same
 		// hashCodes so add it up
 		
-		int resultantHashCode = 0;
+		// sets are immutable, so the hash code is computed once
+		int resultantHashCode = hashCode;
 		
-		// sum up hashcode of member elements
-		for (Element e : enumerate())
-		    resultantHashCode = resultantHashCode + (e==null ? 0 : e.hashCode());
+		if (resultantHashCode == 0) {
+			// sum up hashcode of member elements
+			for (Element e : enumerate())
+			    resultantHashCode = resultantHashCode + (e==null ? 0 : e.hashCode());
+			hashCode = resultantHashCode;
+		}
 		
 		return resultantHashCode; 
 	}
@@ -264,7 +287,7 @@ public class SetElement extends AbstractSetElement implements ModifiableCollecti
 
 	@Override
 	public Set<Element> keySet() {
-		return Collections.unmodifiableSet(members);
+		return members;
 	}
 
 	public int size() {
@@ -291,13 +314,11 @@ public class SetElement extends AbstractSetElement implements ModifiableCollecti
 	//----------------------
 
 	public Collection<Element> enumerate() {
-		if (enumCache == null)
-			enumCache = Collections.unmodifiableSet(this.keySet());
-		return enumCache;
+		return members;
 	}
 	
 	public boolean contains(Element e) {
-	    return this.keySet().contains(e);
+	    return members.contains(e);
     }
 
 	public List<Element> getIndexedView() throws UnsupportedOperationException {
@@ -329,7 +350,7 @@ public class SetElement extends AbstractSetElement implements ModifiableCollecti
 
 	@Override
 	public Set<Element> getSet() {
-		return Collections.unmodifiableSet(members);
+		return members;
 	}
 
 }
@@ -19,6 +19,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -47,7 +48,6 @@ import org.coreasm.engine.interpreter.ASTNode;
 import org.coreasm.engine.interpreter.Interpreter;
 import org.coreasm.engine.interpreter.InterpreterException;
 import org.coreasm.engine.interpreter.Node;
-import org.coreasm.engine.interpreter.ScannerInfo;
 import org.coreasm.engine.kernel.KernelServices;
 import org.coreasm.engine.parser.GrammarRule;
 import org.coreasm.engine.parser.OperatorRule;
@@ -60,6 +60,7 @@ import org.coreasm.engine.plugin.ParserPlugin;
 import org.coreasm.engine.plugin.Plugin;
 import org.coreasm.engine.plugin.VocabularyExtender;
 import org.coreasm.engine.plugins.collection.AbstractSetElement;
+import org.coreasm.util.PersistentHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -667,6 +668,13 @@ public class SetPlugin extends Plugin
 							if (eR.enumerate().contains(m))
 								resultSet.add(m);
 					}
+					// set difference of two set elements
+					else if (x.equals(SETDIFF_OP) && l instanceof SetElement && r instanceof SetElement 
+							&& ((SetElement)r).intSize() < ((SetElement)l).intSize())
+					{
+						// remove the elements of the smaller second set from the first
+						result = new SetElement(((SetElement)l).members.minusAll(((SetElement)r).members));
+					}
 					// set difference
 					else if (x.equals(SETDIFF_OP))
 					{
@@ -676,6 +684,14 @@ public class SetPlugin extends Plugin
 								resultSet.add(m);
 							
 					}
+					// set union of two set elements
+					else if (x.equals(SETUNION_OP) && l instanceof SetElement && r instanceof SetElement)
+					{
+						// add the elements of the smaller set to the larger one
+						PersistentHashSet<Element> sL = ((SetElement)l).members;
+						PersistentHashSet<Element> sR = ((SetElement)r).members;
+						result = new SetElement(sL.size() < sR.size() ? sR.plusAll(sL) : sL.plusAll(sR));
+					}
 					// set union
 					else if (x.equals(SETUNION_OP))
 					{
@@ -819,38 +835,30 @@ public class SetPlugin extends Plugin
 		Element value = null;
 		UpdateMultiset uMset1 = compAPI.getLocUpdates(1, l);
 		UpdateMultiset uMset2 = compAPI.getLocUpdates(2, l);
-		Set<Element> contributingAgents = new HashSet<Element>();
-		Set<ScannerInfo> contributingNodes = new HashSet<ScannerInfo>();
+		List<Update> contributors = new ArrayList<Update>();
 		
 		// get the value of the basic update on location 'l'
 		// TODO what if there are more than two such updates?
 		for (Update ui: uMset1)
 			if (ui.action.equals(Update.UPDATE_ACTION)) {
 				value = ui.value;
-				contributingAgents.addAll(ui.agents);
-				contributingNodes.addAll(ui.sources);
+				contributors.add(ui);
 				break;
 			}
 
 		// value should be a set
 		if (value instanceof SetElement) {
-			Set<Element> resultSet = new HashSet<Element>(((SetElement)value).enumerate());
-			
-			for (Element e: resultSet) {
-				Update removeUpdate = new Update(l, e, SETREMOVE_ACTION, (Element)null, null);
-				
-				if (!uMset2.contains(removeUpdate)) 
-					resultSet.add(e);
-			}
+			PersistentHashSet<Element> resultSet = ((SetElement)value).members;
 			
 			for (Update u: uMset2) {
 				if (u.action.equals(SETADD_ACTION)) 
-					resultSet.add(u.value);
-				contributingAgents.addAll(u.agents);
-				contributingNodes.addAll(u.sources);
+					resultSet = resultSet.plus(u.value);
+				else if (u.action.equals(SETREMOVE_ACTION))
+					resultSet = resultSet.minus(u.value);
+				contributors.add(u);
 			}
 			
-			return new Update(l, new SetElement(resultSet), Update.UPDATE_ACTION, contributingAgents, contributingNodes);
+			return Update.aggregate(l, new SetElement(resultSet), Update.UPDATE_ACTION, contributors, capi.getStorage().hasLeanUpdates());
 		} else
 			logger.error("Value is not a set (in SetPlugin Composition).");
 		
@@ -1090,36 +1098,29 @@ public class SetPlugin extends Plugin
 			// Should never happen
 			throw new EngineError("Location to which set incremental update has been made is invalid!");
 		}
-		Enumerable enumerableViewExistingSet = (Enumerable)existingSet;
-		
-		// resultant set element 
-		Set<Element> resultantSet = new HashSet<Element>();
-		Set<Element> contributingAgents = new HashSet<Element>();
-		Set<ScannerInfo> contributingNodes = new HashSet<ScannerInfo>();
-		//SetElement resultantSet = (SetElement)setBackground.getNewValue();
+		// resultant set element, sharing the structure of the existing set
+		PersistentHashSet<Element> resultantSet = existingSet.members;
+		List<Update> contributors = new ArrayList<Update>();
 		
-		// add all existing elements less those removed with setRemoveAction
-		for (Element e : enumerableViewExistingSet.enumerate()) {
-			Update update = new Update(loc, e, SETREMOVE_ACTION, (Element)null, null);
-			if (!locUpdates.contains(update)) 
-				resultantSet.add(e);
-		}
+		// remove all existing elements removed with setRemoveAction
+		for (Update u : locUpdates)
+			if (u.action.equals(SETREMOVE_ACTION))
+				resultantSet = resultantSet.minus(u.value);
 		
 		// add all values resulting from setAddAction
 		for (Update u : locUpdates)
 			if (u.action.equals(SETADD_ACTION))
-				resultantSet.add(u.value);
+				resultantSet = resultantSet.plus(u.value);
 		
 		// all updates added successfully, so flag them
 		// and add their agents to the contributing agent set
 		for (Update u : locUpdates) {
 			pluginAgg.flagUpdate(u,Flag.SUCCESSFUL,this);
-			contributingAgents.addAll(u.agents);
-			contributingNodes.addAll(u.sources);
+			contributors.add(u);
 		}
 	
 		// return resultant set
-		return new Update(loc, new SetElement(resultantSet), Update.UPDATE_ACTION, contributingAgents, contributingNodes);
+		return Update.aggregate(loc, new SetElement(resultantSet), Update.UPDATE_ACTION, contributors, capi.getStorage().hasLeanUpdates());
 	}
 
 	public Set<String> getBackgroundNames() {
@@ -13,15 +13,21 @@
  
 package org.coreasm.engine.plugins.signature;
 
+import java.util.ArrayDeque;
 import java.util.Collections;
-import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.coreasm.engine.ControlAPI;
+import org.coreasm.engine.CoreASMError;
+import org.coreasm.engine.absstorage.AbstractStorage;
 import org.coreasm.engine.absstorage.Element;
+import org.coreasm.engine.absstorage.ElementList;
 import org.coreasm.engine.absstorage.FunctionElement;
 import org.coreasm.engine.interpreter.ASTNode;
+import org.coreasm.engine.interpreter.Evaluator;
+import org.coreasm.engine.interpreter.EvaluatorBuilder;
 import org.coreasm.engine.interpreter.Interpreter;
 import org.coreasm.engine.interpreter.InterpreterException;
 
@@ -29,6 +35,15 @@ import org.coreasm.engine.interpreter.InterpreterException;
  * Derived functions keep a copy of the expression tree and call the 
  * interpreter to evaluate the subtree everytime they are asked for
  * their value.
+ * <p>
+ * Every thread uses its own copies of the expression tree, so derived 
+ * functions can be evaluated by many agents at the same time. In the
+ * fast interpreter mode, the expression is evaluated by an {@link Evaluator}
+ * that is built once and shared by all threads instead. 
+ * If the function is <i>memoized</i>, its values are remembered per
+ * agent and arguments until the state changes. This is only correct for
+ * functions whose value depends on nothing but the state, the arguments 
+ * and <code>self</code>.
  *   
  * @author  Roozbeh Farahbod
  * 
@@ -38,19 +53,54 @@ public class DerivedFunctionElement extends FunctionElement {
 	protected final ControlAPI capi;
 	protected final List<String> params;
 	protected final ASTNode expr;
-	protected final Map<ASTNode, ASTNode> exprCopies = new IdentityHashMap<ASTNode, ASTNode>();
+	protected final boolean memoized;
+	
+	/** the number of unused copies of the expression tree a thread keeps from one step to the next */
+	private static final int MAX_IDLE_COPIES = 4;
+	
+	/** unused copies of the expression tree of every thread */
+	protected final ThreadLocal<IdleCopies> exprCopies = new ThreadLocal<IdleCopies>() {
+		@Override
+		protected IdleCopies initialValue() {
+			return new IdleCopies();
+		}
+	};
+	
+	/** evaluator of the expression in the fast interpreter mode; built on first use */
+	private volatile Evaluator evaluator = null;
+	
+	/** values computed in the current state; only used if the function is memoized */
+	private volatile Memo memo = null;
 	
 	/**
 	 * Creates a new derived function with the given list 
 	 * of parameters.
 	 */
 	public DerivedFunctionElement(ControlAPI capi, List<String> params, ASTNode expr) {
+		this(capi, params, expr, false);
+	}
+	
+	/**
+	 * Creates a new derived function with the given list 
+	 * of parameters. If <code>memoized</code> is <code>true</code>,
+	 * the values of the function are remembered until the state changes.
+	 */
+	public DerivedFunctionElement(ControlAPI capi, List<String> params, ASTNode expr, boolean memoized) {
 		this.capi = capi;
 		this.params = Collections.unmodifiableList(params);
 		this.expr = expr;
+		this.memoized = memoized;
 		setFClass(FunctionClass.fcDerived);
 	}
 	
+	/**
+	 * Returns <code>true</code> if the values of this function are 
+	 * remembered until the state changes.
+	 */
+	public boolean isMemoized() {
+		return memoized;
+	}
+	
 	/*
 	 * @see org.coreasm.engine.absstorage.FunctionElement#getValue(java.util.List)
 	 */
@@ -59,29 +109,147 @@ public class DerivedFunctionElement extends FunctionElement {
 		Element result = Element.UNDEF;
 		if (args.size() == params.size()) {
 			Interpreter interpreter = capi.getInterpreter().getInterpreterInstance();
-			bindArguments(interpreter, args);
 			
-			synchronized(this) {
-				ASTNode exprCopy = exprCopies.get(interpreter.getPosition());
-				if (exprCopy == null) {
-					exprCopy = (ASTNode)interpreter.copyTree(expr);
-					exprCopies.put(interpreter.getPosition(), exprCopy);
+			ConcurrentMap<ElementList, Element> values = null;
+			ElementList key = null;
+			if (memoized) {
+				values = getMemoizedValues(interpreter.getSelf());
+				if (values != null) {
+					key = (args instanceof ElementList ? (ElementList)args : ElementList.create(args));
+					result = values.get(key);
+					if (result != null)
+						return result;
+					result = Element.UNDEF;
 				}
-				try {
-					interpreter.interpret(exprCopy, interpreter.getSelf());
-					if (exprCopy.getValue() != null)
-						result = exprCopy.getValue();
-				} catch (InterpreterException e) {
-					capi.error(e, expr, interpreter);
-				} finally {
-					unbindArguments(interpreter);
-				}
-				interpreter.clearTree(exprCopy);
 			}
+			
+			bindArguments(interpreter, args);
+			
+			if (interpreter.isFastMode())
+				result = evaluate(interpreter);
+			else
+				result = interpretCopy(interpreter);
+			
+			if (values != null && !capi.hasErrorOccurred())
+				values.put(key, result);
 		}
 		
 		return result;
 	}
+	
+	/*
+	 * Evaluates the expression with the bound arguments by its evaluator
+	 * and unbinds the arguments.
+	 */
+	private Element evaluate(Interpreter interpreter) {
+		Element result = Element.UNDEF;
+		Evaluator e = evaluator;
+		try {
+			if (e == null) {
+				e = EvaluatorBuilder.build(capi, expr);
+				evaluator = e;
+			}
+			final Element value = e.evaluate(interpreter).getValue();
+			if (value != null)
+				result = value;
+		} catch (CoreASMError error) {
+			capi.error(error);
+		} catch (InterpreterException error) {
+			capi.error(error, expr, interpreter);
+		} finally {
+			unbindArguments(interpreter);
+		}
+		return result;
+	}
+	
+	/*
+	 * Interprets a copy of the expression with the bound arguments and 
+	 * unbinds the arguments.
+	 */
+	private Element interpretCopy(Interpreter interpreter) {
+		Element result = Element.UNDEF;
+		// a recursive call takes another copy, as the copy of the caller is in use
+		IdleCopies copies = exprCopies.get();
+		ASTNode exprCopy = copies.acquire(capi.getStepCount());
+		if (exprCopy == null)
+			exprCopy = (ASTNode)interpreter.copyTree(expr);
+		try {
+			interpreter.interpret(exprCopy, interpreter.getSelf());
+			if (exprCopy.getValue() != null)
+				result = exprCopy.getValue();
+		} catch (InterpreterException e) {
+			capi.error(e, expr, interpreter);
+		} finally {
+			unbindArguments(interpreter);
+		}
+		interpreter.clearTree(exprCopy);
+		copies.release(exprCopy);
+		return result;
+	}
+
+	/*
+	 * Returns the values remembered for the given agent in the current 
+	 * state, or null if values cannot be remembered at the moment.
+	 */
+	private ConcurrentMap<ElementList, Element> getMemoizedValues(Element self) {
+		final AbstractStorage storage = capi.getStorage();
+		// values computed in a stacked state would depend on the pending updates
+		if (storage.isStateStacked())
+			return null;
+		final long version = storage.getStateVersion();
+		Memo m = memo;
+		if (m == null || m.version != version) {
+			m = new Memo(version);
+			memo = m;
+		}
+		final Object agentKey = (self == null ? Memo.NO_AGENT : self);
+		ConcurrentMap<ElementList, Element> values = m.values.get(agentKey);
+		if (values == null) {
+			values = new ConcurrentHashMap<ElementList, Element>();
+			final ConcurrentMap<ElementList, Element> other = m.values.putIfAbsent(agentKey, values);
+			if (other != null)
+				values = other;
+		}
+		return values;
+	}
+	
+	/*
+	 * The unused copies of the expression tree of one thread. A deep 
+	 * recursion leaves many copies behind; all but a few of them are 
+	 * dropped by the first call in a later step.
+	 */
+	protected static final class IdleCopies {
+		private final ArrayDeque<ASTNode> copies = new ArrayDeque<ASTNode>();
+		private int step = -1;
+		
+		ASTNode acquire(int currentStep) {
+			if (step != currentStep) {
+				while (copies.size() > MAX_IDLE_COPIES)
+					copies.pollLast();
+				step = currentStep;
+			}
+			return copies.poll();
+		}
+		
+		void release(ASTNode copy) {
+			copies.push(copy);
+		}
+	}
+	
+	/*
+	 * The values of a memoized function in one version of the state.
+	 */
+	private static final class Memo {
+		static final Object NO_AGENT = new Object();
+		
+		final long version;
+		final ConcurrentMap<Object, ConcurrentMap<ElementList, Element>> values = 
+				new ConcurrentHashMap<Object, ConcurrentMap<ElementList, Element>>();
+		
+		Memo(long version) {
+			this.version = version;
+		}
+	}
 
 	protected void bindArguments(Interpreter interpreter, List<? extends Element> values) {
 		interpreter.hideEnvVars();
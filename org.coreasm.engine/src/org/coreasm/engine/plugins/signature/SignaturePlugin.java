@@ -97,6 +97,14 @@ public class SignaturePlugin extends Plugin
 	 */
 	public static final String TYPE_CHECKING_PROPERTY = "TypeChecking";
 	
+	/**
+	 * The name of the Signature.MemoizedDerivedFunctions property. Its value is a 
+	 * comma-separated list of names of derived functions whose values only depend 
+	 * on the state, their arguments and <code>self</code>. The values of these 
+	 * functions are remembered until the state changes.
+	 */
+	public static final String MEMOIZED_DERIVED_FUNCTIONS_PROPERTY = "MemoizedDerivedFunctions";
+	
     private HashMap<String,FunctionElement> functions;
     private HashMap<String,UniverseElement> universes;
     private HashMap<String,BackgroundElement> backgrounds;
@@ -118,7 +126,7 @@ public class SignaturePlugin extends Plugin
 
 	private final String[] keywords = {"enum", "universe", "controlled", "monitored", "static", "function", "initially", "initialized", "by", "derived"};
 	private final String[] operators = {"=", "{", "}", ",", ":", "->"};
-	private static final Set<String> options = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(new String[] { NO_UNDEFINED_ID_PROPERTY, TYPE_CHECKING_PROPERTY })));
+	private static final Set<String> options = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(new String[] { NO_UNDEFINED_ID_PROPERTY, TYPE_CHECKING_PROPERTY, MEMOIZED_DERIVED_FUNCTIONS_PROPERTY })));
 	
 	private final CompilerPlugin compilerPlugin = new CompilerSignaturePlugin(this);
 	
@@ -684,7 +692,7 @@ public class SignaturePlugin extends Plugin
     
     private String getContextInfo(Update u) {
     	StringBuffer result = new StringBuffer();
-    	if (u.sources != null) {
+    	if (!u.getSources().isEmpty()) {
     		result.append(Tools.getEOL() + EngineTools.getContextInfo("", u, capi.getParser(), capi.getSpec()));
 //    		org.coreasm.engine.parser.Parser parser = capi.getParser();
 //    		Specification spec = capi.getSpec();
@@ -930,6 +938,19 @@ public class SignaturePlugin extends Plugin
         	function.setFClass(functionNode.getFunctionClass());
     }
     
+    /*
+     * Returns true if the given derived function is listed in the
+     * MEMOIZED_DERIVED_FUNCTIONS_PROPERTY of the engine.
+     */
+    private boolean isMemoizedDerivedFunction(String name) {
+    	String names = getOptionValue(MEMOIZED_DERIVED_FUNCTIONS_PROPERTY);
+    	if (names != null)
+    		for (String n: names.split(","))
+    			if (n.trim().equals(name))
+    				return true;
+    	return false;
+    }
+    
     private void createDerivedFunction(ASTNode currentSignature, Interpreter interpreter) {
         DerivedFunctionNode derivedFuncNode = (DerivedFunctionNode) currentSignature;        
 
@@ -948,7 +969,8 @@ public class SignaturePlugin extends Plugin
 		}
 		params.trimToSize();
 
-		DerivedFunctionElement func = new DerivedFunctionElement(capi, params, exprNode);
+		DerivedFunctionElement func = new DerivedFunctionElement(capi, params, exprNode, 
+				isMemoizedDerivedFunction(idNode.getToken()));
 		
 		addFunction(idNode.getToken(), func, currentSignature, interpreter);
 
@@ -34,6 +34,9 @@ import org.coreasm.engine.absstorage.FunctionElement;
 import org.coreasm.engine.absstorage.RuleElement;
 import org.coreasm.engine.absstorage.UniverseElement;
 import org.coreasm.engine.interpreter.ASTNode;
+import org.coreasm.engine.interpreter.Evaluation;
+import org.coreasm.engine.interpreter.Evaluator;
+import org.coreasm.engine.interpreter.EvaluatorBuilder;
 import org.coreasm.engine.interpreter.Interpreter;
 import org.coreasm.engine.interpreter.InterpreterException;
 import org.coreasm.engine.interpreter.Node;
@@ -41,6 +44,7 @@ import org.coreasm.engine.interpreter.ScannerInfo;
 import org.coreasm.engine.parser.GrammarRule;
 import org.coreasm.engine.parser.OperatorRule;
 import org.coreasm.engine.parser.OperatorRule.OpType;
+import org.coreasm.engine.plugin.EvaluatorProvider;
 import org.coreasm.engine.plugin.InterpreterPlugin;
 import org.coreasm.engine.plugin.OperatorProvider;
 import org.coreasm.engine.plugin.ParserPlugin;
@@ -54,7 +58,7 @@ import org.coreasm.engine.plugin.VocabularyExtender;
  *  
  */
 public class StringPlugin extends Plugin 
-		implements ParserPlugin, InterpreterPlugin, OperatorProvider, VocabularyExtender {
+		implements ParserPlugin, InterpreterPlugin, OperatorProvider, VocabularyExtender, EvaluatorProvider {
 	
 	public static final VersionInfo VERSION_INFO = new VersionInfo(0, 4, 1, "");
 	
@@ -125,6 +129,21 @@ public class StringPlugin extends Plugin
 		return nextPos;
 	}
 
+	/**
+	 * String constants are evaluated without interpreting their nodes; 
+	 * every evaluation produces a new string element, as the interpreter does.
+	 */
+	public Evaluator buildEvaluator(ASTNode node, EvaluatorBuilder builder) {
+		if (!ASTNode.EXPRESSION_CLASS.equals(node.getGrammarClass()) || node.getToken() == null)
+			return null;
+		final String lexeme = node.getToken();
+		return new Evaluator() {
+			public Evaluation evaluate(Interpreter interpreter) {
+				return Evaluation.ofValue(stringBackgroundElement.getNewValue(lexeme));
+			}
+		};
+	}
+
 	public Set<Parser<? extends Object>> getLexers() {
 		if (lexers == null) {
 			lexers = new HashSet<Parser<? extends Object>>();
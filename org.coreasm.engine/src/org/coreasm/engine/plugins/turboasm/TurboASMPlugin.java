@@ -37,6 +37,7 @@ import org.coreasm.engine.absstorage.BooleanElement;
 import org.coreasm.engine.absstorage.Element;
 import org.coreasm.engine.absstorage.ElementList;
 import org.coreasm.engine.absstorage.FunctionElement;
+import org.coreasm.engine.absstorage.IncrementalComposition;
 import org.coreasm.engine.absstorage.Location;
 import org.coreasm.engine.absstorage.MapFunction;
 import org.coreasm.engine.absstorage.RuleElement;
@@ -83,7 +84,7 @@ public class TurboASMPlugin extends Plugin implements ParserPlugin, InterpreterP
 	public static final String PLUGIN_NAME = TurboASMPlugin.class.getSimpleName();
 
 	/* composed updates cache */
-	private ThreadLocal<Map<ASTNode,UpdateMultiset>> composedUpdatesMap;
+	private ThreadLocal<Map<ASTNode,IncrementalComposition>> composedUpdatesMap;
 
 	private Map<String, GrammarRule> parsers = null;
 	
@@ -112,10 +113,10 @@ public class TurboASMPlugin extends Plugin implements ParserPlugin, InterpreterP
 	
 	@Override
 	public void initialize() {
-		composedUpdatesMap = new ThreadLocal<Map<ASTNode,UpdateMultiset>>() {
+		composedUpdatesMap = new ThreadLocal<Map<ASTNode,IncrementalComposition>>() {
 			@Override
-			protected Map<ASTNode, UpdateMultiset> initialValue() {
-				return new IdentityHashMap<ASTNode, UpdateMultiset>();
+			protected Map<ASTNode, IncrementalComposition> initialValue() {
+				return new IdentityHashMap<ASTNode, IncrementalComposition>();
 			}
 		};
 		logger.debug("TurboASM is loaded!");
@@ -124,7 +125,7 @@ public class TurboASMPlugin extends Plugin implements ParserPlugin, InterpreterP
 	/*
 	 * Returns the composed updates cache for this thread
 	 */
-	private Map<ASTNode, UpdateMultiset> getThreadComposedUpdates() {
+	private Map<ASTNode, IncrementalComposition> getThreadComposedUpdates() {
 		return composedUpdatesMap.get();
 	}
 	
@@ -374,11 +375,11 @@ public class TurboASMPlugin extends Plugin implements ParserPlugin, InterpreterP
 				IterateRuleNode node = (IterateRuleNode)pos;
 				ASTNode childRule = node.getChildRule();
 				
-				Map<ASTNode, UpdateMultiset> composedUpdates = getThreadComposedUpdates();
+				Map<ASTNode, IncrementalComposition> composedUpdates = getThreadComposedUpdates();
 
 				if (!childRule.isEvaluated()) {
 					pushState();
-					composedUpdates.put(pos, new UpdateMultiset()); 
+					composedUpdates.put(pos, new IncrementalComposition(storage)); 
 					return childRule;
 				} else {
 					UpdateMultiset u = childRule.getUpdates();
@@ -386,7 +387,7 @@ public class TurboASMPlugin extends Plugin implements ParserPlugin, InterpreterP
 						Set<Update> uSet = null;
 						try {
 							uSet = storage.performAggregation(u);
-							composedUpdates.put(pos, storage.compose(composedUpdates.get(pos), u));
+							composedUpdates.get(pos).compose(u);
 							if (storage.isConsistent(uSet)) {
 								storage.apply(uSet);
 								interpreter.clearTree(childRule);
@@ -396,8 +397,7 @@ public class TurboASMPlugin extends Plugin implements ParserPlugin, InterpreterP
 							// inconsistent aggregation or updateset
 						}
 					}
-					pos.setNode(null, composedUpdates.get(pos), null);
-					composedUpdates.remove(pos);
+					pos.setNode(null, composedUpdates.remove(pos).getUpdates(), null);
 					popState();
 				}
 			} else
@@ -406,12 +406,12 @@ public class TurboASMPlugin extends Plugin implements ParserPlugin, InterpreterP
 					ASTNode childRule = node.getChildRule();
 					ASTNode whileCond = node.getCondition();
 	
-					Map<ASTNode, UpdateMultiset> composedUpdates = getThreadComposedUpdates();
+					Map<ASTNode, IncrementalComposition> composedUpdates = getThreadComposedUpdates();
 					
 					// if the guard is not evaluated, evaluate it
 					if (!whileCond.isEvaluated()) {
 						pushState();
-						composedUpdates.put(pos, new UpdateMultiset()); 
+						composedUpdates.put(pos, new IncrementalComposition(storage)); 
 						return whileCond;
 					}
 					
@@ -424,7 +424,7 @@ public class TurboASMPlugin extends Plugin implements ParserPlugin, InterpreterP
 							Set<Update> uSet = null;
 							try {
 								uSet = storage.performAggregation(u);
-								composedUpdates.put(pos, storage.compose(composedUpdates.get(pos), u));
+								composedUpdates.get(pos).compose(u);
 								if (storage.isConsistent(uSet))
 									storage.apply(uSet);
 							} catch (EngineError e) {
@@ -436,8 +436,7 @@ public class TurboASMPlugin extends Plugin implements ParserPlugin, InterpreterP
 						return whileCond;
 					}
 					popState();
-					pos.setNode(null, composedUpdates.get(pos), null);
-					composedUpdates.remove(pos);
+					pos.setNode(null, composedUpdates.remove(pos).getUpdates(), null);
 				} else
 					if (pos instanceof ReturnResultNode) {
 						ReturnResultNode node = (ReturnResultNode)pos;
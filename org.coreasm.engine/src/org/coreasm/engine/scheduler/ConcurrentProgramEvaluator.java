@@ -15,6 +15,8 @@
 package org.coreasm.engine.scheduler;
 
 import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.coreasm.engine.ControlAPI;
 import org.coreasm.engine.EngineException;
@@ -28,17 +30,23 @@ import org.coreasm.engine.interpreter.InterpreterImp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import EDU.oswego.cs.dl.util.concurrent.FJTask;
-
 /**
  * Evaluates programs of a set of agents in parallel using
- * Java concurrency methods.
+ * Java concurrency methods. Instances are meant to be run
+ * in a {@link java.util.concurrent.ForkJoinPool}.
+ * <p>
+ * The agent list is split recursively until a task holds at most
+ * <code>batchSize</code> agents. Every batch stores its updates in a
+ * slot of an array shared by all the tasks of one run, and the root 
+ * evaluator merges them once into a single update multiset.
  *   
  * @author Roozbeh Farahbod
  *
  */
 
-public class ConcurrentProgramEvaluator extends FJTask {
+public class ConcurrentProgramEvaluator extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
 
 	public static final int DEFAULT_BATCH_SIZE = 1;
 
@@ -55,6 +63,14 @@ public class ConcurrentProgramEvaluator extends FJTask {
 	private final int end;
 	private final int batchSize;
 	
+	/* updates of every batch, indexed by the first agent of the batch */
+	private final UpdateMultiset[] batchResults;
+	
+	/* total time spent evaluating agent programs, in nanoseconds */
+	private final AtomicLong evaluationTime;
+	
+	private final boolean isRoot;
+	
 	/**
 	 * Creates a new program evaluator working on agents [start, ..., end-1] in the list.
 	 * 
@@ -81,47 +97,84 @@ public class ConcurrentProgramEvaluator extends FJTask {
 		this.storage = capi.getStorage();
 		this.start = start;
 		this.end = end;
-		this.batchSize = batchSize;
+		this.batchSize = Math.max(1, batchSize);
 		this.agentContextMap = agentContextMap;
+		this.batchResults = new UpdateMultiset[agents.size()];
+		this.evaluationTime = new AtomicLong();
+		this.isRoot = true;
 	}
 	
-	public void run() {
+	/*
+	 * Creates a new program evaluator working on agents [start, ..., end-1] 
+	 * that shares the configuration and the results of the given evaluator.
+	 */
+	private ConcurrentProgramEvaluator(ConcurrentProgramEvaluator parent, int start, int end) {
+		this.agents = parent.agents;
+		this.capi = parent.capi;
+		this.storage = parent.storage;
+		this.start = start;
+		this.end = end;
+		this.batchSize = parent.batchSize;
+		this.agentContextMap = parent.agentContextMap;
+		this.batchResults = parent.batchResults;
+		this.evaluationTime = parent.evaluationTime;
+		this.isRoot = false;
+	}
+	
+	@Override
+	protected void compute() {
 		if (end - start > batchSize) {
 			int cut = start + (end - start) / 2;
-			ConcurrentProgramEvaluator cpe1 = new ConcurrentProgramEvaluator(capi, agentContextMap, agents, start, cut);
-			ConcurrentProgramEvaluator cpe2 = new ConcurrentProgramEvaluator(capi, agentContextMap, agents, cut, end);
-			
-			coInvoke(cpe1, cpe2);
+			ConcurrentProgramEvaluator cpe1 = new ConcurrentProgramEvaluator(this, start, cut);
+			ConcurrentProgramEvaluator cpe2 = new ConcurrentProgramEvaluator(this, cut, end);
 			
-			UpdateMultiset result1 = cpe1.getResultantUpdateSet();
-			UpdateMultiset result2 = cpe2.getResultantUpdateSet();
+			invokeAll(cpe1, cpe2);
 			
-			if (result1 == null) {
-				result = null;
+			if (cpe1.error != null)
 				error = cpe1.error;
-			} else 
-				if (result2 == null) {
-					result = null;
-					error = cpe2.error;
-				} else {
-					result = new UpdateMultiset(cpe1.getResultantUpdateSet());
-					result.addAll(cpe2.getResultantUpdateSet());
-				}
-		} else {
+			else
+				error = cpe2.error;
+		} else if (end > start) {
+			final long startTime = System.nanoTime();
 			UpdateMultiset aggregatedResult = new UpdateMultiset();
 			for (int i=start; i < end; i++) {
 				Element agent = agents.get(i);
 				try {
-					evaluate(agent);
+					aggregatedResult.addAll(evaluate(agent));
 				} catch(Exception e) {
-					result = null;
 					error = e;
 					return;
 				}
-				aggregatedResult.addAll(result);
 			}
-			result = aggregatedResult;
+			batchResults[start] = aggregatedResult;
+			evaluationTime.addAndGet(System.nanoTime() - startTime);
 		}
+		
+		if (isRoot && error == null)
+			result = mergeBatchResults();
+	}
+	
+	/*
+	 * Merges the updates of all the batches into one pre-sized multiset.
+	 */
+	private UpdateMultiset mergeBatchResults() {
+		int size = 0;
+		int batches = 0;
+		UpdateMultiset last = null;
+		for (int i = start; i < end; i++)
+			if (batchResults[i] != null) {
+				last = batchResults[i];
+				size += last.size();
+				batches++;
+			}
+		if (batches == 1)
+			return last;
+		
+		UpdateMultiset merged = new UpdateMultiset(size);
+		for (int i = start; i < end; i++)
+			if (batchResults[i] != null)
+				merged.addAll(batchResults[i]);
+		return merged;
 	}
 
 	public UpdateMultiset getResultantUpdateSet() {
@@ -132,10 +185,18 @@ public class ConcurrentProgramEvaluator extends FJTask {
 		return error;
 	}
 	
+	/**
+	 * Returns the total time spent on evaluating the programs of the agents
+	 * (summed up over all threads) in nanoseconds.
+	 */
+	public long getEvaluationTime() {
+		return evaluationTime.get();
+	}
+	
 	/*
 	 * Evaluates the program of the given agent.
 	 */
-	private void evaluate(Element agent) throws EngineException {
+	private UpdateMultiset evaluate(Element agent) throws EngineException {
 		AgentContext context = agentContextMap.get(agent); 
 		Interpreter inter;
 		if (context == null) {
@@ -157,38 +218,48 @@ public class ConcurrentProgramEvaluator extends FJTask {
 		if (!(program instanceof RuleElement)) 
 			throw new EngineException("Program of agent " + agent.denotation() + " is not a rule element.");
 		inter.setSelf(agent);
-		
-		ASTNode ruleNode = ((RuleElement)program).getBody();
-		rootNode = context.nodeCopyCache.get(ruleNode);
-		if (rootNode == null) {
-			rootNode = (ASTNode)inter.copyTree(ruleNode); 
-			context.nodeCopyCache.put(ruleNode, rootNode);
-		} else {
-			inter.clearTree(rootNode);
-		}
-		
-		inter.setPosition(rootNode);
 		// allow the interpreter to perform internal initialization 
 		// prior to program execution
 		inter.initProgramExecution();
-
-		do 
-			inter.executeTree();	
-		while (!(inter.isExecutionComplete() || capi.hasErrorOccurred()));
 		
-		// if rootNode hasn't been evaluated after inter.isExecutionComplete() returned true, the AST has been corrupted
-		if (!rootNode.isEvaluated() && !capi.hasErrorOccurred()) 
-			throw new EngineException("AST of " + agent.denotation() + program.denotation() + " has been corrupted.");
+		UpdateMultiset updates;
+		if (inter.isFastMode() && ((RuleElement)program).getParam().isEmpty())
+			// the evaluator of the program is built once and shared by all agents
+			updates = inter.evaluateRule((RuleElement)program);
+		else {
+			ASTNode ruleNode = ((RuleElement)program).getBody();
+			rootNode = context.nodeCopyCache.get(ruleNode);
+			if (rootNode == null) {
+				rootNode = (ASTNode)inter.copyTree(ruleNode); 
+				context.nodeCopyCache.put(ruleNode, rootNode);
+			} else {
+				inter.clearTree(rootNode);
+			}
+			
+			inter.setPosition(rootNode);
+	
+			do 
+				inter.executeTree();	
+			while (!(inter.isExecutionComplete() || capi.hasErrorOccurred()));
+			
+			// if rootNode hasn't been evaluated after inter.isExecutionComplete() returned true, the AST has been corrupted
+			if (!rootNode.isEvaluated() && !capi.hasErrorOccurred()) 
+				throw new EngineException("AST of " + agent.denotation() + program.denotation() + " has been corrupted.");
+			updates = rootNode.getUpdates();
+		}
 		
 		// if an error occurred in the engine, just return an empty multiset
 		if (capi.hasErrorOccurred()) 
-			result = new UpdateMultiset();
-		else
-			result = rootNode.getUpdates();
+			updates = new UpdateMultiset();
+		else {
+			// release the rule body copies of this step
+			inter.cleanUp();
+		}
 		
 		if (logger.isDebugEnabled())
-			logger.debug("Updates are: " + result.toString());
+			logger.debug("Updates are: " + updates.toString());
 
+		return updates;
 	}
 	
 }
@@ -19,6 +19,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.Set;
 
 import org.coreasm.engine.absstorage.Element;
@@ -38,6 +39,25 @@ public class DefaultSchedulingPolicy implements SchedulingPolicy {
 	/** Maximum number of elements considered, 30 */
 	public static final int MAX_SET_SIZE = 30;
 
+	private Random random = null;
+
+	/**
+	 * Sets the generator of the random numbers used by this policy. If no
+	 * generator is set, the shared generator of {@link Tools} is used.
+	 */
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Returns a random integer number in [0 .. max).
+	 */
+	protected int randInt(int max) {
+		if (random == null)
+			return Tools.randInt(max);
+		return random.nextInt(max);
+	}
+
 	public Iterator<Set<Element>> getNewSchedule(Set<? extends Element> set) {
 		return new DefaultIterator(set);
 	}
@@ -95,7 +115,7 @@ public class DefaultSchedulingPolicy implements SchedulingPolicy {
 			// Here I pick a subset of the given set with a size of MAX_SET_SIZE
             if (set.size() > MAX_SET_SIZE) {
     			this.list = new ArrayList<Element>();
-            	int clipIndex = Tools.randInt(set.size() - MAX_SET_SIZE + 1);
+            	int clipIndex = randInt(set.size() - MAX_SET_SIZE + 1);
             	for (int i = 0; i < MAX_SET_SIZE; i++)
             		list.add(tempList.get(i + clipIndex));
             } else
@@ -122,7 +142,7 @@ public class DefaultSchedulingPolicy implements SchedulingPolicy {
 	            // choose a subset index randomly
 				int selectedIndex;
 				do 
-					selectedIndex = 1 + Tools.randInt(max_tries);
+					selectedIndex = 1 + randInt(max_tries);
 				while 
 					(iteratedIndices.contains(selectedIndex));
 				
@@ -14,7 +14,9 @@
  
 package org.coreasm.engine.scheduler;
 
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.coreasm.engine.EngineException;
 import org.coreasm.engine.InvalidSpecificationException;
@@ -220,5 +222,26 @@ public interface Scheduler {
      */       
     public void incrementStepCount();
     
+    /**
+     * Returns the thread pool used to evaluate the programs of agents.
+     * Other engine components may use it to perform their work in parallel.
+     * The pool is sized from the {@link org.coreasm.engine.EngineProperties#MAX_PROCESSORS} 
+     * engine property and lives until {@link #dispose()} is called.
+     */
+    public ForkJoinPool getExecutor();
+    
+    /**
+     * Returns the random number generator of the given agent in the current step.
+     * The numbers of the generator only depend on the 
+     * {@link org.coreasm.engine.EngineProperties#RANDOM_SEED} engine property, 
+     * the step and the denotation of the agent, so a run can be repeated with the 
+     * same seed as long as the agents have the same denotations. The denotation 
+     * of a plain element contains its id, which depends on the elements created 
+     * before it; agents created by agents running in parallel may therefore get
+     * other denotations in another run. The generator is not thread-safe
+     * and must only be used while evaluating the program of the agent.
+     */
+    public Random getRandom(Element agent);
+    
     public void dispose();
 }
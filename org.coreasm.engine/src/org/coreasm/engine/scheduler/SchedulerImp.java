@@ -13,11 +13,23 @@
 package org.coreasm.engine.scheduler;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.coreasm.engine.ControlAPI;
 import org.coreasm.engine.EngineError;
@@ -34,13 +46,13 @@ import org.coreasm.engine.absstorage.Location;
 import org.coreasm.engine.absstorage.Update;
 import org.coreasm.engine.absstorage.UpdateMultiset;
 import org.coreasm.engine.interpreter.Interpreter;
+import org.coreasm.engine.interpreter.InterpreterFork;
 import org.coreasm.engine.plugin.Plugin;
 import org.coreasm.engine.plugin.SchedulerPlugin;
+import org.coreasm.util.SplitMixRandom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import EDU.oswego.cs.dl.util.concurrent.FJTaskRunnerGroup;
-
 /**
  * Implemetation of scheduler.
  * 
@@ -52,6 +64,9 @@ public class SchedulerImp implements Scheduler {
 	/** Maximum number of agents selected in each round */
 	public static final int MAX_SELECTED_AGENTS = 10;
 
+	/** Targeted evaluation time (in nanoseconds) of one batch of agents if the batch size is adaptive */
+	public static final long ADAPTIVE_BATCH_TIME = 100000;
+
 	protected static final Logger logger = LoggerFactory
 			.getLogger(SchedulerImp.class);
 
@@ -65,21 +80,45 @@ public class SchedulerImp implements Scheduler {
 
 	private Element initAgent;
 
-	// private FJTaskRunnerGroup runnerGroup = null;
+	/* long-lived pool evaluating agent programs; created lazily and shut down in dispose() */
+	private ForkJoinPool agentExecutor = null;
 	private int batchSize = -1;
 	private int numberOfCPUs = -1;
 	private SchedulingPolicy schedulingPolicy = null;
 	private Iterator<Set<Element>> schedule = null;
 	private boolean shouldPrintProcessorStats = false;
+	private boolean adaptiveBatchSize = false;
+	
+	/* average time (in nanoseconds) needed to evaluate the program of one agent */
+	private long averageAgentTime = 0;
 
 	// TODO: may want to define it as a long
 	private int stepCount;
 
 	/* to cache the list with minimum change to the code */
 	private Set<Element> lastSelectedAgents;
+	
+	/* locations of program(agent) of all agents; valid as long as the agents are the same */
+	private Map<Element, Location> programLocations = new HashMap<Element, Location>();
+	
+	/* the enumeration of the agents the program locations were built for */
+	private Collection<? extends Element> programLocationsAgents = null;
 
 	private AgentContextMap agentContextMap;
 
+	/* seed of all random numbers of the run */
+	private long randomSeed;
+	
+	/* true if the seed is given by the user, so the run should be repeatable */
+	private boolean hasGivenRandomSeed = false;
+	
+	/* random number generators of the agents in the current step */
+	private volatile ConcurrentMap<Element, Random> agentRandoms = new ConcurrentHashMap<Element, Random>();
+	private long stepSeed;
+
+	/* numbers of the agents of this run in the order they were first scheduled; only used with a given seed */
+	private Map<Element, Long> agentNumbers = new HashMap<Element, Long>();
+
 	public SchedulerImp(ControlAPI engine) {
 		this.capi = engine;
 		updateInstructions = new UpdateMultiset();
@@ -96,13 +135,24 @@ public class SchedulerImp implements Scheduler {
 		// prepare the initial agent
 		interpreter.prepareInitialState();
 
+		hasGivenRandomSeed = false;
+		randomSeed = loadRandomSeed();
+		stepSeed = SplitMixRandom.mix64(randomSeed, stepCount);
+		agentRandoms = new ConcurrentHashMap<Element, Random>();
+		agentNumbers = new HashMap<Element, Long>();
 		loadSchedulingPolicy();
 
 		shouldPrintProcessorStats = (capi.getProperty(
 				EngineProperties.PRINT_PROCESSOR_STATS_PROPERTY, "no")
 				.toUpperCase().equals("YES"));
+		adaptiveBatchSize = (capi.getProperty(
+				EngineProperties.ADAPTIVE_THREAD_BATCH_SIZE, "no")
+				.toUpperCase().equals("YES"));
+		averageAgentTime = 0;
 
 		agentContextMap = new AgentContextMap();
+		programLocations = new HashMap<Element, Location>();
+		programLocationsAgents = null;
 
 		logger.debug("Done preparing the initial state.");
 	}
@@ -139,6 +189,8 @@ public class SchedulerImp implements Scheduler {
 		updateSet = new HashSet<Update>();
 		agentSet = null;
 		selectedAgentSet.clear();
+		stepSeed = SplitMixRandom.mix64(randomSeed, stepCount);
+		agentRandoms = new ConcurrentHashMap<Element, Random>();
 	}
 
 	public synchronized void retrieveAgents() {
@@ -154,11 +206,26 @@ public class SchedulerImp implements Scheduler {
 				agentSet.add(initAgent);
 			} else {
 				agentSet = new HashSet<Element>();
+				// universes return the same enumeration until their elements change,
+				// so the program locations are only updated if the agents have changed
+				Collection<? extends Element> agents = ((Enumerable) agentSetFlat).enumerate();
+				if (agents != programLocationsAgents) {
+					Map<Element, Location> lastProgramLocations = programLocations;
+					programLocations = new HashMap<Element, Location>();
+					for (Element agent : agents) {
+						Location loc = lastProgramLocations.get(agent);
+						if (loc == null)
+							loc = new Location(
+									AbstractStorage.PROGRAM_FUNCTION_NAME,
+									ElementList.create(agent));
+						programLocations.put(agent, loc);
+					}
+					programLocationsAgents = agents;
+				}
 				// pick only those that have a non-null program
-				for (Element agent : ((Enumerable) agentSetFlat).enumerate()) {
-					Location loc = new Location(
-							AbstractStorage.PROGRAM_FUNCTION_NAME,
-							ElementList.create(agent));
+				for (Entry<Element, Location> entry : programLocations.entrySet()) {
+					Element agent = entry.getKey();
+					Location loc = entry.getValue();
 					try {
 						if (!storage.getValue(loc).equals(Element.UNDEF))
 							agentSet.add(agent);
@@ -171,6 +238,12 @@ public class SchedulerImp implements Scheduler {
 				}
 			}
 
+			if (hasGivenRandomSeed) {
+				agentSet = sortByDenotation(agentSet);
+				for (Element agent : agentSet)
+					if (!agentNumbers.containsKey(agent))
+						agentNumbers.put(agent, Long.valueOf(agentNumbers.size()));
+			}
 		} else {
 			String msg = "Value of \"Agents\" is not enumerable. Cannot determine the agent set.";
 			logger.error(msg);
@@ -224,49 +297,56 @@ public class SchedulerImp implements Scheduler {
 		ArrayList<Element> agentsList = new ArrayList<Element>(selectedAgentSet);
 
 		/*
-		 * Old Code
-		 * 
-		 * Before, we would keep a copy of the runnerGroup and reuse it. This
-		 * appeared to be problamatic with regard to memory issues. Changing it
-		 * to one instance per time...
-		 * 
-		 * if (runnerGroup == null) { //TODO the number of available processes
-		 * may change! int cpus = getNumberOfProcessorsToBeUsed(); batchSize =
-		 * getThreadBatchSize(); runnerGroup = new FJTaskRunnerGroup(cpus); if
-		 * (Logger.verbosityLevel == Logger.INFORMATION) {
-		 * Logger.log(Logger.INFORMATION, Logger.scheduler, "Using " + cpus +
-		 * " thread(s) on " + Runtime.getRuntime().availableProcessors() +
-		 * " processors."); Logger.log(Logger.INFORMATION, Logger.scheduler,
-		 * "Using a batch size of " + batchSize + " agent(s) per thread."); } }
+		 * The agent executor is created once and reused for all the
+		 * following steps; it is released in dispose(). Creating a new
+		 * group of threads in every step used to dominate the runtime
+		 * of specifications with many short steps.
 		 */
-
+		final ForkJoinPool executor = getExecutor();
 		if (batchSize == -1) {
-			numberOfCPUs = getNumberOfProcessorsToBeUsed();
 			batchSize = getThreadBatchSize();
 			if (logger.isDebugEnabled()) {
-				logger.debug("Using " + numberOfCPUs + " thread(s) on "
+				logger.debug("Using " + executor.getParallelism() + " thread(s) on "
 						+ Runtime.getRuntime().availableProcessors()
 						+ " processors.");
 				logger.debug("Using a batch size of " + batchSize
 						+ " agent(s) per thread.");
 			}
 		}
-		final FJTaskRunnerGroup runnerGroup = new FJTaskRunnerGroup(
-				numberOfCPUs);
 
 		ConcurrentProgramEvaluator cpe = new ConcurrentProgramEvaluator(capi,
-				agentContextMap, agentsList, 0, agentsList.size(), batchSize);
+				agentContextMap, agentsList, 0, agentsList.size(), 
+				getEffectiveBatchSize(agentsList.size()));
+
+		final long stealCount = executor.getStealCount();
+		final long startTime = System.nanoTime();
+		ForkJoinTask<Void> task = executor.submit(cpe);
 		try {
-			runnerGroup.invoke(cpe);
+			task.get();
 		} catch (InterruptedException e) {
-			runnerGroup.interruptAll();
+			task.cancel(true);
 			throw new EngineException(
 					"Could not finish program evaluation due to "
 							+ "the following interrupted exception: " + e);
+		} catch (ExecutionException e) {
+			// errors (e.g., CoreASMError) are handled by the engine itself
+			if (e.getCause() instanceof Error)
+				throw (Error)e.getCause();
+			throw new EngineException(e.getCause());
+		}
+
+		if (adaptiveBatchSize && !agentsList.isEmpty()) {
+			long agentTime = cpe.getEvaluationTime() / agentsList.size();
+			if (averageAgentTime == 0)
+				averageAgentTime = agentTime;
+			else
+				averageAgentTime = (3 * averageAgentTime + agentTime) / 4;
 		}
 
 		if (shouldPrintProcessorStats)
-			runnerGroup.stats();
+			printProcessorStats(executor, agentsList.size(),
+					System.nanoTime() - startTime,
+					executor.getStealCount() - stealCount);
 
 		UpdateMultiset updates = cpe.getResultantUpdateSet();
 
@@ -282,10 +362,47 @@ public class SchedulerImp implements Scheduler {
 			// capi.error(cpe.getError());
 		}
 
-		runnerGroup.interruptAll();
 		updateInstructions = updates;
 	}
 
+	/**
+	 * Returns the executor used to evaluate agent programs, creating it
+	 * on the first call.
+	 */
+	public synchronized ForkJoinPool getExecutor() {
+		if (agentExecutor == null) {
+			if (numberOfCPUs == -1)
+				numberOfCPUs = getNumberOfProcessorsToBeUsed();
+			agentExecutor = new ForkJoinPool(Math.max(1, numberOfCPUs));
+		}
+		return agentExecutor;
+	}
+
+	/*
+	 * Returns the number of agents to be evaluated by one task. If the 
+	 * batch size is adaptive, batches are made big enough to take about
+	 * ADAPTIVE_BATCH_TIME, while leaving a few batches per thread to 
+	 * balance the load.
+	 */
+	private int getEffectiveBatchSize(int agents) {
+		if (!adaptiveBatchSize || averageAgentTime <= 0)
+			return batchSize;
+		long size = ADAPTIVE_BATCH_TIME / averageAgentTime;
+		size = Math.min(size, agents / (4 * Math.max(1, numberOfCPUs)));
+		return (int)Math.max(batchSize, size);
+	}
+
+	/*
+	 * Prints the wall time and the number of stolen tasks of the last
+	 * evaluation of agent programs.
+	 */
+	private void printProcessorStats(ForkJoinPool executor, int agents, long nanoTime, long steals) {
+		logger.info("Step " + stepCount + ": evaluated " + agents 
+				+ " agent(s) in " + (nanoTime / 1000000.0) + " ms using " 
+				+ executor.getParallelism() + " thread(s) with " + steals 
+				+ " steal(s).");
+	}
+
 	/*
 	 * removed from the concurrent version of the Engine
 	 * 
@@ -332,8 +449,9 @@ public class SchedulerImp implements Scheduler {
 		if (inconsistentUpdates != null) {
 			Set<Element> agents = new HashSet<Element>();
 			for (Update u : inconsistentUpdates) {
-				if (u.agents != null)
-					agents.addAll(u.agents);
+				agents.addAll(u.getAgents());
+				if (agents.size() > 1)
+					break;
 			}
 			if (agents.size() == 1)
 				result = true;
@@ -402,6 +520,77 @@ public class SchedulerImp implements Scheduler {
 					"Conflicting scheduling policies provided by " + providers
 							+ ".");
 		}
+		// the scheduler runs in one thread, so one generator serves the whole run 
+		if (schedulingPolicy instanceof DefaultSchedulingPolicy)
+			((DefaultSchedulingPolicy) schedulingPolicy).setRandom(new SplitMixRandom(SplitMixRandom.mix64(randomSeed, -1)));
+	}
+
+	/*
+	 * Reads the seed of the random numbers from the engine properties
+	 * or picks a new one.
+	 */
+	private long loadRandomSeed() {
+		String seedStr = capi.getProperty(EngineProperties.RANDOM_SEED);
+		if (seedStr != null) {
+			try {
+				long seed = Long.parseLong(seedStr.trim());
+				hasGivenRandomSeed = true;
+				return seed;
+			} catch (NumberFormatException e) {
+				logger.warn("Invalid value for \""
+						+ EngineProperties.RANDOM_SEED
+						+ "\" engine property (" + seedStr + ").");
+			}
+		}
+		long seed = SplitMixRandom.mix64(System.nanoTime() ^ System.currentTimeMillis());
+		logger.debug("Random seed of this run is {}.", seed);
+		return seed;
+	}
+
+	/*
+	 * Returns the given agents in a set that is iterated in the order of
+	 * their denotations. Unlike the order of a hash set, this order does not 
+	 * depend on when the agents were created, so schedules are repeatable.
+	 * Plain elements are denoted by their ids, which only tell the order in 
+	 * which they were created, so they are compared by their ids instead and
+	 * come before all other agents.
+	 */
+	private static Set<Element> sortByDenotation(Set<Element> agents) {
+		List<Element> list = new ArrayList<Element>(agents);
+		Collections.sort(list, new Comparator<Element>() {
+			public int compare(Element a1, Element a2) {
+				boolean plain1 = a1.getClass() == Element.class;
+				boolean plain2 = a2.getClass() == Element.class;
+				if (plain1 && plain2)
+					return (a1.id < a2.id) ? -1 : ((a1.id == a2.id) ? 0 : 1);
+				if (plain1 != plain2)
+					return plain1 ? -1 : 1;
+				return a1.denotation().compareTo(a2.denotation());
+			}
+		});
+		return new LinkedHashSet<Element>(list);
+	}
+
+	public Random getRandom(Element agent) {
+		if (agent == null)
+			agent = Element.UNDEF;
+		// forked interpreters must not share the generator of the agent
+		final Random forked = InterpreterFork.getRandom(agent);
+		if (forked != null)
+			return forked;
+		final ConcurrentMap<Element, Random> randoms = agentRandoms;
+		Random random = randoms.get(agent);
+		if (random == null) {
+			// neither the number nor the denotation of an agent depends on the order in which agents are evaluated;
+			// the ids of plain elements are shared by all runs in the same JVM, so those agents are known by their numbers
+			Long number = agentNumbers.get(agent);
+			long key = (number != null) ? number.longValue() : SplitMixRandom.hash64(agent.denotation());
+			random = new SplitMixRandom(SplitMixRandom.mix64(stepSeed, key));
+			Random other = randoms.putIfAbsent(agent, random);
+			if (other != null)
+				random = other;
+		}
+		return random;
 	}
 
 	/*
@@ -445,5 +634,13 @@ public class SchedulerImp implements Scheduler {
 	@Override
 	public void dispose() {
 		agentContextMap.clear();
+		synchronized (this) {
+			if (agentExecutor != null) {
+				agentExecutor.shutdownNow();
+				agentExecutor = null;
+			}
+		}
+		batchSize = -1;
+		numberOfCPUs = -1;
 	}
 }
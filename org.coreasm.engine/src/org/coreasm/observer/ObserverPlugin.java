@@ -280,7 +280,7 @@ public class ObserverPlugin extends Plugin implements ExtensionPointPlugin {
 			for (Update u: updateset) {
 				if (locationList == null || locationList.contains(u.loc.name)) {
 					Element updateElement = output.createElement("update");
-					for (org.coreasm.engine.absstorage.Element a: u.agents) {
+					for (org.coreasm.engine.absstorage.Element a: u.getAgents()) {
 						updateElement.appendChild(agentToXML(a));
 					}
 					updateElement.appendChild(locationToXML(u.loc));
@@ -0,0 +1,91 @@
+package org.coreasm.engine.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Properties;
+
+import org.coreasm.engine.Engine;
+import org.coreasm.engine.EngineProperties;
+import org.coreasm.util.Tools;
+
+/**
+ * Compares the normal interpreter with the
+ * {@link EngineProperties#FAST_INTERPRETER_MODE} on a specification that
+ * calls rules and derived functions with arguments, branches on conditions
+ * and quantifies over sets. For every mode, it measures the time needed to
+ * run a number of steps, using the best of a few rounds.
+ * <p>
+ * This is not a unit test; run it with <code>main</code>.
+ */
+public class InterpreterBenchmark {
+
+	private static final int STEPS = 20;
+	private static final int ROUNDS = 5;
+
+	private static final String SPECIFICATION =
+			"CoreASM InterpreterBenchmark\n" +
+			"use Standard\n" +
+			"init Start\n" +
+			"derived fib(n) = if n < 2 then n else fib(n - 1) + fib(n - 2)\n" +
+			"derived isEven(n) = (n % 2 = 0)\n" +
+			"function counter : NUMBER -> NUMBER\n" +
+			"rule Count(i, n) =\n" +
+			"	if isEven(i) then counter(i) := n + i\n" +
+			"	else counter(i) := n - i\n" +
+			"rule Start = {\n" +
+			"	forall i in [1..200] do Count(i, fib(12))\n" +
+			"	forall i in [1..50] do\n" +
+			"		if exists j in [1..100] with j * j = i then counter(i + 1000) := i\n" +
+			"		else if forall j in [1..40] holds j <= i then counter(i + 2000) := i\n" +
+			"}\n";
+
+	public static void main(String[] args) throws Exception {
+		File specification = File.createTempFile("InterpreterBenchmark", ".casm");
+		specification.deleteOnExit();
+		Writer writer = new FileWriter(specification);
+		try {
+			writer.write(SPECIFICATION);
+		} finally {
+			writer.close();
+		}
+		long normal = run(specification, false);
+		long fast = run(specification, true);
+		System.out.printf("%-6s mode: %8.2f ms per step%n", "normal", normal / 1e6 / STEPS);
+		System.out.printf("%-6s mode: %8.2f ms per step%n", "fast", fast / 1e6 / STEPS);
+		System.out.printf("speedup: %.2fx%n", (double)normal / fast);
+		System.exit(0);
+	}
+
+	/*
+	 * Runs the given specification in the given mode and returns the best
+	 * time of running STEPS steps in nanoseconds.
+	 */
+	private static long run(File specification, boolean fastMode) {
+		Properties properties = new Properties();
+		properties.setProperty(EngineProperties.FAST_INTERPRETER_MODE,
+				fastMode ? EngineProperties.YES : EngineProperties.NO);
+		long time = Long.MAX_VALUE;
+		// the first round warms up the JIT compiler
+		for (int round = 0; round <= ROUNDS; round++) {
+			TestEngineDriver td = TestEngineDriver.newLaunch(specification.getAbsolutePath(),
+					Tools.getRootFolder(Engine.class) + "/plugins", properties);
+			try {
+				td.setOutputStream(new PrintStream(new OutputStream() {
+					@Override
+					public void write(int b) {
+					}
+				}));
+				long start = System.nanoTime();
+				td.executeSteps(STEPS);
+				if (round > 0)
+					time = Math.min(time, System.nanoTime() - start);
+			} finally {
+				td.stop();
+			}
+		}
+		return time;
+	}
+}
@@ -0,0 +1,110 @@
+package org.coreasm.engine.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.coreasm.engine.ControlAPI;
+import org.coreasm.engine.CoreASMEngineFactory;
+import org.coreasm.engine.EngineProperties;
+import org.coreasm.engine.absstorage.AbstractStorage;
+import org.coreasm.engine.absstorage.Element;
+import org.coreasm.engine.absstorage.ElementList;
+import org.coreasm.engine.absstorage.InvalidLocationException;
+import org.coreasm.engine.absstorage.Location;
+import org.coreasm.engine.absstorage.Update;
+import org.coreasm.engine.plugins.number.NumberElement;
+
+/**
+ * Compares the {@link org.coreasm.engine.absstorage.HashStorage} with the
+ * {@link org.coreasm.engine.absstorage.ConcurrentStorage} at 1, 4 and 16 threads.
+ * For every storage and number of threads, it measures the time needed to fire
+ * an update set and the throughput of reading the state from all threads.
+ * <p>
+ * This is not a unit test; run it with <code>main</code>.
+ */
+public class StorageBenchmark {
+
+	private static final int FUNCTIONS = 16;
+	private static final int LOCATIONS_PER_FUNCTION = 8192;
+	private static final int READS_PER_THREAD = 2000000;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		for (String storage : new String[] { EngineProperties.HASH_STORAGE, EngineProperties.CONCURRENT_STORAGE })
+			for (int threads : new int[] { 1, 4, 16 })
+				run(storage, threads);
+		System.exit(0);
+	}
+
+	private static void run(String storageName, int threads) throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty(EngineProperties.STORAGE_PROPERTY, storageName);
+		properties.setProperty(EngineProperties.MAX_PROCESSORS, String.valueOf(threads));
+		ControlAPI engine = (ControlAPI)CoreASMEngineFactory.createEngine(properties);
+		try {
+			AbstractStorage storage = engine.getStorage();
+			List<Location> locations = new ArrayList<Location>();
+			Set<Update> updates = new HashSet<Update>();
+			for (int f = 0; f < FUNCTIONS; f++)
+				for (int i = 0; i < LOCATIONS_PER_FUNCTION; i++) {
+					Location l = new Location("f" + f, ElementList.create(NumberElement.getInstance(i)));
+					locations.add(l);
+					updates.add(new Update(l, NumberElement.getInstance(i + 1), Update.UPDATE_ACTION, (Element)null, null));
+				}
+
+			long fireTime = Long.MAX_VALUE;
+			long readTime = Long.MAX_VALUE;
+			for (int round = 0; round < ROUNDS; round++) {
+				long start = System.nanoTime();
+				storage.fireUpdateSet(updates);
+				fireTime = Math.min(fireTime, System.nanoTime() - start);
+				readTime = Math.min(readTime, read(storage, locations, threads));
+			}
+
+			double reads = (double)READS_PER_THREAD * threads;
+			System.out.printf("%-10s %2d thread(s): fireUpdateSet %8.2f ms, %8.2f M reads/s%n",
+					storageName, threads, fireTime / 1e6, reads / readTime * 1e3);
+		} finally {
+			engine.terminate();
+		}
+	}
+
+	/*
+	 * Reads locations of the state from the given number of threads and
+	 * returns the elapsed time in nanoseconds.
+	 */
+	private static long read(final AbstractStorage storage, final List<Location> locations, int threads) throws InterruptedException {
+		final CountDownLatch ready = new CountDownLatch(threads);
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * 7919;
+			new Thread() {
+				@Override
+				public void run() {
+					ready.countDown();
+					try {
+						start.await();
+						int size = locations.size();
+						for (int i = 0; i < READS_PER_THREAD; i++)
+							storage.getValue(locations.get((offset + i) % size));
+					} catch (InterruptedException e) {
+					} catch (InvalidLocationException e) {
+						throw new RuntimeException(e);
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		ready.await();
+		long time = System.nanoTime();
+		start.countDown();
+		done.await();
+		return System.nanoTime() - time;
+	}
+}
@@ -3,6 +3,7 @@ package org.coreasm.engine.test;
 import java.io.PrintStream;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 
 import org.coreasm.engine.CoreASMEngine.EngineMode;
@@ -44,10 +45,10 @@ public class TestEngineDriver implements EngineStepObserver, EngineErrorObserver
 	private boolean stopOnEmptyActiveAgents;
 	private boolean stopOnFailedUpdates;
 
-	private TestEngineDriver(String pluginFolders) {
+	private TestEngineDriver(String pluginFolders, Properties properties) {
 		runningInstances.add(this);
 		CoreASMGlobal.setRootFolder(Tools.getRootFolder());
-		engine = (Engine) org.coreasm.engine.CoreASMEngineFactory.createEngine();
+		engine = (Engine) org.coreasm.engine.CoreASMEngineFactory.createEngine(properties);
 		engine.addObserver(this);
 
 		if (System.getProperty(EngineProperties.PLUGIN_FOLDERS_PROPERTY) != null)
@@ -90,7 +91,11 @@ public class TestEngineDriver implements EngineStepObserver, EngineErrorObserver
 	}
 
 	public static TestEngineDriver newLaunch(String abspathname, String pluginFolders) {
-		TestEngineDriver td = new TestEngineDriver(pluginFolders);
+		return newLaunch(abspathname, pluginFolders, null);
+	}
+
+	public static TestEngineDriver newLaunch(String abspathname, String pluginFolders, Properties properties) {
+		TestEngineDriver td = new TestEngineDriver(pluginFolders, properties);
 		td.setDefaultConfig();
 		td.dolaunch(abspathname);
 		return td;
@@ -0,0 +1,154 @@
+package org.coreasm.engine.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.coreasm.engine.Engine;
+import org.coreasm.engine.EngineProperties;
+import org.coreasm.util.Tools;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Runs every test specification with and without
+ * {@link EngineProperties#FAST_INTERPRETER_MODE} and checks that both runs
+ * produce the same output. The names of new elements, which depend on the
+ * elements created before, are numbered by their first occurrence, and the
+ * lines are compared regardless of their order, as the order of the
+ * elements of a printed set may depend on their hash codes.
+ * Specifications whose output differs between two runs in normal mode are
+ * skipped; e.g., because they print the time, or because they choose
+ * elements at random.
+ */
+public class TestFastMode {
+
+	private static final String RANDOM_SEED = "20150401";
+	private static final String OTHER_RANDOM_SEED = "20150402";
+
+	private static final Pattern ELEMENT_NAME = Pattern.compile("Element\\d+");
+
+	protected static List<File> testFiles = null;
+
+	@BeforeClass
+	public static void onlyOnce() {
+		URL url = TestFastMode.class.getClassLoader().getResource(".");
+
+		try {
+			testFiles = new LinkedList<File>();
+			TestAllCasm.getTestFiles(testFiles, new File(url.toURI()));
+		}
+		catch (URISyntaxException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private final ByteArrayOutputStream logContent = new ByteArrayOutputStream();
+	private final ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+
+	@Before
+	public void setUpStreams() {
+		System.setOut(new PrintStream(logContent));
+		System.setErr(new PrintStream(errContent));
+	}
+
+	@After
+	public void cleanUpStreams() {
+		System.setOut(TestAllCasm.origOutput);
+		System.setErr(TestAllCasm.origError);
+	}
+
+	@Test
+	public void performTest() {
+		Assert.assertFalse("no test file found!", testFiles.isEmpty());
+		List<String> failures = new LinkedList<String>();
+		int skipped = 0;
+		for (File testFile : testFiles) {
+			int steps = Math.max(1, Math.max(TestAllCasm.getParameter(testFile, "minsteps"),
+					TestAllCasm.getParameter(testFile, "maxsteps")));
+			String normal = runSpecification(testFile, steps, RANDOM_SEED, false);
+			if (!normal.equals(runSpecification(testFile, steps, OTHER_RANDOM_SEED, false))) {
+				skipped++;
+				continue;
+			}
+			String fast = runSpecification(testFile, steps, RANDOM_SEED, true);
+			if (!normal.equals(fast))
+				failures.add(testFile.getName() + "\nnormal mode:\n" + normal + "\nfast mode:\n" + fast);
+		}
+		if (!failures.isEmpty()) {
+			for (String failure : failures)
+				TestAllCasm.origError.println("[!] Different output in fast mode for " + failure);
+			Assert.fail("Fast mode changed the output of " + failures.size() + " specification(s)");
+		}
+		Assert.assertTrue("all test files were skipped!", skipped < testFiles.size());
+	}
+
+	/*
+	 * Runs the given specification for the given number of steps and
+	 * returns its output, followed by the errors reported by the engine.
+	 */
+	private String runSpecification(File testFile, int steps, String seed, boolean fastMode) {
+		Properties properties = new Properties();
+		properties.setProperty(EngineProperties.RANDOM_SEED, seed);
+		properties.setProperty(EngineProperties.FAST_INTERPRETER_MODE,
+				fastMode ? EngineProperties.YES : EngineProperties.NO);
+
+		ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+		errContent.reset();
+		TestEngineDriver td = TestEngineDriver.newLaunch(testFile.getAbsolutePath(),
+				Tools.getRootFolder(Engine.class) + "/plugins", properties);
+		try {
+			td.setOutputStream(new PrintStream(outContent));
+			td.executeSteps(steps);
+		}
+		finally {
+			td.stop();
+		}
+		return sortLines(renameElements(outContent.toString() + errContent.toString()));
+	}
+
+	/*
+	 * Sorts the lines of the given output.
+	 */
+	private static String sortLines(String output) {
+		String[] lines = output.split("\r?\n");
+		Arrays.sort(lines);
+		StringBuilder result = new StringBuilder();
+		for (String line : lines)
+			result.append(line).append('\n');
+		return result.toString();
+	}
+
+	/*
+	 * Replaces the names of elements by their number of first occurrence.
+	 */
+	private static String renameElements(String output) {
+		Map<String, String> names = new HashMap<String, String>();
+		Matcher matcher = ELEMENT_NAME.matcher(output);
+		StringBuffer result = new StringBuffer();
+		while (matcher.find()) {
+			String name = names.get(matcher.group());
+			if (name == null) {
+				name = "Element#" + names.size();
+				names.put(matcher.group(), name);
+			}
+			matcher.appendReplacement(result, name);
+		}
+		matcher.appendTail(result);
+		return result.toString();
+	}
+}
@@ -0,0 +1,112 @@
+package org.coreasm.engine.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import org.coreasm.compiler.CompilerOptions;
+import org.coreasm.compiler.CoreASMCompiler;
+import org.coreasm.compiler.exception.CompilerException;
+import org.coreasm.engine.CoreASMEngine;
+import org.coreasm.engine.CoreASMEngineFactory;
+import org.coreasm.engine.Engine;
+import org.coreasm.engine.EngineProperties;
+import org.coreasm.util.Tools;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Compiles a specification in memory and loads the compiled classes.
+ * The compiler copies its runtime from the engine jar, so the test is
+ * skipped if the jar has not been packaged yet.
+ */
+public class TestInMemoryCompiler {
+
+	private static final String SPECIFICATION =
+			"CoreASM InMemory\n\n"
+			+ "use Standard\n\n"
+			+ "init I\n\n"
+			+ "rule I = print \"compiled\"\n";
+
+	private CoreASMEngine engine;
+	private File specification;
+
+	@Before
+	public void setUp() throws IOException {
+		engine = (Engine) CoreASMEngineFactory.createEngine();
+		engine.setClassLoader(CoreASMEngineFactory.class.getClassLoader());
+		engine.setProperty(EngineProperties.PLUGIN_FOLDERS_PROPERTY, Tools.getRootFolder(Engine.class) + "/plugins");
+		engine.initialize();
+		engine.waitWhileBusy();
+
+		specification = File.createTempFile("InMemory", ".casm");
+		FileWriter writer = new FileWriter(specification);
+		try {
+			writer.write(SPECIFICATION);
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		engine.terminate();
+		specification.delete();
+	}
+
+	@Test
+	public void testLoadMainClass() throws Exception {
+		File enginePath = findEngineJar();
+		Assume.assumeTrue(enginePath != null);
+
+		CompilerOptions options = new CompilerOptions();
+		options.enginePath = enginePath;
+		options.SpecificationName = specification;
+		options.terminateOnStepCount = 1;
+		options.inMemory = true;
+		options.outputFile = null;
+		CoreASMCompiler compiler = new CoreASMCompiler(options, engine);
+		compiler.compile();
+		Assert.assertNotNull("no classes were compiled", compiler.getCompiledClasses());
+
+		ClassLoader loader = compiler.getCompiledClasses().createClassLoader(getClass().getClassLoader());
+		Class<?> main = loader.loadClass("Main");
+		Assert.assertSame(loader, main.getClassLoader());
+		Method method = main.getMethod("main", String[].class);
+		Assert.assertEquals(void.class, method.getReturnType());
+
+		//a failed compilation must not leave the classes of the previous one behind
+		options.SpecificationName = new File(specification.getPath() + ".missing");
+		try {
+			compiler.compile();
+			Assert.fail("compiled a missing specification");
+		}
+		catch (CompilerException e) {
+		}
+		Assert.assertNull(compiler.getCompiledClasses());
+	}
+
+	/*
+	 * Returns the packaged engine jar next to the engine classes, or null.
+	 */
+	static File findEngineJar() {
+		File folder = new File(Tools.getRootFolder(Engine.class)).getParentFile();
+		File[] files = (folder == null) ? null : folder.listFiles();
+		if (files == null)
+			return null;
+		for (File file : files) {
+			String name = file.getName();
+			if (name.startsWith("org.coreasm.engine-") && name.endsWith(".jar")
+					&& !name.endsWith("-tests.jar") && !name.endsWith("-sources.jar")
+					&& !name.equals("org.coreasm.engine-library.jar"))
+				return file;
+		}
+		return null;
+	}
+}
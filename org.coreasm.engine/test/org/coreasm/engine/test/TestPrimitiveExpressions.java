@@ -0,0 +1,170 @@
+package org.coreasm.engine.test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.coreasm.compiler.CompilerOptions;
+import org.coreasm.compiler.CoreASMCompiler;
+import org.coreasm.engine.CoreASMEngine;
+import org.coreasm.engine.CoreASMEngineFactory;
+import org.coreasm.engine.Engine;
+import org.coreasm.engine.EngineProperties;
+import org.coreasm.util.Tools;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Compiles arithmetic with number, string and undef operands in memory and
+ * checks that the compiled program prints the same values as the interpreter.
+ * Number operands are computed on doubles by the code of the
+ * PrimitiveExpressionCompiler; string and undef operands fail its guard and
+ * take the fallback to the operators on elements. The compiled program exits
+ * the JVM when it terminates, so it is run in a separate process.
+ */
+public class TestPrimitiveExpressions {
+
+	private static final String SPECIFICATION =
+			"CoreASM PrimitiveExpressions\n\n"
+			+ "use Standard\n\n"
+			+ "init I\n\n"
+			+ "function x : -> NUMBER\n"
+			+ "function y : -> NUMBER\n"
+			+ "function s : -> STRING\n"
+			+ "function u : -> NUMBER\n\n"
+			+ "rule I = par\n"
+			+ "\tx := 0\n"
+			+ "\ts := \"a\"\n"
+			+ "\tprogram(self) := @R\n"
+			+ "endpar\n\n"
+			+ "rule R = par\n"
+			+ "\tx := x + 1\n"
+			+ "\ty := (x * 2 + 3) * (x - 1) - x div 3 + 2 ^ 2\n"
+			// number operands, including y, which is undef in the first step
+			+ "\tprint \"x=\" + x + \" y=\" + y + \" z=\" + (y + x * 2) + \" c=\" + (x * 2 < 7)"
+			+ " + \" n=\" + -(x * 2) + \" q=\" + ((x + 1) % 3)\n"
+			// operands which are not numbers
+			+ "\t\t+ \" s=\" + (s + x * 2) + \" t=\" + (x * 2 + s) + \" u=\" + (u + x * 2)"
+			+ " + \" v=\" + (undef + 1 * 2) + \" w=\" + (\"b\" + 3 * 2)\n"
+			+ "\tif x >= 3 then program(self) := undef\n"
+			+ "endpar\n";
+
+	private static final List<String> EXPECTED = Arrays.asList(
+			"x=0 y=undef z=undef c=true n=0 q=1 s=a0 t=0a u=undef v=undef w=b6",
+			"x=1 y=1 z=3 c=true n=-2 q=2 s=a2 t=2a u=undef v=undef w=b6",
+			"x=2 y=4 z=8 c=true n=-4 q=0 s=a4 t=4a u=undef v=undef w=b6",
+			"x=3 y=11 z=17 c=true n=-6 q=1 s=a6 t=6a u=undef v=undef w=b6");
+
+	private static final int STEPS = 6;
+
+	private CoreASMEngine engine;
+	private File specification;
+	private File jar;
+
+	@Before
+	public void setUp() throws IOException {
+		engine = (Engine) CoreASMEngineFactory.createEngine();
+		engine.setClassLoader(CoreASMEngineFactory.class.getClassLoader());
+		engine.setProperty(EngineProperties.PLUGIN_FOLDERS_PROPERTY, Tools.getRootFolder(Engine.class) + "/plugins");
+		engine.initialize();
+		engine.waitWhileBusy();
+
+		specification = File.createTempFile("PrimitiveExpressions", ".casm");
+		FileWriter writer = new FileWriter(specification);
+		try {
+			writer.write(SPECIFICATION);
+		}
+		finally {
+			writer.close();
+		}
+		jar = File.createTempFile("PrimitiveExpressions", ".jar");
+	}
+
+	@After
+	public void tearDown() {
+		engine.terminate();
+		specification.delete();
+		jar.delete();
+	}
+
+	@Test
+	public void testInterpretedValues() {
+		Assert.assertEquals(EXPECTED, interpret());
+	}
+
+	@Test
+	public void testCompiledValues() throws Exception {
+		File enginePath = TestInMemoryCompiler.findEngineJar();
+		Assume.assumeTrue(enginePath != null);
+
+		CompilerOptions options = new CompilerOptions();
+		options.enginePath = enginePath;
+		options.SpecificationName = specification;
+		options.terminateOnStepCount = STEPS;
+		options.inMemory = true;
+		options.outputFile = jar;
+		CoreASMCompiler compiler = new CoreASMCompiler(options, engine);
+		compiler.compile();
+		Assert.assertNotNull("no classes were compiled", compiler.getCompiledClasses());
+
+		Assert.assertEquals(EXPECTED, run(jar));
+	}
+
+	/*
+	 * Runs the specification in the interpreter and returns the printed values.
+	 */
+	private List<String> interpret() {
+		ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+		TestEngineDriver td = TestEngineDriver.newLaunch(specification.getAbsolutePath(),
+				Tools.getRootFolder(Engine.class) + "/plugins");
+		try {
+			td.setOutputStream(new PrintStream(outContent));
+			td.executeSteps(STEPS);
+		}
+		finally {
+			td.stop();
+		}
+		return values(outContent.toString().split("\n"));
+	}
+
+	/*
+	 * Runs the compiled program and returns the printed values.
+	 */
+	private static List<String> run(File jar) throws IOException, InterruptedException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-jar", jar.getAbsolutePath());
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null)
+				lines.add(line);
+		}
+		finally {
+			reader.close();
+		}
+		Assert.assertEquals("compiled program failed: " + lines, 0, process.waitFor());
+		return values(lines.toArray(new String[lines.size()]));
+	}
+
+	private static List<String> values(String[] lines) {
+		List<String> result = new ArrayList<String>();
+		for (String line : lines)
+			if (line.startsWith("x="))
+				result.add(line.trim());
+		return result;
+	}
+}
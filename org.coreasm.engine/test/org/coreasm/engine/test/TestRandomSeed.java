@@ -0,0 +1,109 @@
+package org.coreasm.engine.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Properties;
+
+import org.coreasm.engine.Engine;
+import org.coreasm.engine.EngineProperties;
+import org.coreasm.util.Tools;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Runs a specification whose agents choose and pick elements at random
+ * with the same {@link EngineProperties#RANDOM_SEED} on one and on four
+ * threads, and checks that both runs produce the same output.
+ */
+public class TestRandomSeed {
+
+	private static final String SPECIFICATION = "plugin-tests/chooserule/ChooseSeed1.casm";
+	private static final String RANDOM_SEED = "20150401";
+	private static final String OTHER_RANDOM_SEED = "20150402";
+	private static final int STEPS = 4;
+
+	private static File testFile = null;
+
+	@BeforeClass
+	public static void onlyOnce() {
+		URL url = TestRandomSeed.class.getClassLoader().getResource(SPECIFICATION);
+		try {
+			testFile = new File(url.toURI());
+		}
+		catch (URISyntaxException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private final ByteArrayOutputStream logContent = new ByteArrayOutputStream();
+	private final ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+
+	@Before
+	public void setUpStreams() {
+		System.setOut(new PrintStream(logContent));
+		System.setErr(new PrintStream(errContent));
+	}
+
+	@After
+	public void cleanUpStreams() {
+		System.setOut(TestAllCasm.origOutput);
+		System.setErr(TestAllCasm.origError);
+	}
+
+	@Test
+	public void testSameOutputOnAnyNumberOfThreads() {
+		String single = runSpecification(RANDOM_SEED, "1", null);
+		Assert.assertTrue("no output: " + single, single.contains("results"));
+		Assert.assertEquals(single, runSpecification(RANDOM_SEED, "4", null));
+		Assert.assertEquals(single, runSpecification(RANDOM_SEED, "4", EngineProperties.CONCURRENT_STORAGE));
+		// the output does depend on the seed
+		Assert.assertFalse(single.equals(runSpecification(OTHER_RANDOM_SEED, "1", null)));
+	}
+
+	@Test
+	public void testSameOutputOfParallelForallOnAnyNumberOfThreads() {
+		Properties parallel = new Properties();
+		parallel.setProperty("ForallRule.ParallelThreshold", "10");
+		String single = runSpecification(RANDOM_SEED, "1", null, parallel);
+		Assert.assertEquals(single, runSpecification(RANDOM_SEED, "4", null, parallel));
+		Assert.assertEquals(single, runSpecification(RANDOM_SEED, "4", EngineProperties.CONCURRENT_STORAGE, parallel));
+	}
+
+	private String runSpecification(String seed, String maxProcessors, String storage) {
+		return runSpecification(seed, maxProcessors, storage, new Properties());
+	}
+
+	/*
+	 * Runs the specification with the given seed, number of threads and
+	 * storage (or the default storage if null) and returns its output,
+	 * followed by the errors reported by the engine.
+	 */
+	private String runSpecification(String seed, String maxProcessors, String storage, Properties options) {
+		Properties properties = new Properties();
+		properties.putAll(options);
+		properties.setProperty(EngineProperties.RANDOM_SEED, seed);
+		properties.setProperty(EngineProperties.MAX_PROCESSORS, maxProcessors);
+		if (storage != null)
+			properties.setProperty(EngineProperties.STORAGE_PROPERTY, storage);
+
+		ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+		errContent.reset();
+		TestEngineDriver td = TestEngineDriver.newLaunch(testFile.getAbsolutePath(),
+				Tools.getRootFolder(Engine.class) + "/plugins", properties);
+		try {
+			td.setOutputStream(new PrintStream(outContent));
+			td.executeSteps(STEPS);
+		}
+		finally {
+			td.stop();
+		}
+		return outContent.toString() + errContent.toString();
+	}
+}
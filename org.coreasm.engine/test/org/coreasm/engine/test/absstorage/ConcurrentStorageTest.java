@@ -0,0 +1,229 @@
+package org.coreasm.engine.test.absstorage;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.coreasm.engine.ControlAPI;
+import org.coreasm.engine.CoreASMEngineFactory;
+import org.coreasm.engine.EngineProperties;
+import org.coreasm.engine.absstorage.AbstractStorage;
+import org.coreasm.engine.absstorage.BooleanElement;
+import org.coreasm.engine.absstorage.ConcurrentStorage;
+import org.coreasm.engine.absstorage.Element;
+import org.coreasm.engine.absstorage.ElementList;
+import org.coreasm.engine.absstorage.FunctionElement;
+import org.coreasm.engine.absstorage.Location;
+import org.coreasm.engine.absstorage.MapFunction;
+import org.coreasm.engine.absstorage.Update;
+import org.coreasm.engine.absstorage.UniverseElement;
+import org.coreasm.engine.plugins.number.NumberElement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Reads and writes the state of a {@link ConcurrentStorage} from many threads.
+ */
+public class ConcurrentStorageTest {
+
+	private static final int THREADS = 8;
+	private static final int LOCATIONS_PER_THREAD = 4096;
+	private static final int FUNCTIONS = 8;
+
+	private ControlAPI engine;
+	private AbstractStorage storage;
+
+	@Before
+	public void setUp() {
+		Properties properties = new Properties();
+		properties.setProperty(EngineProperties.STORAGE_PROPERTY, EngineProperties.CONCURRENT_STORAGE);
+		properties.setProperty(EngineProperties.MAX_PROCESSORS, String.valueOf(THREADS));
+		engine = (ControlAPI)CoreASMEngineFactory.createEngine(properties);
+		storage = engine.getStorage();
+		assertTrue(storage instanceof ConcurrentStorage);
+	}
+
+	@After
+	public void tearDown() {
+		engine.terminate();
+	}
+
+	/**
+	 * Functions and universes provided by plugins are written and read by
+	 * all threads at the same time.
+	 */
+	@Test
+	public void testPluginFunctionsAndUniverses() throws Exception {
+		final MapFunction function = new MapFunction();
+		final UniverseElement universe = new UniverseElement();
+		storage.addFunction("pluginFunction", function);
+		storage.addUniverse("PluginUniverse", universe);
+
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int t = 0; t < THREADS; t++) {
+			final int first = t * LOCATIONS_PER_THREAD;
+			tasks.add(new Runnable() {
+				public void run() {
+					try {
+						for (int i = first; i < first + LOCATIONS_PER_THREAD; i++) {
+							Element e = NumberElement.getInstance(i);
+							function.setValue(ElementList.create(e), e);
+							universe.member(e, true);
+							assertEquals(e, function.getValue(ElementList.create(e)));
+							assertTrue(universe.contains(e));
+							if (i % 256 == 0) {
+								universe.enumerate().size();
+								function.getLocations("pluginFunction");
+							}
+						}
+					}
+					catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+		}
+		runAll(tasks);
+
+		assertEquals(THREADS * LOCATIONS_PER_THREAD, function.getLocations("pluginFunction").size());
+		assertEquals(THREADS * LOCATIONS_PER_THREAD, universe.size());
+		for (int i = 0; i < THREADS * LOCATIONS_PER_THREAD; i++) {
+			Element e = NumberElement.getInstance(i);
+			assertEquals(e, storage.getValue(new Location("pluginFunction", ElementList.create(e))));
+			assertEquals(BooleanElement.TRUE, storage.getValue(new Location("PluginUniverse", ElementList.create(e))));
+		}
+	}
+
+	/**
+	 * A large update set is applied in parallel while other threads read
+	 * the functions it updates.
+	 */
+	@Test
+	public void testFireUpdateSetWhileReading() throws Exception {
+		storage.addFunction("pluginFunction", new MapFunction());
+		final List<String> names = new ArrayList<String>();
+		names.add("pluginFunction");
+		for (int f = 1; f < FUNCTIONS; f++)
+			names.add("f" + f);
+
+		final int size = ConcurrentStorage.PARALLEL_UPDATE_THRESHOLD;
+		final Set<Update> updates = new HashSet<Update>();
+		for (String name : names)
+			for (int i = 0; i < size; i++)
+				updates.add(new Update(new Location(name, ElementList.create(NumberElement.getInstance(i))),
+						NumberElement.getInstance(i + 1), Update.UPDATE_ACTION, (Element)null, null));
+
+		final CountDownLatch fired = new CountDownLatch(1);
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		tasks.add(new Runnable() {
+			public void run() {
+				try {
+					storage.fireUpdateSet(updates);
+				}
+				catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+				finally {
+					fired.countDown();
+				}
+			}
+		});
+		for (int t = 1; t < THREADS; t++) {
+			final String name = names.get(t % names.size());
+			tasks.add(new Runnable() {
+				public void run() {
+					try {
+						while (fired.getCount() > 0)
+							for (int i = 0; i < size; i++) {
+								Element value = storage.getValue(new Location(name, ElementList.create(NumberElement.getInstance(i))));
+								assertTrue(value.equals(Element.UNDEF) || value.equals(NumberElement.getInstance(i + 1)));
+							}
+					}
+					catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+		}
+		runAll(tasks);
+
+		for (String name : names)
+			for (int i = 0; i < size; i++)
+				assertEquals(NumberElement.getInstance(i + 1),
+						storage.getValue(new Location(name, ElementList.create(NumberElement.getInstance(i)))));
+	}
+
+	/**
+	 * The value of a monitored location is computed from the value of the
+	 * same location; the inner read must not wait for the outer one.
+	 */
+	@Test(timeout = 10000)
+	public void testMonitoredReadOfItself() throws Exception {
+		final Location location = new Location("monitored", ElementList.create(NumberElement.getInstance(1)));
+		final int[] reads = new int[1];
+		MapFunction function = new MapFunction() {
+			@Override
+			public Element getValue(List<? extends Element> args) {
+				reads[0]++;
+				if (reads[0] > 1)
+					return NumberElement.getInstance(1);
+				try {
+					return NumberElement.getInstance(((NumberElement)storage.getValue(location)).getValue() + 1);
+				}
+				catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		function.setFClass(FunctionElement.FunctionClass.fcMonitored);
+		storage.addFunction("monitored", function);
+
+		assertEquals(NumberElement.getInstance(2), storage.getValue(location));
+		// the value is read once per step
+		assertEquals(NumberElement.getInstance(2), storage.getValue(location));
+		assertEquals(2, reads[0]);
+	}
+
+	/*
+	 * Starts the given tasks at the same time, each on its own thread,
+	 * and rethrows the first failure of a task.
+	 */
+	private static void runAll(List<Runnable> tasks) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		final Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (final Runnable task : tasks) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						task.run();
+					}
+					catch (Throwable e) {
+						failures.add(e);
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		if (!failures.isEmpty()) {
+			Throwable failure = failures.peek();
+			if (failure instanceof Error)
+				throw (Error)failure;
+			throw new Exception(failure);
+		}
+	}
+}
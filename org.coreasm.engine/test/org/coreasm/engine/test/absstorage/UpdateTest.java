@@ -0,0 +1,90 @@
+package org.coreasm.engine.test.absstorage;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.coreasm.engine.absstorage.Element;
+import org.coreasm.engine.absstorage.ElementList;
+import org.coreasm.engine.absstorage.Location;
+import org.coreasm.engine.absstorage.Update;
+import org.coreasm.engine.interpreter.ScannerInfo;
+import org.coreasm.engine.plugins.number.NumberElement;
+import org.junit.Test;
+
+/**
+ * Compares the agents and sources of lean and eagerly aggregated {@link Update}s.
+ */
+public class UpdateTest {
+
+	private static final Location LOCATION = new Location("f", ElementList.NO_ARGUMENT);
+	private static final int DEPTH = 100000;
+
+	@Test
+	public void testSingleAgentAndSource() {
+		Element agent = new Element();
+		ScannerInfo source = new ScannerInfo(7);
+		Update update = new Update(LOCATION, NumberElement.getInstance(1), Update.UPDATE_ACTION, agent, source);
+		assertEquals(Collections.singleton(agent), update.getAgents());
+		assertEquals(Collections.singleton(source), update.getSources());
+
+		Update unknown = new Update(LOCATION, NumberElement.getInstance(1), Update.UPDATE_ACTION, (Element)null, null);
+		assertTrue(unknown.getAgents().isEmpty());
+		assertTrue(unknown.getSources().isEmpty());
+	}
+
+	@Test
+	public void testLeanAndEagerAggregation() {
+		List<Element> agents = Arrays.asList(new Element(), new Element(), new Element());
+		List<Update> updates = new ArrayList<Update>();
+		for (int i = 0; i < 6; i++)
+			updates.add(new Update(LOCATION, NumberElement.getInstance(i), Update.UPDATE_ACTION,
+					agents.get(i % agents.size()), new ScannerInfo(i)));
+		// an aggregated update can contribute to another aggregation
+		updates.add(Update.aggregate(LOCATION, NumberElement.getInstance(6), Update.UPDATE_ACTION,
+				Arrays.asList(updates.get(0), new Update(LOCATION, NumberElement.getInstance(6),
+						Update.UPDATE_ACTION, new Element(), new ScannerInfo(6))), true));
+
+		Update lean = Update.aggregate(LOCATION, NumberElement.getInstance(0), Update.UPDATE_ACTION, updates, true);
+		Update eager = Update.aggregate(LOCATION, NumberElement.getInstance(0), Update.UPDATE_ACTION, updates, false);
+		assertEquals(eager, lean);
+		assertEquals(4, eager.getAgents().size());
+		assertEquals(7, eager.getSources().size());
+		assertEquals(eager.getAgents(), lean.getAgents());
+		assertEquals(eager.getSources(), lean.getSources());
+		assertTrue(eager.getAgents().containsAll(agents));
+
+		// the contributing updates may change afterwards without changing the aggregation
+		Set<Element> before = new HashSet<Element>(lean.getAgents());
+		updates.clear();
+		assertEquals(before, lean.getAgents());
+	}
+
+	/**
+	 * The results of a loop or a long sequence nest as deep as its steps.
+	 */
+	@Test
+	public void testDeeplyNestedLeanUpdates() {
+		Element first = new Element();
+		Element second = new Element();
+		Update update = new Update(LOCATION, NumberElement.getInstance(0), Update.UPDATE_ACTION, first, new ScannerInfo(0));
+		Update step = new Update(LOCATION, NumberElement.getInstance(1), Update.UPDATE_ACTION, second, new ScannerInfo(1));
+		for (int i = 0; i < DEPTH; i++)
+			update = Update.aggregate(LOCATION, NumberElement.getInstance(i), Update.UPDATE_ACTION, Arrays.asList(update, step, update), true);
+		assertEquals(new HashSet<Element>(Arrays.asList(first, second)), update.getAgents());
+		assertEquals(2, update.getSources().size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testUnmodifiableAgents() {
+		Update u1 = new Update(LOCATION, NumberElement.getInstance(1), Update.UPDATE_ACTION, new Element(), new ScannerInfo(1));
+		Update u2 = new Update(LOCATION, NumberElement.getInstance(2), Update.UPDATE_ACTION, new Element(), new ScannerInfo(2));
+		Update.aggregate(LOCATION, NumberElement.getInstance(3), Update.UPDATE_ACTION, Arrays.asList(u1, u2), true)
+				.getAgents().add(new Element());
+	}
+}
@@ -0,0 +1,39 @@
+package org.coreasm.engine.test.plugins.forallrule;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.LinkedList;
+import java.util.Properties;
+
+import org.junit.BeforeClass;
+import org.coreasm.engine.EngineProperties;
+import org.coreasm.engine.test.TestAllCasm;
+
+/**
+ * Runs forall rules whose domains are larger than the parallel threshold
+ * on four threads.
+ */
+public class ParallelForall extends TestAllCasm {
+
+	@BeforeClass
+	public static void onlyOnce() {
+		URL url = ParallelForall.class.getClassLoader().getResource(".");
+
+		try {
+			testFiles = new LinkedList<File>();
+			getTestFile(testFiles, new File(url.toURI()).getParentFile(), ParallelForall.class);
+		}
+		catch (URISyntaxException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	protected Properties getProperties() {
+		Properties properties = new Properties();
+		properties.setProperty(EngineProperties.MAX_PROCESSORS, "4");
+		properties.setProperty("ForallRule.ParallelThreshold", "10");
+		return properties;
+	}
+}
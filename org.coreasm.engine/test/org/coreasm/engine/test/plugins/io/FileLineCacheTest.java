@@ -0,0 +1,102 @@
+package org.coreasm.engine.test.plugins.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import org.coreasm.engine.plugins.io.FileLineCache;
+import org.coreasm.engine.plugins.list.ListElement;
+import org.coreasm.engine.plugins.string.StringElement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks when {@link FileLineCache} reads a file again.
+ */
+public class FileLineCacheTest {
+
+	/* a time of last modification well outside the racy interval */
+	private static final FileTime OLD = FileTime.fromMillis(System.currentTimeMillis() - 60 * 1000);
+
+	private Path directory;
+	private FileLineCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("FileLineCacheTest");
+		cache = new FileLineCache();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (File file : directory.toFile().listFiles())
+			Files.delete(file.toPath());
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testUnchangedFile() throws IOException {
+		Path file = write("a.txt", "one\ntwo\r\nthree", OLD);
+		ListElement lines = cache.read(file.toString());
+		assertEquals(new ListElement(new StringElement("one"), new StringElement("two"), new StringElement("three")), lines);
+		assertSame(lines, cache.read(file.toString()));
+	}
+
+	@Test
+	public void testModifiedFile() throws IOException {
+		Path file = write("a.txt", "one", OLD);
+		cache.read(file.toString());
+		write("a.txt", "one\ntwo", OLD);
+		assertEquals(2, cache.read(file.toString()).size());
+		// same size
+		write("a.txt", "one\nsix", FileTime.fromMillis(OLD.toMillis() + 1000));
+		assertEquals(new StringElement("six"), cache.read(file.toString()).get(2));
+	}
+
+	@Test
+	public void testReplacedFile() throws IOException {
+		Path file = write("a.txt", "one", OLD);
+		cache.read(file.toString());
+		Path other = write("b.txt", "six", OLD);
+		Files.move(other, file, StandardCopyOption.REPLACE_EXISTING);
+		// same size and time of last modification
+		if (Files.readAttributes(file, BasicFileAttributes.class).fileKey() != null)
+			assertEquals(new ListElement(new StringElement("six")), cache.read(file.toString()));
+	}
+
+	@Test
+	public void testRecentlyModifiedFile() throws IOException {
+		FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+		Path file = write("a.txt", "one", now);
+		cache.read(file.toString());
+		// same size and time of last modification
+		write("a.txt", "six", now);
+		assertEquals(new ListElement(new StringElement("six")), cache.read(file.toString()));
+	}
+
+	@Test
+	public void testLeastRecentlyReadFilesAreForgotten() throws IOException {
+		Path first = write("0.txt", "0", OLD);
+		ListElement lines = cache.read(first.toString());
+		for (int i = 1; i <= FileLineCache.MAX_FILES; i++)
+			cache.read(write(i + ".txt", "" + i, OLD).toString());
+		assertNotSame(lines, cache.read(first.toString()));
+		assertEquals(lines, cache.read(first.toString()));
+	}
+
+	private Path write(String name, String text, FileTime modified) throws IOException {
+		Path file = directory.resolve(name);
+		Files.write(file, Arrays.asList(text.split("\n", -1)), Charset.defaultCharset());
+		Files.setLastModifiedTime(file, modified);
+		return file;
+	}
+}
@@ -0,0 +1,39 @@
+package org.coreasm.engine.test.plugins.predicatelogic;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.LinkedList;
+import java.util.Properties;
+
+import org.junit.BeforeClass;
+import org.coreasm.engine.EngineProperties;
+import org.coreasm.engine.test.TestAllCasm;
+
+/**
+ * Evaluates quantifiers whose domains are larger than the parallel
+ * threshold on four threads.
+ */
+public class ParallelPredicateLogic5_quantifiers extends TestAllCasm {
+
+	@BeforeClass
+	public static void onlyOnce() {
+		URL url = PredicateLogic5_quantifiers.class.getClassLoader().getResource(".");
+
+		try {
+			testFiles = new LinkedList<File>();
+			getTestFile(testFiles, new File(url.toURI()).getParentFile(), PredicateLogic5_quantifiers.class);
+		}
+		catch (URISyntaxException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	protected Properties getProperties() {
+		Properties properties = new Properties();
+		properties.setProperty(EngineProperties.MAX_PROCESSORS, "4");
+		properties.setProperty("PredicateLogic.ParallelThreshold", "10");
+		return properties;
+	}
+}
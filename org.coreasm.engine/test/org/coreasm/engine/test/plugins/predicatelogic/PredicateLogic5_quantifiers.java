@@ -0,0 +1,25 @@
+package org.coreasm.engine.test.plugins.predicatelogic;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.LinkedList;
+
+import org.junit.BeforeClass;
+import org.coreasm.engine.test.TestAllCasm;
+
+public class PredicateLogic5_quantifiers extends TestAllCasm {
+
+	@BeforeClass
+	public static void onlyOnce() {
+		URL url = PredicateLogic5_quantifiers.class.getClassLoader().getResource(".");
+
+		try {
+			testFiles = new LinkedList<File>();
+			getTestFile(testFiles, new File(url.toURI()).getParentFile(), PredicateLogic5_quantifiers.class);
+		}
+		catch (URISyntaxException e) {
+			e.printStackTrace();
+		}
+	}
+}
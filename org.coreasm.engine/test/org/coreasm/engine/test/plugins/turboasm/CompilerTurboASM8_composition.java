@@ -0,0 +1,25 @@
+package org.coreasm.engine.test.plugins.turboasm;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.LinkedList;
+
+import org.junit.BeforeClass;
+import org.coreasm.engine.test.TestAllCCasm;
+
+public class CompilerTurboASM8_composition extends TestAllCCasm {
+
+	@BeforeClass
+	public static void onlyOnce() {
+		URL url = TurboASM8_composition.class.getClassLoader().getResource(".");
+
+		try {
+			testFiles = new LinkedList<File>();
+			getTestFile(testFiles, new File(url.toURI()).getParentFile(), TurboASM8_composition.class);
+		}
+		catch (URISyntaxException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -46,6 +46,18 @@ public abstract class AbstractMultiset<E> implements Multiset<E> {
 		map = createMap();
 	}
 	
+	/**
+	 * Creates a new abstract multiset with room for 
+	 * <code>initialCapacity</code> distinct elements. This constructor
+	 * calls the <code>createMap(int)</code> method to create
+	 * a custom map as its sole data structure. 
+	 * 
+	 * @see AbstractMultiset#createMap(int)
+	 */
+	public AbstractMultiset(int initialCapacity) {
+		map = createMap(initialCapacity);
+	}
+	
 	/**
 	 * Creates a new abstract multiset and adds the
 	 * given elements to it. This constructor
@@ -186,20 +198,22 @@ public abstract class AbstractMultiset<E> implements Multiset<E> {
 	 * @see java.util.Collection#addAll(java.util.Collection)
 	 */
 	public boolean addAll(Collection<? extends E> c) {
-		int size = this.size();
+		// adding an element always changes a multiset; 
+		// size() is not used here as it takes linear time
+		boolean changed = false;
 		for (E e: c) 
-			this.add(e);
-		return size != this.size();
+			changed |= this.add(e);
+		return changed;
 	}
 
 	/* (non-Javadoc)
 	 * @see java.util.Collection#removeAll(java.util.Collection)
 	 */
 	public boolean removeAll(Collection<?> c) {
-		int size = this.size();
+		boolean changed = false;
 		for (Object o: c) 
-			this.remove(o);
-		return size != this.size();
+			changed |= this.remove(o);
+		return changed;
 	}
 
 	/* (non-Javadoc)
@@ -248,6 +262,15 @@ public abstract class AbstractMultiset<E> implements Multiset<E> {
 	 */
 	protected abstract Map<E,Integer> createMap();
 	
+	/**
+	 * Returns a sub-instance of <code>Map&lt;E,Integer&gt;</code> with room
+	 * for <code>initialCapacity</code> distinct elements. The default 
+	 * implementation ignores the capacity and calls <code>createMap()</code>.
+	 */
+	protected Map<E,Integer> createMap(int initialCapacity) {
+		return createMap();
+	}
+	
 	private class Itr implements Iterator<E> {
 
 		//Iterator<E> baseItr = null;
@@ -34,6 +34,14 @@ public class HashMultiset<E> extends AbstractMultiset<E> {
 		super();
 	}
 
+	/**
+	 * Creates an empty HashMultiset with room for 
+	 * <code>initialCapacity</code> distinct elements.
+	 */
+	public HashMultiset(int initialCapacity) {
+		super(initialCapacity);
+	}
+
 	/**
 	 * Creates a new <code>HashMultiset</code> and adds
 	 * the given elements to it.
@@ -62,6 +70,14 @@ public class HashMultiset<E> extends AbstractMultiset<E> {
 		return new HashMap<E,Integer>();
 	}
 
+	/* (non-Javadoc)
+	 * @see org.coreasm.util.AbstractMultiset#createMap(int)
+	 */
+	@Override
+	protected Map<E, Integer> createMap(int initialCapacity) {
+		return new HashMap<E,Integer>(Math.max(16, (int)(initialCapacity / 0.75f) + 1));
+	}
+
 	/* (non-Javadoc)
 	 * @see org.coreasm.util.AbstractMultiset#toSet()
 	 */
@@ -0,0 +1,569 @@
+/*
+ * PersistentHashMap.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable hash map based on a hash array mapped trie.
+ * <p>
+ * The map is never modified; {@link #plus(Object, Object)} and
+ * {@link #minus(Object)} return a new map that shares all but
+ * <i>O(log n)</i> of its nodes with this map. Every other method of
+ * {@link Map} that would modify the map throws an
+ * {@link UnsupportedOperationException}.
+ * <p>
+ * Hash codes are spread the same way as in {@link java.util.HashMap},
+ * so small maps enumerate keys with different hash buckets in the same
+ * order as a small <code>HashMap</code>.
+ *
+ * @see PersistentHashSet
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	private static final BitmapNode EMPTY_NODE = new BitmapNode(0, 0, new Object[0]);
+	private static final PersistentHashMap<Object, Object> EMPTY = new PersistentHashMap<Object, Object>(EMPTY_NODE, 0);
+
+	private final Node root;
+	private final int size;
+	private Set<Entry<K, V>> entrySet = null;
+
+	private PersistentHashMap(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the empty map.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K, V> PersistentHashMap<K, V> empty() {
+		return (PersistentHashMap<K, V>)EMPTY;
+	}
+
+	/**
+	 * Returns a map with the mappings of the given map. If the given
+	 * map is a <code>PersistentHashMap</code>, it is returned as is.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K, V> PersistentHashMap<K, V> from(Map<? extends K, ? extends V> map) {
+		if (map instanceof PersistentHashMap<?, ?>)
+			return (PersistentHashMap<K, V>)map;
+		PersistentHashMap<K, V> result = empty();
+		return result.plusAll(map);
+	}
+
+	/**
+	 * Returns a map with the mappings of this map and a mapping of
+	 * <code>key</code> to <code>value</code>.
+	 */
+	public PersistentHashMap<K, V> plus(K key, V value) {
+		final Change change = new Change();
+		final Node newRoot = root.put(key, value, hash(key), 0, change);
+		if (newRoot == root)
+			return this;
+		return new PersistentHashMap<K, V>(newRoot, change.sizeChanged ? size + 1 : size);
+	}
+
+	/**
+	 * Returns a map with the mappings of this map and of the given map.
+	 * The mappings of the given map take precedence.
+	 */
+	public PersistentHashMap<K, V> plusAll(Map<? extends K, ? extends V> map) {
+		if (map.isEmpty())
+			return this;
+		if (size == 0 && map instanceof PersistentHashMap<?, ?>)
+			return from(map);
+		final Change change = new Change();
+		Node newRoot = root;
+		int newSize = size;
+		for (Entry<? extends K, ? extends V> entry: map.entrySet()) {
+			change.sizeChanged = false;
+			newRoot = newRoot.put(entry.getKey(), entry.getValue(), hash(entry.getKey()), 0, change);
+			if (change.sizeChanged)
+				newSize++;
+		}
+		if (newRoot == root)
+			return this;
+		return new PersistentHashMap<K, V>(newRoot, newSize);
+	}
+
+	/**
+	 * Returns a map with the mappings of this map except the one of
+	 * the given key.
+	 */
+	public PersistentHashMap<K, V> minus(Object key) {
+		final Node newRoot = root.remove(key, hash(key), 0);
+		if (newRoot == root)
+			return this;
+		return new PersistentHashMap<K, V>(newRoot, size - 1);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		final Object result = root.find(key, hash(key), 0);
+		return (result == NOT_FOUND ? null : (V)result);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return root.find(key, hash(key), 0) != NOT_FOUND;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		if (entrySet == null)
+			entrySet = new AbstractSet<Entry<K, V>>() {
+
+				@Override
+				public Iterator<Entry<K, V>> iterator() {
+					return new NodeIterator<Entry<K, V>>(root) {
+						@Override
+						@SuppressWarnings("unchecked")
+						protected Entry<K, V> get(Node node, int index) {
+							return new SimpleImmutableEntry<K, V>((K)node.key(index), (V)node.value(index));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		return entrySet;
+	}
+
+	/*
+	 * Returns an iterator over the keys of this map.
+	 */
+	Iterator<K> keyIterator() {
+		return new NodeIterator<K>(root) {
+			@Override
+			@SuppressWarnings("unchecked")
+			protected K get(Node node, int index) {
+				return (K)node.key(index);
+			}
+		};
+	}
+
+	/*
+	 * Spreads the hash code of the given key as java.util.HashMap does.
+	 */
+	static int hash(Object key) {
+		if (key == null)
+			return 0;
+		final int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/*
+	 * Returns the position of the given hash code in a node at the given
+	 * shift. Positions are ordered by the lower four bits of the index
+	 * first, which is the order of the buckets of a small java.util.HashMap.
+	 */
+	private static int mask(int hash, int shift) {
+		final int index = (hash >>> shift) & MASK;
+		return ((index & 15) << 1) | (index >>> 4);
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return a == b || (a != null && a.equals(b));
+	}
+
+	/** Returned by find if there is no mapping for a key */
+	private static final Object NOT_FOUND = new Object();
+
+	/*
+	 * Records whether an insertion added a new key.
+	 */
+	private static final class Change {
+		boolean sizeChanged = false;
+	}
+
+	/*
+	 * A node of the trie. A node holds key-value pairs and sub-nodes.
+	 */
+	private static abstract class Node {
+
+		abstract Object find(Object key, int hash, int shift);
+
+		abstract Node put(Object key, Object value, int hash, int shift, Change change);
+
+		/* returns this node if the key is not in the subtree */
+		abstract Node remove(Object key, int hash, int shift);
+
+		abstract int dataCount();
+
+		abstract Object key(int index);
+
+		abstract Object value(int index);
+
+		abstract int nodeCount();
+	}
+
+	/*
+	 * A node with a bitmap of the positions that hold key-value pairs
+	 * and a bitmap of the positions that hold sub-nodes. The pairs are
+	 * stored first in the content array, followed by the sub-nodes.
+	 */
+	private static final class BitmapNode extends Node {
+		final int dataMap;
+		final int nodeMap;
+		final Object[] content;
+
+		BitmapNode(int dataMap, int nodeMap, Object[] content) {
+			this.dataMap = dataMap;
+			this.nodeMap = nodeMap;
+			this.content = content;
+		}
+
+		@Override
+		Object find(Object key, int hash, int shift) {
+			final int bit = 1 << mask(hash, shift);
+			if ((dataMap & bit) != 0) {
+				final int i = 2 * index(dataMap, bit);
+				return equal(key, content[i]) ? content[i + 1] : NOT_FOUND;
+			}
+			if ((nodeMap & bit) != 0)
+				return nodeAt(bit).find(key, hash, shift + BITS);
+			return NOT_FOUND;
+		}
+
+		@Override
+		Node put(Object key, Object value, int hash, int shift, Change change) {
+			final int bit = 1 << mask(hash, shift);
+			if ((dataMap & bit) != 0) {
+				final int i = 2 * index(dataMap, bit);
+				final Object otherKey = content[i];
+				if (equal(key, otherKey)) {
+					if (content[i + 1] == value)
+						return this;
+					final Object[] newContent = content.clone();
+					newContent[i + 1] = value;
+					return new BitmapNode(dataMap, nodeMap, newContent);
+				}
+				change.sizeChanged = true;
+				final Node subNode = merge(otherKey, content[i + 1], hash(otherKey), key, value, hash, shift + BITS);
+				return migrateToNode(bit, i, subNode);
+			}
+			if ((nodeMap & bit) != 0) {
+				final int i = nodeIndex(bit);
+				final Node subNode = (Node)content[i];
+				final Node newSubNode = subNode.put(key, value, hash, shift + BITS, change);
+				if (newSubNode == subNode)
+					return this;
+				final Object[] newContent = content.clone();
+				newContent[i] = newSubNode;
+				return new BitmapNode(dataMap, nodeMap, newContent);
+			}
+			change.sizeChanged = true;
+			final int i = 2 * index(dataMap, bit);
+			final Object[] newContent = new Object[content.length + 2];
+			System.arraycopy(content, 0, newContent, 0, i);
+			newContent[i] = key;
+			newContent[i + 1] = value;
+			System.arraycopy(content, i, newContent, i + 2, content.length - i);
+			return new BitmapNode(dataMap | bit, nodeMap, newContent);
+		}
+
+		@Override
+		Node remove(Object key, int hash, int shift) {
+			final int bit = 1 << mask(hash, shift);
+			if ((dataMap & bit) != 0) {
+				final int i = 2 * index(dataMap, bit);
+				if (!equal(key, content[i]))
+					return this;
+				final Object[] newContent = new Object[content.length - 2];
+				System.arraycopy(content, 0, newContent, 0, i);
+				System.arraycopy(content, i + 2, newContent, i, content.length - i - 2);
+				return new BitmapNode(dataMap ^ bit, nodeMap, newContent);
+			}
+			if ((nodeMap & bit) != 0) {
+				final int i = nodeIndex(bit);
+				final Node subNode = (Node)content[i];
+				final Node newSubNode = subNode.remove(key, hash, shift + BITS);
+				if (newSubNode == subNode)
+					return this;
+				if (newSubNode.nodeCount() == 0 && newSubNode.dataCount() == 1)
+					// a single pair is kept in this node
+					return migrateToData(bit, i, newSubNode.key(0), newSubNode.value(0));
+				final Object[] newContent = content.clone();
+				newContent[i] = newSubNode;
+				return new BitmapNode(dataMap, nodeMap, newContent);
+			}
+			return this;
+		}
+
+		/*
+		 * Replaces the pair at the given content index with the given node.
+		 */
+		private Node migrateToNode(int bit, int dataIndex, Node node) {
+			final int dataEnd = 2 * Integer.bitCount(dataMap);
+			final int nodeOffset = Integer.bitCount(nodeMap & (bit - 1));
+			final Object[] newContent = new Object[content.length - 1];
+			System.arraycopy(content, 0, newContent, 0, dataIndex);
+			System.arraycopy(content, dataIndex + 2, newContent, dataIndex, dataEnd - dataIndex - 2);
+			System.arraycopy(content, dataEnd, newContent, dataEnd - 2, nodeOffset);
+			newContent[dataEnd - 2 + nodeOffset] = node;
+			System.arraycopy(content, dataEnd + nodeOffset, newContent, dataEnd - 1 + nodeOffset,
+					content.length - dataEnd - nodeOffset);
+			return new BitmapNode(dataMap ^ bit, nodeMap | bit, newContent);
+		}
+
+		/*
+		 * Replaces the node at the given content index with the given pair.
+		 */
+		private Node migrateToData(int bit, int nodeIndex, Object key, Object value) {
+			final Object[] newContent = new Object[content.length + 1];
+			final int dataIndex = 2 * index(dataMap, bit);
+			System.arraycopy(content, 0, newContent, 0, dataIndex);
+			newContent[dataIndex] = key;
+			newContent[dataIndex + 1] = value;
+			System.arraycopy(content, dataIndex, newContent, dataIndex + 2, nodeIndex - dataIndex);
+			System.arraycopy(content, nodeIndex + 1, newContent, nodeIndex + 2, content.length - nodeIndex - 1);
+			return new BitmapNode(dataMap | bit, nodeMap ^ bit, newContent);
+		}
+
+		private Node nodeAt(int bit) {
+			return (Node)content[nodeIndex(bit)];
+		}
+
+		private int nodeIndex(int bit) {
+			return 2 * Integer.bitCount(dataMap) + index(nodeMap, bit);
+		}
+
+		private static int index(int map, int bit) {
+			return Integer.bitCount(map & (bit - 1));
+		}
+
+		@Override
+		int dataCount() {
+			return Integer.bitCount(dataMap);
+		}
+
+		@Override
+		Object key(int index) {
+			return content[2 * index];
+		}
+
+		@Override
+		Object value(int index) {
+			return content[2 * index + 1];
+		}
+
+		@Override
+		int nodeCount() {
+			return Integer.bitCount(nodeMap);
+		}
+	}
+
+	/*
+	 * Creates a node holding the two given pairs.
+	 */
+	private static Node merge(Object key1, Object value1, int hash1, Object key2, Object value2, int hash2, int shift) {
+		if (hash1 == hash2)
+			return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+		final int mask1 = mask(hash1, shift);
+		final int mask2 = mask(hash2, shift);
+		if (mask1 != mask2) {
+			final Object[] content = (mask1 < mask2
+					? new Object[] {key1, value1, key2, value2}
+					: new Object[] {key2, value2, key1, value1});
+			return new BitmapNode((1 << mask1) | (1 << mask2), 0, content);
+		}
+		return new BitmapNode(0, 1 << mask1,
+				new Object[] {merge(key1, value1, hash1, key2, value2, hash2, shift + BITS)});
+	}
+
+	/*
+	 * A node holding pairs of keys with the same hash code.
+	 */
+	private static final class CollisionNode extends Node {
+		final int hash;
+		final Object[] content;
+
+		CollisionNode(int hash, Object[] content) {
+			this.hash = hash;
+			this.content = content;
+		}
+
+		private int indexOf(Object key) {
+			for (int i = 0; i < content.length; i += 2)
+				if (equal(key, content[i]))
+					return i;
+			return -1;
+		}
+
+		@Override
+		Object find(Object key, int hash, int shift) {
+			if (hash != this.hash)
+				return NOT_FOUND;
+			final int i = indexOf(key);
+			return (i < 0 ? NOT_FOUND : content[i + 1]);
+		}
+
+		@Override
+		Node put(Object key, Object value, int hash, int shift, Change change) {
+			if (hash != this.hash)
+				// the collision node is pushed down one level
+				return new BitmapNode(0, 1 << mask(this.hash, shift), new Object[] {this})
+						.put(key, value, hash, shift, change);
+			final int i = indexOf(key);
+			if (i >= 0) {
+				if (content[i + 1] == value)
+					return this;
+				final Object[] newContent = content.clone();
+				newContent[i + 1] = value;
+				return new CollisionNode(hash, newContent);
+			}
+			change.sizeChanged = true;
+			final Object[] newContent = new Object[content.length + 2];
+			System.arraycopy(content, 0, newContent, 0, content.length);
+			newContent[content.length] = key;
+			newContent[content.length + 1] = value;
+			return new CollisionNode(hash, newContent);
+		}
+
+		@Override
+		Node remove(Object key, int hash, int shift) {
+			if (hash != this.hash)
+				return this;
+			final int i = indexOf(key);
+			if (i < 0)
+				return this;
+			if (content.length == 4) {
+				// the remaining pair is kept by the parent
+				final int j = (i == 0 ? 2 : 0);
+				return new BitmapNode(1 << mask(hash, shift), 0, new Object[] {content[j], content[j + 1]});
+			}
+			final Object[] newContent = new Object[content.length - 2];
+			System.arraycopy(content, 0, newContent, 0, i);
+			System.arraycopy(content, i + 2, newContent, i, content.length - i - 2);
+			return new CollisionNode(hash, newContent);
+		}
+
+		@Override
+		int dataCount() {
+			return content.length / 2;
+		}
+
+		@Override
+		Object key(int index) {
+			return content[2 * index];
+		}
+
+		@Override
+		Object value(int index) {
+			return content[2 * index + 1];
+		}
+
+		@Override
+		int nodeCount() {
+			return 0;
+		}
+	}
+
+	/*
+	 * Iterates over the pairs of a trie, depth first and in the order
+	 * of the positions in each node.
+	 */
+	private static abstract class NodeIterator<T> implements Iterator<T> {
+		// deep enough for 32 bit hash codes and a collision node
+		private final Node[] nodes = new Node[8];
+		// positions of a bitmap node or indexes of a collision node still to visit
+		private final int[] remaining = new int[8];
+		private int depth = 0;
+		private Node nextNode = null;
+		private int nextIndex = 0;
+
+		NodeIterator(Node root) {
+			push(root);
+			advance();
+		}
+
+		protected abstract T get(Node node, int index);
+
+		private void push(Node node) {
+			nodes[depth] = node;
+			if (node instanceof BitmapNode)
+				remaining[depth] = ((BitmapNode)node).dataMap | ((BitmapNode)node).nodeMap;
+			else
+				remaining[depth] = node.dataCount();
+		}
+
+		/*
+		 * Finds the next pair to return.
+		 */
+		private void advance() {
+			nextNode = null;
+			while (depth >= 0) {
+				final Node node = nodes[depth];
+				final int rest = remaining[depth];
+				if (rest == 0) {
+					nodes[depth--] = null;
+					continue;
+				}
+				if (node instanceof BitmapNode) {
+					final BitmapNode bitmapNode = (BitmapNode)node;
+					final int bit = Integer.lowestOneBit(rest);
+					remaining[depth] = rest ^ bit;
+					if ((bitmapNode.dataMap & bit) != 0) {
+						nextNode = node;
+						nextIndex = BitmapNode.index(bitmapNode.dataMap, bit);
+						return;
+					}
+					depth++;
+					push(bitmapNode.nodeAt(bit));
+				} else {
+					remaining[depth] = rest - 1;
+					nextNode = node;
+					nextIndex = node.dataCount() - rest;
+					return;
+				}
+			}
+		}
+
+		public boolean hasNext() {
+			return nextNode != null;
+		}
+
+		public T next() {
+			if (nextNode == null)
+				throw new NoSuchElementException();
+			final T result = get(nextNode, nextIndex);
+			advance();
+			return result;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * PersistentHashSet.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.util;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * An immutable hash set based on a {@link PersistentHashMap}.
+ * <p>
+ * {@link #plus(Object)} and {@link #minus(Object)} return a new set that
+ * shares most of its structure with this set. Every other method of
+ * {@link java.util.Set} that would modify the set throws an
+ * {@link UnsupportedOperationException}.
+ */
+public final class PersistentHashSet<E> extends AbstractSet<E> {
+
+	private static final PersistentHashSet<Object> EMPTY =
+			new PersistentHashSet<Object>(PersistentHashMap.<Object, Boolean>empty());
+
+	private final PersistentHashMap<E, Boolean> map;
+
+	private PersistentHashSet(PersistentHashMap<E, Boolean> map) {
+		this.map = map;
+	}
+
+	/**
+	 * Returns the empty set.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> PersistentHashSet<E> empty() {
+		return (PersistentHashSet<E>)EMPTY;
+	}
+
+	/**
+	 * Returns a set with the elements of the given collection. If the
+	 * given collection is a <code>PersistentHashSet</code>, it is returned
+	 * as is.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> PersistentHashSet<E> from(Collection<? extends E> collection) {
+		if (collection instanceof PersistentHashSet<?>)
+			return (PersistentHashSet<E>)collection;
+		PersistentHashSet<E> result = empty();
+		return result.plusAll(collection);
+	}
+
+	/**
+	 * Returns a set with the elements of this set and the given element.
+	 */
+	public PersistentHashSet<E> plus(E e) {
+		return wrap(map.plus(e, Boolean.TRUE));
+	}
+
+	/**
+	 * Returns a set with the elements of this set and of the given
+	 * collection.
+	 */
+	public PersistentHashSet<E> plusAll(Collection<? extends E> collection) {
+		if (isEmpty() && collection instanceof PersistentHashSet<?>)
+			return from(collection);
+		PersistentHashMap<E, Boolean> result = map;
+		for (E e: collection)
+			result = result.plus(e, Boolean.TRUE);
+		return wrap(result);
+	}
+
+	/**
+	 * Returns a set with the elements of this set except the given element.
+	 */
+	public PersistentHashSet<E> minus(Object e) {
+		return wrap(map.minus(e));
+	}
+
+	/**
+	 * Returns a set with the elements of this set except the elements
+	 * of the given collection.
+	 */
+	public PersistentHashSet<E> minusAll(Collection<?> collection) {
+		PersistentHashMap<E, Boolean> result = map;
+		for (Object e: collection)
+			result = result.minus(e);
+		return wrap(result);
+	}
+
+	private PersistentHashSet<E> wrap(PersistentHashMap<E, Boolean> newMap) {
+		if (newMap == map)
+			return this;
+		return new PersistentHashSet<E>(newMap);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return map.containsKey(o);
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return map.keyIterator();
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+}
@@ -0,0 +1,362 @@
+/*
+ * PersistentVector.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.util;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable list based on a balanced binary tree whose nodes know the
+ * size of their subtrees.
+ * <p>
+ * The list is never modified; inserting, removing or replacing an element
+ * at any position, taking a sublist and concatenating two vectors return
+ * a new vector in <i>O(log n)</i> that shares most of its nodes with this
+ * one. Accessing an element by its index takes <i>O(log n)</i> as well, so
+ * prefer iterators over indexes when visiting all elements. Every other
+ * method of {@link java.util.List} that would modify the list throws an
+ * {@link UnsupportedOperationException}.
+ */
+public final class PersistentVector<E> extends AbstractList<E> {
+
+	private static final PersistentVector<Object> EMPTY = new PersistentVector<Object>(null);
+
+	private final Node root;
+
+	private PersistentVector(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Returns the empty vector.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> PersistentVector<E> empty() {
+		return (PersistentVector<E>)EMPTY;
+	}
+
+	/**
+	 * Returns a vector with the elements of the given collection in the
+	 * order of its iterator. If the given collection is a
+	 * <code>PersistentVector</code>, it is returned as is.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> PersistentVector<E> from(Collection<? extends E> collection) {
+		if (collection instanceof PersistentVector<?>)
+			return (PersistentVector<E>)collection;
+		if (collection.isEmpty())
+			return empty();
+		final Object[] elements = collection.toArray();
+		return new PersistentVector<E>(build(elements, 0, elements.length));
+	}
+
+	/**
+	 * Returns a vector with the elements of this vector followed by the
+	 * given element.
+	 */
+	public PersistentVector<E> plus(E e) {
+		return plus(size(), e);
+	}
+
+	/**
+	 * Returns a vector with the elements of this vector and the given
+	 * element inserted at the given index.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is not in the range
+	 * from 0 to the size of this vector
+	 */
+	public PersistentVector<E> plus(int index, E e) {
+		if (index < 0 || index > size())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		return new PersistentVector<E>(insert(root, index, e));
+	}
+
+	/**
+	 * Returns a vector with the elements of this vector followed by the
+	 * elements of the given collection.
+	 */
+	public PersistentVector<E> plusAll(Collection<? extends E> collection) {
+		if (collection.isEmpty())
+			return this;
+		final PersistentVector<E> other = from(collection);
+		return new PersistentVector<E>(concat(root, other.root));
+	}
+
+	/**
+	 * Returns a vector with the elements of this vector except the
+	 * element at the given index.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 */
+	public PersistentVector<E> minus(int index) {
+		checkIndex(index);
+		return new PersistentVector<E>(remove(root, index));
+	}
+
+	/**
+	 * Returns a vector with the elements of this vector except the first
+	 * occurrence of the given element. Returns this vector if it does not
+	 * contain the element.
+	 */
+	public PersistentVector<E> minus(Object e) {
+		final int i = indexOf(e);
+		if (i < 0)
+			return this;
+		return minus(i);
+	}
+
+	/**
+	 * Returns a vector with the elements of this vector, except that the
+	 * element at the given index is replaced by the given element.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 */
+	public PersistentVector<E> with(int index, E e) {
+		checkIndex(index);
+		return new PersistentVector<E>(replace(root, index, e));
+	}
+
+	/**
+	 * Returns the elements from <code>fromIndex</code> (inclusive) to
+	 * <code>toIndex</code> (exclusive) as a new vector.
+	 */
+	@Override
+	public PersistentVector<E> subList(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex)
+			throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size());
+		if (fromIndex == 0 && toIndex == size())
+			return this;
+		return new PersistentVector<E>(drop(take(root, toIndex), fromIndex));
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E get(int index) {
+		checkIndex(index);
+		Node node = root;
+		while (true) {
+			final int leftSize = size(node.left);
+			if (index < leftSize)
+				node = node.left;
+			else if (index > leftSize) {
+				index -= leftSize + 1;
+				node = node.right;
+			} else
+				return (E)node.value;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size(root);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		int i = 0;
+		for (E e: this) {
+			if (o == null ? e == null : o.equals(e))
+				return i;
+			i++;
+		}
+		return -1;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			// the nodes whose value and right subtree are still to be visited
+			private final Node[] path = new Node[height(root)];
+			private int depth = 0;
+
+			{
+				pushLeft(root);
+			}
+
+			private void pushLeft(Node node) {
+				for (; node != null; node = node.left)
+					path[depth++] = node;
+			}
+
+			public boolean hasNext() {
+				return depth > 0;
+			}
+
+			@SuppressWarnings("unchecked")
+			public E next() {
+				if (depth == 0)
+					throw new NoSuchElementException();
+				final Node node = path[--depth];
+				path[depth] = null;
+				pushLeft(node.right);
+				return (E)node.value;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+	}
+
+	/*
+	 * A node of an AVL tree, where the position of an element is given
+	 * by the sizes of the subtrees.
+	 */
+	private static final class Node {
+		final Node left;
+		final Object value;
+		final Node right;
+		final int size;
+		final int height;
+
+		Node(Node left, Object value, Node right) {
+			this.left = left;
+			this.value = value;
+			this.right = right;
+			this.size = size(left) + size(right) + 1;
+			this.height = Math.max(height(left), height(right)) + 1;
+		}
+	}
+
+	private static int size(Node node) {
+		return (node == null ? 0 : node.size);
+	}
+
+	private static int height(Node node) {
+		return (node == null ? 0 : node.height);
+	}
+
+	private static Node build(Object[] elements, int from, int to) {
+		if (from >= to)
+			return null;
+		final int middle = (from + to) >>> 1;
+		return new Node(build(elements, from, middle), elements[middle], build(elements, middle + 1, to));
+	}
+
+	/*
+	 * Creates a node of the given subtrees, whose heights differ by at
+	 * most two, and rotates it if needed.
+	 */
+	private static Node balance(Node left, Object value, Node right) {
+		final int leftHeight = height(left);
+		final int rightHeight = height(right);
+		if (leftHeight > rightHeight + 1) {
+			if (height(left.left) >= height(left.right))
+				return new Node(left.left, left.value, new Node(left.right, value, right));
+			final Node lr = left.right;
+			return new Node(new Node(left.left, left.value, lr.left), lr.value, new Node(lr.right, value, right));
+		}
+		if (rightHeight > leftHeight + 1) {
+			if (height(right.right) >= height(right.left))
+				return new Node(new Node(left, value, right.left), right.value, right.right);
+			final Node rl = right.left;
+			return new Node(new Node(left, value, rl.left), rl.value, new Node(rl.right, right.value, right.right));
+		}
+		return new Node(left, value, right);
+	}
+
+	/*
+	 * Joins two trees of any heights and a value between them.
+	 */
+	private static Node join(Node left, Object value, Node right) {
+		final int leftHeight = height(left);
+		final int rightHeight = height(right);
+		if (leftHeight > rightHeight + 1)
+			return balance(left.left, left.value, join(left.right, value, right));
+		if (rightHeight > leftHeight + 1)
+			return balance(join(left, value, right.left), right.value, right.right);
+		return new Node(left, value, right);
+	}
+
+	private static Node concat(Node left, Node right) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+		return join(left, first(right), remove(right, 0));
+	}
+
+	private static Object first(Node node) {
+		while (node.left != null)
+			node = node.left;
+		return node.value;
+	}
+
+	private static Node insert(Node node, int index, Object value) {
+		if (node == null)
+			return new Node(null, value, null);
+		final int leftSize = size(node.left);
+		if (index <= leftSize)
+			return balance(insert(node.left, index, value), node.value, node.right);
+		return balance(node.left, node.value, insert(node.right, index - leftSize - 1, value));
+	}
+
+	private static Node remove(Node node, int index) {
+		final int leftSize = size(node.left);
+		if (index < leftSize)
+			return balance(remove(node.left, index), node.value, node.right);
+		if (index > leftSize)
+			return balance(node.left, node.value, remove(node.right, index - leftSize - 1));
+		if (node.left == null)
+			return node.right;
+		if (node.right == null)
+			return node.left;
+		return balance(node.left, first(node.right), remove(node.right, 0));
+	}
+
+	private static Node replace(Node node, int index, Object value) {
+		final int leftSize = size(node.left);
+		if (index < leftSize)
+			return new Node(replace(node.left, index, value), node.value, node.right);
+		if (index > leftSize)
+			return new Node(node.left, node.value, replace(node.right, index - leftSize - 1, value));
+		return new Node(node.left, value, node.right);
+	}
+
+	/*
+	 * Returns the tree of the first count elements of the given tree.
+	 */
+	private static Node take(Node node, int count) {
+		if (node == null || count <= 0)
+			return null;
+		if (count >= node.size)
+			return node;
+		final int leftSize = size(node.left);
+		if (count <= leftSize)
+			return take(node.left, count);
+		return join(node.left, node.value, take(node.right, count - leftSize - 1));
+	}
+
+	/*
+	 * Returns the tree of the given tree without its first count elements.
+	 */
+	private static Node drop(Node node, int count) {
+		if (node == null || count <= 0)
+			return node;
+		if (count >= node.size)
+			return null;
+		final int leftSize = size(node.left);
+		if (count <= leftSize)
+			return join(drop(node.left, count), node.value, node.right);
+		return drop(node.right, count - leftSize - 1);
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * SplitMixRandom.java
+ *
+ * Licensed under the Academic Free License version 3.0
+ *   http://www.opensource.org/licenses/afl-3.0.php
+ *   http://www.coreasm.org/afl-3.0.php
+ *
+ */
+
+package org.coreasm.util;
+
+import java.util.Random;
+
+/**
+ * A fast generator of pseudo random numbers based on the SplitMix64
+ * algorithm. The numbers only depend on the seed, and new independent
+ * generators can be derived from a generator with {@link #split()} or
+ * from a seed and a key with {@link #mix64(long)}.
+ * <p>
+ * Unlike {@link Random}, this class is <b>not</b> thread-safe; every
+ * thread is expected to use its own generator. In return, generating
+ * a number does not need any synchronization.
+ */
+public class SplitMixRandom extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	/** the odd constant added to the state for every generated number */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long state;
+
+	/**
+	 * Creates a new generator with the given seed.
+	 */
+	public SplitMixRandom(long seed) {
+		super(0L);
+		state = seed;
+	}
+
+	/**
+	 * Returns a new generator whose numbers are independent of the numbers
+	 * of this generator. Its seed is the next number of this generator.
+	 */
+	public SplitMixRandom split() {
+		return new SplitMixRandom(mix64(nextSeed()));
+	}
+
+	/**
+	 * Returns a well distributed 64-bit value computed from the given value.
+	 * This can be used to derive seeds of independent generators from a seed
+	 * and a key.
+	 */
+	public static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns a seed derived from the given seed and key.
+	 */
+	public static long mix64(long seed, long key) {
+		return mix64(seed + GOLDEN_GAMMA * (key + 1));
+	}
+
+	/**
+	 * Returns a well distributed 64-bit value computed from all characters
+	 * of the given string. Unlike {@link String#hashCode()}, different
+	 * strings are very unlikely to get the same value.
+	 */
+	public static long hash64(CharSequence s) {
+		long h = s.length();
+		for (int i = 0; i < s.length(); i++)
+			h = mix64(h, s.charAt(i));
+		return h;
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		// also called by the constructor of Random, before this object is initialized
+		state = seed;
+	}
+
+	@Override
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int)(mix64(nextSeed()) >>> (64 - bits));
+	}
+
+	private long nextSeed() {
+		return (state += GOLDEN_GAMMA);
+	}
+}
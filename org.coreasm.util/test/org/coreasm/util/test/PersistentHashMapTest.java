@@ -0,0 +1,135 @@
+package org.coreasm.util.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+
+import org.coreasm.util.PersistentHashMap;
+import org.coreasm.util.test.PersistentHashSetTest.Collision;
+import org.junit.Test;
+
+/**
+ * Compares {@link PersistentHashMap} with {@link HashMap}.
+ */
+public class PersistentHashMapTest {
+
+	private static final int SIZE = 10000;
+
+	@Test
+	public void testPutAndRemove() {
+		Random random = new Random(42);
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+		for (int i = 0; i < SIZE; i++) {
+			Integer key = random.nextInt(SIZE / 2);
+			if (random.nextInt(3) == 0) {
+				expected.remove(key);
+				map = map.minus(key);
+				assertFalse(map.containsKey(key));
+			}
+			else {
+				expected.put(key, i);
+				map = map.plus(key, i);
+				assertEquals(Integer.valueOf(i), map.get(key));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		assertEquals(expected, map);
+		assertEquals(map, expected);
+		for (int i = 0; i < SIZE / 2; i++)
+			assertEquals(expected.get(i), map.get(i));
+	}
+
+	@Test
+	public void testUnchangedOriginal() {
+		Map<String, Integer> contents = new HashMap<String, Integer>();
+		contents.put("a", 1);
+		contents.put("b", 2);
+		PersistentHashMap<String, Integer> original = PersistentHashMap.from(contents);
+		PersistentHashMap<String, Integer> replaced = original.plus("a", 3);
+		PersistentHashMap<String, Integer> removed = original.minus("b");
+		assertEquals(contents, original);
+		assertEquals(Integer.valueOf(3), replaced.get("a"));
+		assertEquals(2, replaced.size());
+		assertEquals(1, removed.size());
+		assertSame(original, original.plus("a", 1));
+		assertSame(original, original.minus("x"));
+		assertSame(original, original.plusAll(new HashMap<String, Integer>()));
+	}
+
+	@Test
+	public void testCollisions() {
+		Map<Collision, Integer> expected = new HashMap<Collision, Integer>();
+		PersistentHashMap<Collision, Integer> map = PersistentHashMap.empty();
+		for (int i = 0; i < 100; i++) {
+			expected.put(new Collision(i, i % 3), i);
+			map = map.plus(new Collision(i, i % 3), i);
+		}
+		for (int i = 0; i < 100; i += 5) {
+			expected.put(new Collision(i, i % 3), -i);
+			map = map.plus(new Collision(i, i % 3), -i);
+		}
+		assertEquals(expected, map);
+		for (int i = 0; i < 100; i++)
+			assertEquals(expected.get(new Collision(i, i % 3)), map.get(new Collision(i, i % 3)));
+		assertNull(map.get(new Collision(100, 0)));
+
+		for (int i = 0; i < 100; i += 2) {
+			expected.remove(new Collision(i, i % 3));
+			map = map.minus(new Collision(i, i % 3));
+			assertEquals(expected.size(), map.size());
+		}
+		assertEquals(expected, map);
+	}
+
+	@Test
+	public void testIteration() {
+		Map<Integer, String> expected = new HashMap<Integer, String>();
+		PersistentHashMap<Integer, String> map = PersistentHashMap.empty();
+		for (int i = -SIZE; i < SIZE; i += 7) {
+			expected.put(i * 31, "v" + i);
+			map = map.plus(i * 31, "v" + i);
+		}
+		map = map.plus(null, "null");
+		expected.put(null, "null");
+
+		Set<Integer> keys = new HashSet<Integer>();
+		int count = 0;
+		for (Entry<Integer, String> entry : map.entrySet()) {
+			assertEquals(expected.get(entry.getKey()), entry.getValue());
+			keys.add(entry.getKey());
+			count++;
+		}
+		assertEquals(expected.size(), count);
+		assertEquals(expected.keySet(), keys);
+		assertEquals(expected.keySet(), map.keySet());
+	}
+
+	@Test
+	public void testEqualsAndHashCode() {
+		Map<Object, Object> expected = new HashMap<Object, Object>();
+		PersistentHashMap<Object, Object> map = PersistentHashMap.empty();
+		assertEquals(expected.hashCode(), map.hashCode());
+		for (int i = 0; i < 1000; i++) {
+			Object key = (i % 2 == 0 ? Integer.valueOf(i) : "k" + i);
+			expected.put(key, "v" + i);
+			map = map.plus(key, "v" + i);
+		}
+		assertEquals(expected, map);
+		assertEquals(map, expected);
+		assertEquals(expected.hashCode(), map.hashCode());
+		assertEquals(map, PersistentHashMap.from(expected));
+		assertFalse(map.equals(map.plus(Integer.valueOf(0), "other")));
+		assertFalse(map.equals(map.minus(Integer.valueOf(0))));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutable() {
+		PersistentHashMap.<String, String>empty().plus("a", "b").put("c", "d");
+	}
+}
@@ -0,0 +1,168 @@
+package org.coreasm.util.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+import org.coreasm.util.PersistentHashSet;
+import org.junit.Test;
+
+/**
+ * Compares {@link PersistentHashSet} with {@link HashSet}.
+ */
+public class PersistentHashSetTest {
+
+	private static final int SIZE = 10000;
+
+	@Test
+	public void testAddAndRemove() {
+		Random random = new Random(42);
+		Set<Integer> expected = new HashSet<Integer>();
+		PersistentHashSet<Integer> set = PersistentHashSet.empty();
+		for (int i = 0; i < SIZE; i++) {
+			Integer e = random.nextInt(SIZE);
+			PersistentHashSet<Integer> before = set;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(e), set.contains(e));
+				set = set.minus(e);
+				assertFalse(set.contains(e));
+			}
+			else {
+				assertEquals(expected.add(e), !set.contains(e));
+				set = set.plus(e);
+				assertTrue(set.contains(e));
+			}
+			assertEquals(expected.size(), set.size());
+			if (set.size() == before.size())
+				assertSame(before, set);
+		}
+		assertEquals(expected, set);
+		assertEquals(set, expected);
+		for (int i = 0; i < SIZE; i++)
+			assertEquals(expected.contains(i), set.contains(i));
+	}
+
+	@Test
+	public void testUnchangedOriginal() {
+		PersistentHashSet<String> original = PersistentHashSet.from(Arrays.asList("a", "b", "c"));
+		PersistentHashSet<String> added = original.plus("d");
+		PersistentHashSet<String> removed = original.minus("a");
+		assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c")), original);
+		assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c", "d")), added);
+		assertEquals(new HashSet<String>(Arrays.asList("b", "c")), removed);
+		assertSame(original, original.plus("a"));
+		assertSame(original, original.minus("x"));
+	}
+
+	@Test
+	public void testCollisions() {
+		Set<Collision> expected = new HashSet<Collision>();
+		PersistentHashSet<Collision> set = PersistentHashSet.empty();
+		for (int i = 0; i < 100; i++) {
+			Collision e = new Collision(i, i % 3);
+			expected.add(e);
+			set = set.plus(e);
+		}
+		assertEquals(expected, set);
+		for (int i = 0; i < 100; i++)
+			assertTrue(set.contains(new Collision(i, i % 3)));
+		assertFalse(set.contains(new Collision(100, 0)));
+
+		for (int i = 0; i < 100; i += 2) {
+			expected.remove(new Collision(i, i % 3));
+			set = set.minus(new Collision(i, i % 3));
+			assertEquals(expected.size(), set.size());
+		}
+		assertEquals(expected, set);
+		for (int i = 1; i < 100; i += 2)
+			set = set.minus(new Collision(i, i % 3));
+		assertTrue(set.isEmpty());
+	}
+
+	@Test
+	public void testIteration() {
+		Set<Integer> expected = new HashSet<Integer>();
+		PersistentHashSet<Integer> set = PersistentHashSet.empty();
+		for (int i = -SIZE; i < SIZE; i += 7) {
+			expected.add(i * 31);
+			set = set.plus(i * 31);
+		}
+		set = set.plus(null);
+		expected.add(null);
+
+		Set<Integer> visited = new HashSet<Integer>();
+		int count = 0;
+		for (Integer e : set) {
+			visited.add(e);
+			count++;
+		}
+		assertEquals(expected.size(), count);
+		assertEquals(expected, visited);
+
+		Iterator<Integer> it = PersistentHashSet.<Integer>empty().iterator();
+		assertFalse(it.hasNext());
+		try {
+			it.next();
+			fail("expected a NoSuchElementException");
+		}
+		catch (NoSuchElementException e) {
+		}
+	}
+
+	@Test
+	public void testEqualsAndHashCode() {
+		Set<Object> expected = new HashSet<Object>();
+		PersistentHashSet<Object> set = PersistentHashSet.empty();
+		assertEquals(expected.hashCode(), set.hashCode());
+		for (int i = 0; i < 1000; i++) {
+			Object e = (i % 2 == 0 ? Integer.valueOf(i) : "e" + i);
+			expected.add(e);
+			set = set.plus(e);
+		}
+		assertEquals(expected, set);
+		assertEquals(set, expected);
+		assertEquals(expected.hashCode(), set.hashCode());
+		assertEquals(set, PersistentHashSet.from(expected));
+		assertFalse(set.equals(set.minus(Integer.valueOf(0))));
+		assertFalse(set.equals(set.plus("other")));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutable() {
+		PersistentHashSet.<String>empty().plus("a").add("b");
+	}
+
+	/*
+	 * An element with a chosen hash code.
+	 */
+	static final class Collision {
+
+		private final int id;
+		private final int hash;
+
+		Collision(int id, int hash) {
+			this.id = id;
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Collision && ((Collision)obj).id == id;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public String toString() {
+			return "Collision" + id;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package org.coreasm.util.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.coreasm.util.PersistentVector;
+import org.junit.Test;
+
+/**
+ * Compares {@link PersistentVector} with {@link ArrayList}.
+ */
+public class PersistentVectorTest {
+
+	private static final int SIZE = 5000;
+
+	@Test
+	public void testRandomOperations() {
+		Random random = new Random(42);
+		List<Integer> expected = new ArrayList<Integer>();
+		PersistentVector<Integer> vector = PersistentVector.empty();
+		for (int i = 0; i < SIZE; i++) {
+			int size = expected.size();
+			switch (random.nextInt(8)) {
+			case 0:
+				expected.add(i);
+				vector = vector.plus(i);
+				break;
+			case 1:
+			case 2: {
+				int index = random.nextInt(size + 1);
+				expected.add(index, i);
+				vector = vector.plus(index, i);
+				break;
+			}
+			case 3:
+				if (size > 0) {
+					int index = random.nextInt(size);
+					expected.remove(index);
+					vector = vector.minus(index);
+				}
+				break;
+			case 4:
+				if (size > 0) {
+					int index = random.nextInt(size);
+					expected.set(index, -i);
+					vector = vector.with(index, -i);
+				}
+				break;
+			case 5: {
+				List<Integer> other = randomList(random, random.nextInt(20));
+				expected.addAll(other);
+				vector = vector.plusAll(other);
+				break;
+			}
+			case 6: {
+				// concatenate two vectors of different heights
+				PersistentVector<Integer> other = PersistentVector.from(randomList(random, random.nextInt(200)));
+				expected.addAll(0, other);
+				vector = other.plusAll(vector);
+				break;
+			}
+			case 7:
+				if (size > 0) {
+					int from = random.nextInt(size + 1);
+					int to = from + random.nextInt(size - from + 1);
+					// keep most of the elements so that the list keeps growing
+					if (to - from < size / 2)
+						break;
+					expected = new ArrayList<Integer>(expected.subList(from, to));
+					vector = vector.subList(from, to);
+				}
+				break;
+			}
+			assertEquals(expected.size(), vector.size());
+			if (i % 100 == 0)
+				assertEquals(expected, vector);
+		}
+		assertEquals(expected, vector);
+		assertEquals(vector, expected);
+		assertEquals(expected.hashCode(), vector.hashCode());
+		for (int i = 0; i < expected.size(); i++)
+			assertEquals(expected.get(i), vector.get(i));
+	}
+
+	@Test
+	public void testSubLists() {
+		List<Integer> expected = randomList(new Random(7), 300);
+		PersistentVector<Integer> vector = PersistentVector.from(expected);
+		for (int from = 0; from <= expected.size(); from += 13) {
+			for (int to = from; to <= expected.size(); to += 17) {
+				assertEquals(expected.subList(from, to), vector.subList(from, to));
+				assertEquals(expected.subList(from, expected.size()), vector.subList(from, expected.size()));
+			}
+		}
+		assertSame(vector, vector.subList(0, vector.size()));
+		assertTrue(vector.subList(5, 5).isEmpty());
+	}
+
+	@Test
+	public void testConcatenation() {
+		Random random = new Random(11);
+		for (int left = 0; left < 70; left += 3) {
+			for (int right = 0; right < 70; right += 5) {
+				List<Integer> l = randomList(random, left);
+				List<Integer> r = randomList(random, right);
+				List<Integer> expected = new ArrayList<Integer>(l);
+				expected.addAll(r);
+				assertEquals(expected, PersistentVector.from(l).plusAll(PersistentVector.from(r)));
+			}
+		}
+	}
+
+	@Test
+	public void testUnchangedOriginal() {
+		PersistentVector<String> original = PersistentVector.from(Arrays.asList("a", "b", "c"));
+		PersistentVector<String> added = original.plus("d");
+		PersistentVector<String> inserted = original.plus(0, "x");
+		PersistentVector<String> removed = original.minus(1);
+		PersistentVector<String> replaced = original.with(2, "z");
+		assertEquals(Arrays.asList("a", "b", "c"), original);
+		assertEquals(Arrays.asList("a", "b", "c", "d"), added);
+		assertEquals(Arrays.asList("x", "a", "b", "c"), inserted);
+		assertEquals(Arrays.asList("a", "c"), removed);
+		assertEquals(Arrays.asList("a", "b", "z"), replaced);
+		assertSame(original, original.minus("y"));
+		assertEquals(Arrays.asList("a", "c"), original.minus("b"));
+		assertSame(original, original.plusAll(Collections.<String>emptyList()));
+		assertSame(original, PersistentVector.from(original));
+	}
+
+	@Test
+	public void testEmptyAndSingleElement() {
+		PersistentVector<String> empty = PersistentVector.empty();
+		assertTrue(empty.isEmpty());
+		assertEquals(0, empty.size());
+		assertFalse(empty.iterator().hasNext());
+		assertEquals(-1, empty.indexOf("a"));
+		assertSame(empty, empty.subList(0, 0));
+		assertSame(empty, PersistentVector.from(new ArrayList<String>()));
+		assertEquals(Collections.emptyList(), empty);
+
+		PersistentVector<String> single = empty.plus("a");
+		assertEquals(Collections.singletonList("a"), single);
+		assertEquals("a", single.get(0));
+		assertEquals(0, single.indexOf("a"));
+		assertTrue(single.minus(0).isEmpty());
+		assertTrue(single.subList(1, 1).isEmpty());
+		assertEquals(Collections.singletonList("b"), single.with(0, "b"));
+		assertEquals(Arrays.asList("b", "a"), single.plus(0, "b"));
+		assertEquals(Arrays.asList("a", "b"), single.plus(1, "b"));
+		assertEquals(Collections.singletonList("a"), empty.plusAll(single));
+		assertEquals(Collections.singletonList("a"), single.plusAll(empty));
+
+		PersistentVector<String> withNull = single.plus(null);
+		assertEquals(1, withNull.indexOf(null));
+		assertEquals(Collections.singletonList("a"), withNull.minus(null));
+
+		Iterator<String> it = single.iterator();
+		assertEquals("a", it.next());
+		assertFalse(it.hasNext());
+		try {
+			it.next();
+			fail("expected a NoSuchElementException");
+		}
+		catch (NoSuchElementException e) {
+		}
+	}
+
+	@Test
+	public void testBoundaryIndexes() {
+		PersistentVector<Integer> vector = PersistentVector.from(Arrays.asList(1, 2, 3));
+		assertEquals(Integer.valueOf(1), vector.get(0));
+		assertEquals(Integer.valueOf(3), vector.get(2));
+		assertEquals(Arrays.asList(1, 2, 3, 4), vector.plus(3, 4));
+		assertEquals(Arrays.asList(2, 3), vector.minus(0));
+		assertEquals(Arrays.asList(1, 2), vector.minus(2));
+		assertOutOfBounds(vector, -1);
+		assertOutOfBounds(vector, 3);
+		assertOutOfBounds(PersistentVector.<Integer>empty(), 0);
+		try {
+			vector.plus(4, 0);
+			fail("expected an IndexOutOfBoundsException");
+		}
+		catch (IndexOutOfBoundsException e) {
+		}
+		try {
+			vector.plus(-1, 0);
+			fail("expected an IndexOutOfBoundsException");
+		}
+		catch (IndexOutOfBoundsException e) {
+		}
+		try {
+			vector.subList(2, 1);
+			fail("expected an IndexOutOfBoundsException");
+		}
+		catch (IndexOutOfBoundsException e) {
+		}
+		try {
+			vector.subList(0, 4);
+			fail("expected an IndexOutOfBoundsException");
+		}
+		catch (IndexOutOfBoundsException e) {
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutable() {
+		PersistentVector.<String>empty().plus("a").add("b");
+	}
+
+	/*
+	 * Checks that get, minus and with reject the given index.
+	 */
+	private static void assertOutOfBounds(PersistentVector<Integer> vector, int index) {
+		try {
+			vector.get(index);
+			fail("expected an IndexOutOfBoundsException");
+		}
+		catch (IndexOutOfBoundsException e) {
+		}
+		try {
+			vector.minus(index);
+			fail("expected an IndexOutOfBoundsException");
+		}
+		catch (IndexOutOfBoundsException e) {
+		}
+		try {
+			vector.with(index, 0);
+			fail("expected an IndexOutOfBoundsException");
+		}
+		catch (IndexOutOfBoundsException e) {
+		}
+	}
+
+	private static List<Integer> randomList(Random random, int size) {
+		List<Integer> result = new ArrayList<Integer>(size);
+		for (int i = 0; i < size; i++)
+			result.add(random.nextInt(1000));
+		return result;
+	}
+}